@@ -0,0 +1,176 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent.hybrid;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.copperengine.core.Acknowledge;
+import org.copperengine.core.Interrupt;
+import org.copperengine.core.Response;
+import org.copperengine.core.WaitMode;
+import org.copperengine.core.Workflow;
+import org.copperengine.core.common.WorkflowRepository;
+import org.copperengine.core.instrument.Transformed;
+import org.copperengine.core.persistent.PersistentWorkflow;
+import org.copperengine.core.persistent.RegisterCall;
+import org.copperengine.core.persistent.SerializedWorkflow;
+import org.copperengine.core.persistent.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of the {@link HybridDBStorage} with several threads, each of which registers a wait of one
+ * of its workflow instances, notifies it and dequeues the instance again. Every other response is sent before the wait
+ * is registered, so it takes the early response path. Each thread uses its own processor pool, so the benchmark
+ * measures the correlation id map, the mutexes and the early response handling rather than the queues. The storage is
+ * the {@link InMemoryStorage} of the unit tests without latency.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class HybridDBStorageBenchmark {
+
+    private static final int WORKFLOWS_PER_THREAD = 16;
+    private static final Acknowledge ACK = new Acknowledge.BestEffortAcknowledge();
+
+    private final AtomicInteger threadIdFactory = new AtomicInteger();
+    private InMemoryStorage storage;
+    private TimeoutManager timeoutManager;
+    private ExecutorService executor;
+    private HybridDBStorage dbStorage;
+
+    @State(Scope.Thread)
+    public static class Notifier {
+        private final BenchmarkWorkflow[] workflows = new BenchmarkWorkflow[WORKFLOWS_PER_THREAD];
+        private final long[] sequence = new long[WORKFLOWS_PER_THREAD];
+        private String ppoolId;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setup(HybridDBStorageBenchmark benchmark) throws Exception {
+            final int threadId = benchmark.threadIdFactory.incrementAndGet();
+            ppoolId = "P" + threadId;
+            for (int i = 0; i < WORKFLOWS_PER_THREAD; i++) {
+                workflows[i] = new BenchmarkWorkflow();
+                workflows[i].setId("wf" + threadId + "." + i);
+                workflows[i].setProcessorPoolId(ppoolId);
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        storage = new InMemoryStorage(0, TimeUnit.MILLISECONDS);
+        timeoutManager = new DefaultTimeoutManager().startup();
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        dbStorage = new HybridDBStorage(new BenchmarkSerializer(), null, storage, timeoutManager, executor);
+        dbStorage.startup();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+        timeoutManager.shutdown();
+        storage.shutdown();
+    }
+
+    @Benchmark
+    public List<Workflow<?>> notifyAndDequeue(Notifier notifier) throws Exception {
+        final int i = notifier.next;
+        notifier.next = (i + 1) % WORKFLOWS_PER_THREAD;
+        final long seq = notifier.sequence[i]++;
+        final BenchmarkWorkflow wf = notifier.workflows[i];
+        final String cid = wf.getId() + "-" + seq;
+        final RegisterCall rc = new RegisterCall(wf, WaitMode.ALL, null, new String[] { cid }, null);
+        final Response<String> response = new Response<String>(cid, null, null);
+        if (seq % 2 == 0) {
+            dbStorage.registerCallback(rc, ACK);
+            dbStorage.notify(response, ACK);
+        } else {
+            dbStorage.notify(response, ACK);
+            dbStorage.registerCallback(rc, ACK);
+        }
+        return dbStorage.dequeue(notifier.ppoolId, 1);
+    }
+
+    @Transformed
+    public static class BenchmarkWorkflow extends PersistentWorkflow<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void main() throws Interrupt {
+        }
+    }
+
+    /**
+     * Serializes a response to its correlation id and deserializes every workflow instance to a new
+     * {@link BenchmarkWorkflow}, so the benchmark does not measure Java serialization.
+     */
+    static final class BenchmarkSerializer implements Serializer {
+
+        @Override
+        public SerializedWorkflow serializeWorkflow(Workflow<?> o) throws Exception {
+            return new SerializedWorkflow();
+        }
+
+        @Override
+        public Workflow<?> deserializeWorkflow(SerializedWorkflow serializedWorkflow, WorkflowRepository wfRepo) throws Exception {
+            return new BenchmarkWorkflow();
+        }
+
+        @Override
+        public String serializeResponse(Response<?> r) throws Exception {
+            return r.getCorrelationId();
+        }
+
+        @Override
+        public Response<?> deserializeResponse(String _data) throws Exception {
+            return _data != null ? new Response<String>(_data, null, null) : null;
+        }
+
+        @Override
+        public String serializeObject(Serializable o) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Serializable deserializeObject(String _data) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
@@ -59,6 +59,7 @@ public abstract class CassandraEngineFactory<T extends DependencyInjector> exten
     private List<String> cassandraHosts = Collections.singletonList("localhost");
     private Integer cassandraPort = null;
     private boolean withCache = false;
+    private boolean resumeInBackground = false;
 
     protected final Supplier<CassandraSessionManager> cassandraSessionManager;
     protected final Supplier<ScheduledExecutorService> scheduledExecutorService;
@@ -99,12 +100,20 @@ public abstract class CassandraEngineFactory<T extends DependencyInjector> exten
         this.withCache = withCache;
     }
 
+    /**
+     * @see CassandraStorage#setResumeInBackground(boolean)
+     */
+    public void setResumeInBackground(boolean resumeInBackground) {
+        this.resumeInBackground = resumeInBackground;
+    }
+
     protected ScheduledExecutorService createScheduledExecutorService() {
         return Executors.newScheduledThreadPool(2);
     }
 
     protected Storage createStorage() {
         final CassandraStorage cs = new CassandraStorage(cassandraSessionManager.get(), executorService.get(), statisticCollector.get());
+        cs.setResumeInBackground(resumeInBackground);
         if (withCache) {
             final StorageCache storageCache = new StorageCache(cs);
             scheduledExecutorService.get().scheduleAtFixedRate(new Runnable() {
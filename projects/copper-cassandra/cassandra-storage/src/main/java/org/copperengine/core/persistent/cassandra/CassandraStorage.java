@@ -29,7 +29,9 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.NullArgumentException;
 import org.copperengine.core.CopperRuntimeException;
@@ -52,6 +54,8 @@ import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.exceptions.QueryExecutionException;
 import com.datastax.driver.core.policies.DefaultRetryPolicy;
 import com.datastax.driver.core.policies.LoggingRetryPolicy;
 import com.datastax.driver.core.policies.RetryPolicy;
@@ -74,6 +78,7 @@ public class CassandraStorage implements Storage {
     private static final String CQL_UPD_WORKFLOW_INSTANCE_STATE_AND_RESPONSE_MAP = "UPDATE COP_WORKFLOW_INSTANCE SET STATE=?, RESPONSE_MAP_JSON=?, LAST_MOD_TS=toTimestamp(now()) WHERE ID=?";
     private static final String CQL_DEL_WORKFLOW_INSTANCE_WAITING = "DELETE FROM COP_WORKFLOW_INSTANCE WHERE ID=?";
     private static final String CQL_SEL_WORKFLOW_INSTANCE = "SELECT * FROM COP_WORKFLOW_INSTANCE WHERE ID=?";
+    private static final String CQL_SEL_WORKFLOW_INSTANCE_RESUME = "SELECT PPOOL_ID, PRIO, WAIT_MODE, RESPONSE_MAP_JSON, STATE, TIMEOUT FROM COP_WORKFLOW_INSTANCE WHERE ID=?";
     private static final String CQL_INS_EARLY_RESPONSE = "INSERT INTO COP_EARLY_RESPONSE (CORRELATION_ID, RESPONSE) VALUES (?,?) USING TTL ?";
     private static final String CQL_DEL_EARLY_RESPONSE = "DELETE FROM COP_EARLY_RESPONSE WHERE CORRELATION_ID=?";
     private static final String CQL_SEL_EARLY_RESPONSE = "SELECT RESPONSE FROM COP_EARLY_RESPONSE WHERE CORRELATION_ID=?";
@@ -92,6 +97,10 @@ public class CassandraStorage implements Storage {
     private int ttlEarlyResponseSeconds = 1 * 24 * 60 * 60; // one day
     private int initializationTimeoutSeconds = 1 * 24 * 60 * 60; // one day
     private boolean createSchemaOnStartup = true;
+    private boolean resumeInBackground = false;
+    private volatile boolean recoveryFinished = false;
+    private final AtomicLong numberOfWorkflowInstancesToRecover = new AtomicLong();
+    private final AtomicLong numberOfRecoveredWorkflowInstances = new AtomicLong();
 
     public CassandraStorage(final CassandraSessionManager sessionManager, final Executor executor, final RuntimeStatisticsCollector runtimeStatisticsCollector) {
         this(sessionManager, executor, runtimeStatisticsCollector, ConsistencyLevel.LOCAL_QUORUM);
@@ -128,6 +137,7 @@ public class CassandraStorage implements Storage {
         prepare(CQL_UPD_WORKFLOW_INSTANCE_WAITING);
         prepare(CQL_DEL_WORKFLOW_INSTANCE_WAITING);
         prepare(CQL_SEL_WORKFLOW_INSTANCE);
+        prepare(CQL_SEL_WORKFLOW_INSTANCE_RESUME);
         prepare(CQL_UPD_WORKFLOW_INSTANCE_STATE);
         prepare(CQL_INS_EARLY_RESPONSE);
         prepare(CQL_DEL_EARLY_RESPONSE);
@@ -186,6 +196,38 @@ public class CassandraStorage implements Storage {
         this.initializationTimeoutSeconds = initializationTimeoutSeconds;
     }
 
+    /**
+     * If true, {@link #initialize(HybridDBStorageAccessor, int)} does not block until all existing workflow instances
+     * are resumed. It only reads the ids of the existing workflow instances, so instances created after startup are not
+     * resumed a second time. The engine accepts new workflow instances and responses at once and the existing
+     * instances are resumed in the background. Responses for instances that are not resumed yet are kept as early
+     * responses and connected when the instance is resumed. Default is false.
+     */
+    public void setResumeInBackground(boolean resumeInBackground) {
+        this.resumeInBackground = resumeInBackground;
+    }
+
+    /**
+     * @return true, if all existing workflow instances have been resumed after startup
+     */
+    public boolean isRecoveryFinished() {
+        return recoveryFinished;
+    }
+
+    /**
+     * @return the number of workflow instances to resume after startup
+     */
+    public long getNumberOfWorkflowInstancesToRecover() {
+        return numberOfWorkflowInstancesToRecover.get();
+    }
+
+    /**
+     * @return the number of workflow instances resumed during startup so far
+     */
+    public long getNumberOfRecoveredWorkflowInstances() {
+        return numberOfRecoveredWorkflowInstances.get();
+    }
+
     @Override
     public void safeWorkflowInstance(final WorkflowInstance cw, final boolean initialInsert) throws Exception {
         logger.debug("safeWorkflow({})", cw);
@@ -266,6 +308,41 @@ public class CassandraStorage implements Storage {
         }.run();
     }
 
+    @Override
+    public ListenableFuture<WorkflowInstance> readWorkflowInstanceAsync(final String wfId) throws Exception {
+        logger.debug("readWorkflowInstanceAsync({})", wfId);
+        final PreparedStatement pstmt = preparedStatements.get(CQL_SEL_WORKFLOW_INSTANCE);
+        final long startTS = System.nanoTime();
+        final ResultSetFuture rsf = session.executeAsync(pstmt.bind(wfId));
+        final SettableFuture<WorkflowInstance> rv = SettableFuture.create();
+        rsf.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final Row row = rsf.get().one();
+                    final WorkflowInstance cw = row != null ? row2WorkflowInstance(row) : null;
+                    runtimeStatisticsCollector.submit("wfi.read", 1, System.nanoTime() - startTS, TimeUnit.NANOSECONDS);
+                    rv.set(cw);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof QueryExecutionException || e.getCause() instanceof NoHostAvailableException) {
+                        // retry like the synchronous read does
+                        logger.warn("Cassandra operation failed - retrying...", e.getCause());
+                        try {
+                            rv.set(readWorkflowInstance(wfId));
+                        } catch (Exception e2) {
+                            rv.setException(e2);
+                        }
+                    } else {
+                        rv.setException(e.getCause());
+                    }
+                } catch (Exception e) {
+                    rv.setException(e);
+                }
+            }
+        }, executor);
+        return rv;
+    }
+
     @Override
     public ListenableFuture<Void> safeEarlyResponse(String correlationId, String serializedResponse) throws Exception {
         logger.debug("safeEarlyResponse({})", correlationId);
@@ -307,12 +384,24 @@ public class CassandraStorage implements Storage {
 
         prepareStatements();
 
-        // TODO instead of blocking the startup until all active workflow instances are read and resumed, it is
-        // sufficient to read just their existing IDs in COP_WFI_ID and resume them in the background while already
-        // starting the engine an accepting new instances.
-
         if (numberOfThreads <= 0)
             numberOfThreads = 1;
+
+        if (resumeInBackground) {
+            final int _numberOfThreads = numberOfThreads;
+            // read the ids before the engine is started, so the ids of new workflow instances are not part of them
+            final List<String> wfIds = readWorkflowInstanceIds();
+            final Thread thread = new Thread("CassandraStorage-Recovery") {
+                @Override
+                public void run() {
+                    recover(wfIds, internalStorageAccessor, _numberOfThreads);
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+            return;
+        }
+
         logger.info("Starting to initialize with {} threads ...", numberOfThreads);
         final ExecutorService execService = Executors.newFixedThreadPool(numberOfThreads);
         final long startTS = System.currentTimeMillis();
@@ -342,12 +431,118 @@ public class CassandraStorage implements Storage {
         }
         logger.info("Finished initialization - read {} rows in {} msec", counter, System.currentTimeMillis() - startTS);
         runtimeStatisticsCollector.submit("storage.init", counter, System.currentTimeMillis() - startTS, TimeUnit.MILLISECONDS);
+        recoveryFinished = true;
+    }
+
+    /**
+     * Reads the ids of all workflow instances, the whole scan is retried if it fails.
+     */
+    private List<String> readWorkflowInstanceIds() throws Exception {
+        final long startTS = System.currentTimeMillis();
+        final List<String> wfIds = new CassandraOperation<List<String>>(logger) {
+            @Override
+            protected List<String> execute() throws Exception {
+                final List<String> wfIds = new ArrayList<String>();
+                final ResultSet rs = session.execute(preparedStatements.get(CQL_SEL_WFI_ID_ALL).bind().setFetchSize(500).setConsistencyLevel(ConsistencyLevel.ONE));
+                Row row;
+                while ((row = rs.one()) != null) {
+                    wfIds.add(row.getString("ID"));
+                }
+                return wfIds;
+            }
+        }.run();
+        logger.info("Read {} IDs in {} msec", wfIds.size(), System.currentTimeMillis() - startTS);
+        numberOfWorkflowInstancesToRecover.set(wfIds.size());
+        return wfIds;
+    }
+
+    /**
+     * Resumes the existing workflow instances in the background, see {@link #setResumeInBackground(boolean)}.
+     */
+    private void recover(final List<String> wfIds, final HybridDBStorageAccessor internalStorageAccessor, final int numberOfThreads) {
+        logger.info("Starting background recovery with {} threads ...", numberOfThreads);
+        final ExecutorService execService = Executors.newFixedThreadPool(numberOfThreads);
+        // limits the number of tasks queued ahead of the resuming threads
+        final Semaphore permits = new Semaphore(numberOfThreads * 100);
+        final long startTS = System.currentTimeMillis();
+        long lastProgressTS = startTS;
+        try {
+            for (final String wfId : wfIds) {
+                permits.acquire();
+                execService.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            resumeInBackground(wfId, internalStorageAccessor);
+                        } catch (Exception e) {
+                            logger.error("resume of workflow instance " + wfId + " failed", e);
+                        } finally {
+                            numberOfRecoveredWorkflowInstances.incrementAndGet();
+                            permits.release();
+                        }
+                    }
+                });
+                if (System.currentTimeMillis() - lastProgressTS >= 10000L) {
+                    lastProgressTS = System.currentTimeMillis();
+                    logRecoveryProgress();
+                }
+            }
+            execService.shutdown();
+            while (!execService.awaitTermination(10, TimeUnit.SECONDS)) {
+                logRecoveryProgress();
+            }
+            logger.info("Finished background recovery - resumed {} workflow instances in {} msec", numberOfRecoveredWorkflowInstances.get(), System.currentTimeMillis() - startTS);
+            runtimeStatisticsCollector.submit("storage.init", (int) numberOfRecoveredWorkflowInstances.get(), System.currentTimeMillis() - startTS, TimeUnit.MILLISECONDS);
+            recoveryFinished = true;
+        } catch (InterruptedException e) {
+            logger.error("background recovery interrupted - resumed {} of {} workflow instances", numberOfRecoveredWorkflowInstances.get(), numberOfWorkflowInstancesToRecover.get());
+            execService.shutdownNow();
+        }
+    }
+
+    private void logRecoveryProgress() {
+        logger.info("Background recovery in progress - resumed {} of {} workflow instances", numberOfRecoveredWorkflowInstances.get(), numberOfWorkflowInstancesToRecover.get());
+    }
+
+    private void resumeInBackground(final String wfId, final HybridDBStorageAccessor internalStorageAccessor) throws Exception {
+        logger.trace("resumeInBackground(wfId={})", wfId);
+
+        final ResultSet rs = session.execute(preparedStatements.get(CQL_SEL_WORKFLOW_INSTANCE_RESUME).bind(wfId));
+        final Row row = rs.one();
+        if (row == null) {
+            logger.warn("No workflow instance {} found - deleting row in COP_WFI_ID", wfId);
+            session.executeAsync(preparedStatements.get(CQL_DEL_WFI_ID).bind(wfId));
+            return;
+        }
+
+        final ProcessingState state = ProcessingState.valueOf(row.getString("STATE"));
+        if (state == ProcessingState.ERROR || state == ProcessingState.INVALID) {
+            return;
+        }
+
+        if (state == ProcessingState.ENQUEUED) {
+            internalStorageAccessor.enqueue(wfId, row.getString("PPOOL_ID"), row.getInt("PRIO"));
+            return;
+        }
+
+        final Map<String, String> responseMap = toResponseMap(row.getString("RESPONSE_MAP_JSON"));
+        if (responseMap != null) {
+            // responses arriving from now on are connected by the engine, earlier ones are early responses
+            final List<String> correlationIds = new ArrayList<String>(responseMap.keySet());
+            final List<String> missingResponseCorrelationIds = new ArrayList<String>();
+            for (Entry<String, String> e : responseMap.entrySet()) {
+                if (e.getValue() == null) {
+                    missingResponseCorrelationIds.add(e.getKey());
+                }
+            }
+            internalStorageAccessor.resumeWaiting(wfId, correlationIds, missingResponseCorrelationIds, row.getTimestamp("TIMEOUT"));
+        }
     }
 
     private void resume(final String wfId, final HybridDBStorageAccessor internalStorageAccessor) throws Exception {
         logger.trace("resume(wfId={})", wfId);
 
-        final ResultSet rs = session.execute(preparedStatements.get(CQL_SEL_WORKFLOW_INSTANCE).bind(wfId));
+        final ResultSet rs = session.execute(preparedStatements.get(CQL_SEL_WORKFLOW_INSTANCE_RESUME).bind(wfId));
         final Row row = rs.one();
         if (row == null) {
             logger.warn("No workflow instance {} found - deleting row in COP_WFI_ID", wfId);
@@ -16,54 +16,73 @@
 package org.copperengine.core.persistent.hybrid;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Internally used class. Maps correlation ids to the id of the waiting workflow instance and vice versa.
+ * <p>
+ * Lookups do not lock. Changes lock the stripe of the workflow id, so the correlation ids of one workflow instance are
+ * added and removed consistently in both maps, while changes for different workflow instances run in parallel. The
+ * list of correlation ids of a workflow instance is only accessed with its stripe locked.
+ */
 class CorrelationIdMap {
 
-    private final Object mutex = new Object();
-    private final Map<String, String> correlationId2wfIdMap = new HashMap<>();
-    private final Map<String, List<String>> wfId2correlationIdMap = new HashMap<>();
+    private final Object[] stripes;
+    private final ConcurrentHashMap<String, String> correlationId2wfIdMap = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, List<String>> wfId2correlationIdMap = new ConcurrentHashMap<>();
 
-    public String getWorkflowId(String correlationId) {
-        synchronized (mutex) {
-            return correlationId2wfIdMap.get(correlationId);
+    public CorrelationIdMap() {
+        this(Runtime.getRuntime().availableProcessors() * 8);
+    }
+
+    CorrelationIdMap(int minStripes) {
+        int size = 16;
+        while (size < minStripes) {
+            size <<= 1;
         }
+        stripes = new Object[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    private Object stripe(String workflowId) {
+        final int h = workflowId.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+
+    public String getWorkflowId(String correlationId) {
+        return correlationId2wfIdMap.get(correlationId);
     }
 
     public boolean containsWorkflowId(String workflowId) {
-        synchronized (mutex) {
-            return wfId2correlationIdMap.containsKey(workflowId);
-        }
+        return wfId2correlationIdMap.containsKey(workflowId);
     }
 
     public void removeAll4Workflow(String workflowId) {
-        synchronized (mutex) {
-            List<String> list = wfId2correlationIdMap.remove(workflowId);
-            if (list == null || list.isEmpty())
+        synchronized (stripe(workflowId)) {
+            final List<String> list = wfId2correlationIdMap.remove(workflowId);
+            if (list == null)
                 return;
             for (String cid : list) {
-                correlationId2wfIdMap.remove(cid);
+                correlationId2wfIdMap.remove(cid, workflowId);
             }
         }
     }
 
     public void addCorrelationId(String workflowId, String correlationId) {
-        synchronized (mutex) {
-            List<String> list = wfId2correlationIdMap.remove(workflowId);
-            if (list == null) {
-                list = new ArrayList<String>();
-                wfId2correlationIdMap.put(workflowId, list);
-            }
-            list.add(correlationId);
-            correlationId2wfIdMap.put(correlationId, workflowId);
-        }
+        addCorrelationIds(workflowId, Arrays.asList(correlationId));
+    }
+
+    public void addCorrelationIds(String workflowId, String[] correlationIds) {
+        addCorrelationIds(workflowId, Arrays.asList(correlationIds));
     }
 
     public void addCorrelationIds(String workflowId, List<String> correlationIds) {
-        synchronized (mutex) {
-            List<String> list = wfId2correlationIdMap.remove(workflowId);
+        synchronized (stripe(workflowId)) {
+            List<String> list = wfId2correlationIdMap.get(workflowId);
             if (list == null) {
                 list = new ArrayList<String>(correlationIds.size());
                 wfId2correlationIdMap.put(workflowId, list);
@@ -75,18 +94,4 @@ class CorrelationIdMap {
         }
     }
 
-    public void addCorrelationIds(String workflowId, String[] correlationIds) {
-        synchronized (mutex) {
-            List<String> list = wfId2correlationIdMap.remove(workflowId);
-            if (list == null) {
-                list = new ArrayList<String>(correlationIds.length);
-                wfId2correlationIdMap.put(workflowId, list);
-            }
-            for (String cid : correlationIds) {
-                list.add(cid);
-                correlationId2wfIdMap.put(cid, workflowId);
-            }
-        }
-    }
-
 }
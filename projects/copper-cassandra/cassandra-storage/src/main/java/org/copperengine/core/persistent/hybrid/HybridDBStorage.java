@@ -17,18 +17,19 @@ package org.copperengine.core.persistent.hybrid;
 
 import java.sql.Connection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import org.copperengine.core.Acknowledge;
 import org.copperengine.core.CopperRuntimeException;
@@ -50,6 +51,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 public class HybridDBStorage implements ScottyDBStorageInterface {
 
@@ -64,8 +68,12 @@ public class HybridDBStorage implements ScottyDBStorageInterface {
     private final Serializer serializer;
     private final WorkflowRepository wfRepo;
     private final Storage storage;
-    private final Object[] mutexArray = new Object[2003];
-    private final Set<String> currentlyProcessingEarlyResponses = new HashSet<>();
+    private final Object[] mutexArray = createMutexArray(Runtime.getRuntime().availableProcessors() * 16);
+    // number of early responses per correlation id, that are currently written to the storage
+    private final ConcurrentHashMap<String, Integer> currentlyProcessingEarlyResponses = new ConcurrentHashMap<>();
+    // waiting for an early response to be written must not release one of the mutexArray monitors
+    private final Object[] earlyResponseMutexArray = createMutexArray(Runtime.getRuntime().availableProcessors() * 4);
+    private volatile Semaphore readPermits = new Semaphore(256);
     private boolean started = false;
 
     public HybridDBStorage(Serializer serializer, WorkflowRepository wfRepo, Storage storage, TimeoutManager timeoutManager, final Executor executor) {
@@ -75,9 +83,6 @@ public class HybridDBStorage implements ScottyDBStorageInterface {
         this.storage = storage;
         this.timeoutManager = timeoutManager;
         this.executor = executor;
-        for (int i = 0; i < mutexArray.length; i++) {
-            mutexArray[i] = new Object();
-        }
     }
 
     @Override
@@ -155,6 +160,16 @@ public class HybridDBStorage implements ScottyDBStorageInterface {
         }
     }
 
+    /**
+     * Limits the number of workflow instance reads that {@link #dequeue(String, int)} has in flight, so a large batch
+     * does not overload the storage. Default is 256.
+     */
+    public void setMaxConcurrentReads(int maxConcurrentReads) {
+        if (maxConcurrentReads <= 0)
+            throw new IllegalArgumentException();
+        this.readPermits = new Semaphore(maxConcurrentReads);
+    }
+
     @Override
     public List<Workflow<?>> dequeue(final String ppoolId, final int max) throws Exception {
         logger.debug("dequeue({},{})", ppoolId, max);
@@ -162,43 +177,114 @@ public class HybridDBStorage implements ScottyDBStorageInterface {
 
         startupBlocker.pass();
 
-        final List<Workflow<?>> wfList = new ArrayList<>(max);
-        while (wfList.size() < max) {
+        // Claim the elements and issue the read of each one right away, so the reads of a batch run concurrently.
+        // Once the correlation ids are removed, neither notify nor onTimeout touch the workflow instance any more, so
+        // reading it needs no mutex.
+        final Semaphore readPermits = this.readPermits;
+        final List<ListenableFuture<Workflow<?>>> futures = new ArrayList<>(max);
+        while (futures.size() < max) {
             // block if we read the first element - since we don't want to return an empty list
-            final QueueElement element = wfList.isEmpty() ? _take(ppoolId) : _poll(ppoolId);
+            final QueueElement element = futures.isEmpty() ? _take(ppoolId) : _poll(ppoolId);
             if (element == null)
                 break;
 
+            try {
+                readPermits.acquire();
+            } catch (InterruptedException e) {
+                // the element is not claimed yet, put it back and return what is already being read
+                _enqueue(element.wfId, ppoolId, element.prio);
+                if (futures.isEmpty())
+                    throw e;
+                Thread.currentThread().interrupt();
+                break;
+            }
             synchronized (findMutex(element.wfId)) {
-                try {
-                    correlationIdMap.removeAll4Workflow(element.wfId);
-                    final WorkflowInstance wi = storage.readWorkflowInstance(element.wfId);
-                    if (wi == null) {
-                        logger.warn("No workflow instance with id {} found in database", element.wfId);
-                        // TODO try again later?
-                    }
-                    else {
-                        Workflow<?> wf = null;
-                        try {
-                            wf = convert2workflow(wi);
-                        } catch (Exception e) {
-                            logger.error("Unable to deserialize workflow instance " + element.wfId + " - setting state to INVALID", e);
-                            storage.updateWorkflowInstanceState(element.wfId, ProcessingState.INVALID);
-                        }
-                        if (wf != null) {
-                            timeoutManager.unregisterTimeout(wi.timeout, wi.id);
-                            wfList.add(wf);
-                        }
-                    }
-                } catch (Exception e) {
-                    logger.error("Fatal error: dequeue failed for workflow instance " + element.wfId, e);
-                }
+                correlationIdMap.removeAll4Workflow(element.wfId);
+            }
+            futures.add(read(element, ppoolId, readPermits));
+        }
+
+        // The elements were claimed in priority order. Their reads are in flight and the claimed workflow instances
+        // would be lost if we stopped waiting for them, so an interrupt is only restored once all of them are read.
+        final List<Workflow<?>> wfList = new ArrayList<>(futures.size());
+        for (ListenableFuture<Workflow<?>> future : futures) {
+            final Workflow<?> wf = Uninterruptibles.getUninterruptibly(future);
+            if (wf != null) {
+                wfList.add(wf);
             }
         }
         logger.debug("dequeue({},{}) finished, returning {} elements in {} msec", ppoolId, max, wfList.size(), (System.currentTimeMillis() - startTS));
         return wfList;
     }
 
+    /**
+     * Reads the workflow instance asynchronously and deserializes it using the executor. If the workflow instance can not
+     * be read, its element is put back into the queue, so it is dequeued again later. The caller has acquired a read
+     * permit, which is released once the read completes.
+     * 
+     * @return a future of the workflow or of null, if the workflow instance could not be read or deserialized
+     */
+    private ListenableFuture<Workflow<?>> read(final QueueElement element, final String ppoolId, final Semaphore readPermits) {
+        final String wfId = element.wfId;
+        final SettableFuture<Workflow<?>> rv = SettableFuture.create();
+        final ListenableFuture<WorkflowInstance> readFuture;
+        try {
+            readFuture = storage.readWorkflowInstanceAsync(wfId);
+        } catch (Exception e) {
+            readPermits.release();
+            logger.error("Reading workflow instance " + wfId + " failed - putting it back into the queue", e);
+            _enqueue(wfId, ppoolId, element.prio);
+            rv.set(null);
+            return rv;
+        }
+        readFuture.addListener(new Runnable() {
+            @Override
+            public void run() {
+                readPermits.release();
+            }
+        }, MoreExecutors.directExecutor());
+        readFuture.addListener(new Runnable() {
+            @Override
+            public void run() {
+                rv.set(deserialize(element, ppoolId, readFuture));
+            }
+        }, executor);
+        return rv;
+    }
+
+    private Workflow<?> deserialize(final QueueElement element, final String ppoolId, final Future<WorkflowInstance> readFuture) {
+        final String wfId = element.wfId;
+        try {
+            final WorkflowInstance wi;
+            try {
+                wi = readFuture.get();
+            } catch (ExecutionException e) {
+                logger.error("Reading workflow instance " + wfId + " failed - putting it back into the queue", e.getCause());
+                _enqueue(wfId, ppoolId, element.prio);
+                return null;
+            }
+            if (wi == null) {
+                // The workflow instance was removed from the storage after it was enqueued, e.g. by an operator.
+                // Reading it again would not find it either, so there is nothing left to run.
+                logger.warn("No workflow instance with id {} found in database - dropping it", wfId);
+                return null;
+            }
+            Workflow<?> wf = null;
+            try {
+                wf = convert2workflow(wi);
+            } catch (Exception e) {
+                logger.error("Unable to deserialize workflow instance " + wfId + " - setting state to INVALID", e);
+                storage.updateWorkflowInstanceState(wfId, ProcessingState.INVALID);
+                return null;
+            }
+            timeoutManager.unregisterTimeout(wi.timeout, wi.id);
+            return wf;
+        } catch (Exception e) {
+            logger.error("Fatal error: dequeue failed for workflow instance " + wfId, e);
+            return null;
+        }
+    }
+
     private Workflow<?> convert2workflow(WorkflowInstance cw) throws Exception {
         if (cw == null)
             return null;
@@ -250,26 +336,39 @@ public class HybridDBStorage implements ScottyDBStorageInterface {
 
         correlationIdMap.addCorrelationIds(wfId, rc.correlationIds);
 
+        final boolean enqueued = connectEarlyResponses(wfId, Arrays.asList(rc.correlationIds));
+
+        if (cw.timeout != null && !enqueued) {
+            registerTimeout(cw.timeout, wfId);
+        }
+
+        callback.onSuccess();
+    }
+
+    /**
+     * Connects early responses for the given correlation ids of a waiting workflow instance to the instance. The
+     * correlation ids have to be registered already.
+     * 
+     * @return true, if the workflow instance has been enqueued due to an early response
+     */
+    private boolean connectEarlyResponses(final String wfId, final List<String> correlationIds) throws Exception {
         // check for early responses
         //
         // 1st make sure that all currently working threads writing early responses do NOT write a response with one of
         // our correlationIds
-        synchronized (currentlyProcessingEarlyResponses) {
-            for (;;) {
-                boolean didWait = false;
-                for (String cid : rc.correlationIds) {
-                    if (currentlyProcessingEarlyResponses.contains(cid)) {
-                        currentlyProcessingEarlyResponses.wait();
-                        didWait = true;
+        for (String cid : correlationIds) {
+            if (currentlyProcessingEarlyResponses.containsKey(cid)) {
+                final Object mutex = findMutex(earlyResponseMutexArray, cid);
+                synchronized (mutex) {
+                    while (currentlyProcessingEarlyResponses.containsKey(cid)) {
+                        mutex.wait();
                     }
                 }
-                if (!didWait)
-                    break;
             }
         }
         // 2nd read early responses and connect them to the workflow instance
         boolean enqueued = false;
-        for (String cid : rc.correlationIds) {
+        for (String cid : correlationIds) {
             Response<?> response = serializer.deserializeResponse(storage.readEarlyResponse(cid));
             if (response != null) {
                 logger.debug("found early response with correlationId {} for workflow {} - doing notify...", cid, wfId);
@@ -279,17 +378,29 @@ public class HybridDBStorage implements ScottyDBStorageInterface {
                 storage.deleteEarlyResponse(cid);
             }
         }
+        return enqueued;
+    }
 
-        if (cw.timeout != null && !enqueued) {
-            timeoutManager.registerTimeout(cw.timeout, wfId, new Runnable() {
-                @Override
-                public void run() {
-                    onTimeout(wfId);
-                }
-            });
-        }
+    private void registerTimeout(final Date timeout, final String wfId) {
+        timeoutManager.registerTimeout(timeout, wfId, new Runnable() {
+            @Override
+            public void run() {
+                onTimeout(wfId);
+            }
+        });
+    }
 
-        callback.onSuccess();
+    private void resumeWaiting(final String wfId, final List<String> correlationIds, final List<String> missingCorrelationIds, final Date timeout) throws Exception {
+        logger.trace("resumeWaiting(wfId={})", wfId);
+        // Register the correlation ids and the timeout atomically for notify and onTimeout. Once a response enqueues
+        // the instance, the timeout is registered and the dequeue unregisters it.
+        synchronized (findMutex(wfId)) {
+            correlationIdMap.addCorrelationIds(wfId, correlationIds);
+            if (timeout != null) {
+                registerTimeout(timeout, wfId);
+            }
+        }
+        connectEarlyResponses(wfId, missingCorrelationIds);
     }
 
     @Override
@@ -349,8 +460,7 @@ public class HybridDBStorage implements ScottyDBStorageInterface {
             throw e;
         }
 
-        handleEarlyResponse(response, ack);
-        return false;
+        return handleEarlyResponse(response, ack);
     }
 
     private void onTimeout(final String wfId) {
@@ -376,9 +486,18 @@ public class HybridDBStorage implements ScottyDBStorageInterface {
         }
     }
 
-    private void handleEarlyResponse(final Response<?> response, final Acknowledge ack) throws Exception {
-        synchronized (currentlyProcessingEarlyResponses) {
-            currentlyProcessingEarlyResponses.add(response.getCorrelationId());
+    /**
+     * @return true, if the corresponding workflow instance has been enqueued due to this response, because its wait
+     *         was registered concurrently
+     */
+    private boolean handleEarlyResponse(final Response<?> response, final Acknowledge ack) throws Exception {
+        final String cid = response.getCorrelationId();
+        currentlyProcessingEarlyResponses.merge(cid, 1, Integer::sum);
+        // A wait registered after the lookup in notifyInternal did not see this early response in flight, so it does
+        // not wait for it - deliver the response to the waiting workflow instance instead.
+        if (correlationIdMap.getWorkflowId(cid) != null) {
+            earlyResponseProcessed(cid);
+            return notifyInternal(response, ack);
         }
         final ListenableFuture<Void> future = storage.safeEarlyResponse(response.getCorrelationId(), serializer.serializeResponse(response));
         future.addListener(new Runnable() {
@@ -393,13 +512,19 @@ public class HybridDBStorage implements ScottyDBStorageInterface {
                     ack.onException(e);
                 }
                 finally {
-                    synchronized (currentlyProcessingEarlyResponses) {
-                        currentlyProcessingEarlyResponses.remove(response.getCorrelationId());
-                        currentlyProcessingEarlyResponses.notifyAll();
-                    }
+                    earlyResponseProcessed(cid);
                 }
             }
         }, executor);
+        return false;
+    }
+
+    private void earlyResponseProcessed(final String cid) {
+        currentlyProcessingEarlyResponses.computeIfPresent(cid, (k, n) -> n == 1 ? null : n - 1);
+        final Object mutex = findMutex(earlyResponseMutexArray, cid);
+        synchronized (mutex) {
+            mutex.notifyAll();
+        }
     }
 
     @Override
@@ -434,6 +559,11 @@ public class HybridDBStorage implements ScottyDBStorageInterface {
                 public void enqueue(String wfId, String ppoolId, int prio) {
                     _enqueue(wfId, ppoolId, prio);
                 }
+
+                @Override
+                public void resumeWaiting(String wfId, List<String> correlationIds, List<String> missingCorrelationIds, Date timeout) throws Exception {
+                    HybridDBStorage.this.resumeWaiting(wfId, correlationIds, missingCorrelationIds, timeout);
+                }
             }, Runtime.getRuntime().availableProcessors());
         } catch (RuntimeException e) {
             logger.error("startup failed", e);
@@ -582,10 +712,27 @@ public class HybridDBStorage implements ScottyDBStorageInterface {
     }
 
     private Object findMutex(String id) {
-        long hash = id.hashCode();
-        hash = Math.abs(hash);
-        int x = (int) (hash % mutexArray.length);
-        return mutexArray[x];
+        return findMutex(mutexArray, id);
+    }
+
+    private static Object findMutex(Object[] mutexArray, String id) {
+        final int h = id.hashCode();
+        return mutexArray[(h ^ (h >>> 16)) & (mutexArray.length - 1)];
+    }
+
+    /**
+     * @return an array of mutexes, its size is the smallest power of two not less than minSize and at least 16
+     */
+    private static Object[] createMutexArray(int minSize) {
+        int size = 16;
+        while (size < minSize) {
+            size <<= 1;
+        }
+        final Object[] mutexArray = new Object[size];
+        for (int i = 0; i < size; i++) {
+            mutexArray[i] = new Object();
+        }
+        return mutexArray;
     }
 
     @Override
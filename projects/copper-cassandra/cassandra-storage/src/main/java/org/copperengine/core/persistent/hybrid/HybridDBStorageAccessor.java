@@ -15,6 +15,9 @@
  */
 package org.copperengine.core.persistent.hybrid;
 
+import java.util.Date;
+import java.util.List;
+
 /**
  * Used just for initialization of {@link HybridDBStorage} during startup
  * 
@@ -27,4 +30,11 @@ public interface HybridDBStorageAccessor {
 
     public void registerCorrelationId(String correlationId, String wfId);
 
+    /**
+     * Resumes a waiting workflow instance while the engine is already running, i.e. while responses for it may arrive
+     * concurrently. Registers the correlation ids and the timeout and connects early responses for the missing
+     * correlation ids to the workflow instance.
+     */
+    public void resumeWaiting(String wfId, List<String> correlationIds, List<String> missingCorrelationIds, Date timeout) throws Exception;
+
 }
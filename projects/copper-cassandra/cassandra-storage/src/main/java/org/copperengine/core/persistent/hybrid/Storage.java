@@ -20,6 +20,7 @@ import java.util.List;
 import org.copperengine.core.ProcessingState;
 import org.copperengine.management.model.WorkflowInstanceFilter;
 
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
 /**
@@ -36,6 +37,16 @@ public interface Storage {
 
     public WorkflowInstance readWorkflowInstance(String wfId) throws Exception;
 
+    /**
+     * Reads a workflow instance without blocking the caller, so that {@link HybridDBStorage#dequeue(String, int)} may
+     * issue the reads of a whole batch concurrently. The default implementation reads synchronously.
+     * 
+     * @return a future of the workflow instance or of null, if there is no workflow instance with this id
+     */
+    public default ListenableFuture<WorkflowInstance> readWorkflowInstanceAsync(String wfId) throws Exception {
+        return Futures.immediateFuture(readWorkflowInstance(wfId));
+    }
+
     public void initialize(HybridDBStorageAccessor internalStorageAccessor, int numberOfThreads) throws Exception;
 
     public ListenableFuture<Void> safeEarlyResponse(String correlationId, String serializedResponse) throws Exception;
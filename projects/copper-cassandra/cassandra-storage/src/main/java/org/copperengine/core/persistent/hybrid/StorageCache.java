@@ -27,7 +27,10 @@ import org.copperengine.core.Workflow;
 import org.copperengine.management.model.WorkflowInstanceFilter;
 import org.slf4j.Logger;
 
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 public class StorageCache implements Storage {
 
@@ -83,6 +86,29 @@ public class StorageCache implements Storage {
         return wfi;
     }
 
+    @Override
+    public ListenableFuture<WorkflowInstance> readWorkflowInstanceAsync(String wfId) throws Exception {
+        SoftReference<WorkflowInstance> entry = wfCache.get(wfId);
+        if (entry != null) {
+            WorkflowInstance wfi = entry.get();
+            if (wfi != null) {
+                cacheStatsWfCache.incNumberOfReads(true);
+                return Futures.immediateFuture(wfi);
+            }
+        }
+        cacheStatsWfCache.incNumberOfReads(false);
+        // the instance is cached before the returned future completes
+        return Futures.transform(delegate.readWorkflowInstanceAsync(wfId), new Function<WorkflowInstance, WorkflowInstance>() {
+            @Override
+            public WorkflowInstance apply(WorkflowInstance wfi) {
+                if (wfi != null) {
+                    wfCache.put(wfi.id, new SoftReference<WorkflowInstance>(wfi));
+                }
+                return wfi;
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
     @Override
     public void initialize(HybridDBStorageAccessor internalStorageAccessor, int numberOfThreads) throws Exception {
         delegate.initialize(internalStorageAccessor, numberOfThreads);
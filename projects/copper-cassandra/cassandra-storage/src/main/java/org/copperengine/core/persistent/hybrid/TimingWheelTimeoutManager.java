@@ -0,0 +1,94 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent.hybrid;
+
+import java.util.Date;
+
+import org.copperengine.core.common.TimingWheelTimeouts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link TimeoutManager} of the hybrid engine based on a hashed hierarchical timing wheel, see
+ * {@link TimingWheelTimeouts}. Unlike the {@link DefaultTimeoutManager}, it does not serialize registrations of a
+ * large number of waiting workflow instances on one lock.
+ * <p>
+ * The <code>onTimeout</code> callbacks are run by the dispatcher threads in parallel. A workflow instance has at most
+ * one pending timeout.
+ */
+public final class TimingWheelTimeoutManager implements TimeoutManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheelTimeoutManager.class);
+
+    private final TimingWheelTimeouts<Runnable> timeouts = new TimingWheelTimeouts<Runnable>("copper.Timeoutmanager", (workflowId, onTimeout) -> onTimeout.run());
+
+    /**
+     * Sets the resolution of the timing wheel in milliseconds. Defaults to 25.
+     */
+    public TimingWheelTimeoutManager setTickMillis(long tickMillis) {
+        timeouts.setTickMillis(tickMillis);
+        return this;
+    }
+
+    /**
+     * Sets the number of threads running the <code>onTimeout</code> callbacks. Defaults to the number of available
+     * processors.
+     */
+    public TimingWheelTimeoutManager setNumberOfDispatcherThreads(int numberOfDispatcherThreads) {
+        timeouts.setNumberOfDispatcherThreads(numberOfDispatcherThreads);
+        return this;
+    }
+
+    @Override
+    public synchronized TimeoutManager startup() {
+        timeouts.startup();
+        return this;
+    }
+
+    @Override
+    public synchronized TimeoutManager shutdown() {
+        timeouts.shutdown();
+        return this;
+    }
+
+    /**
+     * @return the number of pending timeouts
+     */
+    public int getNumberOfTimeouts() {
+        return timeouts.size();
+    }
+
+    @Override
+    public void registerTimeout(final Date timeoutTS, final String workflowId, final Runnable onTimeout) {
+        logger.debug("registerTimeout({}, {})", timeoutTS, workflowId);
+
+        if (timeoutTS == null)
+            return;
+
+        timeouts.schedule(workflowId, timeoutTS.getTime(), onTimeout);
+    }
+
+    @Override
+    public void unregisterTimeout(final Date timeoutTS, final String workflowId) {
+        logger.debug("unregisterTimeout({}, {})", timeoutTS, workflowId);
+
+        if (timeoutTS == null)
+            return;
+
+        timeouts.cancel(workflowId);
+    }
+
+}
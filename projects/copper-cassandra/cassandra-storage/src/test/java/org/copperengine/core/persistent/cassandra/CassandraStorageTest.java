@@ -0,0 +1,235 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent.cassandra;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.copperengine.core.monitoring.NullRuntimeStatisticsCollector;
+import org.copperengine.core.persistent.hybrid.HybridDBStorageAccessor;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+
+/**
+ * Runs the background recovery of {@link CassandraStorage} against a mocked session.
+ */
+public class CassandraStorageTest {
+
+    private static final String PPOOL_ID = "DEFAULT";
+
+    /**
+     * Answers the COP_WFI_ID scan and the reads of the workflow instances to resume.
+     */
+    private static class SessionAnswer implements Answer<Object> {
+        final List<String> wfIds = new CopyOnWriteArrayList<String>();
+        final Map<String, Map<String, Object>> rows = Collections.synchronizedMap(new HashMap<String, Map<String, Object>>());
+        final AtomicInteger scans = new AtomicInteger();
+        final List<RuntimeException> scanFailures = new ArrayList<RuntimeException>();
+        final BoundStatement scanStatement = mockReturningSelf(BoundStatement.class);
+        final Map<Statement, String> resumeStatements = Collections.synchronizedMap(new HashMap<Statement, String>());
+
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+            final String method = invocation.getMethod().getName();
+            if (method.equals("prepare")) {
+                return prepare((String) invocation.getArguments()[0]);
+            }
+            if (method.equals("execute")) {
+                final Statement stmt = (Statement) invocation.getArguments()[0];
+                if (stmt == scanStatement) {
+                    scans.incrementAndGet();
+                    if (!scanFailures.isEmpty())
+                        throw scanFailures.remove(0);
+                    final List<Row> list = new ArrayList<Row>();
+                    for (String wfId : wfIds) {
+                        list.add(row(Collections.<String, Object> singletonMap("ID", wfId)));
+                    }
+                    return resultSet(list);
+                }
+                final Map<String, Object> values = rows.get(resumeStatements.get(stmt));
+                return resultSet(values != null ? Collections.singletonList(row(values)) : Collections.<Row> emptyList());
+            }
+            return null;
+        }
+
+        private PreparedStatement prepare(String cql) {
+            final PreparedStatement pstmt = Mockito.mock(PreparedStatement.class);
+            if (cql.startsWith("SELECT * FROM COP_WFI_ID")) {
+                Mockito.when(pstmt.bind()).thenReturn(scanStatement);
+            } else {
+                Mockito.when(pstmt.bind(Mockito.<Object> anyVararg())).thenAnswer(new Answer<BoundStatement>() {
+                    @Override
+                    public BoundStatement answer(InvocationOnMock invocation) throws Throwable {
+                        final BoundStatement stmt = mockReturningSelf(BoundStatement.class);
+                        final Object[] args = invocation.getArguments();
+                        if (cql.startsWith("SELECT PPOOL_ID, PRIO, WAIT_MODE") && args.length == 1) {
+                            resumeStatements.put(stmt, (String) args[0]);
+                        }
+                        return stmt;
+                    }
+                });
+            }
+            return pstmt;
+        }
+    }
+
+    private static class RecordingAccessor implements HybridDBStorageAccessor {
+        final List<String> enqueued = new CopyOnWriteArrayList<String>();
+        final List<String> resumed = new CopyOnWriteArrayList<String>();
+
+        @Override
+        public void enqueue(String wfId, String ppoolId, int prio) {
+            enqueued.add(wfId + ":" + ppoolId + ":" + prio);
+        }
+
+        @Override
+        public void registerCorrelationId(String correlationId, String wfId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void resumeWaiting(String wfId, List<String> correlationIds, List<String> missingCorrelationIds, Date timeout) throws Exception {
+            resumed.add(wfId + ":" + correlationIds + ":" + missingCorrelationIds);
+        }
+    }
+
+    @Test
+    public void testRecoverInBackground() throws Exception {
+        final SessionAnswer sessionAnswer = new SessionAnswer();
+        sessionAnswer.wfIds.addAll(Arrays.asList("1", "2", "3", "4"));
+        sessionAnswer.rows.put("1", instance("ENQUEUED", null));
+        sessionAnswer.rows.put("2", instance("WAITING", "{\"cid-2\":null}"));
+        sessionAnswer.rows.put("3", instance("ERROR", null));
+        // "4" is not found, its id is deleted
+        sessionAnswer.scanFailures.add(new NoHostAvailableException(Collections.<InetSocketAddress, Throwable> emptyMap()));
+
+        final CassandraStorage storage = createStorage(sessionAnswer);
+        final RecordingAccessor accessor = new RecordingAccessor();
+        storage.initialize(accessor, 2);
+
+        // the ids are read before initialize returns, the failed scan is retried
+        Assert.assertEquals(2, sessionAnswer.scans.get());
+        Assert.assertEquals(4, storage.getNumberOfWorkflowInstancesToRecover());
+        // a workflow instance created by the running engine is not resumed
+        sessionAnswer.wfIds.add("5");
+        sessionAnswer.rows.put("5", instance("ENQUEUED", null));
+
+        waitForRecovery(storage);
+        Assert.assertEquals(2, sessionAnswer.scans.get());
+        Assert.assertEquals(4, storage.getNumberOfRecoveredWorkflowInstances());
+        Assert.assertEquals(Collections.singletonList("1:" + PPOOL_ID + ":5"), accessor.enqueued);
+        Assert.assertEquals(Collections.singletonList("2:[cid-2]:[cid-2]"), accessor.resumed);
+    }
+
+    @Test
+    public void testScanFailureFailsStartup() throws Exception {
+        final SessionAnswer sessionAnswer = new SessionAnswer();
+        sessionAnswer.scanFailures.add(new InvalidQueryException("unconfigured table"));
+
+        final CassandraStorage storage = createStorage(sessionAnswer);
+        try {
+            storage.initialize(new RecordingAccessor(), 2);
+            Assert.fail("initialize must fail");
+        } catch (InvalidQueryException e) {
+            // expected
+        }
+        Assert.assertFalse(storage.isRecoveryFinished());
+    }
+
+    private static CassandraStorage createStorage(SessionAnswer sessionAnswer) {
+        final Session session = Mockito.mock(Session.class, sessionAnswer);
+        final CassandraSessionManager sessionManager = Mockito.mock(CassandraSessionManager.class);
+        Mockito.when(sessionManager.getSession()).thenReturn(session);
+        final CassandraStorage storage = new CassandraStorage(sessionManager, Mockito.mock(Executor.class), new NullRuntimeStatisticsCollector());
+        storage.setCreateSchemaOnStartup(false);
+        storage.setResumeInBackground(true);
+        return storage;
+    }
+
+    private static void waitForRecovery(CassandraStorage storage) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000L;
+        while (!storage.isRecoveryFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(storage.isRecoveryFinished());
+    }
+
+    private static Map<String, Object> instance(String state, String responseMapJson) {
+        final Map<String, Object> values = new HashMap<String, Object>();
+        values.put("STATE", state);
+        values.put("PPOOL_ID", PPOOL_ID);
+        values.put("PRIO", 5);
+        values.put("RESPONSE_MAP_JSON", responseMapJson);
+        return values;
+    }
+
+    private static Row row(final Map<String, Object> values) {
+        return Mockito.mock(Row.class, new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                final Object value = values.get(invocation.getArguments()[0]);
+                if (value == null && invocation.getMethod().getReturnType() == int.class)
+                    return 0;
+                return value;
+            }
+        });
+    }
+
+    private static ResultSet resultSet(final List<Row> rows) {
+        final ResultSet rs = Mockito.mock(ResultSet.class);
+        final Row[] more = rows.toArray(new Row[rows.size() + 1]);
+        if (rows.isEmpty()) {
+            Mockito.when(rs.one()).thenReturn(null);
+        } else {
+            Mockito.when(rs.one()).thenReturn(more[0], Arrays.copyOfRange(more, 1, more.length));
+        }
+        return rs;
+    }
+
+    private static <T> T mockReturningSelf(final Class<T> clazz) {
+        final List<T> self = new ArrayList<T>(1);
+        final T mock = Mockito.mock(clazz, new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                final Class<?> type = invocation.getMethod().getReturnType();
+                return type.isInstance(self.get(0)) ? self.get(0) : Mockito.RETURNS_DEFAULTS.answer(invocation);
+            }
+        });
+        self.add(mock);
+        return mock;
+    }
+}
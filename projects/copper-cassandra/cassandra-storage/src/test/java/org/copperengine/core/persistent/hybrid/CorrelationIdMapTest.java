@@ -0,0 +1,78 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent.hybrid;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CorrelationIdMapTest {
+
+    @Test
+    public void test_add_remove() {
+        final CorrelationIdMap map = new CorrelationIdMap();
+        map.addCorrelationId("wf1", "a");
+        map.addCorrelationId("wf1", "b");
+        map.addCorrelationIds("wf2", new String[] { "c", "d" });
+        Assert.assertEquals("wf1", map.getWorkflowId("a"));
+        Assert.assertEquals("wf1", map.getWorkflowId("b"));
+        Assert.assertEquals("wf2", map.getWorkflowId("d"));
+        Assert.assertTrue(map.containsWorkflowId("wf1"));
+
+        map.removeAll4Workflow("wf1");
+        Assert.assertFalse(map.containsWorkflowId("wf1"));
+        Assert.assertNull(map.getWorkflowId("a"));
+        Assert.assertNull(map.getWorkflowId("b"));
+        Assert.assertEquals("wf2", map.getWorkflowId("c"));
+    }
+
+    @Test
+    public void test_parallel() throws Exception {
+        final CorrelationIdMap map = new CorrelationIdMap(2);
+        final int numberOfThreads = 8;
+        final ExecutorService exec = Executors.newFixedThreadPool(numberOfThreads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < numberOfThreads; t++) {
+                final String prefix = "t" + t + ".";
+                futures.add(exec.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < 10000; i++) {
+                            final String wfId = prefix + (i % 100);
+                            map.addCorrelationId(wfId, wfId + "-" + i);
+                            map.addCorrelationId(wfId, wfId + "-" + i + "b");
+                            Assert.assertEquals(wfId, map.getWorkflowId(wfId + "-" + i));
+                            map.removeAll4Workflow(wfId);
+                            Assert.assertNull(map.getWorkflowId(wfId + "-" + i + "b"));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+}
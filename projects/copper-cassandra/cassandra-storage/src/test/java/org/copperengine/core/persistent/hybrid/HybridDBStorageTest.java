@@ -15,20 +15,48 @@
  */
 package org.copperengine.core.persistent.hybrid;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.copperengine.core.Acknowledge;
+import org.copperengine.core.Interrupt;
+import org.copperengine.core.ProcessingState;
+import org.copperengine.core.Response;
+import org.copperengine.core.WaitHook;
+import org.copperengine.core.WaitMode;
+import org.copperengine.core.Workflow;
 import org.copperengine.core.common.WorkflowRepository;
+import org.copperengine.core.instrument.Transformed;
+import org.copperengine.core.persistent.PersistentWorkflow;
+import org.copperengine.core.persistent.RegisterCall;
+import org.copperengine.core.persistent.SerializedWorkflow;
+import org.copperengine.core.persistent.Serializer;
 import org.copperengine.core.persistent.StandardJavaSerializer;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
 public class HybridDBStorageTest {
 
@@ -96,4 +124,266 @@ public class HybridDBStorageTest {
 
         Assert.assertEquals(max, counter.intValue());
     }
+
+    @Test
+    public void test_dequeue_pipelined() throws Exception {
+        final String ppoolId = "DEFAULT";
+        final int max = 200;
+        final long latencyMSec = 10;
+        final InMemoryStorage storage = new InMemoryStorage(0, TimeUnit.MILLISECONDS);
+        final ExecutorService exec = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < max; i++) {
+                final WorkflowInstance wi = new WorkflowInstance();
+                wi.id = Integer.toString(i);
+                wi.ppoolId = ppoolId;
+                wi.prio = i % 5;
+                wi.state = ProcessingState.ENQUEUED;
+                wi.serializedWorkflow = new SerializedWorkflow();
+                storage.safeWorkflowInstance(wi, true);
+            }
+            final HybridDBStorage dbStorage = new HybridDBStorage(createSerializer(), Mockito.mock(WorkflowRepository.class), storage, Mockito.mock(TimeoutManager.class), exec);
+            dbStorage.startup();
+            storage.setLatency(latencyMSec, TimeUnit.MILLISECONDS);
+
+            final long startTS = System.currentTimeMillis();
+            final List<Workflow<?>> wfs = dbStorage.dequeue(ppoolId, max);
+            final long duration = System.currentTimeMillis() - startTS;
+
+            Assert.assertEquals(max, wfs.size());
+            for (int i = 1; i < max; i++) {
+                Assert.assertTrue(wfs.get(i - 1).getPriority() <= wfs.get(i).getPriority());
+            }
+            // serial reads would take max * latencyMSec
+            Assert.assertTrue("dequeue took " + duration + " msec", duration < max * latencyMSec / 2);
+        } finally {
+            exec.shutdown();
+            storage.shutdown();
+        }
+    }
+
+    @Test
+    public void test_resume_waiting() throws Exception {
+        final String ppoolId = "DEFAULT";
+        final InMemoryStorage storage = new InMemoryStorage(0, TimeUnit.MILLISECONDS);
+        final TimeoutManager timeoutManager = new DefaultTimeoutManager().startup();
+        final ExecutorService exec = Executors.newFixedThreadPool(2);
+        try {
+            // waits for a response, that arrived as early response
+            storage.safeWorkflowInstance(createWaitingInstance("1", ppoolId, null, "cid-1"), true);
+            storage.safeEarlyResponse("cid-1", "response");
+            // timed out
+            storage.safeWorkflowInstance(createWaitingInstance("2", ppoolId, new Date(System.currentTimeMillis() - 1000), "cid-2"), true);
+            // still waiting
+            storage.safeWorkflowInstance(createWaitingInstance("3", ppoolId, null, "cid-3"), true);
+
+            final HybridDBStorage dbStorage = new HybridDBStorage(createSerializer(), Mockito.mock(WorkflowRepository.class), storage, timeoutManager, exec);
+            dbStorage.startup();
+
+            final Set<String> ids = new HashSet<>();
+            while (ids.size() < 2) {
+                for (Workflow<?> wf : dbStorage.dequeue(ppoolId, 10)) {
+                    ids.add(wf.getId());
+                }
+            }
+            Assert.assertEquals(new HashSet<>(Arrays.asList("1", "2")), ids);
+            Assert.assertNull(storage.readEarlyResponse("cid-1"));
+            Assert.assertEquals(0, dbStorage.queryQueueSize(ppoolId));
+        } finally {
+            exec.shutdown();
+            timeoutManager.shutdown();
+            storage.shutdown();
+        }
+    }
+
+    @Test
+    public void test_dequeue_read_failure() throws Exception {
+        final String ppoolId = "DEFAULT";
+        final AtomicInteger failures = new AtomicInteger(1);
+        final InMemoryStorage storage = new InMemoryStorage(0, TimeUnit.MILLISECONDS) {
+            @Override
+            public ListenableFuture<WorkflowInstance> readWorkflowInstanceAsync(String wfId) throws Exception {
+                if (failures.getAndDecrement() > 0) {
+                    return Futures.immediateFailedFuture(new RuntimeException("read failed"));
+                }
+                return super.readWorkflowInstanceAsync(wfId);
+            }
+        };
+        final ExecutorService exec = Executors.newFixedThreadPool(2);
+        try {
+            final WorkflowInstance wi = new WorkflowInstance();
+            wi.id = "1";
+            wi.ppoolId = ppoolId;
+            wi.prio = 5;
+            wi.state = ProcessingState.ENQUEUED;
+            wi.serializedWorkflow = new SerializedWorkflow();
+            storage.safeWorkflowInstance(wi, true);
+
+            final HybridDBStorage dbStorage = new HybridDBStorage(createSerializer(), Mockito.mock(WorkflowRepository.class), storage, Mockito.mock(TimeoutManager.class), exec);
+            dbStorage.startup();
+
+            // the failed read puts the element back into the queue
+            Assert.assertTrue(dbStorage.dequeue(ppoolId, 1).isEmpty());
+            Assert.assertEquals(1, dbStorage.queryQueueSize(ppoolId));
+
+            final List<Workflow<?>> wfs = dbStorage.dequeue(ppoolId, 10);
+            Assert.assertEquals(1, wfs.size());
+            Assert.assertEquals("1", wfs.get(0).getId());
+            Assert.assertEquals(5, wfs.get(0).getPriority());
+        } finally {
+            exec.shutdown();
+            storage.shutdown();
+        }
+    }
+
+    @Test
+    public void test_dequeue_interrupted() throws Exception {
+        final String ppoolId = "DEFAULT";
+        final InMemoryStorage storage = new InMemoryStorage(0, TimeUnit.MILLISECONDS);
+        final ExecutorService exec = Executors.newFixedThreadPool(2);
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            for (int i = 0; i < 3; i++) {
+                final WorkflowInstance wi = new WorkflowInstance();
+                wi.id = Integer.toString(i);
+                wi.ppoolId = ppoolId;
+                wi.prio = 5;
+                wi.state = ProcessingState.ENQUEUED;
+                wi.serializedWorkflow = new SerializedWorkflow();
+                storage.safeWorkflowInstance(wi, true);
+            }
+            final HybridDBStorage dbStorage = new HybridDBStorage(createSerializer(), Mockito.mock(WorkflowRepository.class), storage, Mockito.mock(TimeoutManager.class), exec);
+            dbStorage.setMaxConcurrentReads(1);
+            dbStorage.startup();
+            storage.setLatency(500, TimeUnit.MILLISECONDS);
+
+            // interrupted while the first read is in flight and the second element waits for a read permit
+            final Thread thread = Thread.currentThread();
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    thread.interrupt();
+                }
+            }, 100, TimeUnit.MILLISECONDS);
+            final List<Workflow<?>> wfs = dbStorage.dequeue(ppoolId, 10);
+            Assert.assertTrue(Thread.interrupted());
+            Assert.assertEquals(1, wfs.size());
+            Assert.assertEquals(2, dbStorage.queryQueueSize(ppoolId));
+
+            // nothing is lost
+            storage.setLatency(0, TimeUnit.MILLISECONDS);
+            final Set<String> ids = new HashSet<>();
+            ids.add(wfs.get(0).getId());
+            while (ids.size() < 3) {
+                for (Workflow<?> wf : dbStorage.dequeue(ppoolId, 10)) {
+                    Assert.assertTrue(ids.add(wf.getId()));
+                }
+            }
+            Assert.assertEquals(0, dbStorage.queryQueueSize(ppoolId));
+        } finally {
+            Thread.interrupted();
+            scheduler.shutdown();
+            exec.shutdown();
+            storage.shutdown();
+        }
+    }
+
+    /**
+     * A response that arrives while the wait for it is registered must neither be lost nor stored as early response.
+     */
+    @Test
+    public void test_concurrent_register_and_notify() throws Exception {
+        final String ppoolId = "DEFAULT";
+        final int max = 500;
+        final InMemoryStorage storage = new InMemoryStorage(0, TimeUnit.MILLISECONDS);
+        final ExecutorService exec = Executors.newFixedThreadPool(2);
+        final ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            final HybridDBStorage dbStorage = new HybridDBStorage(new StandardJavaSerializer(), Mockito.mock(WorkflowRepository.class), storage, Mockito.mock(TimeoutManager.class), exec);
+            dbStorage.startup();
+
+            for (int i = 0; i < max; i++) {
+                final String cid = "cid-" + i;
+                final DequeueTestWorkflow wf = new DequeueTestWorkflow();
+                wf.setId("wf-" + i);
+                wf.setProcessorPoolId(ppoolId);
+                final Acknowledge.DefaultAcknowledge registerAck = new Acknowledge.DefaultAcknowledge();
+                final Acknowledge.DefaultAcknowledge notifyAck = new Acknowledge.DefaultAcknowledge();
+                final CountDownLatch start = new CountDownLatch(1);
+                final Future<?> register = callers.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        dbStorage.registerCallback(new RegisterCall(wf, WaitMode.ALL, null, new String[] { cid }, Collections.<WaitHook> emptyList()), registerAck);
+                        return null;
+                    }
+                });
+                final Future<?> notify = callers.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        dbStorage.notify(new Response<String>(cid, "response-" + cid, null), notifyAck);
+                        return null;
+                    }
+                });
+                start.countDown();
+                register.get();
+                notify.get();
+                registerAck.waitForAcknowledge();
+                notifyAck.waitForAcknowledge();
+
+                final WorkflowInstance wi = storage.readWorkflowInstance(wf.getId());
+                Assert.assertEquals(cid, ProcessingState.ENQUEUED, wi.state);
+                Assert.assertNotNull(cid, wi.cid2ResponseMap.get(cid));
+                Assert.assertNull(cid, storage.readEarlyResponse(cid));
+            }
+            Assert.assertEquals(max, dbStorage.queryQueueSize(ppoolId));
+        } finally {
+            callers.shutdown();
+            exec.shutdown();
+            storage.shutdown();
+        }
+    }
+
+    private static WorkflowInstance createWaitingInstance(String id, String ppoolId, Date timeout, String correlationId) {
+        final WorkflowInstance wi = new WorkflowInstance();
+        wi.id = id;
+        wi.ppoolId = ppoolId;
+        wi.state = ProcessingState.WAITING;
+        wi.waitMode = WaitMode.ALL;
+        wi.timeout = timeout;
+        wi.cid2ResponseMap = new HashMap<>();
+        wi.cid2ResponseMap.put(correlationId, null);
+        wi.serializedWorkflow = new SerializedWorkflow();
+        return wi;
+    }
+
+    private static Serializer createSerializer() throws Exception {
+        final Serializer serializer = Mockito.mock(Serializer.class);
+        Mockito.doAnswer(new Answer<Workflow<?>>() {
+            @Override
+            public Workflow<?> answer(InvocationOnMock invocation) throws Throwable {
+                return new DequeueTestWorkflow();
+            }
+        }).when(serializer).deserializeWorkflow(Mockito.any(SerializedWorkflow.class), Mockito.any(WorkflowRepository.class));
+        Mockito.doAnswer(new Answer<Response<?>>() {
+            @Override
+            public Response<?> answer(InvocationOnMock invocation) throws Throwable {
+                final String response = (String) invocation.getArguments()[0];
+                return response != null ? new Response<String>("cid-1", response, null) : null;
+            }
+        }).when(serializer).deserializeResponse(Mockito.anyString());
+        Mockito.doReturn("response").when(serializer).serializeResponse(Mockito.any(Response.class));
+        return serializer;
+    }
+
+    @Transformed
+    public static class DequeueTestWorkflow extends PersistentWorkflow<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void main() throws Interrupt {
+        }
+    }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent.hybrid;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.copperengine.core.ProcessingState;
+import org.copperengine.management.model.WorkflowInstanceFilter;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * In-memory stand-in for a {@link Storage} to test and benchmark a {@link HybridDBStorage} without a Cassandra
+ * cluster. Each read and write takes the configured latency, asynchronous reads complete after the latency without
+ * blocking the caller. Workflow instances are copied on read and write like a database would do.
+ */
+public class InMemoryStorage implements Storage {
+
+    private final Map<String, WorkflowInstance> workflowInstances = new ConcurrentHashMap<>();
+    private final Map<String, String> earlyResponses = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread t = new Thread(r, "InMemoryStorage");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    private volatile long latencyMicros;
+
+    public InMemoryStorage(long latency, TimeUnit unit) {
+        setLatency(latency, unit);
+    }
+
+    public void setLatency(long latency, TimeUnit unit) {
+        if (latency < 0)
+            throw new IllegalArgumentException();
+        this.latencyMicros = unit.toMicros(latency);
+    }
+
+    public int size() {
+        return workflowInstances.size();
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public void safeWorkflowInstance(WorkflowInstance cw, boolean initialInsert) throws Exception {
+        simulateLatency();
+        final WorkflowInstance stored = copy(cw);
+        stored.lastModTS = new Date();
+        workflowInstances.put(cw.id, stored);
+    }
+
+    @Override
+    public ListenableFuture<Void> deleteWorkflowInstance(String wfId) throws Exception {
+        simulateLatency();
+        workflowInstances.remove(wfId);
+        return Futures.immediateFuture(null);
+    }
+
+    @Override
+    public WorkflowInstance readWorkflowInstance(String wfId) throws Exception {
+        simulateLatency();
+        return copy(workflowInstances.get(wfId));
+    }
+
+    @Override
+    public ListenableFuture<WorkflowInstance> readWorkflowInstanceAsync(final String wfId) throws Exception {
+        final SettableFuture<WorkflowInstance> rv = SettableFuture.create();
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                rv.set(copy(workflowInstances.get(wfId)));
+            }
+        }, latencyMicros, TimeUnit.MICROSECONDS);
+        return rv;
+    }
+
+    @Override
+    public void initialize(HybridDBStorageAccessor internalStorageAccessor, int numberOfThreads) throws Exception {
+        for (WorkflowInstance cw : workflowInstances.values()) {
+            if (cw.state == ProcessingState.ENQUEUED) {
+                internalStorageAccessor.enqueue(cw.id, cw.ppoolId, cw.prio);
+            } else if (cw.state == ProcessingState.WAITING && cw.cid2ResponseMap != null) {
+                final List<String> missingCorrelationIds = new ArrayList<>();
+                for (Entry<String, String> e : cw.cid2ResponseMap.entrySet()) {
+                    if (e.getValue() == null)
+                        missingCorrelationIds.add(e.getKey());
+                }
+                internalStorageAccessor.resumeWaiting(cw.id, new ArrayList<>(cw.cid2ResponseMap.keySet()), missingCorrelationIds, cw.timeout);
+            }
+        }
+    }
+
+    @Override
+    public ListenableFuture<Void> safeEarlyResponse(String correlationId, String serializedResponse) throws Exception {
+        simulateLatency();
+        earlyResponses.put(correlationId, serializedResponse);
+        return Futures.immediateFuture(null);
+    }
+
+    @Override
+    public String readEarlyResponse(String correlationId) throws Exception {
+        simulateLatency();
+        return earlyResponses.get(correlationId);
+    }
+
+    @Override
+    public ListenableFuture<Void> deleteEarlyResponse(String correlationId) throws Exception {
+        simulateLatency();
+        earlyResponses.remove(correlationId);
+        return Futures.immediateFuture(null);
+    }
+
+    @Override
+    public ListenableFuture<Void> updateWorkflowInstanceState(String wfId, ProcessingState state) throws Exception {
+        simulateLatency();
+        final WorkflowInstance cw = workflowInstances.get(wfId);
+        if (cw != null) {
+            final WorkflowInstance update = copy(cw);
+            update.state = state;
+            workflowInstances.put(wfId, update);
+        }
+        return Futures.immediateFuture(null);
+    }
+
+    @Override
+    public List<WorkflowInstance> queryWorkflowInstances(WorkflowInstanceFilter filter) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int countWorkflowInstances(WorkflowInstanceFilter filter) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    private void simulateLatency() throws InterruptedException {
+        if (latencyMicros > 0) {
+            TimeUnit.MICROSECONDS.sleep(latencyMicros);
+        }
+    }
+
+    private static WorkflowInstance copy(WorkflowInstance cw) {
+        if (cw == null)
+            return null;
+        final WorkflowInstance rv = new WorkflowInstance();
+        rv.id = cw.id;
+        rv.ppoolId = cw.ppoolId;
+        rv.prio = cw.prio;
+        rv.creationTS = cw.creationTS;
+        rv.serializedWorkflow = cw.serializedWorkflow;
+        rv.cid2ResponseMap = cw.cid2ResponseMap != null ? new HashMap<>(cw.cid2ResponseMap) : null;
+        rv.waitMode = cw.waitMode;
+        rv.timeout = cw.timeout;
+        rv.state = cw.state;
+        rv.lastModTS = cw.lastModTS;
+        rv.classname = cw.classname;
+        return rv;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.batcher.impl;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.copperengine.core.batcher.BatchCommand;
+import org.copperengine.core.batcher.BatchExecutor;
+import org.copperengine.core.batcher.CommandCallback;
+import org.copperengine.core.batcher.NullCallback;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the submit throughput of the {@link BatcherQueue} and the {@link ConcurrentBatcherQueue} with many threads
+ * submitting commands, while worker threads drain the queue like the worker threads of the {@link BatcherImpl}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatcherQueueBenchmark {
+
+    static final class Executor extends BatchExecutor<Executor, Command> {
+
+        @Override
+        public void doExec(Collection<BatchCommand<Executor, Command>> commands, Connection connection) throws Exception {
+        }
+
+        @Override
+        public int preferredBatchSize() {
+            return 50;
+        }
+
+        @Override
+        public int maximumBatchSize() {
+            return 100;
+        }
+    }
+
+    static final class Command implements BatchCommand<Executor, Command> {
+
+        final Executor executor;
+        final long targetTime;
+
+        Command(Executor executor, long targetTime) {
+            this.executor = executor;
+            this.targetTime = targetTime;
+        }
+
+        @Override
+        public Executor executor() {
+            return executor;
+        }
+
+        @Override
+        public CommandCallback<Command> callback() {
+            return new NullCallback<Command>();
+        }
+
+        @Override
+        public long targetTime() {
+            return targetTime;
+        }
+    }
+
+    @Param({ "locked", "concurrent" })
+    public String queueType;
+
+    /**
+     * number of executors, e.g. notify, register callback and remove of a persistent engine
+     */
+    @Param({ "1", "4" })
+    public int numExecutors;
+
+    @Param({ "4" })
+    public int numWorkers;
+
+    private CommandQueue queue;
+    private Executor[] executors;
+    private final List<Thread> workers = new ArrayList<Thread>();
+    private final AtomicLong handedOut = new AtomicLong();
+
+    @State(Scope.Thread)
+    public static class Submitter {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        queue = "concurrent".equals(queueType) ? new ConcurrentBatcherQueue() : new BatcherQueue();
+        executors = new Executor[numExecutors];
+        for (int i = 0; i < numExecutors; i++) {
+            executors[i] = new Executor();
+        }
+        for (int i = 0; i < numWorkers; i++) {
+            final Thread t = new Thread("BatcherQueueBenchmark.Worker#" + i) {
+                @Override
+                public void run() {
+                    try {
+                        List<BatchCommand<?, ?>> batch;
+                        while ((batch = queue.poll()) != null) {
+                            handedOut.addAndGet(batch.size());
+                        }
+                    } catch (InterruptedException e) {
+                        // stopped
+                    }
+                }
+            };
+            t.setDaemon(true);
+            t.start();
+            workers.add(t);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        queue.stop();
+        for (Thread t : workers) {
+            t.join(10000);
+        }
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void submit(Submitter submitter) {
+        final Executor executor = executors[submitter.next++ % numExecutors];
+        queue.submitBatchCommand(new Command(executor, System.currentTimeMillis() + 5));
+    }
+
+}
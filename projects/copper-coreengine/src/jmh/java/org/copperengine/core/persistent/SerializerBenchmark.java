@@ -0,0 +1,127 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.concurrent.TimeUnit;
+
+import org.copperengine.core.StackEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link CompactJavaSerializer} with the {@link StandardJavaSerializer} (text columns) and the
+ * {@link BinaryJavaSerializer} when writing and reading the object state of a typical workflow instance, i.e. a
+ * stack of {@link StackEntry}s holding JDK values, collections and a user defined data object.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializerBenchmark {
+
+    public static class Order implements Serializable {
+        private static final long serialVersionUID = 1L;
+        String orderId;
+        String customerId;
+        Date orderDate;
+        long amount;
+        List<String> items;
+    }
+
+    @Param({ "standard", "binary", "compact" })
+    public String serializer;
+
+    private StandardJavaSerializer textSerializer;
+    private BinaryJavaSerializer binarySerializer;
+    private Stack<StackEntry> state;
+    private String serializedText;
+    private byte[] serializedBinary;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        if ("standard".equals(serializer)) {
+            textSerializer = new StandardJavaSerializer();
+        } else if ("binary".equals(serializer)) {
+            binarySerializer = new BinaryJavaSerializer();
+        } else {
+            binarySerializer = new CompactJavaSerializer();
+        }
+        state = createState();
+        if (textSerializer != null) {
+            serializedText = textSerializer.serializeObject(state);
+        } else {
+            serializedBinary = binarySerializer.serializeBinary(state);
+        }
+    }
+
+    private static Stack<StackEntry> createState() {
+        final Order order = new Order();
+        order.orderId = "ORDER-4711";
+        order.customerId = "CUSTOMER-0815";
+        order.orderDate = new Date(1400000000000L);
+        order.amount = 12995L;
+        order.items = new ArrayList<String>();
+        for (int i = 0; i < 5; i++) {
+            order.items.add("ITEM-" + i);
+        }
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("retries", 3);
+        attributes.put("priority", 5L);
+        attributes.put("express", Boolean.TRUE);
+
+        final Stack<StackEntry> stack = new Stack<StackEntry>();
+        stack.push(new StackEntry(null, 2, new Object[] { order, attributes, "correlation-1", 1, 2L }));
+        stack.push(new StackEntry(new Object[] { "step" }, 5, new Object[] { order.items, 0, 1.5d, null }));
+        stack.push(new StackEntry(null, 1, new Object[] { "correlation-2", 60000L }));
+        return stack;
+    }
+
+    @Benchmark
+    public Object serialize() throws Exception {
+        if (textSerializer != null) {
+            return textSerializer.serializeObject(state);
+        }
+        return binarySerializer.serializeBinary(state);
+    }
+
+    @Benchmark
+    public Object deserialize() throws Exception {
+        if (textSerializer != null) {
+            return textSerializer.deserializeObject(serializedText);
+        }
+        return binarySerializer.deserializeBinary(serializedBinary, null);
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.tranzient;
+
+import java.io.File;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.copperengine.core.Acknowledge;
+import org.copperengine.core.Response;
+import org.copperengine.core.WorkflowInstanceDescr;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the notify throughput of the {@link TransientScottyEngine} with several notifying threads. Each thread
+ * notifies its own workflow instances round robin, each of which waits for one correlation id after the other, so the
+ * responses race with the registration of the waits like in an application with many concurrent conversations. The
+ * workflow is compiled from src/jmh/workflow, so the benchmark has to be started in the project directory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class NotifyBenchmark {
+
+    private static final int WORKFLOWS_PER_THREAD = 16;
+
+    private final AtomicInteger threadIdFactory = new AtomicInteger();
+    private TransientScottyEngine engine;
+
+    @State(Scope.Thread)
+    public static class Notifier {
+        private final String[] workflowIds = new String[WORKFLOWS_PER_THREAD];
+        private final Semaphore[] permits = new Semaphore[WORKFLOWS_PER_THREAD];
+        private final long[] sequence = new long[WORKFLOWS_PER_THREAD];
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setup(NotifyBenchmark benchmark) throws Exception {
+            final int threadId = benchmark.threadIdFactory.incrementAndGet();
+            for (int i = 0; i < WORKFLOWS_PER_THREAD; i++) {
+                workflowIds[i] = "wf" + threadId + "." + i;
+                permits[i] = new Semaphore(1);
+                benchmark.engine.run(new WorkflowInstanceDescr<Semaphore>("benchmark.NotifyTargetWorkflow", permits[i], workflowIds[i], null, null));
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = new TransientEngineFactory() {
+            @Override
+            protected File getWorkflowSourceDirectory() {
+                return new File("src/jmh/workflow");
+            }
+        }.create();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public void notifyResponse(Notifier notifier) throws Exception {
+        final int i = notifier.next;
+        notifier.next = (i + 1) % WORKFLOWS_PER_THREAD;
+        notifier.permits[i].acquire();
+        engine.notify(new Response<String>(notifier.workflowIds[i] + "-" + notifier.sequence[i]++, null, null), new Acknowledge.BestEffortAcknowledge());
+    }
+
+}
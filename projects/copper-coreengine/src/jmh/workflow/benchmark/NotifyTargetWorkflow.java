@@ -0,0 +1,41 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmark;
+
+import java.util.concurrent.Semaphore;
+
+import org.copperengine.core.Interrupt;
+import org.copperengine.core.WaitMode;
+import org.copperengine.core.Workflow;
+
+/**
+ * Waits for the correlation ids &lt;id&gt;-0, &lt;id&gt;-1, ... one after the other and releases a permit of the
+ * semaphore passed as data after each response, so the notifier never runs more than one response ahead.
+ */
+public class NotifyTargetWorkflow extends Workflow<Semaphore> {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void main() throws Interrupt {
+        for (long i = 0;; i++) {
+            wait(WaitMode.ALL, Workflow.NO_TIMEOUT, getId() + "-" + i);
+            getAndRemoveResponse(getId() + "-" + i);
+            getData().release();
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmark;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.copperengine.core.Interrupt;
+import org.copperengine.core.Workflow;
+
+/**
+ * Suspends and resumes itself via resubmit until the latch passed as data reaches zero.
+ */
+public class WaitResumeWorkflow extends Workflow<CountDownLatch> {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void main() throws Interrupt {
+        final CountDownLatch latch = getData();
+        while (latch.getCount() > 0) {
+            resubmit();
+            latch.countDown();
+        }
+    }
+
+}
@@ -0,0 +1,6 @@
+--
+-- Converts the serialized state columns to MEDIUMBLOB. Required when the dialect is configured with a BinarySerializer,
+-- e.g. org.copperengine.core.persistent.BinaryJavaSerializer. Existing rows stay readable.
+--
+ALTER TABLE COP_WORKFLOW_INSTANCE MODIFY DATA MEDIUMBLOB null, MODIFY OBJECT_STATE MEDIUMBLOB null;
+ALTER TABLE COP_RESPONSE MODIFY RESPONSE MEDIUMBLOB;
@@ -1,6 +1,7 @@
 drop table COP_WORKFLOW_INSTANCE_ERROR;
 drop table COP_WAIT;
 drop table COP_RESPONSE;
+drop table COP_RESPONSE_EVENT;
 drop table COP_QUEUE;
 drop table COP_AUDIT_TRAIL_EVENT;
 drop table COP_ADAPTERCALL;
@@ -79,6 +80,19 @@ create index IDX_COP_WAIT_WFI_ID on COP_WAIT (
    WORKFLOW_INSTANCE_ID
 );
 
+create index IDX_COP_WAIT_TIMEOUT on COP_WAIT (
+   TIMEOUT_TS
+);
+
+--
+-- COP_RESPONSE_EVENT
+--
+create table COP_RESPONSE_EVENT (
+   RESPONSE_ID		VARCHAR(128) not null,
+   CORRELATION_ID	VARCHAR(128) not null,
+   PRIMARY KEY (RESPONSE_ID)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
 ALTER TABLE COP_WAIT ADD FOREIGN KEY (WORKFLOW_INSTANCE_ID) REFERENCES COP_WORKFLOW_INSTANCE (ID);
 
 --
@@ -0,0 +1,2 @@
+create index IDX_COP_WAIT_TIMEOUT on COP_WAIT (TIMEOUT_TS);
+create table COP_RESPONSE_EVENT (RESPONSE_ID VARCHAR(128) not null, CORRELATION_ID VARCHAR(128) not null, PRIMARY KEY (RESPONSE_ID)) ENGINE=InnoDB DEFAULT CHARSET=utf8;
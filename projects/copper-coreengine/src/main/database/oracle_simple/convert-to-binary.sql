@@ -0,0 +1,32 @@
+--
+-- Converts the serialized state columns to BLOB. Required when the OracleSimpleDialect is configured with a
+-- BinarySerializer, e.g. org.copperengine.core.persistent.BinaryJavaSerializer. Existing rows stay readable.
+--
+create or replace function COP_CLOB_TO_BLOB(c CLOB) return BLOB is
+  b BLOB;
+  dest_offset integer := 1;
+  src_offset integer := 1;
+  lang_ctx integer := DBMS_LOB.DEFAULT_LANG_CTX;
+  warning integer;
+begin
+  if c is null then
+    return null;
+  end if;
+  DBMS_LOB.CREATETEMPORARY(b, true);
+  DBMS_LOB.CONVERTTOBLOB(b, c, DBMS_LOB.LOBMAXSIZE, dest_offset, src_offset, DBMS_LOB.DEFAULT_CSID, lang_ctx, warning);
+  return b;
+end;
+/
+
+alter table COP_WORKFLOW_INSTANCE add (DATA_BIN BLOB, OBJECT_STATE_BIN BLOB) LOB(DATA_BIN) STORE AS SECUREFILE LOB(OBJECT_STATE_BIN) STORE AS SECUREFILE;
+update COP_WORKFLOW_INSTANCE set DATA_BIN = COP_CLOB_TO_BLOB(DATA), OBJECT_STATE_BIN = COP_CLOB_TO_BLOB(OBJECT_STATE);
+alter table COP_WORKFLOW_INSTANCE drop (DATA, OBJECT_STATE);
+alter table COP_WORKFLOW_INSTANCE rename column DATA_BIN to DATA;
+alter table COP_WORKFLOW_INSTANCE rename column OBJECT_STATE_BIN to OBJECT_STATE;
+
+alter table COP_RESPONSE add (RESPONSE_BIN BLOB) LOB(RESPONSE_BIN) STORE AS SECUREFILE;
+update COP_RESPONSE set RESPONSE_BIN = COP_CLOB_TO_BLOB(RESPONSE);
+alter table COP_RESPONSE drop (RESPONSE);
+alter table COP_RESPONSE rename column RESPONSE_BIN to RESPONSE;
+
+drop function COP_CLOB_TO_BLOB;
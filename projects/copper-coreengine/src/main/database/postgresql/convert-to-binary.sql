@@ -0,0 +1,7 @@
+--
+-- Converts the serialized state columns to BYTEA. Required when the dialect is configured with a BinarySerializer,
+-- e.g. org.copperengine.core.persistent.BinaryJavaSerializer. Existing rows stay readable.
+--
+ALTER TABLE COP_WORKFLOW_INSTANCE ALTER COLUMN DATA TYPE BYTEA USING convert_to(DATA, 'UTF8');
+ALTER TABLE COP_WORKFLOW_INSTANCE ALTER COLUMN OBJECT_STATE TYPE BYTEA USING convert_to(OBJECT_STATE, 'UTF8');
+ALTER TABLE COP_RESPONSE ALTER COLUMN RESPONSE TYPE BYTEA USING convert_to(RESPONSE, 'UTF8');
@@ -16,6 +16,7 @@
 package org.copperengine.core;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Utiltiy class to signal detached execution states.
@@ -67,6 +68,29 @@ public interface Acknowledge {
         }
     }
 
+    /**
+     * Acknowledge that completes a {@link CompletableFuture} instead of blocking a thread until the acknowledge
+     * arrives.
+     */
+    public static class FutureAcknowledge implements Acknowledge {
+
+        private final CompletableFuture<Void> future = new CompletableFuture<Void>();
+
+        @Override
+        public final void onSuccess() {
+            future.complete(null);
+        }
+
+        @Override
+        public final void onException(Throwable t) {
+            future.completeExceptionally(t instanceof InvocationTargetException ? t.getCause() : t);
+        }
+
+        public CompletableFuture<Void> getFuture() {
+            return future;
+        }
+    }
+
     public static class BestEffortAcknowledge implements Acknowledge {
 
         @Override
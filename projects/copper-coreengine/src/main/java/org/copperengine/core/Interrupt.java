@@ -25,4 +25,17 @@ public final class Interrupt extends Throwable {
 
     private static final long serialVersionUID = 576739730739351101L;
 
+    /**
+     * The interrupt thrown by instrumented workflow classes. Interrupts carry no state, so a single instance is shared.
+     */
+    public static final Interrupt INSTANCE = new Interrupt();
+
+    /**
+     * Creates a new interrupt without stack trace. Only used by workflow classes that were instrumented by older COPPER
+     * versions, current versions throw {@link #INSTANCE}.
+     */
+    public Interrupt() {
+        super(null, null, false, false);
+    }
+
 }
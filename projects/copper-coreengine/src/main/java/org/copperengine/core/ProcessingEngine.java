@@ -16,6 +16,7 @@
 package org.copperengine.core;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Runtime container for COPPER workflows and main entry point for running COPPER workflow instances.
@@ -91,6 +92,24 @@ public interface ProcessingEngine {
      */
     public void notify(Response<?> response, Acknowledge ack) throws CopperRuntimeException;
 
+    /**
+     * Adds a response to the engine without blocking the calling thread until the response is processed.
+     * 
+     * @param response
+     *        the reponse
+     * @return a future that completes when the response is processed by the COPPER engine, i.e. when a persistent engine
+     *         has stored it in the database, or completes exceptionally if the notification fails.
+     */
+    public default CompletableFuture<Void> notifyAsync(Response<?> response) {
+        final Acknowledge.FutureAcknowledge ack = new Acknowledge.FutureAcknowledge();
+        try {
+            notify(response, ack);
+        } catch (RuntimeException e) {
+            ack.onException(e);
+        }
+        return ack.getFuture();
+    }
+
     /**
      * @return Creates and returns a Universally Unique Identifier (UUID). The UUID may be used for workflow ids or correlation ids.
      */
@@ -136,6 +155,66 @@ public interface ProcessingEngine {
      */
     public void runBatch(List<WorkflowInstanceDescr<?>> wfInstanceDescr) throws CopperException, DuplicateIdException;
 
+    /**
+     * Enqueues the specified workflow instance description into the engine for execution without blocking the calling
+     * thread. The default implementation calls {@link #run(WorkflowInstanceDescr)}, engines that have to do blocking I/O
+     * to enqueue a workflow instance override it.
+     * 
+     * @param wfInstanceDescr
+     *        the workflow instance description out of which a workflow is generated and put into the engine for execution
+     * @return a future that completes with the workflow instance id, when the workflow instance is enqueued, or
+     *         completes exceptionally with the exception {@link #run(WorkflowInstanceDescr)} would throw.
+     */
+    public default CompletableFuture<String> runAsync(WorkflowInstanceDescr<?> wfInstanceDescr) {
+        final CompletableFuture<String> future = new CompletableFuture<String>();
+        try {
+            future.complete(run(wfInstanceDescr));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Enqueues the specified batch of workflow instance descriptions into the engine for execution without blocking the
+     * calling thread. The default implementation calls {@link #runBatch(List)}, engines that have to do blocking I/O to
+     * enqueue workflow instances override it.
+     * 
+     * @param wfInstanceDescr
+     *        batch or workflow instance descriptions to be put into the engine for execution
+     * @return a future that completes when the workflow instances are enqueued, or completes exceptionally with the
+     *         exception {@link #runBatch(List)} would throw.
+     */
+    public default CompletableFuture<Void> runBatchAsync(List<WorkflowInstanceDescr<?>> wfInstanceDescr) {
+        final CompletableFuture<Void> future = new CompletableFuture<Void>();
+        try {
+            runBatch(wfInstanceDescr);
+            future.complete(null);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Returns a future that completes when the workflow instance with the specified id finishes in this engine.
+     * The future has to be registered before the workflow instance is run, so the workflow instance id has to be set in
+     * its {@link WorkflowInstanceDescr}, see {@link #createUUID()}. The future completes exceptionally, if the
+     * workflow instance terminates with an exception or its final state can not be stored. It is removed from the engine
+     * when it is completed or cancelled.
+     * 
+     * @param wfInstanceId
+     *        workflow instance id
+     * @return the future, which is the same for repeated invocations with the same id. The default implementation
+     *         returns a future completed exceptionally with an {@link UnsupportedOperationException}, for engines that
+     *         do not support completion futures.
+     */
+    public default CompletableFuture<Void> registerCompletionFuture(String wfInstanceId) {
+        final CompletableFuture<Void> future = new CompletableFuture<Void>();
+        future.completeExceptionally(new UnsupportedOperationException("completion futures are not supported by " + getClass().getName()));
+        return future;
+    }
+
     /**
      * returns the engines current state
      * 
@@ -16,10 +16,25 @@
 package org.copperengine.core;
 
 import java.io.IOException;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.io.StreamCorruptedException;
 
 /**
  * For internal use only.
+ * <p>
+ * The instrumentation stores primitive locals in <code>longLocals</code> (boolean, byte, char, short, int and long) and
+ * <code>doubleLocals</code> (float and double) at the same index as in <code>locals</code>, where the slot contains
+ * {@link #INT_SLOT}, {@link #LONG_SLOT}, {@link #FLOAT_SLOT} or {@link #DOUBLE_SLOT}. The values on the operand stack
+ * are boxed.
+ * <p>
+ * Stack entries are serialized in the format of older versions with boxed locals by default, so that they stay
+ * readable by older versions during a rolling upgrade or after a rollback. With {@link #setWriteCompactFormat(boolean)}
+ * they are serialized in a compact form that writes primitive locals without boxing, which older versions can not
+ * read. When an entry is read, the primitive locals are filled in both forms, i.e. in the primitive arrays and boxed
+ * in <code>locals</code>, so that the entry may be restored by workflow classes instrumented by this version as well
+ * as by classes instrumented by older versions, which expect an <code>Integer</code>, <code>Long</code>,
+ * <code>Float</code> or <code>Double</code> there. Both formats are always readable.
  *
  * @author austermann
  */
@@ -27,23 +42,195 @@ public class StackEntry implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    private static final class PrimitiveSlot implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final byte type;
+
+        PrimitiveSlot(byte type) {
+            this.type = type;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            return slotOf(type);
+        }
+
+        @Override
+        public String toString() {
+            switch (type) {
+            case T_INT:
+                return "<int>";
+            case T_LONG:
+                return "<long>";
+            case T_FLOAT:
+                return "<float>";
+            default:
+                return "<double>";
+            }
+        }
+    }
+
+    // written instead of the number of locals, older versions wrote the number of locals (>= 0) followed by the
+    // number of stack values and then each value as object
+    private static final int COMPACT_FORMAT = -1;
+
+    private static final byte T_NULL = 0;
+    private static final byte T_OBJECT = 1;
+    private static final byte T_INT = 2;
+    private static final byte T_LONG = 3;
+    private static final byte T_FLOAT = 4;
+    private static final byte T_DOUBLE = 5;
+    // long and double values that are written with 4 bytes without loss
+    private static final byte T_LONG_AS_INT = 6;
+    private static final byte T_DOUBLE_AS_FLOAT = 7;
+
+    /**
+     * Marks a slot in <code>locals</code> of type boolean, byte, char, short or int whose value is stored in
+     * <code>longLocals</code>
+     */
+    public static final Object INT_SLOT = new PrimitiveSlot(T_INT);
+    /**
+     * Marks a slot in <code>locals</code> of type long whose value is stored in <code>longLocals</code>
+     */
+    public static final Object LONG_SLOT = new PrimitiveSlot(T_LONG);
+    /**
+     * Marks a slot in <code>locals</code> of type float whose value is stored in <code>doubleLocals</code>
+     */
+    public static final Object FLOAT_SLOT = new PrimitiveSlot(T_FLOAT);
+    /**
+     * Marks a slot in <code>locals</code> of type double whose value is stored in <code>doubleLocals</code>
+     */
+    public static final Object DOUBLE_SLOT = new PrimitiveSlot(T_DOUBLE);
+
+    private static volatile boolean writeCompactFormat = Boolean.getBoolean("org.copperengine.core.StackEntry.writeCompactFormat");
+
+    /**
+     * If true, stack entries are serialized in the compact format, which COPPER versions before 5.0 can not read.
+     * Defaults to false, or to the system property <code>org.copperengine.core.StackEntry.writeCompactFormat</code>.
+     * Turn it on once no engine of an older version reads the workflow instances any more.
+     */
+    public static void setWriteCompactFormat(boolean writeCompactFormat) {
+        StackEntry.writeCompactFormat = writeCompactFormat;
+    }
+
+    public static boolean isWriteCompactFormat() {
+        return writeCompactFormat;
+    }
+
+    private static Object slotOf(byte type) {
+        switch (type) {
+        case T_INT:
+            return INT_SLOT;
+        case T_LONG:
+            return LONG_SLOT;
+        case T_FLOAT:
+            return FLOAT_SLOT;
+        default:
+            return DOUBLE_SLOT;
+        }
+    }
+
     public transient int jumpNo;
     public transient Object[] locals;
     public transient Object[] stack;
+    public transient long[] longLocals;
+    public transient double[] doubleLocals;
+
+    public StackEntry(Object[] stack, int jumpNo, Object[] locals, long[] longLocals, double[] doubleLocals) {
+        this.jumpNo = jumpNo;
+        this.locals = locals;
+        this.stack = stack;
+        this.longLocals = longLocals;
+        this.doubleLocals = doubleLocals;
+    }
 
     public StackEntry(Object[] stack, int jumpNo, Object[] locals) {
         this.jumpNo = jumpNo;
         this.locals = locals;
         this.stack = stack;
+        unboxLocals();
     }
 
     public StackEntry(int jumpNo) {
         this.jumpNo = jumpNo;
     }
 
+    /**
+     * Copies boxed numbers in <code>locals</code> to the primitive slot arrays, so that the entry may be restored by
+     * code that expects primitive locals there. The boxed values are kept, because the slot may as well be an object.
+     */
+    private void unboxLocals() {
+        if (locals == null)
+            return;
+        for (int i = 0; i < locals.length; ++i) {
+            final Object v = locals[i];
+            if (v instanceof Integer || v instanceof Long) {
+                if (longLocals == null)
+                    longLocals = new long[locals.length];
+                longLocals[i] = ((Number) v).longValue();
+            } else if (v instanceof Float || v instanceof Double) {
+                if (doubleLocals == null)
+                    doubleLocals = new double[locals.length];
+                doubleLocals[i] = ((Number) v).doubleValue();
+            }
+        }
+    }
+
     private void readObject(java.io.ObjectInputStream stream) throws IOException, ClassNotFoundException {
         jumpNo = stream.readInt();
-        int numLocals = stream.readInt();
+        final int format = stream.readInt();
+        if (format >= 0) {
+            readLegacy(stream, format);
+            return;
+        }
+        if (format != COMPACT_FORMAT)
+            throw new StreamCorruptedException("Unknown stack entry format " + format);
+        final int numLocals = stream.readUnsignedShort();
+        final byte[] types = new byte[numLocals];
+        stream.readFully(types);
+        if (numLocals > 0)
+            locals = new Object[numLocals];
+        for (int i = 0; i < numLocals; ++i) {
+            switch (types[i]) {
+            case T_NULL:
+            case T_OBJECT:
+                break;
+            case T_INT:
+                locals[i] = Integer.valueOf(stream.readInt());
+                break;
+            case T_LONG_AS_INT:
+                locals[i] = Long.valueOf(stream.readInt());
+                break;
+            case T_LONG:
+                locals[i] = Long.valueOf(stream.readLong());
+                break;
+            case T_FLOAT:
+                locals[i] = Float.valueOf(stream.readFloat());
+                break;
+            case T_DOUBLE_AS_FLOAT:
+                locals[i] = Double.valueOf(stream.readFloat());
+                break;
+            case T_DOUBLE:
+                locals[i] = Double.valueOf(stream.readDouble());
+                break;
+            default:
+                throw new StreamCorruptedException("Unknown slot type " + types[i]);
+            }
+        }
+        final int numStack = stream.readUnsignedShort();
+        if (numStack > 0)
+            stack = new Object[numStack];
+        for (int i = 0; i < numLocals; ++i) {
+            if (types[i] == T_OBJECT)
+                locals[i] = stream.readObject();
+        }
+        for (int i = 0; i < numStack; ++i)
+            stack[i] = stream.readObject();
+        // covers the primitive slots as well as boxed locals of classes instrumented by older versions
+        unboxLocals();
+    }
+
+    private void readLegacy(java.io.ObjectInputStream stream, int numLocals) throws IOException, ClassNotFoundException {
         int numStack = stream.readInt();
         if (numLocals > 0)
             locals = new Object[numLocals];
@@ -53,15 +240,76 @@ public class StackEntry implements Serializable {
             locals[i] = stream.readObject();
         for (int i = 0; i < numStack; ++i)
             stack[i] = stream.readObject();
+        unboxLocals();
     }
 
+    /*
+     * The slot types and the primitive values are written before the objects, so that they end up in a single block of
+     * the object stream.
+     */
     private void writeObject(java.io.ObjectOutputStream stream) throws IOException {
         stream.writeInt(jumpNo);
+        if (!writeCompactFormat) {
+            writeLegacy(stream);
+            return;
+        }
+        stream.writeInt(COMPACT_FORMAT);
+        final int numLocals = locals == null ? 0 : locals.length;
+        final byte[] types = new byte[numLocals];
+        for (int i = 0; i < numLocals; ++i) {
+            final Object v = locals[i];
+            if (v == null) {
+                types[i] = T_NULL;
+            } else if (v == INT_SLOT) {
+                types[i] = T_INT;
+            } else if (v == LONG_SLOT) {
+                types[i] = longLocals[i] == (int) longLocals[i] ? T_LONG_AS_INT : T_LONG;
+            } else if (v == FLOAT_SLOT) {
+                types[i] = T_FLOAT;
+            } else if (v == DOUBLE_SLOT) {
+                types[i] = doubleLocals[i] == (float) doubleLocals[i] ? T_DOUBLE_AS_FLOAT : T_DOUBLE;
+            } else {
+                types[i] = T_OBJECT;
+            }
+        }
+        stream.writeShort(numLocals);
+        stream.write(types);
+        for (int i = 0; i < numLocals; ++i) {
+            switch (types[i]) {
+            case T_INT:
+            case T_LONG_AS_INT:
+                stream.writeInt((int) longLocals[i]);
+                break;
+            case T_LONG:
+                stream.writeLong(longLocals[i]);
+                break;
+            case T_FLOAT:
+            case T_DOUBLE_AS_FLOAT:
+                stream.writeFloat((float) doubleLocals[i]);
+                break;
+            case T_DOUBLE:
+                stream.writeDouble(doubleLocals[i]);
+                break;
+            default:
+                break;
+            }
+        }
+        final int numStack = stack == null ? 0 : stack.length;
+        stream.writeShort(numStack);
+        for (int i = 0; i < numLocals; ++i) {
+            if (types[i] == T_OBJECT)
+                stream.writeObject(locals[i]);
+        }
+        for (int i = 0; i < numStack; ++i)
+            stream.writeObject(stack[i]);
+    }
+
+    private void writeLegacy(java.io.ObjectOutputStream stream) throws IOException {
         stream.writeInt(locals == null ? 0 : locals.length);
         stream.writeInt(stack == null ? 0 : stack.length);
         if (locals != null) {
             for (int i = 0; i < locals.length; ++i)
-                stream.writeObject(locals[i]);
+                stream.writeObject(boxedLocal(i));
         }
         if (stack != null) {
             for (int i = 0; i < stack.length; ++i)
@@ -69,6 +317,22 @@ public class StackEntry implements Serializable {
         }
     }
 
+    /**
+     * Returns the local as boxed by older versions of the instrumentation.
+     */
+    private Object boxedLocal(int i) {
+        final Object v = locals[i];
+        if (v == INT_SLOT)
+            return Integer.valueOf((int) longLocals[i]);
+        if (v == LONG_SLOT)
+            return Long.valueOf(longLocals[i]);
+        if (v == FLOAT_SLOT)
+            return Float.valueOf((float) doubleLocals[i]);
+        if (v == DOUBLE_SLOT)
+            return Double.valueOf(doubleLocals[i]);
+        return v;
+    }
+
     @Override
     public String toString() {
         // return "StackEntry [jumpNo=" + jumpNo + ", locals="
@@ -18,6 +18,10 @@ package org.copperengine.core;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * @deprecated COPPER no longer creates a stack trace on every wait, see {@link Workflow#getLastWaitStackTrace()}
+ */
+@Deprecated
 public class StackTraceCreator {
 
     private static final String NEWLINE = System.getProperty("line.separator");
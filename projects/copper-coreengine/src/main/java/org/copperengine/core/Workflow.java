@@ -18,6 +18,7 @@ package org.copperengine.core;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -26,7 +27,11 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Stack;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.copperengine.core.common.AbstractProcessingEngine;
+import org.copperengine.core.common.WorkflowRepository;
+import org.copperengine.core.instrument.ClassInfo;
 import org.copperengine.core.instrument.Transformed;
 import org.copperengine.core.persistent.SavepointAware;
 import org.slf4j.Logger;
@@ -64,6 +69,11 @@ public abstract class Workflow<D> implements Serializable {
      * for internal use only
      */
     protected transient int __stackPosition = 0;
+    /**
+     * for internal use only - the jump number of the wait, resubmit or savepoint call that is currently executed, set
+     * by the instrumentation
+     */
+    protected transient int __waitJumpNo = 0;
     private transient String processorPoolId = null;
     private transient int priority = 5;
     private transient ProcessingState processingState = ProcessingState.RAW;
@@ -71,8 +81,17 @@ public abstract class Workflow<D> implements Serializable {
     private transient Date creationTS = new Date();
     private transient Date lastActivityTS = new Date();
     private transient Date timeoutTS;
+    /**
+     * held while a processor executes the workflow instance - a lock instead of the instance's monitor, so a virtual
+     * thread does not pin its carrier thread while it blocks, e.g. on the database
+     */
+    private transient ReentrantLock processingLock = new ReentrantLock();
     
-    private String lastWaitStackTrace;
+    /**
+     * jump numbers of the stack entries at the last wait, resubmit or savepoint, i.e. the position of the call in
+     * every method of the current call chain, starting with <code>main</code>
+     */
+    private int[] lastWaitSite;
 
     /**
      * Creates a new instance
@@ -88,6 +107,11 @@ public abstract class Workflow<D> implements Serializable {
     private void readObject(java.io.ObjectInputStream stream) throws IOException, ClassNotFoundException {
         stream.defaultReadObject();
         responseMap = new HashMap<String, List<Response<?>>>();
+        processingLock = new ReentrantLock();
+    }
+
+    ReentrantLock getProcessingLock() {
+        return processingLock;
     }
 
     /**
@@ -207,7 +231,7 @@ public abstract class Workflow<D> implements Serializable {
     protected final void wait(WaitMode mode, int timeoutMsec, String... correlationIds) throws Interrupt {
         if (correlationIds.length == 0)
             throw new IllegalArgumentException();
-        updateLastWaitStackTrace();
+        updateLastWaitSite();
         for (int i = 0; i < correlationIds.length; i++) {
             if (correlationIds[i] == null)
                 throw new NullPointerException();
@@ -216,7 +240,7 @@ public abstract class Workflow<D> implements Serializable {
     }
 
     protected final void wait(final WaitMode mode, final int timeoutMsec, final Callback<?>... callbacks) throws Interrupt {
-        updateLastWaitStackTrace();
+        updateLastWaitSite();
         String[] correlationIds = new String[callbacks.length];
         for (int i = 0; i < correlationIds.length; i++) {
             correlationIds[i] = callbacks[i].getCorrelationId();
@@ -244,7 +268,7 @@ public abstract class Workflow<D> implements Serializable {
     protected final void wait(final WaitMode mode, final long timeout, final TimeUnit timeUnit, final String... correlationIds) throws Interrupt {
         if (correlationIds.length == 0)
             throw new IllegalArgumentException();
-        updateLastWaitStackTrace();
+        updateLastWaitSite();
         for (int i = 0; i < correlationIds.length; i++) {
             if (correlationIds[i] == null)
                 throw new NullPointerException();
@@ -270,7 +294,7 @@ public abstract class Workflow<D> implements Serializable {
      *        taking back control over the executed workflow.
      */
     protected final void wait(final WaitMode mode, final long timeout, final TimeUnit timeUnit, final Callback<?>... callbacks) throws Interrupt {
-        updateLastWaitStackTrace();
+        updateLastWaitSite();
         String[] correlationIds = new String[callbacks.length];
         for (int i = 0; i < correlationIds.length; i++) {
             correlationIds[i] = callbacks[i].getCorrelationId();
@@ -417,17 +441,25 @@ public abstract class Workflow<D> implements Serializable {
      *        taking back control over the executed workflow.
      */
     protected final void resubmit() throws Interrupt {
-        final String cid = engine.createUUID();
-        engine.registerCallbacks(this, WaitMode.ALL, 0, cid);
-        Acknowledge ack = createCheckpointAcknowledge();
-        engine.notify(new Response<Object>(cid, null, null), ack);
-        registerCheckpointAcknowledge(ack);
-        updateLastWaitStackTrace();
+        if (!(engine instanceof AbstractProcessingEngine && ((AbstractProcessingEngine) engine).resubmit(this))) {
+            final String cid = engine.createUUID();
+            engine.registerCallbacks(this, WaitMode.ALL, 0, cid);
+            Acknowledge ack = createCheckpointAcknowledge();
+            engine.notify(new Response<Object>(cid, null, null), ack);
+            registerCheckpointAcknowledge(ack);
+        }
+        updateLastWaitSite();
         
     }
     
-    private void updateLastWaitStackTrace() {
-        lastWaitStackTrace = StackTraceCreator.createStackTrace();
+    private void updateLastWaitSite() {
+        final int depth = __stack.size();
+        final int[] site = new int[depth + 1];
+        for (int i = 0; i < depth; i++) {
+            site[i] = __stack.get(i).jumpNo;
+        }
+        site[depth] = __waitJumpNo;
+        lastWaitSite = site;
     }
 
     /**
@@ -533,8 +565,44 @@ public abstract class Workflow<D> implements Serializable {
         return getData().toString();
     }
     
+    /**
+     * Returns the stack trace of the last wait, resubmit or savepoint call. The trace is rebuilt from the
+     * {@link ClassInfo} of the engine's workflow repository, if available.
+     *
+     * @return the stack trace or null, if the workflow instance did not wait yet
+     * @see #getLastWaitStackTrace(ClassInfo)
+     */
     public String getLastWaitStackTrace() {
-        return lastWaitStackTrace;
+        if (lastWaitSite == null)
+            return null;
+        ClassInfo classInfo = null;
+        if (engine instanceof AbstractProcessingEngine) {
+            final WorkflowRepository wfRepository = ((AbstractProcessingEngine) engine).getWfRepository();
+            try {
+                classInfo = wfRepository != null ? wfRepository.getClassInfo(getClass()) : null;
+            } catch (Exception e) {
+                logger.debug("Unable to get class info for " + getClass().getName(), e);
+            }
+        }
+        return getLastWaitStackTrace(classInfo);
+    }
+
+    /**
+     * Returns the stack trace of the last wait, resubmit or savepoint call, innermost call first. Only the position of
+     * the call is stored in the workflow instance, the trace is rebuilt on demand from the method and line number
+     * information of the instrumentation.
+     *
+     * @param classInfo
+     *        class info of this workflow's class or null
+     * @return the stack trace or null, if the workflow instance did not wait yet. If the class info is missing or does
+     *         not match, the trace contains the class name and the jump numbers only.
+     */
+    public String getLastWaitStackTrace(ClassInfo classInfo) {
+        final int[] site = lastWaitSite;
+        if (site == null)
+            return null;
+        final String stackTrace = classInfo != null ? classInfo.formatWaitSite(site) : null;
+        return stackTrace != null ? stackTrace : getClass().getName() + " wait site " + Arrays.toString(site);
     }
     
     public Date getLastActivityTS() {
@@ -552,4 +620,20 @@ public abstract class Workflow<D> implements Serializable {
     void setTimeoutTS(Date timeoutTS) {
         this.timeoutTS = timeoutTS;
     }
+
+    void clearResponses() {
+        synchronized (responseMap) {
+            responseMap.clear();
+        }
+    }
+
+    List<Response<?>> getResponses() {
+        synchronized (responseMap) {
+            final List<Response<?>> responses = new ArrayList<Response<?>>();
+            for (List<Response<?>> list : responseMap.values()) {
+                responses.addAll(list);
+            }
+            return responses;
+        }
+    }
 }
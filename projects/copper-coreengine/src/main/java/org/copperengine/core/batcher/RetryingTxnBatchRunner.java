@@ -18,18 +18,38 @@ package org.copperengine.core.batcher;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
 
 import org.copperengine.core.db.utility.RetryingTransaction;
+import org.copperengine.management.model.BatchExecutorStatistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * {@link BatchRunner} executing each batch in a {@link RetryingTransaction}.
+ * <p>
+ * If a batch fails, it is split in halves and each half is executed in its own transaction, recursively, until the
+ * failing commands are isolated. A single failing command among n commands thus costs about 2*log2(n) additional
+ * transactions instead of n. The failed batches and isolated commands are counted per executor, see
+ * {@link #getExecutorStatistics()}.
+ */
 public class RetryingTxnBatchRunner<E extends BatchExecutorBase<E, T>, T extends BatchCommand<E, T>> implements BatchRunner<E, T> {
 
     private static final Logger logger = LoggerFactory.getLogger(RetryingTxnBatchRunner.class);
 
+    private static final class Counters {
+        final AtomicLong failedBatches = new AtomicLong();
+        final AtomicLong isolatedCommands = new AtomicLong();
+    }
+
+    private final ConcurrentMap<String, Counters> counters = new ConcurrentHashMap<String, Counters>();
     private DataSource dataSource;
+    private boolean bisectFailedBatches = true;
 
     public RetryingTxnBatchRunner() {
     }
@@ -46,10 +66,68 @@ public class RetryingTxnBatchRunner<E extends BatchExecutorBase<E, T>, T extends
         this.dataSource = dataSource;
     }
 
+    /**
+     * @param bisectFailedBatches
+     *        if true (default), a failed batch is split in halves recursively to isolate the failing commands,
+     *        otherwise each command of the failed batch is executed on its own.
+     */
+    public void setBisectFailedBatches(boolean bisectFailedBatches) {
+        this.bisectFailedBatches = bisectFailedBatches;
+    }
+
+    public boolean isBisectFailedBatches() {
+        return bisectFailedBatches;
+    }
+
     public void run(final Collection<BatchCommand<E, T>> commands, final BatchExecutorBase<E, T> base) {
         if (commands.isEmpty())
             return;
 
+        final Exception e = execute(commands, base);
+        if (e == null)
+            return;
+        if (commands.size() == 1) {
+            BatchCommand<?, ?> cmd = commands.iterator().next();
+            cmd.callback().unhandledException(e);
+            return;
+        }
+        final Counters c = getCounters(base.id());
+        c.failedBatches.incrementAndGet();
+        final List<BatchCommand<E, T>> list = new ArrayList<BatchCommand<E, T>>(commands);
+        if (bisectFailedBatches) {
+            logger.warn("batch execution failed - bisecting batch of " + list.size() + " commands", e);
+            bisect(list, base, c);
+        } else {
+            logger.warn("batch execution failed - trying execution of separate commands ", e);
+            for (int i = 0; i < list.size(); i++) {
+                recover(list.subList(i, i + 1), base, c);
+            }
+        }
+    }
+
+    private void bisect(final List<BatchCommand<E, T>> commands, final BatchExecutorBase<E, T> base, final Counters c) {
+        final int middle = commands.size() / 2;
+        recover(commands.subList(0, middle), base, c);
+        recover(commands.subList(middle, commands.size()), base, c);
+    }
+
+    private void recover(final List<BatchCommand<E, T>> commands, final BatchExecutorBase<E, T> base, final Counters c) {
+        final Exception e = execute(commands, base);
+        if (e == null)
+            return;
+        if (commands.size() == 1) {
+            c.isolatedCommands.incrementAndGet();
+            commands.get(0).callback().unhandledException(e);
+        } else {
+            logger.debug("batch of {} commands failed - bisecting", commands.size());
+            bisect(commands, base, c);
+        }
+    }
+
+    /**
+     * @return null, if the commands were executed successfully, otherwise the exception
+     */
+    private Exception execute(final Collection<BatchCommand<E, T>> commands, final BatchExecutorBase<E, T> base) {
         try {
             if (dataSource == null) {
                 base.doExec(commands, null);
@@ -65,19 +143,37 @@ public class RetryingTxnBatchRunner<E extends BatchExecutorBase<E, T>, T extends
             for (BatchCommand<?, ?> cmd : commands) {
                 cmd.callback().commandCompleted();
             }
+            return null;
         } catch (Exception e) {
-            if (commands.size() == 1) {
-                BatchCommand<?, ?> cmd = commands.iterator().next();
-                cmd.callback().unhandledException(e);
-            } else {
-                logger.warn("batch execution failed - trying execution of separate commands ", e);
-                for (BatchCommand<E, T> cmd : commands) {
-                    List<BatchCommand<E, T>> l = new ArrayList<BatchCommand<E, T>>();
-                    l.add(cmd);
-                    run(l, base);
-                }
+            return e;
+        }
+    }
+
+    private Counters getCounters(String executorId) {
+        Counters c = counters.get(executorId);
+        if (c == null) {
+            final Counters newCounters = new Counters();
+            c = counters.putIfAbsent(executorId, newCounters);
+            if (c == null) {
+                c = newCounters;
             }
         }
+        return c;
+    }
+
+    /**
+     * @return the failure counters of all executors that had at least one failed batch
+     */
+    public List<BatchExecutorStatistics> getExecutorStatistics() {
+        final List<BatchExecutorStatistics> result = new ArrayList<BatchExecutorStatistics>(counters.size());
+        for (Map.Entry<String, Counters> entry : counters.entrySet()) {
+            final BatchExecutorStatistics statistics = new BatchExecutorStatistics();
+            statistics.setExecutorId(entry.getKey());
+            statistics.setFailedBatches(entry.getValue().failedBatches.get());
+            statistics.setIsolatedCommands(entry.getValue().isolatedCommands.get());
+            result.add(statistics);
+        }
+        return result;
     }
 
 }
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.batcher.impl;
+
+/**
+ * Bounds for the adaptive batch sizing of the batcher queues
+ */
+final class AdaptiveSettings {
+
+    final int minLatencyMSec;
+    final int maxLatencyMSec;
+    final int minPreferredSize;
+
+    AdaptiveSettings(int minLatencyMSec, int maxLatencyMSec, int minPreferredSize) {
+        if (minLatencyMSec < 0 || maxLatencyMSec < minLatencyMSec || minPreferredSize <= 0)
+            throw new IllegalArgumentException();
+        this.minLatencyMSec = minLatencyMSec;
+        this.maxLatencyMSec = maxLatencyMSec;
+        this.minPreferredSize = minPreferredSize;
+    }
+
+}
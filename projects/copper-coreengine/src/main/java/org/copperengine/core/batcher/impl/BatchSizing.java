@@ -0,0 +1,81 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.batcher.impl;
+
+import org.copperengine.core.batcher.BatchExecutorBase;
+import org.copperengine.management.model.BatchExecutorStatistics;
+
+/**
+ * Batch size and latency of a single executor within a batcher queue, including the tuning of the adaptive mode.
+ */
+class BatchSizing {
+
+    final BatchExecutorBase<?, ?> executor;
+    final int maximumSize;
+    volatile int preferredSize;
+    volatile int latencyMSec;
+    volatile long avgExecutionTimeMicros = -1;
+
+    BatchSizing(BatchExecutorBase<?, ?> executor, int latencyMSec) {
+        this.executor = executor;
+        this.latencyMSec = latencyMSec;
+        this.preferredSize = executor.preferredBatchSize();
+        this.maximumSize = executor.maximumBatchSize();
+        if (maximumSize < preferredSize)
+            throw new IllegalArgumentException(
+                    "Preferred batch size must not exceed maximum batch size");
+    }
+
+    /**
+     * Records the execution time of a batch and, in adaptive mode, adjusts latency and preferred size.
+     * The latency follows the average execution time, so the next batch is collected while the current one is
+     * executed. The preferred size grows while commands are queued up and shrinks while the execution of a batch
+     * takes longer than the maximum latency.
+     *
+     * @param queued
+     *        number of commands of this executor still waiting in the queue
+     * @param settings
+     *        bounds of the adaptive mode, null if the adaptive mode is disabled
+     */
+    synchronized void batchExecuted(int size, long executionTimeMicros, int queued, AdaptiveSettings settings) {
+        final long avg = avgExecutionTimeMicros < 0 ? executionTimeMicros : (avgExecutionTimeMicros * 7 + executionTimeMicros) / 8;
+        avgExecutionTimeMicros = avg;
+        if (settings == null)
+            return;
+        final long avgExecutionTimeMSec = avg / 1000;
+        latencyMSec = (int) Math.max(settings.minLatencyMSec, Math.min(settings.maxLatencyMSec, avgExecutionTimeMSec));
+        final int preferred = preferredSize;
+        final int step = Math.max(1, preferred / 4);
+        final boolean backlog = queued >= preferred;
+        if (avgExecutionTimeMSec > settings.maxLatencyMSec) {
+            if (!backlog)
+                preferredSize = Math.max(Math.min(settings.minPreferredSize, maximumSize), preferred - step);
+        } else if (backlog && size >= preferred) {
+            preferredSize = Math.min(maximumSize, preferred + step);
+        }
+    }
+
+    BatchExecutorStatistics getStatistics(int queued, boolean adaptive) {
+        final BatchExecutorStatistics s = new BatchExecutorStatistics();
+        s.setExecutorId(executor.id());
+        s.setPreferredBatchSize(preferredSize);
+        s.setBatchingLatencyMSec(adaptive ? latencyMSec : -1);
+        s.setAvgExecutionTimeMicros(avgExecutionTimeMicros);
+        s.setQueueSize(queued);
+        return s;
+    }
+
+}
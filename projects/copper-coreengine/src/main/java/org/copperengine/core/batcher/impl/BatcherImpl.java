@@ -24,10 +24,11 @@ import org.copperengine.core.batcher.BatchExecutor;
 import org.copperengine.core.batcher.BatchExecutorBase;
 import org.copperengine.core.batcher.BatchRunner;
 import org.copperengine.core.batcher.Batcher;
-import org.copperengine.core.batcher.impl.BatcherQueue.State;
+import org.copperengine.core.batcher.RetryingTxnBatchRunner;
 import org.copperengine.core.monitoring.NullRuntimeStatisticsCollector;
 import org.copperengine.core.monitoring.RuntimeStatisticsCollector;
 import org.copperengine.management.BatcherMXBean;
+import org.copperengine.management.model.BatchExecutorStatistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,9 +62,11 @@ public class BatcherImpl implements Batcher, BatcherMXBean {
                         return;
                     }
                     final BatchExecutorBase e = commands.get(0).executor();
-                    final long startTS = System.currentTimeMillis();
+                    final long startTS = System.nanoTime();
                     batchRunner.run(commands, e);
-                    statisticsCollector.submit(e.id(), commands.size(), System.currentTimeMillis() - startTS, TimeUnit.MILLISECONDS);
+                    final long executionTimeMicros = (System.nanoTime() - startTS) / 1000L;
+                    statisticsCollector.submit(e.id(), commands.size(), executionTimeMicros, TimeUnit.MICROSECONDS);
+                    queue.batchExecuted(e, commands.size(), executionTimeMicros);
 
                 } catch (InterruptedException e) {
                     logger.warn("Interrupted", e);
@@ -77,10 +80,11 @@ public class BatcherImpl implements Batcher, BatcherMXBean {
         }
     }
 
-    BatcherQueue queue = new BatcherQueue();
+    CommandQueue queue = new BatcherQueue();
     private RuntimeStatisticsCollector statisticsCollector = new NullRuntimeStatisticsCollector();
     private List<WorkerThread> threads = new ArrayList<WorkerThread>();
     private int numThreads;
+    private AdaptiveSettings adaptiveBounds = new AdaptiveSettings(0, 100, 1);
     @SuppressWarnings("rawtypes")
     private BatchRunner batchRunner;
 
@@ -108,6 +112,67 @@ public class BatcherImpl implements Batcher, BatcherMXBean {
         }
     }
 
+    /**
+     * Enables or disables the adaptive batch sizing. In adaptive mode, the batcher tunes the batching latency and the
+     * preferred batch size of each executor from the measured execution times and the number of queued commands,
+     * within the bounds configured by {@link #setAdaptiveBatchSizingBounds(int, int, int)}. The maximum batch size of
+     * the executors is never exceeded and a batch is never executed later than the earliest target time of its
+     * commands.
+     *
+     * @param adaptiveBatchSizing
+     *        true to enable the adaptive mode, default is false
+     */
+    public void setAdaptiveBatchSizing(boolean adaptiveBatchSizing) {
+        queue.setAdaptiveSettings(adaptiveBatchSizing ? adaptiveBounds : null);
+    }
+
+    public boolean isAdaptiveBatchSizing() {
+        return queue.getAdaptiveSettings() != null;
+    }
+
+    /**
+     * Sets the bounds of the adaptive batch sizing.
+     * <p>
+     * The target time of a command is a hard cap: the batching latency only brings a batch forward, it never
+     * postpones it beyond the earliest target time of its commands. Hence <code>maxLatencyMSec</code> only limits the
+     * latency of commands whose target time is more than <code>maxLatencyMSec</code> ahead. For commands created
+     * with a shorter delay, e.g. the SQL dialects' <code>dbBatchingLatencyMSec</code>, that delay is the effective
+     * upper bound.
+     *
+     * @param minLatencyMSec
+     *        lower bound of the batching latency, default is 0
+     * @param maxLatencyMSec
+     *        upper bound of the batching latency, default is 100
+     * @param minPreferredBatchSize
+     *        lower bound of the preferred batch size, default is 1
+     */
+    public void setAdaptiveBatchSizingBounds(int minLatencyMSec, int maxLatencyMSec, int minPreferredBatchSize) {
+        adaptiveBounds = new AdaptiveSettings(minLatencyMSec, maxLatencyMSec, minPreferredBatchSize);
+        if (queue.getAdaptiveSettings() != null) {
+            queue.setAdaptiveSettings(adaptiveBounds);
+        }
+    }
+
+    /**
+     * Selects the queue implementation. Must be called before {@link #startup()}.
+     *
+     * @param concurrentQueue
+     *        if true, the batcher uses a {@link ConcurrentBatcherQueue} without a global lock on the submit path,
+     *        which scales better with many threads submitting commands. Default is false, i.e. a single lock
+     *        guards the queue.
+     */
+    public synchronized void setConcurrentQueue(boolean concurrentQueue) {
+        if (!threads.isEmpty())
+            throw new IllegalStateException("Batcher is already started");
+        final CommandQueue newQueue = concurrentQueue ? new ConcurrentBatcherQueue() : new BatcherQueue();
+        newQueue.setAdaptiveSettings(queue.getAdaptiveSettings());
+        queue = newQueue;
+    }
+
+    public boolean isConcurrentQueue() {
+        return queue instanceof ConcurrentBatcherQueue;
+    }
+
     public void setStatisticsCollector(RuntimeStatisticsCollector statisticsCollector) {
         this.statisticsCollector = statisticsCollector;
     }
@@ -144,7 +209,7 @@ public class BatcherImpl implements Batcher, BatcherMXBean {
     }
 
     public <E extends BatchExecutor<E, T>, T extends BatchCommand<E, T>> void submitBatchCommand(BatchCommand<E, T> cmd) {
-        if (queue.state != State.STARTED)
+        if (!queue.isStarted())
             throw new IllegalStateException("Batcher is shutting down");
         queue.submitBatchCommand(cmd);
     }
@@ -175,4 +240,22 @@ public class BatcherImpl implements Batcher, BatcherMXBean {
         return queue.size();
     }
 
+    @Override
+    public List<BatchExecutorStatistics> getBatchExecutorStatistics() {
+        final List<BatchExecutorStatistics> statistics = queue.getStatistics();
+        if (batchRunner instanceof RetryingTxnBatchRunner) {
+            failureCounters: for (BatchExecutorStatistics failures : ((RetryingTxnBatchRunner<?, ?>) batchRunner).getExecutorStatistics()) {
+                for (BatchExecutorStatistics s : statistics) {
+                    if (s.getExecutorId().equals(failures.getExecutorId())) {
+                        s.setFailedBatches(failures.getFailedBatches());
+                        s.setIsolatedCommands(failures.getIsolatedCommands());
+                        continue failureCounters;
+                    }
+                }
+                statistics.add(failures);
+            }
+        }
+        return statistics;
+    }
+
 }
@@ -28,14 +28,18 @@ import java.util.concurrent.locks.ReentrantLock;
 
 import org.copperengine.core.batcher.BatchCommand;
 import org.copperengine.core.batcher.BatchExecutorBase;
+import org.copperengine.management.model.BatchExecutorStatistics;
 
-class BatcherQueue {
+/**
+ * The default {@link CommandQueue}, guarded by a single lock.
+ */
+class BatcherQueue implements CommandQueue {
 
     enum State {
         STARTED, STOPPING, STOPPED
     }
 
-    static class BatchInfo {
+    static class BatchInfo extends BatchSizing {
 
         @SuppressWarnings({ "rawtypes" })
         static final Comparator<BatchCommand> comparator = new Comparator<BatchCommand>() {
@@ -49,17 +53,11 @@ class BatcherQueue {
         };
 
         long minTargetTime = Long.MAX_VALUE;
-        int preferredSize;
-        int maximumSize;
         BatchCommandArray batch;
         Condition signaller;
 
-        BatchInfo(BatchExecutorBase<?, ?> executor) {
-            this.preferredSize = executor.preferredBatchSize();
-            this.maximumSize = executor.maximumBatchSize();
-            if (maximumSize < preferredSize)
-                throw new IllegalArgumentException(
-                        "Preferred batch size must not exceed maximum batch size");
+        BatchInfo(BatchExecutorBase<?, ?> executor, int latencyMSec) {
+            super(executor, latencyMSec);
             this.batch = new BatchCommandArray(executor.prioritize(), initialArraySize());
         }
 
@@ -67,7 +65,7 @@ class BatcherQueue {
             return Math.min(preferredSize * 2, maximumSize);
         }
 
-        public List<BatchCommand<?, ?>> removeCommands(boolean stopped) {
+        public List<BatchCommand<?, ?>> removeCommands(boolean stopped, boolean adaptive) {
             int batchSize = batch.size();
             if (batchSize <= maximumSize) {
                 BatchCommandArray commands = this.batch;
@@ -82,7 +80,7 @@ class BatcherQueue {
             if (!stopped && batch.size() < preferredSize) {
                 minTargetTime = Long.MAX_VALUE;
                 if (batch.size() > 0)
-                    minTargetTime = batch.get(0).targetTime();
+                    minTargetTime = adaptive ? adaptiveTargetTime(earliestTargetTime()) : batch.get(0).targetTime();
             }
             signaller = null;
             return Arrays.asList(commands);
@@ -94,14 +92,36 @@ class BatcherQueue {
         }
 
         /**
+         * @return the time the batch is due in adaptive mode, i.e. latencyMSec from now, but not later than the given
+         *         target time, which is a hard cap (see {@link BatcherImpl#setAdaptiveBatchSizingBounds(int, int, int)})
+         */
+        long adaptiveTargetTime(long targetTime) {
+            return Math.min(System.currentTimeMillis() + latencyMSec, targetTime);
+        }
+
+        long earliestTargetTime() {
+            if (batch.sorted)
+                return batch.get(0).targetTime();
+            long targetTime = Long.MAX_VALUE;
+            for (int i = 0; i < batch.size(); i++) {
+                targetTime = Math.min(targetTime, batch.get(i).targetTime());
+            }
+            return targetTime;
+        }
+
+        /**
+         * @param adaptive
+         *        if true, the batch is due latencyMSec after the command was added or at the command's target time,
+         *        whichever comes first, instead of only at the command's target time
          * @return the new target time, if changed, else -1
          */
-        Long add(BatchCommand<?, ?> cmd) {
+        Long add(BatchCommand<?, ?> cmd, boolean adaptive) {
             batch.add(cmd);
-            if (this.preferredSize == batch.size() && minTargetTime > 0)
+            if (this.preferredSize <= batch.size() && minTargetTime > 0)
                 return (minTargetTime = 0);
-            if (cmd.targetTime() < minTargetTime)
-                return (minTargetTime = cmd.targetTime());
+            final long targetTime = adaptive ? adaptiveTargetTime(cmd.targetTime()) : cmd.targetTime();
+            if (targetTime < minTargetTime)
+                return (minTargetTime = targetTime);
             return null;
         }
 
@@ -113,7 +133,8 @@ class BatcherQueue {
     ArrayList<BatchInfo> batches;
     ReentrantLock lock;
     int numThreads;
-    State state;
+    volatile State state;
+    volatile AdaptiveSettings adaptiveSettings;
 
     public BatcherQueue() {
         this.numThreads = 0;
@@ -125,12 +146,14 @@ class BatcherQueue {
         state = State.STARTED;
     }
 
+    @Override
     public void submitBatchCommand(BatchCommand<?, ?> cmd) {
         lock.lock();
         try {
+            final AdaptiveSettings settings = adaptiveSettings;
             BatchInfo batchInfo = batchMap.get(cmd.executor());
             if (batchInfo == null) {
-                batchInfo = new BatchInfo(cmd.executor());
+                batchInfo = new BatchInfo(cmd.executor(), settings != null ? settings.minLatencyMSec : 0);
                 batchMap.put(cmd.executor(), batchInfo);
                 batches.add(batchInfo);
             } else {
@@ -142,13 +165,14 @@ class BatcherQueue {
                     lock.lock();
                 }
             }
-            Long targetTime = batchInfo.add(cmd);
+            Long targetTime = batchInfo.add(cmd, settings != null);
             enqueueBatch(batchInfo, targetTime);
         } finally {
             lock.unlock();
         }
     }
 
+    @Override
     public int size() {
         lock.lock();
         try {
@@ -162,6 +186,48 @@ class BatcherQueue {
         }
     }
 
+    @Override
+    public boolean isStarted() {
+        return state == State.STARTED;
+    }
+
+    @Override
+    public void setAdaptiveSettings(AdaptiveSettings adaptiveSettings) {
+        this.adaptiveSettings = adaptiveSettings;
+    }
+
+    @Override
+    public AdaptiveSettings getAdaptiveSettings() {
+        return adaptiveSettings;
+    }
+
+    @Override
+    public void batchExecuted(BatchExecutorBase<?, ?> executor, int size, long executionTimeMicros) {
+        lock.lock();
+        try {
+            final BatchInfo batchInfo = batchMap.get(executor);
+            if (batchInfo != null) {
+                batchInfo.batchExecuted(size, executionTimeMicros, batchInfo.batch.size(), adaptiveSettings);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<BatchExecutorStatistics> getStatistics() {
+        lock.lock();
+        try {
+            final List<BatchExecutorStatistics> statistics = new ArrayList<BatchExecutorStatistics>(batches.size());
+            for (BatchInfo x : batches) {
+                statistics.add(x.getStatistics(x.batch.size(), adaptiveSettings != null));
+            }
+            return statistics;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     void enqueueBatch(BatchInfo batchInfo, Long targetTime) {
         if (targetTime != null && targetTime.longValue() == Long.MAX_VALUE)
             targetTime = null;
@@ -214,7 +280,8 @@ class BatcherQueue {
         return i;
     }
 
-    void stop() throws InterruptedException {
+    @Override
+    public void stop() throws InterruptedException {
         while (true) {
             lock.lock();
             try {
@@ -249,6 +316,7 @@ class BatcherQueue {
         }
     }
 
+    @Override
     public List<BatchCommand<?, ?>> poll() throws InterruptedException {
         lock.lockInterruptibly();
         try {
@@ -282,7 +350,7 @@ class BatcherQueue {
                     } else {
                         --numThreads;
                         List<BatchCommand<?, ?>> commands = myBatch
-                                .removeCommands(state == State.STOPPING);
+                                .removeCommands(state == State.STOPPING, adaptiveSettings != null);
                         batches.remove(queuePosition);
                         batches.add(myBatch);
                         enqueueBatch(myBatch, myBatch.minTargetTime);
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.batcher.impl;
+
+import java.util.List;
+
+import org.copperengine.core.batcher.BatchCommand;
+import org.copperengine.core.batcher.BatchExecutorBase;
+import org.copperengine.management.model.BatchExecutorStatistics;
+
+/**
+ * Queue of the {@link BatcherImpl}, collecting the submitted commands into batches per executor.
+ * <p>
+ * A batch of an executor becomes due, when it reaches the executor's preferred batch size or when the earliest target
+ * time of its commands is reached. Due batches are handed out to the worker threads in the order of their due time,
+ * a batch never exceeds the maximum batch size of its executor.
+ */
+interface CommandQueue {
+
+    void submitBatchCommand(BatchCommand<?, ?> cmd);
+
+    /**
+     * Blocks until a batch is due.
+     *
+     * @return the next batch or null, if the queue has been stopped
+     */
+    List<BatchCommand<?, ?>> poll() throws InterruptedException;
+
+    /**
+     * Flushes all queued commands regardless of their target time and returns when all commands have been handed out.
+     */
+    void stop() throws InterruptedException;
+
+    /**
+     * @return true, if the queue accepts new commands
+     */
+    boolean isStarted();
+
+    int size();
+
+    void setAdaptiveSettings(AdaptiveSettings adaptiveSettings);
+
+    AdaptiveSettings getAdaptiveSettings();
+
+    void batchExecuted(BatchExecutorBase<?, ?> executor, int size, long executionTimeMicros);
+
+    List<BatchExecutorStatistics> getStatistics();
+
+}
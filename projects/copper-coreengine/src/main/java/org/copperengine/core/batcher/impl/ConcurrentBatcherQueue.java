@@ -0,0 +1,280 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.batcher.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.copperengine.core.batcher.BatchCommand;
+import org.copperengine.core.batcher.BatchExecutorBase;
+import org.copperengine.core.batcher.impl.BatcherQueue.State;
+import org.copperengine.management.model.BatchExecutorStatistics;
+
+/**
+ * A {@link CommandQueue} without a global lock on the submit path.
+ * <p>
+ * Each executor has its own lane, a lock free queue of commands. Submitting a command only enqueues it into its lane,
+ * counts it and, if the batch became due earlier, schedules the lane. Lanes are scheduled in a {@link DelayQueue}
+ * ordered by their due time, i.e. the earliest target time of their commands or 0 if the preferred batch size is
+ * reached. So the shared, locked structures are touched once per batch instead of once per command. A scheduled lane
+ * is drained by exactly one worker thread at a time; commands of prioritized executors are handed out in the order
+ * of their target time.
+ */
+class ConcurrentBatcherQueue implements CommandQueue {
+
+    private static final Entry DRAINING = new Entry(null, 0, 0);
+    private static final Entry STOPPED = new Entry(null, 0, 0);
+
+    /**
+     * A scheduled lane. An entry is valid as long as it is the current entry of its lane, entries that were replaced
+     * by an earlier one are skipped when they become due.
+     */
+    private static final class Entry implements Delayed {
+        final Lane lane;
+        final long dueTime;
+        final long seqNo;
+
+        Entry(Lane lane, long dueTime, long seqNo) {
+            this.lane = lane;
+            this.dueTime = dueTime;
+            this.seqNo = seqNo;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            final Entry other = (Entry) o;
+            if (dueTime != other.dueTime)
+                return dueTime < other.dueTime ? -1 : 1;
+            return seqNo < other.seqNo ? -1 : (seqNo == other.seqNo ? 0 : 1);
+        }
+    }
+
+    private static final class Lane extends BatchSizing {
+        final ConcurrentLinkedQueue<BatchCommand<?, ?>> commands = new ConcurrentLinkedQueue<BatchCommand<?, ?>>();
+        /** number of submitted commands that have not been handed out yet */
+        final AtomicInteger size = new AtomicInteger();
+        /** null if the lane is not scheduled, DRAINING while a worker owns the lane */
+        final AtomicReference<Entry> entry = new AtomicReference<Entry>();
+        /** commands of a prioritized executor removed from the queue but not handed out yet, only accessed by the owner */
+        final List<BatchCommand<?, ?>> sorted = new ArrayList<BatchCommand<?, ?>>();
+        final boolean prioritize;
+
+        Lane(BatchExecutorBase<?, ?> executor, int latencyMSec) {
+            super(executor, latencyMSec);
+            this.prioritize = executor.prioritize();
+        }
+
+        /**
+         * @return up to maximumSize commands, the caller must own the lane
+         */
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        List<BatchCommand<?, ?>> drain() {
+            final List<BatchCommand<?, ?>> batch;
+            if (prioritize) {
+                BatchCommand<?, ?> cmd;
+                boolean added = false;
+                while ((cmd = commands.poll()) != null) {
+                    sorted.add(cmd);
+                    added = true;
+                }
+                if (added) {
+                    Collections.sort((List) sorted, BatcherQueue.BatchInfo.comparator);
+                }
+                final List<BatchCommand<?, ?>> head = sorted.subList(0, Math.min(maximumSize, sorted.size()));
+                batch = new ArrayList<BatchCommand<?, ?>>(head);
+                head.clear();
+            } else {
+                batch = new ArrayList<BatchCommand<?, ?>>(Math.min(maximumSize, Math.max(size.get(), 1)));
+                BatchCommand<?, ?> cmd;
+                while (batch.size() < maximumSize && (cmd = commands.poll()) != null) {
+                    batch.add(cmd);
+                }
+            }
+            size.addAndGet(-batch.size());
+            return batch;
+        }
+
+        /**
+         * @return the earliest target time of the commands not handed out yet, the caller must own the lane
+         */
+        long earliestTargetTime() {
+            long targetTime = sorted.isEmpty() ? Long.MAX_VALUE : sorted.get(0).targetTime();
+            for (BatchCommand<?, ?> cmd : commands) {
+                targetTime = Math.min(targetTime, cmd.targetTime());
+            }
+            return targetTime != Long.MAX_VALUE ? targetTime : System.currentTimeMillis();
+        }
+
+        /**
+         * @return the time the lane is due in adaptive mode, i.e. latencyMSec from now, but not later than the given
+         *         target time
+         */
+        long adaptiveDueTime(long targetTime) {
+            return Math.min(System.currentTimeMillis() + latencyMSec, targetTime);
+        }
+    }
+
+    private final ConcurrentMap<BatchExecutorBase<?, ?>, Lane> lanes = new ConcurrentHashMap<BatchExecutorBase<?, ?>, Lane>();
+    private final DelayQueue<Entry> scheduledLanes = new DelayQueue<Entry>();
+    private final AtomicLong seqNo = new AtomicLong();
+    private volatile State state = State.STARTED;
+    private volatile AdaptiveSettings adaptiveSettings;
+
+    @Override
+    public void submitBatchCommand(BatchCommand<?, ?> cmd) {
+        final AdaptiveSettings settings = adaptiveSettings;
+        Lane lane = lanes.get(cmd.executor());
+        if (lane == null) {
+            final Lane newLane = new Lane(cmd.executor(), settings != null ? settings.minLatencyMSec : 0);
+            lane = lanes.putIfAbsent(cmd.executor(), newLane);
+            if (lane == null) {
+                lane = newLane;
+            }
+        }
+        lane.commands.offer(cmd);
+        final int size = lane.size.incrementAndGet();
+        final long dueTime;
+        if (size >= lane.preferredSize) {
+            dueTime = 0;
+        } else {
+            dueTime = settings != null ? lane.adaptiveDueTime(cmd.targetTime()) : cmd.targetTime();
+        }
+        schedule(lane, dueTime);
+    }
+
+    private void schedule(final Lane lane, final long dueTime) {
+        for (;;) {
+            final Entry current = lane.entry.get();
+            // a worker owning the lane checks for remaining commands after releasing it
+            if (current == DRAINING)
+                return;
+            if (current != null && current.dueTime <= dueTime)
+                return;
+            final Entry entry = new Entry(lane, dueTime, seqNo.incrementAndGet());
+            if (lane.entry.compareAndSet(current, entry)) {
+                scheduledLanes.offer(entry);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public List<BatchCommand<?, ?>> poll() throws InterruptedException {
+        for (;;) {
+            final Entry entry = scheduledLanes.take();
+            if (entry == STOPPED) {
+                // let the other worker threads see the stop marker, too
+                scheduledLanes.offer(entry);
+                return null;
+            }
+            final Lane lane = entry.lane;
+            if (!lane.entry.compareAndSet(entry, DRAINING))
+                continue;
+            final List<BatchCommand<?, ?>> batch = lane.drain();
+            final long earliestTargetTime = lane.earliestTargetTime();
+            lane.entry.set(null);
+            final int remaining = lane.size.get();
+            if (remaining > 0) {
+                final AdaptiveSettings settings = adaptiveSettings;
+                if (state != State.STARTED || remaining >= lane.preferredSize) {
+                    schedule(lane, 0);
+                } else {
+                    schedule(lane, settings != null ? lane.adaptiveDueTime(earliestTargetTime) : earliestTargetTime);
+                }
+            }
+            if (!batch.isEmpty())
+                return batch;
+        }
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        state = State.STOPPING;
+        for (;;) {
+            boolean stopped = true;
+            for (Lane lane : lanes.values()) {
+                if (lane.size.get() > 0) {
+                    stopped = false;
+                    schedule(lane, 0);
+                }
+            }
+            if (stopped) {
+                state = State.STOPPED;
+                scheduledLanes.offer(STOPPED);
+                return;
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    @Override
+    public boolean isStarted() {
+        return state == State.STARTED;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Lane lane : lanes.values()) {
+            size += Math.max(0, lane.size.get());
+        }
+        return size;
+    }
+
+    @Override
+    public void setAdaptiveSettings(AdaptiveSettings adaptiveSettings) {
+        this.adaptiveSettings = adaptiveSettings;
+    }
+
+    @Override
+    public AdaptiveSettings getAdaptiveSettings() {
+        return adaptiveSettings;
+    }
+
+    @Override
+    public void batchExecuted(BatchExecutorBase<?, ?> executor, int size, long executionTimeMicros) {
+        final Lane lane = lanes.get(executor);
+        if (lane != null) {
+            lane.batchExecuted(size, executionTimeMicros, Math.max(0, lane.size.get()), adaptiveSettings);
+        }
+    }
+
+    @Override
+    public List<BatchExecutorStatistics> getStatistics() {
+        final List<BatchExecutorStatistics> statistics = new ArrayList<BatchExecutorStatistics>(lanes.size());
+        final boolean adaptive = adaptiveSettings != null;
+        for (Lane lane : lanes.values()) {
+            statistics.add(lane.getStatistics(Math.max(0, lane.size.get()), adaptive));
+        }
+        return statistics;
+    }
+
+}
@@ -16,6 +16,7 @@
 package org.copperengine.core.common;
 
 import java.lang.management.ManagementFactory;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -33,6 +34,7 @@ import org.copperengine.management.AuditTrailQueryMXBean;
 import org.copperengine.management.BatcherMXBean;
 import org.copperengine.management.DBStorageMXBean;
 import org.copperengine.management.DatabaseDialectMXBean;
+import org.copperengine.management.EarlyResponseContainerMXBean;
 import org.copperengine.management.ProcessingEngineMXBean;
 import org.copperengine.management.ProcessorPoolMXBean;
 import org.copperengine.management.StatisticsCollectorMXBean;
@@ -64,6 +66,7 @@ public abstract class AbstractJmxExporter {
         register(mBeanServer, getDBStorageMXBeans(), "copper.db");
         register(mBeanServer, getDatabaseDialectMXBeans(), "copper.db");
         register(mBeanServer, getAuditTrailQueryMXBeans(), "copper.audittrail");
+        register(mBeanServer, getEarlyResponseContainerMXBeans(), "copper.engine");
     }
 
     public void shutdown() throws MBeanRegistrationException, InstanceNotFoundException {
@@ -118,6 +121,14 @@ public abstract class AbstractJmxExporter {
      */
     protected abstract Map<String, AuditTrailQueryMXBean> getAuditTrailQueryMXBeans();
 
+    /**
+     * @return a map with entries { "name" -&gt; EarlyResponseContainerMXBean }. The map may be empty. Returns an empty
+     *         map, override it to export early response containers.
+     */
+    protected Map<String, EarlyResponseContainerMXBean> getEarlyResponseContainerMXBeans() {
+        return Collections.emptyMap();
+    }
+
     private void register(MBeanServer mBeanServer, Map<String, ?> map, String domain) throws MalformedObjectNameException, InstanceAlreadyExistsException, MBeanRegistrationException, NotCompliantMBeanException {
         for (Map.Entry<String, ?> entry : map.entrySet()) {
             ObjectName name = new ObjectName(domain, "name", entry.getKey());
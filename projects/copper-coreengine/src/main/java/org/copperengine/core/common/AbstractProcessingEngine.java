@@ -19,6 +19,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.copperengine.core.CopperException;
@@ -33,6 +36,7 @@ import org.copperengine.core.Workflow;
 import org.copperengine.core.WorkflowDescription;
 import org.copperengine.core.WorkflowFactory;
 import org.copperengine.core.WorkflowInstanceDescr;
+import org.copperengine.core.instrument.ClassInfo;
 import org.copperengine.core.monitoring.NullRuntimeStatisticsCollector;
 import org.copperengine.core.monitoring.RuntimeStatisticsCollector;
 import org.copperengine.core.util.EventCounter;
@@ -44,6 +48,8 @@ import org.copperengine.management.model.HalfOpenTimeInterval;
 import org.copperengine.management.model.WorkflowClassInfo;
 import org.copperengine.management.model.WorkflowInfo;
 import org.copperengine.management.model.WorkflowInstanceFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Abstract base implementation of the COPPER {@link ProcessingEngine} interface.
@@ -52,6 +58,8 @@ import org.copperengine.management.model.WorkflowInstanceFilter;
  */
 public abstract class AbstractProcessingEngine implements ProcessingEngine, ProcessingEngineMXBean {
 
+    private static final Logger logger = LoggerFactory.getLogger(AbstractProcessingEngine.class);
+
     private IdFactory idFactory = new AtomicLongIdFactory();
     protected WorkflowRepository wfRepository;
     protected volatile EngineState engineState = EngineState.RAW;
@@ -63,6 +71,7 @@ public abstract class AbstractProcessingEngine implements ProcessingEngine, Proc
     protected Date startupTS;
     private final AtomicLong lastActivityTS = new AtomicLong(System.currentTimeMillis());
     private final EventCounter startedWorkflowInstances = new EventCounter(24*60);
+    private final ConcurrentMap<String, CompletableFuture<Void>> completionFutures = new ConcurrentHashMap<String, CompletableFuture<Void>>();
 
     public void setStatisticsCollector(RuntimeStatisticsCollector statisticsCollector) {
         this.statisticsCollector = statisticsCollector;
@@ -147,6 +156,43 @@ public abstract class AbstractProcessingEngine implements ProcessingEngine, Proc
         startupTS = null;
     }
 
+    @Override
+    public CompletableFuture<Void> registerCompletionFuture(final String wfInstanceId) {
+        if (wfInstanceId == null)
+            throw new NullPointerException();
+        final CompletableFuture<Void> future = new CompletableFuture<Void>();
+        final CompletableFuture<Void> existing = completionFutures.putIfAbsent(wfInstanceId, future);
+        if (existing != null)
+            return existing;
+        // also removes cancelled futures
+        future.whenComplete((r, t) -> completionFutures.remove(wfInstanceId, future));
+        return future;
+    }
+
+    /**
+     * Completes the completion future of the specified workflow instance, if there is one.
+     *
+     * @param wfInstanceId
+     *        workflow instance id
+     * @param error
+     *        the exception the workflow instance terminated with or <code>null</code>
+     */
+    protected void completeWorkflow(String wfInstanceId, Throwable error) {
+        if (completionFutures.isEmpty())
+            return;
+        final CompletableFuture<Void> future = completionFutures.get(wfInstanceId);
+        if (future != null) {
+            if (error == null)
+                future.complete(null);
+            else
+                future.completeExceptionally(error);
+        }
+    }
+
+    protected boolean hasCompletionFutures() {
+        return !completionFutures.isEmpty();
+    }
+
     protected WorkflowInfo convert2Wfi(Workflow<?> wf) {
         if (wf == null)
             return null;
@@ -171,7 +217,7 @@ public abstract class AbstractProcessingEngine implements ProcessingEngine, Proc
         }
         wfi.setTimeout(wf.getTimeoutTS());
         wfi.setDataAsString(wf.prettyPrintData());
-        wfi.setLastWaitStackTrace(wf.getLastWaitStackTrace());
+        wfi.setLastWaitStackTrace(wf.getLastWaitStackTrace(getClassInfo(wf)));
         wfi.setCreationTS(wf.getCreationTS());
         wfi.setLastModTS(wf.getLastActivityTS());
         try {
@@ -182,6 +228,15 @@ public abstract class AbstractProcessingEngine implements ProcessingEngine, Proc
         return wfi;
     }
 
+    private ClassInfo getClassInfo(Workflow<?> wf) {
+        try {
+            return wfRepository != null ? wfRepository.getClassInfo(wf.getClass()) : null;
+        } catch (Exception e) {
+            logger.debug("Unable to get class info for " + wf.getClass().getName(), e);
+            return null;
+        }
+    }
+
     protected abstract String run(Workflow<?> w) throws CopperException;
 
     protected abstract void run(List<Workflow<?>> w) throws CopperException;
@@ -261,6 +316,18 @@ public abstract class AbstractProcessingEngine implements ProcessingEngine, Proc
         trackActivity();
     }
 
+    /**
+     * For internal use only - called by {@link Workflow#resubmit()} before the workflow instance is interrupted.
+     *
+     * @param wf
+     *        the workflow instance
+     * @return true, if the engine enqueues the workflow instance again by itself, false if resubmit shall register a
+     *         callback and notify it
+     */
+    public boolean resubmit(Workflow<?> wf) {
+        return false;
+    }
+
     
     protected void trackActivity() {
         final long now = System.currentTimeMillis();
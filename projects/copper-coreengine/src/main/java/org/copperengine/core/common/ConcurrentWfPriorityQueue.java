@@ -0,0 +1,111 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.common;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.copperengine.core.Workflow;
+
+/**
+ * Thread safe, lock free priority queue for {@link Workflow} instances.
+ * <p>
+ * Each priority has its own FIFO lane, the lanes are polled in the order of their priority, i.e. like in the
+ * {@link WfPriorityQueue} lower values are dequeued first and instances with the same priority are dequeued in the
+ * order they were enqueued. The queue needs no external synchronization, so if a {@link PriorityProcessorPool}
+ * creates it in {@link PriorityProcessorPool#createQueue()}, its processors dequeue without a shared monitor and
+ * idle processors are woken up one at a time.
+ * <p>
+ * The iterator works on a snapshot of the queue.
+ */
+public class ConcurrentWfPriorityQueue extends AbstractQueue<Workflow<?>> {
+
+    private final ConcurrentSkipListMap<Integer, Queue<Workflow<?>>> lanes = new ConcurrentSkipListMap<Integer, Queue<Workflow<?>>>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private Queue<Workflow<?>> getLane(final int priority) {
+        Queue<Workflow<?>> lane = lanes.get(priority);
+        if (lane == null) {
+            lane = new ConcurrentLinkedQueue<Workflow<?>>();
+            final Queue<Workflow<?>> existing = lanes.putIfAbsent(priority, lane);
+            if (existing != null) {
+                lane = existing;
+            }
+        }
+        return lane;
+    }
+
+    @Override
+    public boolean offer(Workflow<?> e) {
+        if (e == null)
+            throw new NullPointerException();
+        getLane(e.getPriority()).offer(e);
+        size.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public Workflow<?> poll() {
+        if (size.get() == 0)
+            return null;
+        for (Queue<Workflow<?>> lane : lanes.values()) {
+            final Workflow<?> wf = lane.poll();
+            if (wf != null) {
+                size.decrementAndGet();
+                return wf;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Workflow<?> peek() {
+        for (Queue<Workflow<?>> lane : lanes.values()) {
+            final Workflow<?> wf = lane.peek();
+            if (wf != null) {
+                return wf;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return Math.max(0, size.get());
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return peek() == null;
+    }
+
+    @Override
+    public Iterator<Workflow<?>> iterator() {
+        final List<Workflow<?>> snapshot = new ArrayList<Workflow<?>>(size());
+        for (Queue<Workflow<?>> lane : lanes.values()) {
+            snapshot.addAll(lane);
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+}
@@ -18,6 +18,7 @@ package org.copperengine.core.common;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.TimeUnit;
 
 import org.copperengine.core.ProcessingEngine;
 import org.copperengine.core.Workflow;
@@ -35,7 +36,7 @@ public abstract class PriorityProcessorPool implements ProcessorPool, ProcessorP
 
     private static final Logger logger = LoggerFactory.getLogger(PriorityProcessorPool.class);
 
-    protected final SuspendableQueue<Workflow<?>> queue = new SuspendableQueue<Workflow<?>>(createQueue());
+    protected SuspendableQueue<Workflow<?>> queue = newQueue();
     private final List<Processor> workerThreads = new ArrayList<Processor>();
 
     private ProcessingEngine engine = null;
@@ -47,6 +48,9 @@ public abstract class PriorityProcessorPool implements ProcessorPool, ProcessorP
     private boolean started = false;
     private boolean shutdown = false;
     private volatile ProcessorPoolState state = ProcessorPoolState.raw; 
+    private boolean concurrentQueue = false;
+    private int virtualThreadConcurrency = 0;
+    private VirtualThreadDispatcher.ConcurrencyLimit concurrencyLimit = null;
 
     protected ProcessorFactory processorFactory;
 
@@ -76,12 +80,77 @@ public abstract class PriorityProcessorPool implements ProcessorPool, ProcessorP
     }
 
     /**
-     * Creates a new instance of {@link WfPriorityQueue}
+     * Creates a new instance of {@link WfPriorityQueue} or {@link ConcurrentWfPriorityQueue}, if
+     * <code>concurrentQueue</code> is set. Subclasses may return any queue, the processors dequeue without a shared
+     * monitor if it is a {@link ConcurrentWfPriorityQueue}.
      * @return
      *        the new created instance.
      */
     protected Queue<Workflow<?>> createQueue() {
-        return new WfPriorityQueue();
+        return concurrentQueue ? new ConcurrentWfPriorityQueue() : new WfPriorityQueue();
+    }
+
+    private SuspendableQueue<Workflow<?>> newQueue() {
+        final Queue<Workflow<?>> q = createQueue();
+        return new SuspendableQueue<Workflow<?>>(q, q instanceof ConcurrentWfPriorityQueue);
+    }
+
+    /**
+     * If true, the pool uses a {@link ConcurrentWfPriorityQueue}, i.e. its processors no longer contend on the monitor
+     * of the queue and only one idle processor is woken up per enqueued workflow instance. Defaults to false.
+     * Must be set before the pool is started.
+     *
+     * @param concurrentQueue
+     *        true to use a concurrent queue
+     */
+    public synchronized void setConcurrentQueue(boolean concurrentQueue) {
+        if (started)
+            throw new IllegalStateException("processor pool is already started");
+        if (this.concurrentQueue != concurrentQueue) {
+            this.concurrentQueue = concurrentQueue;
+            queue = newQueue();
+        }
+    }
+
+    public synchronized boolean isConcurrentQueue() {
+        return concurrentQueue;
+    }
+
+    /**
+     * If greater than zero, the workflow instances are processed on virtual threads instead of
+     * <code>numberOfThreads</code> platform threads. A dispatcher thread dequeues the workflow instances and starts a
+     * virtual thread for each of them, at most <code>virtualThreadConcurrency</code> instances are processed
+     * concurrently. The processing itself is done by a {@link Processor} of the {@link ProcessorFactory}, i.e. like in
+     * the platform thread mode. A new, unstarted processor is created for each workflow instance.
+     * <p>
+     * Virtual threads require JDK 21 or later at runtime. On older JDKs the pool logs a warning and falls back to
+     * platform threads. Defaults to 0, i.e. platform threads. The limit may be changed while the pool is running, but
+     * switching between platform and virtual threads requires a restart.
+     *
+     * @param virtualThreadConcurrency
+     *        maximum number of workflow instances processed concurrently on virtual threads or 0
+     */
+    public synchronized void setVirtualThreadConcurrency(int virtualThreadConcurrency) {
+        if (virtualThreadConcurrency < 0)
+            throw new IllegalArgumentException();
+        if (started && (this.virtualThreadConcurrency == 0) != (virtualThreadConcurrency == 0))
+            throw new IllegalStateException("processor pool is already started");
+        logger.info("ProcessorPool " + id + ": Setting virtual thread concurrency to " + virtualThreadConcurrency);
+        this.virtualThreadConcurrency = virtualThreadConcurrency;
+        if (concurrencyLimit != null) {
+            concurrencyLimit.setLimit(virtualThreadConcurrency);
+        }
+    }
+
+    public synchronized int getVirtualThreadConcurrency() {
+        return virtualThreadConcurrency;
+    }
+
+    /**
+     * @return true, if the pool is started and processes the workflow instances on virtual threads
+     */
+    public synchronized boolean isRunningOnVirtualThreads() {
+        return concurrencyLimit != null;
     }
 
     /**
@@ -123,6 +192,16 @@ public abstract class PriorityProcessorPool implements ProcessorPool, ProcessorP
     }
 
     private void updateThreads() {
+        if (concurrencyLimit != null) {
+            if (workerThreads.isEmpty()) {
+                final ProcessorFactory factory = processorFactory;
+                final Processor p = new VirtualThreadDispatcher(id + "#dispatcher", queue, threadPriority, engine,
+                        () -> factory.newProcessor(id + "#v", queue, threadPriority, engine), VirtualThreads.newThreadFactory(id + "#v"), concurrencyLimit);
+                p.start();
+                workerThreads.add(p);
+            }
+            return;
+        }
         if (numberOfThreads == workerThreads.size())
             return;
         while (numberOfThreads < workerThreads.size()) {
@@ -177,6 +256,7 @@ public abstract class PriorityProcessorPool implements ProcessorPool, ProcessorP
         synchronized (queue) {
             queue.notifyAll();
         }
+        queue.signalAll();
 
         for (Processor p : workerThreads) {
             p.shutdown();
@@ -194,6 +274,18 @@ public abstract class PriorityProcessorPool implements ProcessorPool, ProcessorP
                 logger.warn("Unexpected InterruptedException while waiting for 'join' to return", e);
             }
         }
+        if (concurrencyLimit != null) {
+            // wait for the workflow instances still running on virtual threads
+            final long maxWait = endTS - System.currentTimeMillis();
+            try {
+                final int limit = concurrencyLimit.getLimit();
+                if (maxWait > 0 && concurrencyLimit.tryAcquire(limit, maxWait, TimeUnit.MILLISECONDS)) {
+                    concurrencyLimit.release(limit);
+                }
+            } catch (InterruptedException e) {
+                logger.warn("Unexpected InterruptedException while waiting for virtual threads to finish", e);
+            }
+        }
         
         state = ProcessorPoolState.down;
     }
@@ -210,6 +302,13 @@ public abstract class PriorityProcessorPool implements ProcessorPool, ProcessorP
         logger.info("ProcessorPool " + id + ": Starting up");
 
         started = true;
+        if (virtualThreadConcurrency > 0) {
+            if (VirtualThreads.isSupported()) {
+                concurrencyLimit = new VirtualThreadDispatcher.ConcurrencyLimit(virtualThreadConcurrency);
+            } else {
+                logger.warn("ProcessorPool " + id + ": Virtual threads are not supported by this JDK - using " + numberOfThreads + " platform threads");
+            }
+        }
         updateThreads();
         
         state = ProcessorPoolState.running;
@@ -256,6 +355,9 @@ public abstract class PriorityProcessorPool implements ProcessorPool, ProcessorP
     
     @Override
     public synchronized int getNumberOfActiveThreads() {
+        if (concurrencyLimit != null) {
+            return concurrencyLimit.getNumberOfActive();
+        }
         int rv = 0;
         for (Processor p : workerThreads) {
             rv += p.isIdle() ? 0 : 1;
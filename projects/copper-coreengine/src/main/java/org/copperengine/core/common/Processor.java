@@ -20,6 +20,7 @@ import java.util.Queue;
 import org.copperengine.core.ProcessingEngine;
 import org.copperengine.core.Workflow;
 import org.copperengine.core.instrument.Transformed;
+import org.copperengine.core.internal.SuspendableQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,11 +36,14 @@ public abstract class Processor extends Thread {
     protected volatile boolean shutdown = false;
     protected final ProcessingEngine engine;
     protected ProcessingHook processingHook = new MDCProcessingHook();
-    private boolean idle = false; 
+    private volatile boolean idle = false; 
+    private final SuspendableQueue<Workflow<?>> concurrentQueue;
 
+    @SuppressWarnings("unchecked")
     public Processor(String name, Queue<Workflow<?>> queue, int prio, final ProcessingEngine engine) {
         super(name);
         this.queue = queue;
+        this.concurrentQueue = queue instanceof SuspendableQueue && ((SuspendableQueue<?>) queue).isConcurrent() ? (SuspendableQueue<Workflow<?>>) queue : null;
         this.setPriority(prio);
         this.engine = engine;
     }
@@ -61,18 +65,7 @@ public abstract class Processor extends Thread {
         logger.info("started");
         while (!shutdown) {
             try {
-                Workflow<?> wf = null;
-                synchronized (queue) {
-                    wf = queue.poll();
-                    if (wf == null) {
-                        logger.trace("queue is empty - waiting");
-                        idle = true;
-                        queue.wait();
-                        idle = false;
-                        logger.trace("waking up again...");
-                        wf = queue.poll();
-                    }
-                }
+                final Workflow<?> wf = dequeue();
                 if (!shutdown && wf != null) {
                     if (wf.getClass().getAnnotation(Transformed.class) == null) {
                         throw new RuntimeException(wf.getClass().getName() + " has not been transformed");
@@ -94,6 +87,42 @@ public abstract class Processor extends Thread {
         logger.info("stopped");
     }
 
+    /**
+     * Retrieves the next workflow instance from the queue, waiting if the queue is empty.
+     *
+     * @return the next workflow instance or null, if the processor was woken up without a workflow instance being
+     *         available
+     * @throws InterruptedException
+     *         if interrupted while waiting
+     */
+    protected final Workflow<?> dequeue() throws InterruptedException {
+        if (concurrentQueue != null) {
+            Workflow<?> wf = concurrentQueue.poll();
+            if (wf == null) {
+                logger.trace("queue is empty - waiting");
+                idle = true;
+                try {
+                    wf = concurrentQueue.take();
+                } finally {
+                    idle = false;
+                }
+            }
+            return wf;
+        }
+        synchronized (queue) {
+            Workflow<?> wf = queue.poll();
+            if (wf == null) {
+                logger.trace("queue is empty - waiting");
+                idle = true;
+                queue.wait();
+                idle = false;
+                logger.trace("waking up again...");
+                wf = queue.poll();
+            }
+            return wf;
+        }
+    }
+
     protected void postProcess(Workflow<?> wf) {
         if (processingHook != null) {
             processingHook.postProcess(wf);
@@ -109,8 +138,6 @@ public abstract class Processor extends Thread {
     protected abstract void process(Workflow<?> wf);
     
     public boolean isIdle() {
-        synchronized (queue) {
-            return idle;
-        }
+        return idle;
     }
 }
@@ -24,6 +24,7 @@ import org.copperengine.management.AuditTrailQueryMXBean;
 import org.copperengine.management.BatcherMXBean;
 import org.copperengine.management.DBStorageMXBean;
 import org.copperengine.management.DatabaseDialectMXBean;
+import org.copperengine.management.EarlyResponseContainerMXBean;
 import org.copperengine.management.ProcessingEngineMXBean;
 import org.copperengine.management.ProcessorPoolMXBean;
 import org.copperengine.management.StatisticsCollectorMXBean;
@@ -47,6 +48,7 @@ public class SimpleJmxExporter extends AbstractJmxExporter {
     private Map<String, DatabaseDialectMXBean> databaseDialectMXBeans = new HashMap<>();
     private Map<String, DBStorageMXBean> dbStorageMXBeans = new HashMap<>();
     private Map<String, AuditTrailQueryMXBean> auditTrailQueryMXBeans = new HashMap<>();
+    private Map<String, EarlyResponseContainerMXBean> earlyResponseContainerMXBeans = new HashMap<>();
 
     public void addWorkflowRepositoryMXBean(String mxbeanName, WorkflowRepositoryMXBean workflowRepositoryMXBean) {
         this.workflowRepositoryMXBeans.put(mxbeanName, workflowRepositoryMXBean);
@@ -84,6 +86,10 @@ public class SimpleJmxExporter extends AbstractJmxExporter {
         this.auditTrailQueryMXBeans.put(mxbeanName, auditTrailQueryMXBean);
     }
 
+    public void addEarlyResponseContainerMXBean(String mxbeanName, EarlyResponseContainerMXBean earlyResponseContainerMXBean) {
+        this.earlyResponseContainerMXBeans.put(mxbeanName, earlyResponseContainerMXBean);
+    }
+
     @Override
     public Map<String, WorkflowRepositoryMXBean> getWorkflowRepositoryMXBeans() {
         return workflowRepositoryMXBeans;
@@ -164,6 +170,15 @@ public class SimpleJmxExporter extends AbstractJmxExporter {
         this.auditTrailQueryMXBeans = auditTrailQueryMXBeans;
     }
 
+    @Override
+    public Map<String, EarlyResponseContainerMXBean> getEarlyResponseContainerMXBeans() {
+        return earlyResponseContainerMXBeans;
+    }
+
+    public void setEarlyResponseContainerMXBeans(Map<String, EarlyResponseContainerMXBean> earlyResponseContainerMXBeans) {
+        this.earlyResponseContainerMXBeans = earlyResponseContainerMXBeans;
+    }
+
     private static <T> Map<String, T> createSingletonMap(String key, T object) {
         if (object != null) {
             return Collections.singletonMap(key, object);
@@ -0,0 +1,416 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed hierarchical timing wheel, used by the timing wheel based timeout managers.
+ * <p>
+ * Time is divided into ticks of <code>tickMillis</code>. The wheel consists of {@value #LEVELS} levels of
+ * {@value #WHEEL_SIZE} buckets each, a bucket of level <code>n</code> spans <code>WHEEL_SIZE^n</code> ticks. A timeout
+ * is linked into the bucket of the lowest level that covers its deadline and is moved down one level when the
+ * wheel turns over its bucket, so scheduling and cancelling are O(1), no matter how many timeouts are pending.
+ * Timeouts beyond the range of the top level are linked with the last deadline in range and are linked again, when
+ * the wheel reaches that deadline.
+ * <p>
+ * {@link #schedule(long, Object)} and {@link Timeout#cancel()} never block: they hand the timeout over to the wheel
+ * thread via lock free queues, which is the only thread touching the buckets. Expired timeouts are passed in batches
+ * to a pool of dispatcher threads, which call the <code>action</code> for each of them in parallel. With zero
+ * dispatcher threads, the wheel thread calls the <code>action</code> itself.
+ * <p>
+ * Like the <code>DefaultTimeoutManager</code>s, a timeout expires at the first tick boundary after its timeout
+ * timestamp.
+ *
+ * @param <T>
+ *        type of the task attached to a timeout
+ */
+public final class TimingWheel<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    static final int WHEEL_BITS = 8;
+    static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    static final int LEVELS = 4;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int DISPATCH_BATCH_SIZE = 256;
+
+    private static final int STATE_INIT = 0;
+    private static final int STATE_CANCELLED = 1;
+    private static final int STATE_EXPIRED = 2;
+
+    /**
+     * A scheduled timeout.
+     *
+     * @param <T>
+     *        type of the attached task
+     */
+    public static final class Timeout<T> {
+        private final TimingWheel<T> wheel;
+        private final T task;
+        private final long deadlineTick;
+        private final AtomicInteger state = new AtomicInteger(STATE_INIT);
+
+        // guarded by the wheel thread
+        private Bucket<T> bucket;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        Timeout(TimingWheel<T> wheel, T task, long deadlineTick) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public T getTask() {
+            return task;
+        }
+
+        /**
+         * Cancels this timeout.
+         *
+         * @return <code>true</code> if the timeout was cancelled, <code>false</code> if it was already cancelled or
+         *         has expired
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(STATE_INIT, STATE_CANCELLED))
+                return false;
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == STATE_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == STATE_EXPIRED;
+        }
+    }
+
+    private static final class Bucket<T> {
+        private Timeout<T> head;
+        private Timeout<T> tail;
+
+        void add(Timeout<T> timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout<T> timeout) {
+            if (timeout.prev != null)
+                timeout.prev.next = timeout.next;
+            else
+                head = timeout.next;
+            if (timeout.next != null)
+                timeout.next.prev = timeout.prev;
+            else
+                tail = timeout.prev;
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+
+        Timeout<T> clear() {
+            final Timeout<T> first = head;
+            head = tail = null;
+            return first;
+        }
+    }
+
+    private final String name;
+    private final long tickMillis;
+    private final int numberOfDispatcherThreads;
+    private final Consumer<Timeout<T>> action;
+    private final int levels;
+    private final long maxRange;
+    private final Bucket<T>[][] buckets;
+    private final Queue<Timeout<T>> pending = new ConcurrentLinkedQueue<Timeout<T>>();
+    private final Queue<Timeout<T>> cancelled = new ConcurrentLinkedQueue<Timeout<T>>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    // guarded by the wheel thread
+    private long nextTick;
+    private int numberOfLinkedTimeouts;
+
+    private volatile boolean idle = false;
+    private volatile boolean shutdown = false;
+    private Thread thread;
+    private ExecutorService dispatcher;
+
+    /**
+     * @param name
+     *        name of the wheel thread, the dispatcher threads are named after it
+     * @param tickMillis
+     *        resolution of the wheel in milliseconds
+     * @param numberOfDispatcherThreads
+     *        number of threads calling the <code>action</code> for expired timeouts
+     * @param action
+     *        called for each expired timeout
+     */
+    public TimingWheel(String name, long tickMillis, int numberOfDispatcherThreads, Consumer<Timeout<T>> action) {
+        this(name, tickMillis, numberOfDispatcherThreads, action, LEVELS);
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    TimingWheel(String name, long tickMillis, int numberOfDispatcherThreads, Consumer<Timeout<T>> action, int levels) {
+        if (tickMillis <= 0)
+            throw new IllegalArgumentException("tickMillis must be > 0");
+        if (numberOfDispatcherThreads < 0)
+            throw new IllegalArgumentException("numberOfDispatcherThreads must be >= 0");
+        if (action == null)
+            throw new NullPointerException();
+        this.name = name;
+        this.tickMillis = tickMillis;
+        this.numberOfDispatcherThreads = numberOfDispatcherThreads;
+        this.action = action;
+        this.levels = levels;
+        this.maxRange = (1L << (WHEEL_BITS * levels)) - 1;
+        this.buckets = new Bucket[levels][WHEEL_SIZE];
+        for (int level = 0; level < levels; level++) {
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                buckets[level][i] = new Bucket<T>();
+            }
+        }
+    }
+
+    public synchronized void startup() {
+        if (thread != null)
+            throw new IllegalStateException("already started");
+        if (numberOfDispatcherThreads > 0) {
+            final AtomicInteger threadCounter = new AtomicInteger();
+            final ThreadFactory threadFactory = r -> {
+                Thread t = new Thread(r, name + "-Dispatcher#" + threadCounter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            };
+            dispatcher = new ThreadPoolExecutor(numberOfDispatcherThreads, numberOfDispatcherThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+        }
+        nextTick = System.currentTimeMillis() / tickMillis + 1;
+        thread = new Thread(name) {
+            @Override
+            public void run() {
+                TimingWheel.this.run();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void shutdown() {
+        if (shutdown)
+            return;
+        shutdown = true;
+        if (thread != null)
+            LockSupport.unpark(thread);
+        if (dispatcher != null)
+            dispatcher.shutdown();
+    }
+
+    /**
+     * Schedules a timeout, that expires at the first tick boundary after <code>timeoutTS</code>.
+     *
+     * @param timeoutTS
+     *        timeout timestamp in milliseconds since the epoch
+     * @param task
+     *        task attached to the timeout
+     * @return the scheduled timeout
+     */
+    public Timeout<T> schedule(long timeoutTS, T task) {
+        final Timeout<T> timeout = new Timeout<T>(this, task, timeoutTS / tickMillis + 1);
+        size.incrementAndGet();
+        pending.add(timeout);
+        if (idle)
+            LockSupport.unpark(thread);
+        return timeout;
+    }
+
+    /**
+     * @return the number of scheduled timeouts, that did not expire yet
+     */
+    public int size() {
+        return size.get();
+    }
+
+    private void run() {
+        logger.info("started");
+        final List<Timeout<T>> expired = new ArrayList<Timeout<T>>();
+        while (!shutdown) {
+            try {
+                processCancelled();
+                processPending();
+                final long currentTick = System.currentTimeMillis() / tickMillis;
+                while (nextTick <= currentTick) {
+                    if (numberOfLinkedTimeouts == 0) {
+                        // nothing to expire, skip the remaining ticks
+                        nextTick = currentTick + 1;
+                        break;
+                    }
+                    advance(expired);
+                }
+                if (!expired.isEmpty()) {
+                    if (logger.isDebugEnabled())
+                        logger.debug(expired.size() + " timeouts expired");
+                    dispatch(expired);
+                    expired.clear();
+                }
+                if (numberOfLinkedTimeouts == 0) {
+                    idle = true;
+                    if (pending.isEmpty() && cancelled.isEmpty() && !shutdown) {
+                        LockSupport.park(this);
+                    }
+                    idle = false;
+                } else {
+                    final long delay = nextTick * tickMillis - System.currentTimeMillis();
+                    if (delay > 0) {
+                        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(delay));
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("Unexpected exception:", e);
+            }
+        }
+        logger.info("stopped");
+    }
+
+    private void processCancelled() {
+        Timeout<T> timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+                numberOfLinkedTimeouts--;
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    private void processPending() {
+        Timeout<T> timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.state.get() == STATE_CANCELLED) {
+                // cancelled before it was linked into a bucket
+                size.decrementAndGet();
+            } else {
+                link(timeout);
+                numberOfLinkedTimeouts++;
+            }
+        }
+    }
+
+    private void link(Timeout<T> timeout) {
+        long deadlineTick = Math.max(timeout.deadlineTick, nextTick);
+        long delta = deadlineTick - nextTick;
+        if (delta > maxRange) {
+            delta = maxRange;
+            deadlineTick = nextTick + maxRange;
+        }
+        int level = 0;
+        while (level < levels - 1 && delta >= 1L << (WHEEL_BITS * (level + 1))) {
+            level++;
+        }
+        buckets[level][(int) (deadlineTick >>> (WHEEL_BITS * level)) & WHEEL_MASK].add(timeout);
+    }
+
+    private void advance(List<Timeout<T>> expired) {
+        final int index = (int) nextTick & WHEEL_MASK;
+        if (index == 0) {
+            for (int level = 1; level < levels; level++) {
+                final int levelIndex = (int) (nextTick >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+                cascade(buckets[level][levelIndex]);
+                if (levelIndex != 0)
+                    break;
+            }
+        }
+        Timeout<T> timeout = buckets[0][index].clear();
+        while (timeout != null) {
+            final Timeout<T> next = timeout.next;
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+            if (timeout.deadlineTick > nextTick) {
+                // was linked with the last deadline in range
+                link(timeout);
+            } else {
+                numberOfLinkedTimeouts--;
+                size.decrementAndGet();
+                if (timeout.state.compareAndSet(STATE_INIT, STATE_EXPIRED)) {
+                    expired.add(timeout);
+                }
+            }
+            timeout = next;
+        }
+        nextTick++;
+    }
+
+    private void cascade(Bucket<T> bucket) {
+        Timeout<T> timeout = bucket.clear();
+        while (timeout != null) {
+            final Timeout<T> next = timeout.next;
+            timeout.prev = null;
+            timeout.next = null;
+            link(timeout);
+            timeout = next;
+        }
+    }
+
+    private void dispatch(List<Timeout<T>> expired) {
+        if (dispatcher == null) {
+            fire(expired);
+            return;
+        }
+        for (int i = 0; i < expired.size(); i += DISPATCH_BATCH_SIZE) {
+            final List<Timeout<T>> batch = new ArrayList<Timeout<T>>(expired.subList(i, Math.min(i + DISPATCH_BATCH_SIZE, expired.size())));
+            try {
+                dispatcher.execute(() -> fire(batch));
+            } catch (RejectedExecutionException e) {
+                if (!shutdown)
+                    throw e;
+            }
+        }
+    }
+
+    private void fire(List<Timeout<T>> timeouts) {
+        for (Timeout<T> timeout : timeouts) {
+            try {
+                action.accept(timeout);
+            } catch (Exception e) {
+                logger.error("Timeout action failed", e);
+            }
+        }
+    }
+
+}
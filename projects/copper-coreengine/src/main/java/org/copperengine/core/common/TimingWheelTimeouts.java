@@ -0,0 +1,133 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.common;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Pending timeouts on a {@link TimingWheel}, keyed by an id. This is the part shared by the timing wheel based timeout
+ * managers of the transient and the hybrid engine.
+ * <p>
+ * An id has at most one pending timeout, scheduling it again replaces the previous timeout. Scheduling and
+ * cancelling are O(1) and do not contend on a global lock. The <code>action</code> is called with the id and the task
+ * of each expired timeout by the dispatcher threads of the wheel, i.e. in parallel.
+ *
+ * @param <T>
+ *        type of the task attached to a timeout
+ */
+public final class TimingWheelTimeouts<T> {
+
+    private final String name;
+    private final BiConsumer<String, T> action;
+    private final ConcurrentMap<String, TimingWheel.Timeout<Entry<String, T>>> timeouts = new ConcurrentHashMap<String, TimingWheel.Timeout<Entry<String, T>>>();
+    private long tickMillis = 25;
+    private int numberOfDispatcherThreads = Runtime.getRuntime().availableProcessors();
+    private volatile TimingWheel<Entry<String, T>> wheel;
+
+    public TimingWheelTimeouts(String name, BiConsumer<String, T> action) {
+        if (name == null || action == null)
+            throw new NullPointerException();
+        this.name = name;
+        this.action = action;
+    }
+
+    /**
+     * Sets the resolution of the timing wheel in milliseconds. Defaults to 25.
+     */
+    public void setTickMillis(long tickMillis) {
+        if (tickMillis <= 0)
+            throw new IllegalArgumentException("tickMillis must be > 0");
+        this.tickMillis = tickMillis;
+    }
+
+    /**
+     * Sets the number of threads calling the <code>action</code> for expired timeouts. Defaults to the number of
+     * available processors.
+     */
+    public void setNumberOfDispatcherThreads(int numberOfDispatcherThreads) {
+        if (numberOfDispatcherThreads < 0)
+            throw new IllegalArgumentException("numberOfDispatcherThreads must be >= 0");
+        this.numberOfDispatcherThreads = numberOfDispatcherThreads;
+    }
+
+    public synchronized void startup() {
+        if (wheel != null)
+            throw new IllegalStateException("already started");
+        final TimingWheel<Entry<String, T>> wheel = new TimingWheel<Entry<String, T>>(name, tickMillis, numberOfDispatcherThreads, this::onTimeout);
+        wheel.startup();
+        this.wheel = wheel;
+    }
+
+    public synchronized void shutdown() {
+        if (wheel != null)
+            wheel.shutdown();
+    }
+
+    /**
+     * @return the number of pending timeouts
+     */
+    public int size() {
+        return timeouts.size();
+    }
+
+    private void onTimeout(TimingWheel.Timeout<Entry<String, T>> timeout) {
+        final Entry<String, T> entry = timeout.getTask();
+        if (timeouts.remove(entry.getKey(), timeout)) {
+            action.accept(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Schedules the timeout of <code>id</code>, replacing its pending timeout if there is one.
+     *
+     * @throws IllegalStateException
+     *         if not yet started
+     */
+    public void schedule(final String id, final long timeoutTS, final T task) {
+        final TimingWheel<Entry<String, T>> wheel = startedWheel();
+        // scheduled within compute, so that an early expiry finds the timeout in the map
+        timeouts.compute(id, (key, previous) -> {
+            if (previous != null)
+                previous.cancel();
+            return wheel.schedule(timeoutTS, new SimpleImmutableEntry<String, T>(key, task));
+        });
+    }
+
+    /**
+     * Cancels the pending timeout of <code>id</code>, if there is one.
+     *
+     * @throws IllegalStateException
+     *         if not yet started
+     */
+    public void cancel(final String id) {
+        startedWheel();
+        final TimingWheel.Timeout<Entry<String, T>> timeout = timeouts.remove(id);
+        if (timeout != null)
+            timeout.cancel();
+    }
+
+    private TimingWheel<Entry<String, T>> startedWheel() {
+        final TimingWheel<Entry<String, T>> wheel = this.wheel;
+        if (wheel == null)
+            throw new IllegalStateException("timeout manager not yet started!");
+        return wheel;
+    }
+
+}
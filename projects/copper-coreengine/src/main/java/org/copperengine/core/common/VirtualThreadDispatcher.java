@@ -0,0 +1,136 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.common;
+
+import java.util.Queue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+
+import org.copperengine.core.ProcessingEngine;
+import org.copperengine.core.Workflow;
+import org.copperengine.core.instrument.Transformed;
+
+/**
+ * Dequeues the workflow instances of a {@link PriorityProcessorPool} that runs on virtual threads and starts a new
+ * virtual thread for each of them. Each workflow instance is processed by its own {@link Processor}, created by the
+ * pool's {@link ProcessorFactory} and never started itself, so processors keep their per instance state like the
+ * processing hook to a single workflow instance, as in the platform thread mode. An unstarted processor is a plain
+ * object, no thread is created for it.
+ * <p>
+ * The number of concurrently processed workflow instances is limited by the permits of the {@link ConcurrencyLimit}.
+ * A permit is taken before dequeueing, so the instances keep their priority order while the limit is reached.
+ */
+class VirtualThreadDispatcher extends Processor {
+
+    /**
+     * A semaphore whose number of permits may be changed at runtime.
+     */
+    static final class ConcurrencyLimit extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        private int limit;
+
+        ConcurrencyLimit(int limit) {
+            super(limit);
+            this.limit = limit;
+        }
+
+        synchronized void setLimit(int limit) {
+            if (limit > this.limit) {
+                release(limit - this.limit);
+            } else if (limit < this.limit) {
+                reducePermits(this.limit - limit);
+            }
+            this.limit = limit;
+        }
+
+        synchronized int getLimit() {
+            return limit;
+        }
+
+        int getNumberOfActive() {
+            return Math.max(0, getLimit() - availablePermits());
+        }
+    }
+
+    private final Supplier<Processor> executorFactory;
+    private final ThreadFactory threadFactory;
+    private final ConcurrencyLimit concurrencyLimit;
+
+    VirtualThreadDispatcher(String name, Queue<Workflow<?>> queue, int prio, ProcessingEngine engine, Supplier<Processor> executorFactory, ThreadFactory threadFactory, ConcurrencyLimit concurrencyLimit) {
+        super(name, queue, prio, engine);
+        this.executorFactory = executorFactory;
+        this.threadFactory = threadFactory;
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    @Override
+    public void run() {
+        logger.info("started");
+        while (!shutdown) {
+            try {
+                concurrencyLimit.acquire();
+                boolean dispatched = false;
+                try {
+                    final Workflow<?> wf = dequeue();
+                    if (!shutdown && wf != null) {
+                        if (wf.getClass().getAnnotation(Transformed.class) == null) {
+                            throw new RuntimeException(wf.getClass().getName() + " has not been transformed");
+                        }
+                        threadFactory.newThread(() -> execute(wf)).start();
+                        dispatched = true;
+                    }
+                } finally {
+                    if (!dispatched) {
+                        concurrencyLimit.release();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // ignore
+            } catch (Throwable t) {
+                logger.error("", t);
+            }
+        }
+        logger.info("stopped");
+    }
+
+    private void execute(Workflow<?> wf) {
+        try {
+            final Processor executor = executorFactory.get();
+            executor.preProcess(wf);
+            try {
+                executor.process(wf);
+            } finally {
+                executor.postProcess(wf);
+            }
+        } catch (Throwable t) {
+            logger.error("", t);
+        } finally {
+            concurrencyLimit.release();
+        }
+    }
+
+    @Override
+    protected void process(Workflow<?> wf) {
+        executorFactory.get().process(wf);
+    }
+
+    @Override
+    public boolean isIdle() {
+        return concurrencyLimit.getNumberOfActive() == 0;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.common;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to the virtual threads of JDK 21 and later. COPPER is compiled for Java 8, so the API is called via
+ * reflection.
+ */
+final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL = lookup(Thread.class, "ofVirtual");
+    private static final Method IS_VIRTUAL = lookup(Thread.class, "isVirtual");
+
+    private VirtualThreads() {
+    }
+
+    private static Method lookup(Class<?> c, String name, Class<?>... parameterTypes) {
+        try {
+            return c.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true, if the runtime JDK supports virtual threads
+     */
+    static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @return true, if the thread is a virtual thread
+     */
+    static boolean isVirtual(Thread thread) {
+        try {
+            return IS_VIRTUAL != null && (Boolean) IS_VIRTUAL.invoke(thread);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a factory for virtual threads named <code>prefix</code> followed by a counter.
+     *
+     * @throws UnsupportedOperationException
+     *         if the runtime JDK does not support virtual threads
+     */
+    static ThreadFactory newThreadFactory(String prefix) {
+        if (!isSupported())
+            throw new UnsupportedOperationException("virtual threads require JDK 21 or later");
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Object builder = OF_VIRTUAL.invoke(null);
+            final Object namedBuilder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(namedBuilder);
+        } catch (Exception e) {
+            throw new UnsupportedOperationException("unable to create virtual thread factory", e);
+        }
+    }
+}
@@ -18,9 +18,12 @@ package org.copperengine.core.instrument;
 import java.io.Serializable;
 import java.util.List;
 
+import org.copperengine.core.instrument.MethodInfo.LabelInfo;
+
 public class ClassInfo implements Serializable {
 
     private static final long serialVersionUID = 1L;
+    private static final String NEWLINE = System.getProperty("line.separator");
 
     final List<MethodInfo> methodInfos;
     ClassInfo superClassInfo;
@@ -46,6 +49,61 @@ public class ClassInfo implements Serializable {
         return superClassInfo;
     }
 
+    /**
+     * Returns the info of the method with the given name and descriptor, searching the super classes if necessary.
+     *
+     * @return the method info or null, if not found
+     */
+    public MethodInfo getMethodInfo(String methodName, String descriptor) {
+        for (MethodInfo info : methodInfos) {
+            if (info.getMethodName().equals(methodName) && info.getDescriptor().equals(descriptor)) {
+                return info;
+            }
+        }
+        return superClassInfo != null ? superClassInfo.getMethodInfo(methodName, descriptor) : null;
+    }
+
+    /**
+     * Formats a wait site like a stack trace, innermost call first.
+     *
+     * @param jumpNos
+     *        jump numbers of the interruptible calls in the call chain, starting with the call in <code>main()</code>
+     * @return the stack trace or null, if the wait site does not match this class info
+     */
+    public String formatWaitSite(int[] jumpNos) {
+        final String[] frames = new String[jumpNos.length];
+        String methodName = "main";
+        String descriptor = "()V";
+        for (int i = 0; i < jumpNos.length; i++) {
+            final MethodInfo info = getMethodInfo(methodName, descriptor);
+            if (info == null || jumpNos[i] < 0 || jumpNos[i] >= info.getLabelInfos().size())
+                return null;
+            final LabelInfo labelInfo = info.getLabelInfos().get(jumpNos[i]);
+            frames[i] = formatFrame(info, labelInfo.getLineNo());
+            methodName = labelInfo.getCalledMethodName();
+            descriptor = labelInfo.getCalledMethodDescriptor();
+        }
+        final StringBuilder sb = new StringBuilder(128);
+        for (int i = frames.length - 1; i >= 0; i--) {
+            if (sb.length() != 0)
+                sb.append(NEWLINE);
+            sb.append(frames[i]);
+        }
+        return sb.toString();
+    }
+
+    private static String formatFrame(MethodInfo info, Integer lineNo) {
+        final String className = info.getDefiningClass();
+        String sourceFile = className.substring(className.lastIndexOf('/') + 1);
+        if (sourceFile.indexOf('$') >= 0)
+            sourceFile = sourceFile.substring(0, sourceFile.indexOf('$'));
+        final StringBuilder sb = new StringBuilder(100);
+        sb.append(className.replace('/', '.')).append('.').append(info.getMethodName()).append('(').append(sourceFile).append(".java");
+        if (lineNo != null)
+            sb.append(':').append(lineNo);
+        return sb.append(')').toString();
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder(2000);
@@ -60,4 +118,4 @@ public class ClassInfo implements Serializable {
         return sourceCode;
     }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
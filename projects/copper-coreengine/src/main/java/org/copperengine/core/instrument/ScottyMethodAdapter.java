@@ -75,6 +75,26 @@ class ScottyMethodAdapter extends MethodVisitor implements Opcodes {
         visitLabel(begin);
     }
 
+    private static boolean isIntegral(Type t) {
+        return t == Type.BOOLEAN_TYPE || t == Type.BYTE_TYPE || t == Type.SHORT_TYPE || t == Type.INT_TYPE || t == Type.CHAR_TYPE || t == Type.LONG_TYPE;
+    }
+
+    private static boolean isFloatingPoint(Type t) {
+        return t == Type.FLOAT_TYPE || t == Type.DOUBLE_TYPE;
+    }
+
+    private static boolean hasLocals(StackInfo info, boolean floatingPoint) {
+        for (int i = 0; i < info.localsSize(); ++i) {
+            Type t = info.getLocal(i);
+            if (t != null && (floatingPoint ? isFloatingPoint(t) : isIntegral(t)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * pushes the object locals, the integral locals (long[] or null) and the floating point locals (double[] or null)
+     */
     void pushLocals(StackInfo info) {
         super.visitIntInsn(SIPUSH, info.localsSize());
         super.visitTypeInsn(ANEWARRAY, "java/lang/Object");
@@ -83,18 +103,14 @@ class ScottyMethodAdapter extends MethodVisitor implements Opcodes {
             if (t != null) {
                 super.visitInsn(DUP);
                 super.visitIntInsn(SIPUSH, i);
-                if (t == Type.BOOLEAN_TYPE || t == Type.BYTE_TYPE || t == Type.SHORT_TYPE || t == Type.INT_TYPE || t == Type.CHAR_TYPE) {
-                    super.visitVarInsn(ILOAD, i);
-                    super.visitMethodInsn(INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;", false);
-                } else if (t == Type.FLOAT_TYPE) {
-                    super.visitVarInsn(FLOAD, i);
-                    super.visitMethodInsn(INVOKESTATIC, "java/lang/Float", "valueOf", "(F)Ljava/lang/Float;", false);
-                } else if (t == Type.LONG_TYPE) {
-                    super.visitVarInsn(LLOAD, i);
-                    super.visitMethodInsn(INVOKESTATIC, "java/lang/Long", "valueOf", "(J)Ljava/lang/Long;", false);
+                if (t == Type.LONG_TYPE) {
+                    super.visitFieldInsn(GETSTATIC, "org/copperengine/core/StackEntry", "LONG_SLOT", "Ljava/lang/Object;");
                 } else if (t == Type.DOUBLE_TYPE) {
-                    super.visitVarInsn(DLOAD, i);
-                    super.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;", false);
+                    super.visitFieldInsn(GETSTATIC, "org/copperengine/core/StackEntry", "DOUBLE_SLOT", "Ljava/lang/Object;");
+                } else if (t == Type.FLOAT_TYPE) {
+                    super.visitFieldInsn(GETSTATIC, "org/copperengine/core/StackEntry", "FLOAT_SLOT", "Ljava/lang/Object;");
+                } else if (isIntegral(t)) {
+                    super.visitFieldInsn(GETSTATIC, "org/copperengine/core/StackEntry", "INT_SLOT", "Ljava/lang/Object;");
                 } else if (t == StackInfo.AconstNullType) {
                     super.visitInsn(ACONST_NULL);
                 } else {
@@ -103,52 +119,109 @@ class ScottyMethodAdapter extends MethodVisitor implements Opcodes {
                 super.visitInsn(AASTORE);
             }
         }
+        pushPrimitiveLocals(info, false);
+        pushPrimitiveLocals(info, true);
     }
 
-    void recreateLocals(StackInfo info) {
-        if (info.localsSize() == 0)
+    private void pushPrimitiveLocals(StackInfo info, boolean floatingPoint) {
+        if (!hasLocals(info, floatingPoint)) {
+            super.visitInsn(ACONST_NULL);
             return;
+        }
+        super.visitIntInsn(SIPUSH, info.localsSize());
+        super.visitIntInsn(NEWARRAY, floatingPoint ? T_DOUBLE : T_LONG);
+        for (int i = 0; i < info.localsSize(); ++i) {
+            Type t = info.getLocal(i);
+            if (t != null && (floatingPoint ? isFloatingPoint(t) : isIntegral(t))) {
+                super.visitInsn(DUP);
+                super.visitIntInsn(SIPUSH, i);
+                if (t == Type.LONG_TYPE) {
+                    super.visitVarInsn(LLOAD, i);
+                    super.visitInsn(LASTORE);
+                } else if (t == Type.DOUBLE_TYPE) {
+                    super.visitVarInsn(DLOAD, i);
+                    super.visitInsn(DASTORE);
+                } else if (t == Type.FLOAT_TYPE) {
+                    super.visitVarInsn(FLOAD, i);
+                    super.visitInsn(F2D);
+                    super.visitInsn(DASTORE);
+                } else {
+                    super.visitVarInsn(ILOAD, i);
+                    super.visitInsn(I2L);
+                    super.visitInsn(LASTORE);
+                }
+            }
+        }
+    }
+
+    private void loadStackEntry() {
         visitVarInsn(ALOAD, 0);
         visitFieldInsn(GETFIELD, currentClassName, "__stack", "Ljava/util/Stack;");
         visitVarInsn(ALOAD, 0);
         visitFieldInsn(GETFIELD, currentClassName, "__stackPosition", "I");
         visitMethodInsn(INVOKEVIRTUAL, "java/util/Stack", "get", "(I)Ljava/lang/Object;");
         visitTypeInsn(CHECKCAST, "org/copperengine/core/StackEntry");
+    }
+
+    void recreateLocals(StackInfo info) {
+        if (info.localsSize() == 0)
+            return;
+        loadStackEntry();
         visitFieldInsn(GETFIELD, "org/copperengine/core/StackEntry", "locals", "[Ljava/lang/Object;");
         for (int i = 0; i < info.localsSize(); ++i) {
             Type t = info.getLocal(i);
-            if (t != null) {
+            if (t != null && !isIntegral(t) && !isFloatingPoint(t)) {
                 if (t != StackInfo.AconstNullType) {
                     super.visitInsn(DUP);
                     super.visitIntInsn(SIPUSH, i);
                     super.visitInsn(AALOAD);
+                    if (!t.getInternalName().equals(Type.getInternalName(Object.class)))
+                        super.visitTypeInsn(CHECKCAST, t.getInternalName());
                 } else {
                     super.visitInsn(ACONST_NULL);
                 }
-                if (t == Type.BOOLEAN_TYPE || t == Type.BYTE_TYPE || t == Type.SHORT_TYPE || t == Type.INT_TYPE || t == Type.CHAR_TYPE) {
-                    super.visitTypeInsn(CHECKCAST, Type.getInternalName(Integer.class));
-                    super.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Integer", "intValue", "()I", false);
-                    super.visitVarInsn(ISTORE, i);
-                } else if (t == Type.FLOAT_TYPE) {
-                    super.visitTypeInsn(CHECKCAST, Type.getInternalName(Float.class));
-                    super.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Float", "floatValue", "()F", false);
-                    super.visitVarInsn(FSTORE, i);
-                } else if (t == Type.LONG_TYPE) {
-                    super.visitTypeInsn(CHECKCAST, Type.getInternalName(Long.class));
-                    super.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Long", "longValue", "()J", false);
-                    super.visitVarInsn(LSTORE, i);
-                } else if (t == Type.DOUBLE_TYPE) {
-                    super.visitTypeInsn(CHECKCAST, Type.getInternalName(Double.class));
-                    super.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Double", "doubleValue", "()D", false);
-                    super.visitVarInsn(DSTORE, i);
-                } else {
-                    if (!t.getInternalName().equals(Type.getInternalName(Object.class)) && t != StackInfo.AconstNullType)
-                        super.visitTypeInsn(CHECKCAST, t.getInternalName());
-                    super.visitVarInsn(ASTORE, i);
-                }
+                super.visitVarInsn(ASTORE, i);
             }
         }
         visitInsn(POP);
+        if (hasLocals(info, false)) {
+            loadStackEntry();
+            visitFieldInsn(GETFIELD, "org/copperengine/core/StackEntry", "longLocals", "[J");
+            for (int i = 0; i < info.localsSize(); ++i) {
+                Type t = info.getLocal(i);
+                if (t != null && isIntegral(t)) {
+                    super.visitInsn(DUP);
+                    super.visitIntInsn(SIPUSH, i);
+                    super.visitInsn(LALOAD);
+                    if (t == Type.LONG_TYPE) {
+                        super.visitVarInsn(LSTORE, i);
+                    } else {
+                        super.visitInsn(L2I);
+                        super.visitVarInsn(ISTORE, i);
+                    }
+                }
+            }
+            visitInsn(POP);
+        }
+        if (hasLocals(info, true)) {
+            loadStackEntry();
+            visitFieldInsn(GETFIELD, "org/copperengine/core/StackEntry", "doubleLocals", "[D");
+            for (int i = 0; i < info.localsSize(); ++i) {
+                Type t = info.getLocal(i);
+                if (t != null && isFloatingPoint(t)) {
+                    super.visitInsn(DUP);
+                    super.visitIntInsn(SIPUSH, i);
+                    super.visitInsn(DALOAD);
+                    if (t == Type.DOUBLE_TYPE) {
+                        super.visitVarInsn(DSTORE, i);
+                    } else {
+                        super.visitInsn(D2F);
+                        super.visitVarInsn(FSTORE, i);
+                    }
+                }
+            }
+            visitInsn(POP);
+        }
     }
 
     void pushStack(StackInfo info) {
@@ -202,7 +275,7 @@ class ScottyMethodAdapter extends MethodVisitor implements Opcodes {
         visitInsn(POP);
         super.visitIntInsn(SIPUSH, idx);
         pushLocals(info);
-        visitMethodInsn(INVOKESPECIAL, "org/copperengine/core/StackEntry", "<init>", "([Ljava/lang/Object;I[Ljava/lang/Object;)V");
+        visitMethodInsn(INVOKESPECIAL, "org/copperengine/core/StackEntry", "<init>", "([Ljava/lang/Object;I[Ljava/lang/Object;[J[D)V");
         visitVarInsn(ALOAD, 0);
         visitFieldInsn(GETFIELD, currentClassName, "__stack", "Ljava/util/Stack;");
         visitInsn(SWAP);
@@ -213,12 +286,7 @@ class ScottyMethodAdapter extends MethodVisitor implements Opcodes {
     private void recreateStack(StackInfo info) {
         if (info.stackSize() == 0)
             return;
-        visitVarInsn(ALOAD, 0);
-        visitFieldInsn(GETFIELD, currentClassName, "__stack", "Ljava/util/Stack;");
-        visitVarInsn(ALOAD, 0);
-        visitFieldInsn(GETFIELD, currentClassName, "__stackPosition", "I");
-        visitMethodInsn(INVOKEVIRTUAL, "java/util/Stack", "get", "(I)Ljava/lang/Object;");
-        visitTypeInsn(CHECKCAST, "org/copperengine/core/StackEntry");
+        loadStackEntry();
         visitFieldInsn(GETFIELD, "org/copperengine/core/StackEntry", "stack", "[Ljava/lang/Object;");
         for (int i = 0; i < info.stackSize(); ++i) {
             Type t = info.getStack(i);
@@ -278,9 +346,13 @@ class ScottyMethodAdapter extends MethodVisitor implements Opcodes {
         // TODO: replace the above workaround with the following line when the spotbug issue has been solved
         // final String signature = name + desc;
         if (waitMethods.contains(signature)) {
+            int idx = interuptibleCalls.size();
+            // let the workflow know the position of this call, see Workflow.getLastWaitStackTrace
+            super.visitVarInsn(ALOAD, 0);
+            super.visitIntInsn(SIPUSH, idx);
+            super.visitFieldInsn(PUTFIELD, currentClassName, "__waitJumpNo", "I");
             super.visitMethodInsn(opcode, owner, name, desc, isInterface);
 
-            int idx = interuptibleCalls.size();
             StackInfo currentStackInfo = stackInfo.getCurrentStackInfo();
             Label label = new Label();
             InterruptibleCall call = new InterruptibleCall();
@@ -294,9 +366,7 @@ class ScottyMethodAdapter extends MethodVisitor implements Opcodes {
             if ("main".equals(name) && "()V".equals(desc)) {
                 visitInsn(RETURN);
             } else {
-                visitTypeInsn(NEW, "org/copperengine/core/Interrupt");
-                visitInsn(DUP);
-                visitMethodInsn(INVOKESPECIAL, "org/copperengine/core/Interrupt", "<init>", "()V", false);
+                visitFieldInsn(GETSTATIC, "org/copperengine/core/Interrupt", "INSTANCE", "Lorg/copperengine/core/Interrupt;");
                 visitInsn(ATHROW);
             }
             visitLabel(label);
@@ -373,7 +443,7 @@ class ScottyMethodAdapter extends MethodVisitor implements Opcodes {
 
     @Override
     public void visitMaxs(int maxStack, int maxLocals) {
-        super.visitMaxs(maxStack + 7, maxLocals);
+        super.visitMaxs(maxStack + 10, maxLocals);
     }
 
     @Override
@@ -19,26 +19,55 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.locks.LockSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Wraps the queue of a processor pool, so that the processors may be suspended.
+ * <p>
+ * By default the wrapped queue is not thread safe and all access is synchronized on the SuspendableQueue, idle
+ * processors wait on its monitor. If the wrapped queue is thread safe, the SuspendableQueue is <i>concurrent</i>: no
+ * monitor is needed, idle processors park in {@link #take()} and every element added to the queue unparks at most one
+ * of them.
+ */
 public class SuspendableQueue<T> implements Queue<T> {
 
     private static final Logger logger = LoggerFactory.getLogger(SuspendableQueue.class);
 
     private Queue<T> queue;
-    private boolean suspended = false;
+    private volatile boolean suspended = false;
+    private final ConcurrentLinkedDeque<Thread> waiters;
 
     public SuspendableQueue(Queue<T> queue) {
+        this(queue, false);
+    }
+
+    /**
+     * @param queue
+     *        the wrapped queue
+     * @param concurrent
+     *        true, if the wrapped queue is thread safe. Use {@link #take()} to wait for new elements in this case.
+     */
+    public SuspendableQueue(Queue<T> queue, boolean concurrent) {
         if (queue == null)
             throw new NullPointerException();
         this.queue = queue;
+        this.waiters = concurrent ? new ConcurrentLinkedDeque<Thread>() : null;
+    }
+
+    public boolean isConcurrent() {
+        return waiters != null;
     }
 
     public void setSuspended(boolean suspended) {
         logger.info("Setting suspended to {}", suspended);
         this.suspended = suspended;
+        if (!suspended) {
+            signalAll();
+        }
     }
 
     public boolean isSuspended() {
@@ -87,7 +116,9 @@ public class SuspendableQueue<T> implements Queue<T> {
 
     @Override
     public boolean addAll(Collection<? extends T> c) {
-        return queue.addAll(c);
+        final boolean rv = queue.addAll(c);
+        signal(c.size());
+        return rv;
     }
 
     @Override
@@ -107,12 +138,18 @@ public class SuspendableQueue<T> implements Queue<T> {
 
     @Override
     public boolean add(T e) {
-        return queue.add(e);
+        final boolean rv = queue.add(e);
+        signal(1);
+        return rv;
     }
 
     @Override
     public boolean offer(T e) {
-        return queue.offer(e);
+        final boolean rv = queue.offer(e);
+        if (rv) {
+            signal(1);
+        }
+        return rv;
     }
 
     @Override
@@ -147,4 +184,61 @@ public class SuspendableQueue<T> implements Queue<T> {
         return queue.peek();
     }
 
+    /**
+     * Retrieves and removes the head of a concurrent queue, waiting if necessary until an element becomes available
+     * and the queue is not suspended.
+     *
+     * @return the head of the queue
+     * @throws InterruptedException
+     *         if the current thread was interrupted while waiting
+     * @throws IllegalStateException
+     *         if the queue is not concurrent
+     */
+    public T take() throws InterruptedException {
+        if (waiters == null)
+            throw new IllegalStateException("queue is not concurrent");
+        final Thread current = Thread.currentThread();
+        for (;;) {
+            T e = poll();
+            if (e != null)
+                return e;
+            waiters.push(current);
+            // an element added before the push did not see this waiter, so check again before parking
+            e = poll();
+            if (e != null) {
+                if (!waiters.remove(current)) {
+                    // the signal was meant for another element
+                    signal(1);
+                }
+                return e;
+            }
+            LockSupport.park(this);
+            final boolean signalled = !waiters.remove(current);
+            if (Thread.interrupted()) {
+                if (signalled) {
+                    signal(1);
+                }
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Wakes up all threads waiting in {@link #take()}, e.g. on shutdown.
+     */
+    public void signalAll() {
+        signal(Integer.MAX_VALUE);
+    }
+
+    private void signal(int count) {
+        if (waiters == null || suspended)
+            return;
+        for (int i = 0; i < count; i++) {
+            final Thread t = waiters.poll();
+            if (t == null)
+                return;
+            LockSupport.unpark(t);
+        }
+    }
+
 }
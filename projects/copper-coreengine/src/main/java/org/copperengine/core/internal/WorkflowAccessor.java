@@ -17,8 +17,11 @@ package org.copperengine.core.internal;
 
 import java.lang.reflect.Method;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
 
 import org.copperengine.core.ProcessingState;
+import org.copperengine.core.Response;
 import org.copperengine.core.Workflow;
 import org.copperengine.core.persistent.ErrorData;
 import org.copperengine.core.persistent.PersistentWorkflow;
@@ -30,6 +33,9 @@ public class WorkflowAccessor {
     private static final Method methodSetLastActivityTS;
     private static final Method methodSetTimeoutTS;
     private static final Method methodSetErrorData;
+    private static final Method methodClearResponses;
+    private static final Method methodGetResponses;
+    private static final Method methodGetProcessingLock;
 
     static {
         try {
@@ -48,6 +54,15 @@ public class WorkflowAccessor {
             methodSetErrorData = PersistentWorkflow.class.getDeclaredMethod("setErrorData", ErrorData.class);
             methodSetErrorData.setAccessible(true);
 
+            methodClearResponses = Workflow.class.getDeclaredMethod("clearResponses");
+            methodClearResponses.setAccessible(true);
+
+            methodGetResponses = Workflow.class.getDeclaredMethod("getResponses");
+            methodGetResponses.setAccessible(true);
+
+            methodGetProcessingLock = Workflow.class.getDeclaredMethod("getProcessingLock");
+            methodGetProcessingLock.setAccessible(true);
+
         } catch (Exception e) {
             throw new Error(e);
         }
@@ -93,6 +108,37 @@ public class WorkflowAccessor {
         }
     }
 
+    public static void clearResponses(Workflow<?> w) {
+        try {
+            methodClearResponses.invoke(w);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<Response<?>> getResponses(Workflow<?> w) {
+        try {
+            return (List<Response<?>>) methodGetResponses.invoke(w);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static Lock getProcessingLock(Workflow<?> w) {
+        try {
+            return (Lock) methodGetProcessingLock.invoke(w);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static void setErrorData(PersistentWorkflow<?> w, ErrorData errorData) {
         try {
             methodSetErrorData.invoke(w, errorData);
@@ -25,8 +25,12 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import org.copperengine.core.Acknowledge;
 import org.copperengine.core.CopperException;
@@ -34,6 +38,7 @@ import org.copperengine.core.DuplicateIdException;
 import org.copperengine.core.EngineIdProvider;
 import org.copperengine.core.ProcessingState;
 import org.copperengine.core.Response;
+import org.copperengine.core.WaitHook;
 import org.copperengine.core.Workflow;
 import org.copperengine.core.batcher.BatchCommand;
 import org.copperengine.core.common.WorkflowRepository;
@@ -67,6 +72,18 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
      */
     protected boolean multiEngineMode;
     protected final boolean supportsMultipleEngines;
+    /**
+     * if turned on, dequeue claims the queue entries using SELECT ... FOR UPDATE SKIP LOCKED instead of taking the
+     * dequeue lock, so that multiple engines may dequeue from the same processor pool at the same time
+     */
+    protected boolean skipLockedDequeue;
+    /**
+     * if turned on, updateQueueState only evaluates the workflow instances that received a response (recorded in
+     * COP_RESPONSE_EVENT) or whose wait timed out, instead of joining the complete COP_WAIT and COP_RESPONSE tables
+     */
+    protected boolean incrementalQueueStateUpdate;
+    private volatile boolean initialQueueStateUpdateDone;
+    private boolean dumpQueueOnUpdateQueueStateFailure = true;
     protected long defaultStaleResponseRemovalTimeout = 60 * 60 * 1000;
     protected final int ACQUIRE_BLOCKING_WAIT_SEC = 10;
     protected Serializer serializer = new StandardJavaSerializer();
@@ -233,13 +250,16 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
         PreparedStatement selectResponsesStmt = null;
         PreparedStatement updateBpStmt = null;
         final String lockContext = "dequeue#" + ppoolId;
+        final boolean skipLocked = skipLockedDequeue;
         try {
             final long startTS = System.currentTimeMillis();
-            lock(con, lockContext);
+            if (!skipLocked) {
+                lock(con, lockContext);
+            }
             final List<Workflow<?>> rv = new ArrayList<Workflow<?>>(max);
             final List<BatchCommand> invalidWorkflowInstances = new ArrayList<BatchCommand>();
 
-            dequeueStmt = createDequeueStmt(con, ppoolId, max);
+            dequeueStmt = skipLocked ? createSkipLockedDequeueStmt(con, ppoolId, max) : createDequeueStmt(con, ppoolId, max);
             updateQueueStmt = con.prepareStatement("update COP_QUEUE set ENGINE_ID=? where WORKFLOW_INSTANCE_ID=?");
             dequeueStmtStatistic.start();
             final ResultSet rs = dequeueStmt.executeQuery();
@@ -253,10 +273,9 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
                 updateQueueStmt.addBatch();
 
                 try {
-                    SerializedWorkflow sw = new SerializedWorkflow();
-                    sw.setData(rs.getString(3));
-                    sw.setObjectState(rs.getString(4));
+                    SerializedWorkflow sw = SerializedColumns.getWorkflow(serializer, rs, 3, 4);
                     PersistentWorkflow<?> wf = (PersistentWorkflow<?>) serializer.deserializeWorkflow(sw, wfRepository);
+                    wf.setFingerprints(sw);
                     wf.setId(id);
                     wf.setProcessorPoolId(ppoolId);
                     wf.setPriority(prio);
@@ -286,11 +305,9 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
                         String cid = rsResponses.getString(2);
                         final Timestamp timeoutTS = rsResponses.getTimestamp(3);
                         boolean isTimeout = timeoutTS != null ? timeoutTS.getTime() <= System.currentTimeMillis() : false;
-                        String response = rsResponses.getString(4);
                         PersistentWorkflow<?> wf = (PersistentWorkflow<?>) map.get(bpId);
-                        Response<?> r = null;
-                        if (response != null) {
-                            r = serializer.deserializeResponse(response);
+                        Response<?> r = SerializedColumns.getResponse(serializer, rsResponses, 4);
+                        if (r != null) {
                             wf.addResponseId(r.getResponseId());
                         } else if (isTimeout) {
                             // timeout
@@ -324,7 +341,9 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
             JdbcUtils.closeStatement(dequeueStmt);
             JdbcUtils.closeStatement(updateQueueStmt);
             JdbcUtils.closeStatement(selectResponsesStmt);
-            releaseLock(con, lockContext);
+            if (!skipLocked) {
+                releaseLock(con, lockContext);
+            }
         }
     }
 
@@ -351,40 +370,47 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
 
             final Timestamp NOW = new Timestamp(System.currentTimeMillis());
             enqueueUpdateStateStmtStatistic.start();
-            queryStmt = createUpdateStateStmt(con, max);
-            ResultSet rs = queryStmt.executeQuery();
             updStmt = con.prepareStatement("update COP_WAIT set state=1, timeout_ts=timeout_ts where WORKFLOW_INSTANCE_ID=?");
-            insStmt = con.prepareStatement("INSERT INTO COP_QUEUE (PPOOL_ID, PRIORITY, LAST_MOD_TS, WORKFLOW_INSTANCE_ID) VALUES (?,?,?,?)");
-            while (rs.next()) {
-                rowcount++;
-
-                final String wfiId = rs.getString(1);
-                final String ppoolId = rs.getString(2);
-                final int prio = rs.getInt(3);
-
-                updStmt.setString(1, wfiId);
-                updStmt.addBatch();
-
-                insStmt.setString(1, ppoolId);
-                insStmt.setInt(2, prio);
-                insStmt.setTimestamp(3, NOW);
-                insStmt.setString(4, wfiId);
-                insStmt.addBatch();
-
-                logger.debug("Inserting {} into COP_QUEUE", wfiId);
+            insStmt = createConditionalEnqueueStmt(con);
+            // the instances are enqueued in the order of their ids, like the local notify does, to avoid deadlocks
+            final SortedMap<String, ReadyCheck> ready = new TreeMap<String, ReadyCheck>();
+            if (incrementalQueueStateUpdate && initialQueueStateUpdateDone) {
+                updateQueueStateIncremental(max, NOW, ready, con);
+                rowcount = ready.size();
+            } else {
+                queryStmt = createUpdateStateStmt(con, max);
+                ResultSet rs = queryStmt.executeQuery();
+                while (rs.next()) {
+                    rowcount++;
+                    final ReadyCheck check = new ReadyCheck();
+                    check.ppoolId = rs.getString(2);
+                    check.priority = rs.getInt(3);
+                    ready.put(rs.getString(1), check);
+                }
+                rs.close();
+                // responses and timeouts that were there before the incremental mode was turned on have no
+                // COP_RESPONSE_EVENT entry, so the full query is used until it finds no more than max instances
+                if (rowcount < max) {
+                    initialQueueStateUpdateDone = true;
+                }
+            }
+            for (Map.Entry<String, ReadyCheck> entry : ready.entrySet()) {
+                addToQueue(entry.getKey(), entry.getValue().ppoolId, entry.getValue().priority, NOW, updStmt, insStmt);
             }
-            rs.close();
             if (rowcount > 0) {
-                insStmt.executeBatch();
+                // COP_WAIT before COP_QUEUE, like the register callback and the local notify
                 updStmt.executeBatch();
+                insStmt.executeBatch();
             }
             enqueueUpdateStateStmtStatistic.stop(rowcount == 0 ? 1 : rowcount);
             logger.debug("Queue update in {} msec", (System.currentTimeMillis() - startTS));
             return rowcount;
         } catch (SQLException e) {
-            ResultSet rs = con.createStatement().executeQuery("SELECT WORKFLOW_INSTANCE_ID FROM COP_QUEUE");
-            while (rs.next()) {
-                logger.info("WORKFLOW_INSTANCE_ID={}", rs.getString(1));
+            if (dumpQueueOnUpdateQueueStateFailure) {
+                ResultSet rs = con.createStatement().executeQuery("SELECT WORKFLOW_INSTANCE_ID FROM COP_QUEUE");
+                while (rs.next()) {
+                    logger.info("WORKFLOW_INSTANCE_ID={}", rs.getString(1));
+                }
             }
             throw e;
         } finally {
@@ -395,6 +421,120 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
         }
     }
 
+    private void addToQueue(String wfiId, String ppoolId, int prio, Timestamp NOW, PreparedStatement updStmt, PreparedStatement insStmt) throws SQLException {
+        updStmt.setString(1, wfiId);
+        updStmt.addBatch();
+
+        insStmt.setString(1, ppoolId);
+        insStmt.setInt(2, prio);
+        insStmt.setTimestamp(3, NOW);
+        insStmt.setString(4, wfiId);
+        insStmt.setString(5, wfiId);
+        insStmt.addBatch();
+
+        logger.debug("Inserting {} into COP_QUEUE", wfiId);
+    }
+
+    /**
+     * Evaluates only the workflow instances that have a new response in COP_RESPONSE_EVENT or a timed out wait. The
+     * readiness check itself is the same as in sql-query-ready-bpids.sql.
+     */
+    private void updateQueueStateIncremental(int max, Timestamp NOW, SortedMap<String, ReadyCheck> ready, Connection con) throws SQLException {
+        final Set<String> candidates = new HashSet<String>();
+        final List<String> processedEvents = new ArrayList<String>();
+
+        // events of responses without a COP_WAIT entry are skipped by the join and kept, because the workflow
+        // instance may register its wait later on (early response)
+        final StringBuilder eventSql = new StringBuilder("SELECT e.RESPONSE_ID, w.WORKFLOW_INSTANCE_ID, w.STATE FROM COP_RESPONSE_EVENT e INNER JOIN COP_WAIT w ON w.CORRELATION_ID = e.CORRELATION_ID");
+        addLimitation(eventSql, max);
+        try (PreparedStatement stmt = con.prepareStatement(eventSql.toString())) {
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                processedEvents.add(rs.getString(1));
+                if (rs.getInt(3) == 0) {
+                    candidates.add(rs.getString(2));
+                }
+            }
+            rs.close();
+        }
+
+        final StringBuilder timeoutSql = new StringBuilder("SELECT WORKFLOW_INSTANCE_ID FROM COP_WAIT WHERE TIMEOUT_TS <= ? AND STATE=0");
+        addLimitation(timeoutSql, max);
+        try (PreparedStatement stmt = con.prepareStatement(timeoutSql.toString())) {
+            stmt.setTimestamp(1, NOW);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                candidates.add(rs.getString(1));
+            }
+            rs.close();
+        }
+
+        if (!candidates.isEmpty()) {
+            final Map<String, ReadyCheck> checks = new HashMap<String, ReadyCheck>(candidates.size() * 2);
+            try (PreparedStatement stmt = con.prepareStatement("SELECT w.WORKFLOW_INSTANCE_ID, w.MIN_NUMB_OF_RESP, w.TIMEOUT_TS, w.PPOOL_ID, w.PRIORITY, (SELECT COUNT(*) FROM COP_RESPONSE r WHERE r.CORRELATION_ID = w.CORRELATION_ID) FROM COP_WAIT w WHERE w.STATE=0 AND w.WORKFLOW_INSTANCE_ID IN (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)")) {
+                for (List<String> ids : splitt(candidates, 25)) {
+                    stmt.clearParameters();
+                    for (int i = 0; i < 25; i++) {
+                        stmt.setString(i + 1, ids.size() >= i + 1 ? ids.get(i) : null);
+                    }
+                    ResultSet rs = stmt.executeQuery();
+                    while (rs.next()) {
+                        final String wfiId = rs.getString(1);
+                        ReadyCheck check = checks.get(wfiId);
+                        if (check == null) {
+                            check = new ReadyCheck();
+                            checks.put(wfiId, check);
+                        }
+                        final Timestamp timeoutTS = rs.getTimestamp(3);
+                        check.add(rs.getInt(2), timeoutTS != null && !timeoutTS.after(NOW), rs.getString(4), rs.getInt(5), rs.getInt(6) > 0);
+                    }
+                    rs.close();
+                }
+            }
+            for (Map.Entry<String, ReadyCheck> entry : checks.entrySet()) {
+                final ReadyCheck check = entry.getValue();
+                if (check.isReady()) {
+                    ready.put(entry.getKey(), check);
+                }
+            }
+        }
+
+        if (!processedEvents.isEmpty()) {
+            try (PreparedStatement stmt = con.prepareStatement("DELETE FROM COP_RESPONSE_EVENT WHERE RESPONSE_ID=?")) {
+                for (String responseId : processedEvents) {
+                    stmt.setString(1, responseId);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+        }
+        logger.debug("Incremental queue update: {} event(s), {} candidate(s), {} ready", processedEvents.size(), candidates.size(), ready.size());
+    }
+
+    private static final class ReadyCheck {
+        boolean timedOut;
+        int minNumbOfResp = Integer.MAX_VALUE;
+        int responses;
+        String ppoolId;
+        int priority = Integer.MAX_VALUE;
+
+        void add(int minNumbOfResp, boolean timedOut, String ppoolId, int priority, boolean response) {
+            this.minNumbOfResp = Math.min(this.minNumbOfResp, minNumbOfResp);
+            this.timedOut |= timedOut;
+            if (this.ppoolId == null || ppoolId.compareTo(this.ppoolId) < 0) {
+                this.ppoolId = ppoolId;
+            }
+            this.priority = Math.min(this.priority, priority);
+            if (response) {
+                responses++;
+            }
+        }
+
+        boolean isReady() {
+            return timedOut || minNumbOfResp <= responses;
+        }
+    }
+
     @Override
     public int deleteStaleResponse(Connection con, int maxRows) throws Exception {
         if (logger.isTraceEnabled())
@@ -406,6 +546,9 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
             lock(con, lockContext);
             deleteStaleResponsesStmtStatistic.start();
             final int rowCount = stmt.executeUpdate();
+            if (incrementalQueueStateUpdate) {
+                deleteOrphanedResponseEvents(con);
+            }
             deleteStaleResponsesStmtStatistic.stop(rowCount);
             logger.trace("deleted {} stale response(s).", rowCount);
             return rowCount;
@@ -415,6 +558,13 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
         }
     }
 
+    private void deleteOrphanedResponseEvents(Connection con) throws SQLException {
+        try (PreparedStatement stmt = con.prepareStatement("DELETE FROM COP_RESPONSE_EVENT WHERE NOT EXISTS (SELECT 1 FROM COP_RESPONSE r WHERE r.RESPONSE_ID = COP_RESPONSE_EVENT.RESPONSE_ID)")) {
+            final int rowCount = stmt.executeUpdate();
+            logger.trace("deleted {} orphaned response event(s).", rowCount);
+        }
+    }
+
     protected void lock(Connection con, String lockContext) throws SQLException {
         if (!multiEngineMode)
             return;
@@ -850,7 +1000,7 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
         if (response == null)
             throw new NullPointerException();
         if (response.isEarlyResponseHandling())
-            return new SqlNotify.Command(response, serializer, defaultStaleResponseRemovalTimeout, System.currentTimeMillis() + dbBatchingLatencyMSec, ack);
+            return new SqlNotify.Command(response, serializer, defaultStaleResponseRemovalTimeout, incrementalQueueStateUpdate, System.currentTimeMillis() + dbBatchingLatencyMSec, ack);
         else
             return createBatchCommand4NotifyNoEarlyResponseHandling(response, ack);
     }
@@ -858,6 +1008,16 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
     @SuppressWarnings({ "rawtypes" })
     public abstract BatchCommand createBatchCommand4NotifyNoEarlyResponseHandling(Response<?> response, Acknowledge ack) throws Exception;
 
+    @Override
+    @SuppressWarnings({ "rawtypes" })
+    public BatchCommand createBatchCommand4LocalNotify(Response<?> response, String workflowInstanceId, Acknowledge ack) throws Exception {
+        if (response == null || workflowInstanceId == null)
+            throw new NullPointerException();
+        if (!response.isEarlyResponseHandling())
+            return null;
+        return new SqlLocalNotify.Command(response, workflowInstanceId, serializer, defaultStaleResponseRemovalTimeout, incrementalQueueStateUpdate, System.currentTimeMillis() + dbBatchingLatencyMSec, ack);
+    }
+
     @Override
     @SuppressWarnings({ "rawtypes" })
     public BatchCommand createBatchCommand4registerCallback(RegisterCall rc, ScottyDBStorageInterface dbStorageInterface, Acknowledge ack) throws Exception {
@@ -866,6 +1026,14 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
         return new SqlRegisterCallback.Command(rc, serializer, dbStorageInterface, System.currentTimeMillis() + dbBatchingLatencyMSec, workflowPersistencePlugin, ack);
     }
 
+    @Override
+    @SuppressWarnings({ "rawtypes" })
+    public BatchCommand createBatchCommand4Savepoint(PersistentWorkflow<?> wf, boolean claim, List<WaitHook> waitHooks, ScottyDBStorageInterface dbStorageInterface, Acknowledge ack) throws Exception {
+        if (wf == null)
+            throw new NullPointerException();
+        return new SqlSavepoint.Command(wf, claim ? engineId : null, waitHooks, serializer, dbStorageInterface, System.currentTimeMillis() + dbBatchingLatencyMSec, workflowPersistencePlugin, ack);
+    }
+
     @Override
     public void insert(List<Workflow<?>> wfs, Connection con) throws DuplicateIdException, Exception {
         PreparedStatement stmtWF = null;
@@ -878,14 +1046,13 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
             for (int i = 0; i < wfs.size(); i++) {
                 Workflow<?> wf = wfs.get(i);
                 logger.debug("insert({})", wf.getId());
-                final SerializedWorkflow sw = serializer.serializeWorkflow(wf);
+                final SerializedWorkflow sw = SerializedColumns.serializeWorkflow(serializer, wf);
                 stmtWF.setString(1, wf.getId());
                 stmtWF.setInt(2, DBProcessingState.ENQUEUED.ordinal());
                 stmtWF.setInt(3, wf.getPriority());
                 stmtWF.setTimestamp(4, NOW);
                 stmtWF.setString(5, wf.getProcessorPoolId());
-                stmtWF.setString(6, sw.getData());
-                stmtWF.setString(7, sw.getObjectState());
+                SerializedColumns.setWorkflow(serializer, stmtWF, 6, 7, sw);
                 stmtWF.setTimestamp(8, new Timestamp(wf.getCreationTS().getTime()));
                 stmtWF.setString(9, wf.getClass().getName());
                 stmtWF.addBatch();
@@ -950,6 +1117,47 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
 
     protected abstract PreparedStatement createDeleteStaleResponsesStmt(final Connection c, final int MAX_ROWS) throws SQLException;
 
+    /**
+     * Creates the statement that inserts a workflow instance into COP_QUEUE unless it is already there, e.g. because a
+     * concurrent local notify enqueued it. The parameters are PPOOL_ID, PRIORITY, LAST_MOD_TS and twice the
+     * WORKFLOW_INSTANCE_ID.
+     */
+    protected PreparedStatement createConditionalEnqueueStmt(final Connection c) throws SQLException {
+        return c.prepareStatement("INSERT INTO COP_QUEUE (PPOOL_ID, PRIORITY, LAST_MOD_TS, WORKFLOW_INSTANCE_ID) SELECT ?,?,?,? FROM DUAL WHERE NOT EXISTS (SELECT WORKFLOW_INSTANCE_ID FROM COP_QUEUE WHERE WORKFLOW_INSTANCE_ID=?)");
+    }
+
+    /**
+     * Creates the dequeue statement used when {@link #setSkipLockedDequeue(boolean)} is turned on. The statement must
+     * return the same columns as {@link #createDequeueStmt(Connection, String, int)} and row lock the selected
+     * COP_QUEUE entries while skipping entries that are already locked by another transaction.
+     *
+     * @param c
+     *        database connection
+     * @param ppoolId
+     *        id of the processor pool to dequeue for
+     * @param max
+     *        maximum number of workflow instances to dequeue
+     * @return the prepared dequeue statement
+     * @throws SQLException
+     *         If anything goes wrong regarding SQL.
+     */
+    protected PreparedStatement createSkipLockedDequeueStmt(final Connection c, final String ppoolId, final int max) throws SQLException {
+        final StringBuilder sql = new StringBuilder("select w.id,w.priority,w.data,w.object_state,w.creation_ts,w.last_mod_ts from COP_QUEUE q inner join COP_WORKFLOW_INSTANCE w on w.id = q.WORKFLOW_INSTANCE_ID where q.ppool_id = ? and q.engine_id is NULL order by q.priority, q.last_mod_ts");
+        addLimitation(sql, max);
+        sql.append(" for update of q skip locked");
+        PreparedStatement dequeueStmt = c.prepareStatement(sql.toString());
+        dequeueStmt.setString(1, ppoolId);
+        return dequeueStmt;
+    }
+
+    /**
+     * @return true, if the underlying database supports SELECT ... FOR UPDATE SKIP LOCKED, i.e. if
+     *         {@link #setSkipLockedDequeue(boolean)} may be turned on for this dialect.
+     */
+    protected boolean supportsSkipLockedDequeue() {
+        return false;
+    }
+
     @Override
     public List<String> checkDbConsistency(Connection con) throws Exception {
         if (multiEngineMode) {
@@ -965,12 +1173,8 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
                 final String id = rs.getString(1);
                 try {
                     final int prio = rs.getInt(2);
-                    final String data = rs.getString(3);
-                    final String objectState = rs.getString(4);
                     final String ppoolId = rs.getString(5);
-                    final SerializedWorkflow sw = new SerializedWorkflow();
-                    sw.setData(data);
-                    sw.setObjectState(objectState);
+                    final SerializedWorkflow sw = SerializedColumns.getWorkflow(serializer, rs, 3, 4);
                     final PersistentWorkflow<?> wf = (PersistentWorkflow<?>) serializer.deserializeWorkflow(sw, wfRepository);
                     wf.setId(id);
                     wf.setProcessorPoolId(ppoolId);
@@ -1020,9 +1224,7 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
             final String id = rs.getString(1);
             final int prio = rs.getInt(2);
 
-            SerializedWorkflow sw = new SerializedWorkflow();
-            sw.setData(rs.getString(3));
-            sw.setObjectState(rs.getString(4));
+            SerializedWorkflow sw = SerializedColumns.getWorkflow(serializer, rs, 3, 4);
             wf = (PersistentWorkflow<?>) serializer.deserializeWorkflow(sw, wfRepository);
             wf.setId(id);
             wf.setPriority(prio);
@@ -1042,10 +1244,8 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
                 String cid = rsResponses.getString(2);
                 final Timestamp timeoutTS = rsResponses.getTimestamp(3);
                 boolean isTimeout = timeoutTS != null ? timeoutTS.getTime() <= System.currentTimeMillis() : false;
-                String response = rsResponses.getString(4);
-                Response<?> r = null;
-                if (response != null) {
-                    r = serializer.deserializeResponse(response);
+                Response<?> r = SerializedColumns.getResponse(serializer, rsResponses, 4);
+                if (r != null) {
                     wf.addResponseId(r.getResponseId());
                 } else if (isTimeout) {
                     // timeout
@@ -1084,9 +1284,7 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
                 final int prio = rs.getInt(3);
                 final String ppoolId = rs.getString(4);
                 try {
-                    SerializedWorkflow sw = new SerializedWorkflow();
-                    sw.setData(rs.getString(5));
-                    sw.setObjectState(rs.getString(6));
+                    SerializedWorkflow sw = SerializedColumns.getWorkflow(serializer, rs, 5, 6);
                     PersistentWorkflow<?> wf = (PersistentWorkflow<?>) serializer.deserializeWorkflow(sw, wfRepository);
                     wf.setId(id);
                     wf.setProcessorPoolId(ppoolId);
@@ -1114,6 +1312,75 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
         }
         this.multiEngineMode = multiEngineMode;
     }
+
+    /**
+     * If turned on, dequeue does not take the per processor pool database lock but claims the COP_QUEUE entries using
+     * SELECT ... FOR UPDATE SKIP LOCKED. In multi engine mode this lets all engines dequeue disjoint sets of workflow
+     * instances from the same processor pool concurrently. Only supported by dialects whose database supports SKIP
+     * LOCKED (e.g. PostgreSQL 9.5+ and MySQL 8).
+     *
+     * @param skipLockedDequeue
+     *        true to use SKIP LOCKED based dequeueing, false (default) to serialize dequeueing by the database lock
+     */
+    public void setSkipLockedDequeue(boolean skipLockedDequeue) {
+        if (!supportsSkipLockedDequeue() && skipLockedDequeue) {
+            throw new IllegalArgumentException("SkipLockedDequeue not supported!");
+        }
+        logger.info("setSkipLockedDequeue({})", skipLockedDequeue);
+        this.skipLockedDequeue = skipLockedDequeue;
+    }
+
+    public boolean isSkipLockedDequeue() {
+        return skipLockedDequeue;
+    }
+
+    /**
+     * If turned on, every stored response is additionally recorded in the work table COP_RESPONSE_EVENT and
+     * updateQueueState evaluates only the workflow instances referenced by these events plus those with a timed out
+     * wait (using the index on COP_WAIT.TIMEOUT_TS), instead of joining the complete COP_WAIT and COP_RESPONSE tables.
+     * This keeps the cost of the queue state update proportional to the rate of changes instead of the number of
+     * waiting workflow instances. Requires the COP_RESPONSE_EVENT table and all engines connected to the same database
+     * have to use the same setting.
+     *
+     * @param incrementalQueueStateUpdate
+     *        true to use the incremental queue state update, false (default) to use the full query
+     */
+    public void setIncrementalQueueStateUpdate(boolean incrementalQueueStateUpdate) {
+        if (!supportsIncrementalQueueStateUpdate() && incrementalQueueStateUpdate) {
+            throw new IllegalArgumentException("IncrementalQueueStateUpdate not supported!");
+        }
+        logger.info("setIncrementalQueueStateUpdate({})", incrementalQueueStateUpdate);
+        this.incrementalQueueStateUpdate = incrementalQueueStateUpdate;
+    }
+
+    public boolean isIncrementalQueueStateUpdate() {
+        return incrementalQueueStateUpdate;
+    }
+
+    /**
+     * If turned on, a failed updateQueueState logs the ids of all workflow instances in COP_QUEUE on info level. The
+     * scan reads the complete COP_QUEUE and may wait for the row locks of concurrent transactions, so it may be turned
+     * off for large queues.
+     *
+     * @param dumpQueueOnUpdateQueueStateFailure
+     *        true (default) to dump COP_QUEUE if updateQueueState fails, false to only rethrow the exception
+     */
+    public void setDumpQueueOnUpdateQueueStateFailure(boolean dumpQueueOnUpdateQueueStateFailure) {
+        logger.info("setDumpQueueOnUpdateQueueStateFailure({})", dumpQueueOnUpdateQueueStateFailure);
+        this.dumpQueueOnUpdateQueueStateFailure = dumpQueueOnUpdateQueueStateFailure;
+    }
+
+    public boolean isDumpQueueOnUpdateQueueStateFailure() {
+        return dumpQueueOnUpdateQueueStateFailure;
+    }
+
+    /**
+     * @return true, if {@link #setIncrementalQueueStateUpdate(boolean)} may be turned on for this dialect, i.e. if all
+     *         notify statements of the dialect record their responses in COP_RESPONSE_EVENT.
+     */
+    protected boolean supportsIncrementalQueueStateUpdate() {
+        return true;
+    }
     
     @Override
     public Date readDatabaseClock(Connection con) throws SQLException {
@@ -1272,9 +1539,7 @@ public abstract class AbstractSqlDialect implements DatabaseDialect, DatabaseDia
         final String id = rs.getString("ID");
         final int prio = rs.getInt("PRIORITY");
         final String ppoolId = rs.getString("PPOOL_ID");
-        final SerializedWorkflow sw = new SerializedWorkflow();
-        sw.setData(rs.getString("DATA"));
-        sw.setObjectState(rs.getString("OBJECT_STATE"));
+        final SerializedWorkflow sw = SerializedColumns.getWorkflow(serializer, rs, rs.findColumn("DATA"), rs.findColumn("OBJECT_STATE"));
         final PersistentWorkflow<?> wf = (PersistentWorkflow<?>) serializer.deserializeWorkflow(sw, wfRepository);
         wf.setId(id);
         wf.setProcessorPoolId(ppoolId);
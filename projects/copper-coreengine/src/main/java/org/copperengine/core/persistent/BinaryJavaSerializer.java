@@ -0,0 +1,144 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+import org.copperengine.core.Response;
+import org.copperengine.core.Workflow;
+import org.copperengine.core.common.WorkflowRepository;
+
+/**
+ * {@link BinarySerializer} using java's standard object serialization, i.e. the binary counterpart of the
+ * {@link StandardJavaSerializer} without the Base64 encoding.
+ * <p>
+ * Every serialized value starts with a one byte format header, {@link #FORMAT_JAVA} or {@link #FORMAT_JAVA_COMPRESSED}.
+ * Values starting with 'C' or 'U' were written by the {@link StandardJavaSerializer} into a text column that was
+ * converted to a binary column later on, they are decoded as Base64 text.
+ * <p>
+ * The text based methods of the {@link Serializer} interface are inherited from the {@link StandardJavaSerializer},
+ * so this serializer may also be used with dialects that do not support binary columns.
+ */
+public class BinaryJavaSerializer extends StandardJavaSerializer implements BinarySerializer {
+
+    public static final byte FORMAT_JAVA = 1;
+    public static final byte FORMAT_JAVA_COMPRESSED = 2;
+
+    private static final byte LEGACY_COMPRESSED = 'C';
+    private static final byte LEGACY_UNCOMPRESSED = 'U';
+
+    /**
+     * A ByteArrayOutputStream that gives access to its buffer, so the serialized bytes may be compressed without
+     * copying them first.
+     */
+    static final class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+
+    protected byte[] serializeBinary(final Object o) throws IOException {
+        if (o == null)
+            return null;
+        final Buffer buffer = new Buffer(1024);
+        buffer.write(FORMAT_JAVA);
+        final ObjectOutputStream oos = new ObjectOutputStream(buffer);
+        oos.writeObject(o);
+        oos.close();
+        return toByteArray(buffer, 1, FORMAT_JAVA_COMPRESSED);
+    }
+
+    /**
+     * Returns the content of the buffer, compressing everything after the header if it is large enough. If the
+     * content is compressed, the first header byte is replaced by compressedFormat.
+     */
+    byte[] toByteArray(final Buffer buffer, final int headerSize, final byte compressedFormat) {
+        final int length = buffer.size() - headerSize;
+        if (isCompressible(length)) {
+            final byte[] data = getCompressor().compress(buffer.getBuffer(), headerSize, length, headerSize);
+            System.arraycopy(buffer.getBuffer(), 0, data, 0, headerSize);
+            data[0] = compressedFormat;
+            return data;
+        }
+        return buffer.toByteArray();
+    }
+
+    protected Serializable deserializeBinary(final byte[] data, final WorkflowRepository wfRepo) throws Exception {
+        // some drivers return an empty array instead of null for an empty BLOB
+        if (data == null || data.length == 0)
+            return null;
+        switch (data[0]) {
+        case FORMAT_JAVA:
+            return readObject(new ByteArrayInputStream(data, 1, data.length - 1), wfRepo);
+        case FORMAT_JAVA_COMPRESSED:
+            return readObject(new ByteArrayInputStream(getCompressor().uncompress(data, 1, data.length - 1)), wfRepo);
+        case LEGACY_COMPRESSED:
+        case LEGACY_UNCOMPRESSED:
+            return deserialize(new String(data, StandardCharsets.US_ASCII), wfRepo);
+        default:
+            throw new IOException("Unknown serialization format " + data[0]);
+        }
+    }
+
+    @Override
+    public SerializedWorkflow serializeWorkflowBinary(Workflow<?> o) throws Exception {
+        SerializedWorkflow sw = new SerializedWorkflow();
+        sw.setBinaryData(serializeDataBinary(o));
+        sw.setBinaryObjectState(serializeBinary(o));
+        return sw;
+    }
+
+    protected byte[] serializeDataBinary(Workflow<?> o) throws IOException {
+        return serializeBinary(o.getData());
+    }
+
+    @Override
+    public Workflow<?> deserializeWorkflow(SerializedWorkflow sw, WorkflowRepository wfRepo) throws Exception {
+        if (sw.getBinaryObjectState() == null) {
+            return super.deserializeWorkflow(sw, wfRepo);
+        }
+        @SuppressWarnings("unchecked")
+        Workflow<Object> wf = (Workflow<Object>) deserializeBinary(sw.getBinaryObjectState(), wfRepo);
+        wf.setData(deserializeDataBinary(sw));
+        return wf;
+    }
+
+    protected Object deserializeDataBinary(SerializedWorkflow sw) throws Exception {
+        return deserializeBinary(sw.getBinaryData(), null);
+    }
+
+    @Override
+    public byte[] serializeResponseBinary(Response<?> r) throws Exception {
+        return serializeBinary(r);
+    }
+
+    @Override
+    public Response<?> deserializeResponse(byte[] data) throws Exception {
+        if (data == null)
+            return null;
+        return (Response<?>) deserializeBinary(data, null);
+    }
+
+}
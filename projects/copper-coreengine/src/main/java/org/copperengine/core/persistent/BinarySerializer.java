@@ -0,0 +1,48 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import org.copperengine.core.Response;
+import org.copperengine.core.Workflow;
+
+/**
+ * A {@link Serializer} that additionally provides a byte oriented representation of workflow instances and
+ * responses.
+ * <p>
+ * If the serializer of a dialect derived from {@link AbstractSqlDialect} implements this interface, the dialect
+ * writes and reads the columns DATA, OBJECT_STATE and RESPONSE as <code>byte[]</code>, i.e. these columns have to be
+ * binary columns (BYTEA, BLOB, ...). {@link #deserializeWorkflow} then receives a {@link SerializedWorkflow} with the
+ * binary fields set. Implementations must be able to read rows that were written by the text based
+ * {@link StandardJavaSerializer} and afterwards converted to the binary column type, so existing rows stay readable
+ * when the schema is migrated.
+ */
+public interface BinarySerializer extends Serializer {
+
+    /**
+     * @param o
+     *        the workflow instance to serialize
+     * @return the serialized workflow with {@link SerializedWorkflow#getBinaryData()} and
+     *         {@link SerializedWorkflow#getBinaryObjectState()} set
+     * @throws Exception
+     *         if the serialization fails
+     */
+    public SerializedWorkflow serializeWorkflowBinary(final Workflow<?> o) throws Exception;
+
+    public byte[] serializeResponseBinary(final Response<?> r) throws Exception;
+
+    public Response<?> deserializeResponse(byte[] data) throws Exception;
+
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+
+import org.copperengine.core.common.WorkflowRepository;
+import org.copperengine.core.util.Base64;
+
+/**
+ * A {@link BinarySerializer} with a compact, registration based encoding of java's object serialization.
+ * <p>
+ * The standard object serialization writes a full class descriptor - class name, serialVersionUID and the name and
+ * type of every field - for each class in the object graph, e.g. for the boxed locals in the stack of a workflow
+ * instance, and parses it again on every read. This serializer omits the stream header and writes registered classes
+ * as a small numeric id instead, reading their descriptor from the local class. Classes that are not registered are
+ * written with their full descriptor, so they keep the usual rules for compatible class changes.
+ * <p>
+ * Registered classes therefore must not change their serialized fields and the ids must be the same on all engines
+ * sharing the database, i.e. further registrations ({@link #setRegisteredClassNames(List)}) may only be appended.
+ * By default a set of JDK classes with a stable serialized form and COPPER's stack classes are registered.
+ * <p>
+ * Each value starts with a version header ({@link #FORMAT_COMPACT} or {@link #FORMAT_COMPACT_COMPRESSED}, followed
+ * by the number of registered classes known to the writer). Values written by the {@link StandardJavaSerializer} or
+ * the {@link BinaryJavaSerializer} are still readable, so existing rows may be mixed with new ones during a rollout.
+ * In text columns the values are Base64 encoded with the prefix 'R'. Classes are resolved via
+ * {@link WorkflowRepository#resolveClass(String)} and {@link #classnameReplacement(String)} like in the
+ * {@link StandardJavaSerializer}.
+ */
+public class CompactJavaSerializer extends BinaryJavaSerializer {
+
+    public static final byte FORMAT_COMPACT = 3;
+    public static final byte FORMAT_COMPACT_COMPRESSED = 4;
+
+    private static final char TEXT_PREFIX = 'R';
+
+    private static final List<String> DEFAULT_REGISTERED_CLASS_NAMES = Collections.unmodifiableList(Arrays.asList(
+            "[Ljava.lang.Object;",
+            "[Ljava.lang.String;",
+            "[B",
+            "[I",
+            "[J",
+            "java.lang.Number",
+            "java.lang.Integer",
+            "java.lang.Long",
+            "java.lang.Short",
+            "java.lang.Byte",
+            "java.lang.Character",
+            "java.lang.Boolean",
+            "java.lang.Double",
+            "java.lang.Float",
+            "java.lang.Enum",
+            "java.math.BigInteger",
+            "java.math.BigDecimal",
+            "java.util.Date",
+            "java.util.ArrayList",
+            "java.util.LinkedList",
+            "java.util.HashMap",
+            "java.util.LinkedHashMap",
+            "java.util.TreeMap",
+            "java.util.HashSet",
+            "java.util.LinkedHashSet",
+            "java.util.TreeSet",
+            "java.util.Vector",
+            "java.util.Stack",
+            "org.copperengine.core.StackEntry",
+            "org.copperengine.core.persistent.PersistentWorkflow"));
+
+    private List<String> registeredClassNames = DEFAULT_REGISTERED_CLASS_NAMES;
+    private Map<String, Integer> registeredClassIds = createClassIds(DEFAULT_REGISTERED_CLASS_NAMES);
+
+    /**
+     * Registers additional classes, e.g. frequently used data classes of the workflows. The ids of these classes
+     * follow the default registrations in the order of the list.
+     *
+     * @param classNames
+     *        names of the classes to register, as returned by {@link Class#getName()}
+     */
+    public void setRegisteredClassNames(List<String> classNames) {
+        if (classNames == null)
+            throw new IllegalArgumentException();
+        final List<String> names = new ArrayList<String>(DEFAULT_REGISTERED_CLASS_NAMES);
+        for (String className : classNames) {
+            if (names.contains(className))
+                throw new IllegalArgumentException("class " + className + " is already registered");
+            names.add(className);
+        }
+        this.registeredClassIds = createClassIds(names);
+        this.registeredClassNames = Collections.unmodifiableList(names);
+    }
+
+    public List<String> getRegisteredClassNames() {
+        return registeredClassNames;
+    }
+
+    private static Map<String, Integer> createClassIds(List<String> classNames) {
+        final Map<String, Integer> ids = new HashMap<String, Integer>();
+        for (int i = 0; i < classNames.size(); i++) {
+            ids.put(classNames.get(i), i);
+        }
+        return ids;
+    }
+
+    @Override
+    String serialize(final Object o) throws IOException {
+        if (o == null)
+            return null;
+        final String encoded = Base64.encode(serializeBinary(o));
+        final StringBuilder sb = new StringBuilder(encoded.length() + 1);
+        sb.append(TEXT_PREFIX).append(encoded);
+        return sb.toString();
+    }
+
+    @Override
+    Serializable deserialize(String _data, final WorkflowRepository wfRepo) throws IOException, ClassNotFoundException, DataFormatException {
+        if (_data != null && _data.charAt(0) == TEXT_PREFIX) {
+            return deserializeCompact(Base64.decode(_data.substring(1)), wfRepo);
+        }
+        return super.deserialize(_data, wfRepo);
+    }
+
+    @Override
+    protected byte[] serializeBinary(final Object o) throws IOException {
+        if (o == null)
+            return null;
+        final Map<String, Integer> classIds = registeredClassIds;
+        final Buffer buffer = new Buffer(1024);
+        buffer.write(FORMAT_COMPACT);
+        writeVarInt(buffer, classIds.size());
+        final int headerSize = buffer.size();
+        final ObjectOutputStream oos = new CompactObjectOutputStream(buffer, classIds);
+        oos.writeObject(o);
+        oos.close();
+        return toByteArray(buffer, headerSize, FORMAT_COMPACT_COMPRESSED);
+    }
+
+    @Override
+    protected Serializable deserializeBinary(final byte[] data, final WorkflowRepository wfRepo) throws Exception {
+        if (data == null)
+            return null;
+        if (data[0] == TEXT_PREFIX) {
+            return deserialize(new String(data, StandardCharsets.US_ASCII), wfRepo);
+        }
+        if (data[0] == FORMAT_COMPACT || data[0] == FORMAT_COMPACT_COMPRESSED) {
+            return deserializeCompact(data, wfRepo);
+        }
+        return super.deserializeBinary(data, wfRepo);
+    }
+
+    private Serializable deserializeCompact(final byte[] data, final WorkflowRepository wfRepo) throws IOException, ClassNotFoundException, DataFormatException {
+        final ByteArrayInputStream is = new ByteArrayInputStream(data);
+        final int format = is.read();
+        if (format != FORMAT_COMPACT && format != FORMAT_COMPACT_COMPRESSED)
+            throw new IOException("Unknown serialization format " + format);
+        final List<String> classNames = registeredClassNames;
+        final int numberOfClasses = readVarInt(is);
+        if (numberOfClasses > classNames.size())
+            throw new InvalidClassException("Value was written with " + numberOfClasses + " registered classes, but only " + classNames.size() + " are registered");
+        final InputStream content;
+        if (format == FORMAT_COMPACT_COMPRESSED) {
+            final int offset = data.length - is.available();
+            content = new ByteArrayInputStream(getCompressor().uncompress(data, offset, data.length - offset));
+        } else {
+            content = is;
+        }
+        final ObjectInputStream ois = new CompactObjectInputStream(content, classNames, wfRepo);
+        final Serializable o = (Serializable) ois.readObject();
+        ois.close();
+        return o;
+    }
+
+    private final class CompactObjectOutputStream extends ObjectOutputStream {
+
+        private final Map<String, Integer> classIds;
+
+        CompactObjectOutputStream(OutputStream out, Map<String, Integer> classIds) throws IOException {
+            super(out);
+            this.classIds = classIds;
+        }
+
+        @Override
+        protected void writeStreamHeader() throws IOException {
+            // the format header is written by the serializer
+        }
+
+        @Override
+        protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+            final Integer id = classIds.get(desc.getName());
+            if (id != null) {
+                writeVarInt(this, id + 1);
+            } else {
+                writeVarInt(this, 0);
+                super.writeClassDescriptor(desc);
+            }
+        }
+    }
+
+    private final class CompactObjectInputStream extends ObjectInputStream {
+
+        private final List<String> classNames;
+        private final WorkflowRepository wfRepo;
+
+        CompactObjectInputStream(InputStream in, List<String> classNames, WorkflowRepository wfRepo) throws IOException {
+            super(in);
+            this.classNames = classNames;
+            this.wfRepo = wfRepo;
+        }
+
+        @Override
+        protected void readStreamHeader() throws IOException {
+            // the format header was read by the serializer
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            final int id = readVarInt(this);
+            if (id == 0) {
+                return super.readClassDescriptor();
+            }
+            if (id > classNames.size())
+                throw new StreamCorruptedException("Unknown class id " + id);
+            final String className = classNames.get(id - 1);
+            final ObjectStreamClass desc = ObjectStreamClass.lookup(CompactJavaSerializer.this.resolveClass(className, wfRepo));
+            if (desc == null)
+                throw new InvalidClassException(className, "registered class is not serializable");
+            return desc;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            final Class<?> c = desc.forClass();
+            return c != null ? c : CompactJavaSerializer.this.resolveClass(desc.getName(), wfRepo);
+        }
+    }
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.read();
+            if (b < 0)
+                throw new StreamCorruptedException("Unexpected end of stream");
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+}
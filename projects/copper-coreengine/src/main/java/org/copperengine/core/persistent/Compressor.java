@@ -50,12 +50,29 @@ public class Compressor {
     }
 
     public byte[] compress(final byte[] bytes) {
+        return compress(bytes, 0, bytes.length, 0);
+    }
+
+    /**
+     * Compresses a part of a byte array.
+     *
+     * @param bytes
+     *            the source array
+     * @param offset
+     *            start of the bytes to compress
+     * @param length
+     *            number of bytes to compress
+     * @param headerSize
+     *            number of leading bytes to leave free in the result for a header written by the caller
+     * @return a new array holding headerSize free bytes followed by the compressed bytes
+     */
+    public byte[] compress(final byte[] bytes, int offset, int length, int headerSize) {
         try {
-            deflater.setInput(bytes);
+            deflater.setInput(bytes, offset, length);
             deflater.finish();
             int len = deflater.deflate(buffer);
-            byte[] compressedBytes = new byte[len];
-            System.arraycopy(buffer, 0, compressedBytes, 0, len);
+            byte[] compressedBytes = new byte[headerSize + len];
+            System.arraycopy(buffer, 0, compressedBytes, headerSize, len);
             return compressedBytes;
         } finally {
             try {
@@ -67,8 +84,12 @@ public class Compressor {
     }
 
     public byte[] uncompress(byte[] bytes) throws DataFormatException {
+        return uncompress(bytes, 0, bytes.length);
+    }
+
+    public byte[] uncompress(byte[] bytes, int offset, int length) throws DataFormatException {
         try {
-            inflater.setInput(bytes);
+            inflater.setInput(bytes, offset, length);
             int len = inflater.inflate(buffer);
             byte[] uncompressedBytes = new byte[len];
             System.arraycopy(buffer, 0, uncompressedBytes, 0, len);
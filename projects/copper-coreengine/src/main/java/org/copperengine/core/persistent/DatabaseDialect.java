@@ -23,6 +23,7 @@ import java.util.List;
 import org.copperengine.core.Acknowledge;
 import org.copperengine.core.DuplicateIdException;
 import org.copperengine.core.Response;
+import org.copperengine.core.WaitHook;
 import org.copperengine.core.Workflow;
 import org.copperengine.core.batcher.BatchCommand;
 import org.copperengine.management.model.AuditTrailInfo;
@@ -66,6 +67,33 @@ public interface DatabaseDialect {
     @SuppressWarnings({ "rawtypes" })
     public abstract BatchCommand createBatchCommand4registerCallback(final RegisterCall rc, final ScottyDBStorageInterface dbStorageInterface, final Acknowledge callback) throws Exception;
 
+    /**
+     * Creates the batch command that saves the state of a workflow instance after a savepoint/resubmit and puts it into
+     * COP_QUEUE again.
+     *
+     * @param claim
+     *        if true, the COP_QUEUE entry is claimed by this engine, because the engine enqueues the workflow instance
+     *        in its local processor pool once the command has been executed successfully
+     * @return the batch command or null, if the dialect does not support it
+     */
+    @SuppressWarnings({ "rawtypes" })
+    public default BatchCommand createBatchCommand4Savepoint(final PersistentWorkflow<?> wf, final boolean claim, final List<WaitHook> waitHooks, final ScottyDBStorageInterface dbStorageInterface, final Acknowledge callback) throws Exception {
+        return null;
+    }
+
+    /**
+     * Creates the batch command that inserts a response for a wait that was registered by this engine. If the workflow
+     * instance is still waiting for the response, the command puts it into COP_QUEUE in the same transaction.
+     *
+     * @param workflowInstanceId
+     *        id of the workflow instance that waits for the response according to the local index
+     * @return the batch command or null, if the dialect does not support it
+     */
+    @SuppressWarnings({ "rawtypes" })
+    public default BatchCommand createBatchCommand4LocalNotify(final Response<?> response, final String workflowInstanceId, final Acknowledge callback) throws Exception {
+        return null;
+    }
+
     @SuppressWarnings({ "rawtypes" })
     public abstract BatchCommand createBatchCommand4error(Workflow<?> w, Throwable t, DBProcessingState dbProcessingState, final Acknowledge callback);
 
@@ -134,4 +162,4 @@ public interface DatabaseDialect {
 
     public int countAuditTrailInstances(AuditTrailInstanceFilter filter, Connection con) throws SQLException;
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -53,6 +53,18 @@ public class DerbyDbDialect extends AbstractSqlDialect {
         this.dataSource = dataSource;
     }
 
+    /**
+     * @param serializer
+     *        serializer of the workflow state and responses. A {@link BinarySerializer} is not supported, because the
+     *        Derby schema stores them in VARCHAR columns.
+     */
+    @Override
+    public void setSerializer(Serializer serializer) {
+        if (serializer instanceof BinarySerializer)
+            throw new IllegalArgumentException("BinarySerializer not supported by " + getClass().getSimpleName());
+        super.setSerializer(serializer);
+    }
+
     @Override
     public synchronized void startup() {
         try {
@@ -88,6 +100,11 @@ public class DerbyDbDialect extends AbstractSqlDialect {
         return stmt;
     }
 
+    @Override
+    protected PreparedStatement createConditionalEnqueueStmt(final Connection c) throws SQLException {
+        return c.prepareStatement("INSERT INTO COP_QUEUE (PPOOL_ID, PRIORITY, LAST_MOD_TS, WORKFLOW_INSTANCE_ID) SELECT ?,?,?,? FROM SYSIBM.SYSDUMMY1 WHERE NOT EXISTS (SELECT WORKFLOW_INSTANCE_ID FROM COP_QUEUE WHERE WORKFLOW_INSTANCE_ID=?)");
+    }
+
     @SuppressWarnings("rawtypes")
     @Override
     public BatchCommand createBatchCommand4error(Workflow<?> w, Throwable t, DBProcessingState dbProcessingState, Acknowledge ack) {
@@ -97,7 +114,7 @@ public class DerbyDbDialect extends AbstractSqlDialect {
     @SuppressWarnings("rawtypes")
     @Override
     public BatchCommand createBatchCommand4NotifyNoEarlyResponseHandling(Response<?> response, Acknowledge ack) throws Exception {
-        return new SqlNotifyNoEarlyResponseHandling.Command(response, serializer, defaultStaleResponseRemovalTimeout, System.currentTimeMillis() + dbBatchingLatencyMSec, ack);
+        return new SqlNotifyNoEarlyResponseHandling.Command(response, serializer, defaultStaleResponseRemovalTimeout, incrementalQueueStateUpdate, System.currentTimeMillis() + dbBatchingLatencyMSec, ack);
     }
 
     @Override
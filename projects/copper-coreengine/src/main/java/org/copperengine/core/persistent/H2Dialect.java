@@ -65,7 +65,7 @@ public class H2Dialect extends AbstractSqlDialect {
             if (dataSource == null)
                 throw new NullPointerException("dataSource in " + getClass().getSimpleName() + " is null");
             if (autocreateSchema)
-                checkAndCreateSchema(dataSource);
+                checkAndCreateSchema(dataSource, serializer instanceof BinarySerializer);
         } catch (Exception e) {
             throw new Error("startup failed", e);
         }
@@ -104,7 +104,7 @@ public class H2Dialect extends AbstractSqlDialect {
     @SuppressWarnings("rawtypes")
     @Override
     public BatchCommand createBatchCommand4NotifyNoEarlyResponseHandling(Response<?> response, Acknowledge ack) throws Exception {
-        return new SqlNotifyNoEarlyResponseHandling.Command(response, serializer, defaultStaleResponseRemovalTimeout, System.currentTimeMillis() + dbBatchingLatencyMSec, ack);
+        return new SqlNotifyNoEarlyResponseHandling.Command(response, serializer, defaultStaleResponseRemovalTimeout, incrementalQueueStateUpdate, System.currentTimeMillis() + dbBatchingLatencyMSec, ack);
     }
 
     @Override
@@ -123,6 +123,22 @@ public class H2Dialect extends AbstractSqlDialect {
     }
 
     public static void checkAndCreateSchema(DataSource ds) throws SQLException, IOException {
+        checkAndCreateSchema(ds, false);
+    }
+
+    /**
+     * Creates the COPPER schema if it does not exist yet.
+     *
+     * @param ds
+     *        the data source
+     * @param binary
+     *        if true, the serialized state columns are created as BLOBs, as required by a {@link BinarySerializer}
+     * @throws SQLException
+     *         If anything goes wrong regarding SQL.
+     * @throws IOException
+     *         If the schema script cannot be read.
+     */
+    public static void checkAndCreateSchema(DataSource ds, boolean binary) throws SQLException, IOException {
         Connection c = ds.getConnection();
         try {
             if (tablesExist(c)) {
@@ -134,6 +150,9 @@ public class H2Dialect extends AbstractSqlDialect {
             Statement stmt = c.createStatement();
             try {
                 stmt.execute(sql);
+                if (binary) {
+                    stmt.execute(getResourceAsString(H2Dialect.class, "/h2/convert-to-binary.sql"));
+                }
             } finally {
                 stmt.close();
             }
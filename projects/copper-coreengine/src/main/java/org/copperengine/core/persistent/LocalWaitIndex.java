@@ -0,0 +1,119 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.copperengine.core.WaitMode;
+
+/**
+ * Engine local index of the waits that were registered by this engine, i.e. whose {@link RegisterCall} was committed.
+ * Only waits that become ready with a single response are indexed, i.e. {@link WaitMode#FIRST} or a single
+ * correlation id.
+ * <p>
+ * The index is a hint only - an entry may be stale, e.g. if the workflow instance was dequeued by another engine. The
+ * statements of the local notify check the wait in the database.
+ */
+class LocalWaitIndex {
+
+    private static final class WaitEntry {
+        final String workflowInstanceId;
+        final String[] correlationIds;
+        final Timestamp timeoutTS;
+
+        WaitEntry(String workflowInstanceId, String[] correlationIds, Timestamp timeoutTS) {
+            this.workflowInstanceId = workflowInstanceId;
+            this.correlationIds = correlationIds;
+            this.timeoutTS = timeoutTS;
+        }
+    }
+
+    private final Object mutex = new Object();
+    private final Map<String, WaitEntry> cid2entry = new HashMap<String, WaitEntry>();
+    private final LinkedHashMap<String, WaitEntry> wfId2entry = new LinkedHashMap<String, WaitEntry>();
+    private final int maxSize;
+
+    public LocalWaitIndex(int maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException();
+        this.maxSize = maxSize;
+    }
+
+    public void add(RegisterCall rc) {
+        if (rc.waitMode == WaitMode.ALL && rc.correlationIds.length > 1)
+            return;
+        final WaitEntry entry = new WaitEntry(rc.workflow.getId(), rc.correlationIds, rc.timeoutTS);
+        synchronized (mutex) {
+            __remove(entry.workflowInstanceId);
+            if (wfId2entry.size() >= maxSize) {
+                Iterator<String> it = wfId2entry.keySet().iterator();
+                __remove(it.next());
+            }
+            wfId2entry.put(entry.workflowInstanceId, entry);
+            for (String cid : entry.correlationIds) {
+                cid2entry.put(cid, entry);
+            }
+        }
+    }
+
+    /**
+     * Removes the wait with the specified correlation id from the index.
+     *
+     * @return the id of the waiting workflow instance or null, if there is no such wait or the wait timed out
+     */
+    public String claim(String correlationId) {
+        final WaitEntry entry;
+        synchronized (mutex) {
+            entry = cid2entry.get(correlationId);
+            if (entry == null)
+                return null;
+            __remove(entry.workflowInstanceId);
+        }
+        if (entry.timeoutTS != null && entry.timeoutTS.getTime() <= System.currentTimeMillis()) {
+            // the timeout is handled by the queue state update
+            return null;
+        }
+        return entry.workflowInstanceId;
+    }
+
+    public void remove(String workflowInstanceId) {
+        synchronized (mutex) {
+            __remove(workflowInstanceId);
+        }
+    }
+
+    private void __remove(String workflowInstanceId) {
+        WaitEntry entry = wfId2entry.remove(workflowInstanceId);
+        if (entry != null) {
+            for (String cid : entry.correlationIds) {
+                if (cid2entry.get(cid) == entry) {
+                    cid2entry.remove(cid);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (mutex) {
+            return wfId2entry.size();
+        }
+    }
+
+}
@@ -61,6 +61,14 @@ public class MySqlDialect extends AbstractSqlDialect {
         return dequeueStmt;
     }
 
+    /**
+     * SELECT ... FOR UPDATE SKIP LOCKED is available since MySQL 8.0
+     */
+    @Override
+    protected boolean supportsSkipLockedDequeue() {
+        return true;
+    }
+
     @Override
     protected PreparedStatement createDeleteStaleResponsesStmt(final Connection c, final int MAX_ROWS) throws SQLException {
         PreparedStatement stmt = c.prepareStatement("delete from COP_RESPONSE where response_timeout < ? and not exists (select * from COP_WAIT w where w.correlation_id = COP_RESPONSE.correlation_id LIMIT " + MAX_ROWS + ")");
@@ -77,7 +85,7 @@ public class MySqlDialect extends AbstractSqlDialect {
     @SuppressWarnings("rawtypes")
     @Override
     public BatchCommand createBatchCommand4NotifyNoEarlyResponseHandling(Response<?> response, Acknowledge ack) throws Exception {
-        return new MySqlNotifyNoEarlyResponseHandling.Command(response, serializer, defaultStaleResponseRemovalTimeout, System.currentTimeMillis() + dbBatchingLatencyMSec, ack);
+        return new MySqlNotifyNoEarlyResponseHandling.Command(response, serializer, defaultStaleResponseRemovalTimeout, incrementalQueueStateUpdate, System.currentTimeMillis() + dbBatchingLatencyMSec, ack);
     }
 
     @Override
@@ -19,7 +19,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.copperengine.core.Acknowledge;
 import org.copperengine.core.Response;
@@ -47,13 +49,17 @@ class MySqlNotifyNoEarlyResponseHandling {
 
         final Response<?> response;
         final Serializer serializer;
+        final Object serializedResponse;
         final long defaultStaleResponseRemovalTimeout;
+        final boolean responseEvent;
 
-        public Command(Response<?> response, Serializer serializer, long defaultStaleResponseRemovalTimeout, final long targetTime, Acknowledge ack) {
+        public Command(Response<?> response, Serializer serializer, long defaultStaleResponseRemovalTimeout, boolean responseEvent, final long targetTime, Acknowledge ack) throws Exception {
             super(new AcknowledgeCallbackWrapper<Command>(ack), targetTime);
             this.response = response;
             this.serializer = serializer;
+            this.serializedResponse = SerializedColumns.serializeResponse(serializer, response);
             this.defaultStaleResponseRemovalTimeout = defaultStaleResponseRemovalTimeout;
+            this.responseEvent = responseEvent;
         }
 
         @Override
@@ -84,18 +90,24 @@ class MySqlNotifyNoEarlyResponseHandling {
             final PreparedStatement stmt = con.prepareStatement(SQL);
             try {
                 final Timestamp now = new Timestamp(System.currentTimeMillis());
+                final List<String> responseEvents = new ArrayList<String>();
                 for (BatchCommand<Executor, Command> _cmd : commands) {
                     Command cmd = (Command) _cmd;
                     stmt.setString(1, cmd.response.getCorrelationId());
                     stmt.setString(2, cmd.response.getCorrelationId());
                     stmt.setTimestamp(3, now);
-                    stmt.setString(4, cmd.serializer.serializeResponse(cmd.response));
+                    SerializedColumns.setResponse(cmd.serializer, stmt, 4, cmd.serializedResponse);
                     stmt.setTimestamp(5, TimeoutProcessor.processTimout(cmd.response.getInternalProcessingTimeout(), cmd.defaultStaleResponseRemovalTimeout));
                     stmt.setString(6, cmd.response.getMetaData());
                     stmt.setString(7, cmd.response.getResponseId());
                     stmt.addBatch();
+                    if (cmd.responseEvent) {
+                        responseEvents.add(cmd.response.getResponseId());
+                    }
                 }
                 stmt.executeBatch();
+                // responses without a waiting workflow instance were not inserted, so they get no event either
+                SqlResponseEvent.insert(responseEvents, con);
             } catch (SQLException e) {
                 logger.error("doExec failed", e);
                 logger.error("NextException=", e.getNextException());
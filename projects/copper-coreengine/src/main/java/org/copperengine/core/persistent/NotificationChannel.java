@@ -0,0 +1,83 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A channel to push queue state changes to all engines that are connected to the same database.
+ * <p>
+ * Without a notification channel, the {@link ScottyDBStorage} finds new responses and new queue entries by polling
+ * the database. A notification channel wakes up the ENQUEUE thread and the dequeue loops of every engine as soon as
+ * a response was stored or a workflow instance was enqueued by any engine. While the channel is not available, the
+ * storage falls back to polling.
+ */
+public interface NotificationChannel {
+
+    public enum Event {
+        /**
+         * A response was stored in COP_RESPONSE, i.e. the queue state has to be updated
+         */
+        RESPONSE,
+        /**
+         * A workflow instance was inserted into COP_QUEUE, i.e. processor pools may dequeue
+         */
+        ENQUEUE
+    }
+
+    public interface Listener {
+        void onEvent(Event event);
+    }
+
+    /**
+     * Starts listening on the channel. Events sent by other engines are passed to the listener.
+     *
+     * @param listener
+     *        listener that is invoked for every received event
+     */
+    public void startup(Listener listener);
+
+    public void shutdown();
+
+    /**
+     * @return true, if the channel is currently connected and delivers events. If false, the caller has to fall back
+     *         to polling.
+     */
+    public boolean isAvailable();
+
+    /**
+     * Signals an event to all engines. The event is sent asynchronously, so this method must only be called after the
+     * corresponding database transaction was committed. Multiple signals of the same event may be coalesced.
+     *
+     * @param event
+     *        the event to send
+     */
+    public void signal(Event event);
+
+    /**
+     * Signals an event to all engines within the scope of the transaction of the provided connection. The event is
+     * delivered when the transaction commits and discarded if it rolls back.
+     *
+     * @param event
+     *        the event to send
+     * @param con
+     *        connection of the current transaction
+     * @throws SQLException
+     *         If anything goes wrong regarding SQL.
+     */
+    public void signal(Event event, Connection con) throws SQLException;
+}
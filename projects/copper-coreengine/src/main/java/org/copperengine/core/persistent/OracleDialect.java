@@ -64,6 +64,14 @@ import org.slf4j.LoggerFactory;
 public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
 
     private static final Logger logger = LoggerFactory.getLogger(OracleDialect.class);
+    /**
+     * Number of candidate COP_QUEUE rows per requested row of a SKIP LOCKED dequeue. Oracle evaluates rownum before it
+     * skips the locked rows, so the candidates must cover the rows that other engines are about to claim. The factor
+     * allows for three concurrently dequeueing engines without waste; a larger one only makes each dequeue sort and
+     * scan more rows. If more candidates are locked, the dequeue returns fewer rows or none. The other engines set
+     * the engine_id of their rows on commit, so the next dequeue sees the following rows.
+     */
+    static final int SKIP_LOCKED_CANDIDATES_PER_ROW = 4;
 
     // internal members
     private StmtStatistic dequeueAllStmtStatistic;
@@ -91,6 +99,8 @@ public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
     private long defaultStaleResponseRemovalTimeout = 60 * 60 * 1000;
     private int dbBatchingLatencyMSec = 0;
     private boolean concurrentResponseLoading = true;
+    private boolean skipLockedDequeue = false;
+    private volatile Boolean skipLockedSupported = null;
 
     public OracleDialect() {
     }
@@ -157,6 +167,24 @@ public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
         this.multiEngineMode = multiEngineMode;
     }
 
+    /**
+     * If turned on, dequeue does not request the per processor pool DBMS_LOCK but claims the COP_QUEUE entries using
+     * SELECT ... FOR UPDATE SKIP LOCKED, so that multiple engines may dequeue from the same processor pool
+     * concurrently. Requires Oracle 11g or later, older versions keep using the DBMS_LOCK. Each dequeue considers at
+     * most {@value #SKIP_LOCKED_CANDIDATES_PER_ROW} times the requested number of queue entries.
+     *
+     * @param skipLockedDequeue
+     *        true to use SKIP LOCKED based dequeueing, false (default) to serialize dequeueing by the database lock
+     */
+    public void setSkipLockedDequeue(boolean skipLockedDequeue) {
+        logger.info("setSkipLockedDequeue({})", skipLockedDequeue);
+        this.skipLockedDequeue = skipLockedDequeue;
+    }
+
+    public boolean isSkipLockedDequeue() {
+        return skipLockedDequeue;
+    }
+
     public void setRuntimeStatisticsCollector(RuntimeStatisticsCollector runtimeStatisticsCollector) {
         this.runtimeStatisticsCollector = runtimeStatisticsCollector;
         initStmtStats();
@@ -204,7 +232,10 @@ public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
         final long startTS = System.currentTimeMillis();
         final List<Workflow<?>> rv = new ArrayList<Workflow<?>>(max);
 
-        lock(con, "dequeue#" + ppoolId);
+        final boolean skipLocked = skipLockedDequeue && isSkipLockedSupported(con);
+        if (!skipLocked) {
+            lock(con, "dequeue#" + ppoolId);
+        }
 
         ResponseLoader responseLoader = getResponseLoader(ppoolId);
         responseLoader.setCon(con);
@@ -213,12 +244,26 @@ public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
         responseLoader.beginTxn();
 
         final List<OracleSetToError.Command> invalidWorkflowInstances = new ArrayList<OracleSetToError.Command>();
-        final PreparedStatement dequeueStmt = con.prepareStatement("select id,priority,data,rowid,long_data,creation_ts,object_state,long_object_state,last_mod_ts from COP_WORKFLOW_INSTANCE where rowid in (select * from (select WFI_ROWID from COP_QUEUE where ppool_id=? and engine_id is null order by ppool_id, priority, last_mod_ts) where rownum <= ?)");
+        final PreparedStatement dequeueStmt;
+        if (skipLocked) {
+            // rownum is evaluated before SKIP LOCKED, so it bounds the candidates to a multiple of max, some of which
+            // may be locked by other engines. SKIP LOCKED locks the rows as they are fetched, so at most max rows are
+            // fetched and locked.
+            dequeueStmt = con.prepareStatement("select w.id,w.priority,w.data,w.rowid,w.long_data,w.creation_ts,w.object_state,w.long_object_state,w.last_mod_ts from COP_QUEUE q, COP_WORKFLOW_INSTANCE w where w.rowid = q.WFI_ROWID and q.rowid in (select * from (select rowid from COP_QUEUE where ppool_id=? and engine_id is null order by ppool_id, priority, last_mod_ts) where rownum <= ?) and q.engine_id is null order by q.priority, q.last_mod_ts for update of q.engine_id skip locked");
+        } else {
+            dequeueStmt = con.prepareStatement("select id,priority,data,rowid,long_data,creation_ts,object_state,long_object_state,last_mod_ts from COP_WORKFLOW_INSTANCE where rowid in (select * from (select WFI_ROWID from COP_QUEUE where ppool_id=? and engine_id is null order by ppool_id, priority, last_mod_ts) where rownum <= ?)");
+        }
         final Map<String, Workflow<?>> map = new HashMap<String, Workflow<?>>(max * 3);
         try {
             dequeueStmt.setString(1, ppoolId);
-            dequeueStmt.setInt(2, max);
-            dequeueStmt.setFetchSize(500);
+            if (skipLocked) {
+                dequeueStmt.setInt(2, max * SKIP_LOCKED_CANDIDATES_PER_ROW);
+                dequeueStmt.setMaxRows(max);
+                dequeueStmt.setFetchSize(Math.min(max, 500));
+            } else {
+                dequeueStmt.setInt(2, max);
+                dequeueStmt.setFetchSize(500);
+            }
             dequeueAllStmtStatistic.start();
             logger.trace("Query next {} elements from queue", max);
             dequeueQueryBPsStmtStatistic.start();
@@ -242,6 +287,7 @@ public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
                     sw.setData(data);
                     sw.setObjectState(objectState);
                     PersistentWorkflow<?> wf = (PersistentWorkflow<?>) serializer.deserializeWorkflow(sw, wfRepository);
+                    wf.setFingerprints(sw);
                     wf.setId(id);
                     wf.setProcessorPoolId(ppoolId);
                     wf.setPriority(prio);
@@ -279,6 +325,19 @@ public class OracleDialect implements DatabaseDialect, DatabaseDialectMXBean {
         return rv;
     }
 
+    private boolean isSkipLockedSupported(Connection con) throws SQLException {
+        Boolean supported = skipLockedSupported;
+        if (supported == null) {
+            final int majorVersion = con.getMetaData().getDatabaseMajorVersion();
+            supported = majorVersion >= 11;
+            if (!supported) {
+                logger.warn("SKIP LOCKED is not supported by Oracle {} - dequeue keeps using the DBMS_LOCK", majorVersion);
+            }
+            skipLockedSupported = supported;
+        }
+        return supported;
+    }
+
     @SuppressWarnings({ "rawtypes", "unchecked" })
     private void handleInvalidWorkflowInstances(Connection con, final List invalidWorkflowInstances) throws Exception {
         logger.debug("invalidWorkflowInstances.size()={}", invalidWorkflowInstances.size());
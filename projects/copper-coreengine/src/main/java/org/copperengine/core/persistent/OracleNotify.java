@@ -32,13 +32,13 @@ class OracleNotify {
     static final class Command extends AbstractBatchCommand<Executor, Command> {
 
         final Response<?> response;
-        final Serializer serializer;
+        final String serializedResponse;
         final long defaultStaleResponseRemovalTimeout;
 
-        public Command(Response<?> response, Serializer serializer, long defaultStaleResponseRemovalTimeout, final long targetTime, Acknowledge ack) {
+        public Command(Response<?> response, Serializer serializer, long defaultStaleResponseRemovalTimeout, final long targetTime, Acknowledge ack) throws Exception {
             super(new AcknowledgeCallbackWrapper<Command>(ack), targetTime);
             this.response = response;
-            this.serializer = serializer;
+            this.serializedResponse = serializer.serializeResponse(response);
             this.defaultStaleResponseRemovalTimeout = defaultStaleResponseRemovalTimeout;
         }
 
@@ -71,7 +71,7 @@ class OracleNotify {
                     Command cmd = (Command) _cmd;
                     stmt.setString(1, cmd.response.getCorrelationId());
                     stmt.setTimestamp(2, now);
-                    String payload = cmd.serializer.serializeResponse(cmd.response);
+                    String payload = cmd.serializedResponse;
                     stmt.setString(3, payload.length() > 4000 ? null : payload);
                     stmt.setString(4, payload.length() > 4000 ? payload : null);
                     stmt.setString(5, cmd.response.getMetaData());
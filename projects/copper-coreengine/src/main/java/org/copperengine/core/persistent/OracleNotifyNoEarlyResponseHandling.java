@@ -39,13 +39,13 @@ class OracleNotifyNoEarlyResponseHandling {
     static final class Command extends AbstractBatchCommand<Executor, Command> {
 
         final Response<?> response;
-        final Serializer serializer;
+        final String serializedResponse;
         final long defaultStaleResponseRemovalTimeout;
 
-        public Command(Response<?> response, Serializer serializer, long defaultStaleResponseRemovalTimeout, final long targetTime, Acknowledge ack) {
+        public Command(Response<?> response, Serializer serializer, long defaultStaleResponseRemovalTimeout, final long targetTime, Acknowledge ack) throws Exception {
             super(new AcknowledgeCallbackWrapper<Command>(ack), targetTime);
             this.response = response;
-            this.serializer = serializer;
+            this.serializedResponse = serializer.serializeResponse(response);
             this.defaultStaleResponseRemovalTimeout = defaultStaleResponseRemovalTimeout;
         }
 
@@ -79,7 +79,7 @@ class OracleNotifyNoEarlyResponseHandling {
                     stmt.setString(1, cmd.response.getCorrelationId());
                     stmt.setString(2, cmd.response.getCorrelationId());
                     stmt.setTimestamp(3, now);
-                    String payload = cmd.serializer.serializeResponse(cmd.response);
+                    String payload = cmd.serializedResponse;
                     stmt.setString(4, payload.length() > 4000 ? null : payload);
                     stmt.setString(5, payload.length() > 4000 ? payload : null);
                     stmt.setTimestamp(6, TimeoutProcessor.processTimout(cmd.response.getInternalProcessingTimeout(), cmd.defaultStaleResponseRemovalTimeout));
@@ -44,10 +44,12 @@ class OracleRegisterCallback {
     static final class Command extends AbstractBatchCommand<Executor, Command> {
 
         private final RegisterCall registerCall;
-        private final Serializer serializer;
+        private final SerializedWorkflow serializedWorkflow;
+        private final boolean writeData;
+        private final boolean writeObjectState;
         private final WorkflowPersistencePlugin workflowPersistencePlugin;
 
-        public Command(final RegisterCall registerCall, final Serializer serializer, final ScottyDBStorageInterface dbStorageInterface, final long targetTime, final WorkflowPersistencePlugin workflowPersistencePlugin, final Acknowledge ack) {
+        public Command(final RegisterCall registerCall, final Serializer serializer, final ScottyDBStorageInterface dbStorageInterface, final long targetTime, final WorkflowPersistencePlugin workflowPersistencePlugin, final Acknowledge ack) throws Exception {
             super(new CommandCallback<Command>() {
                 @Override
                 public void commandCompleted() {
@@ -63,7 +65,15 @@ class OracleRegisterCallback {
                 }
             }, targetTime);
             this.registerCall = registerCall;
-            this.serializer = serializer;
+            this.serializedWorkflow = serializer.serializeWorkflow(registerCall.workflow);
+            final PersistentWorkflow<?> pw = (PersistentWorkflow<?>) registerCall.workflow;
+            final long dataFingerprint = serializedWorkflow.dataFingerprint();
+            final long objectStateFingerprint = serializedWorkflow.objectStateFingerprint();
+            this.writeData = dataFingerprint != pw.dataFingerprint;
+            this.writeObjectState = objectStateFingerprint != pw.objectStateFingerprint;
+            // if the command fails, the workflow instance is set to error state and not used any further
+            pw.dataFingerprint = dataFingerprint;
+            pw.objectStateFingerprint = objectStateFingerprint;
             this.workflowPersistencePlugin = workflowPersistencePlugin;
         }
 
@@ -78,6 +88,10 @@ class OracleRegisterCallback {
 
         private static final Executor INSTANCE = new Executor();
 
+        private static String updateWfiSql(final boolean writeData, final boolean writeObjectState) {
+            return "UPDATE COP_WORKFLOW_INSTANCE SET STATE=?, PRIORITY=?, LAST_MOD_TS=?, PPOOL_ID=?, " + (writeData ? "DATA=?, LONG_DATA=?, " : "") + (writeObjectState ? "OBJECT_STATE=?, LONG_OBJECT_STATE=?, " : "") + "CS_WAITMODE=?, MIN_NUMB_OF_RESP=?, NUMB_OF_WAITS=?, TIMEOUT=? WHERE ID=?";
+        }
+
         @Override
         public void doExec(final Collection<BatchCommand<Executor, Command>> commands, final Connection con) throws Exception {
             final Timestamp now = new Timestamp(System.currentTimeMillis());
@@ -87,7 +101,8 @@ class OracleRegisterCallback {
             PreparedStatement deleteWait = con.prepareStatement("DELETE FROM COP_WAIT WHERE CORRELATION_ID=?");
             PreparedStatement deleteResponse = con.prepareStatement("DELETE FROM COP_RESPONSE WHERE RESPONSE_ID=?");
             PreparedStatement insertWaitStmt = con.prepareStatement("INSERT INTO COP_WAIT (CORRELATION_ID,WORKFLOW_INSTANCE_ID,MIN_NUMB_OF_RESP,TIMEOUT_TS,STATE,PRIORITY,PPOOL_ID,WFI_ROWID) VALUES (?,?,?,?,?,?,?,?)");
-            PreparedStatement updateWfiStmt = con.prepareStatement("UPDATE COP_WORKFLOW_INSTANCE SET STATE=?, PRIORITY=?, LAST_MOD_TS=?, PPOOL_ID=?, DATA=?, LONG_DATA=?, OBJECT_STATE=?, LONG_OBJECT_STATE=?, CS_WAITMODE=?, MIN_NUMB_OF_RESP=?, NUMB_OF_WAITS=?, TIMEOUT=? WHERE ID=?");
+            // one update statement per combination of changed DATA and OBJECT_STATE columns, prepared on demand
+            final PreparedStatement[] updateWfiStmts = new PreparedStatement[4];
             try {
                 HashMap<WorkflowPersistencePlugin, ArrayList<PersistentWorkflow<?>>> wfs = new HashMap<WorkflowPersistencePlugin, ArrayList<PersistentWorkflow<?>>>();
                 for (BatchCommand<Executor, Command> _cmd : commands) {
@@ -112,25 +127,35 @@ class OracleRegisterCallback {
                         insertWaitStmt.setString(8, ((PersistentWorkflow<?>) rc.workflow).rowid);
                         insertWaitStmt.addBatch();
                     }
+                    final int variant = (cmd.writeData ? 2 : 0) + (cmd.writeObjectState ? 1 : 0);
+                    PreparedStatement updateWfiStmt = updateWfiStmts[variant];
+                    if (updateWfiStmt == null) {
+                        updateWfiStmt = con.prepareStatement(updateWfiSql(cmd.writeData, cmd.writeObjectState));
+                        updateWfiStmts[variant] = updateWfiStmt;
+                    }
                     int idx = 1;
-                    SerializedWorkflow sw = cmd.serializer.serializeWorkflow(rc.workflow);
+                    SerializedWorkflow sw = cmd.serializedWorkflow;
                     updateWfiStmt.setInt(idx++, DBProcessingState.WAITING.ordinal());
                     updateWfiStmt.setInt(idx++, rc.workflow.getPriority());
                     updateWfiStmt.setTimestamp(idx++, now);
                     updateWfiStmt.setString(idx++, rc.workflow.getProcessorPoolId());
-                    if (sw.getData() != null) {
-                        updateWfiStmt.setString(idx++, sw.getData().length() > 4000 ? null : sw.getData());
-                        updateWfiStmt.setString(idx++, sw.getData().length() > 4000 ? sw.getData() : null);
-                    } else {
-                        updateWfiStmt.setString(idx++, null);
-                        updateWfiStmt.setString(idx++, null);
+                    if (cmd.writeData) {
+                        if (sw.getData() != null) {
+                            updateWfiStmt.setString(idx++, sw.getData().length() > 4000 ? null : sw.getData());
+                            updateWfiStmt.setString(idx++, sw.getData().length() > 4000 ? sw.getData() : null);
+                        } else {
+                            updateWfiStmt.setString(idx++, null);
+                            updateWfiStmt.setString(idx++, null);
+                        }
                     }
-                    if (sw.getObjectState() != null) {
-                        updateWfiStmt.setString(idx++, sw.getObjectState().length() > 4000 ? null : sw.getObjectState());
-                        updateWfiStmt.setString(idx++, sw.getObjectState().length() > 4000 ? sw.getObjectState() : null);
-                    } else {
-                        updateWfiStmt.setString(idx++, null);
-                        updateWfiStmt.setString(idx++, null);
+                    if (cmd.writeObjectState) {
+                        if (sw.getObjectState() != null) {
+                            updateWfiStmt.setString(idx++, sw.getObjectState().length() > 4000 ? null : sw.getObjectState());
+                            updateWfiStmt.setString(idx++, sw.getObjectState().length() > 4000 ? sw.getObjectState() : null);
+                        } else {
+                            updateWfiStmt.setString(idx++, null);
+                            updateWfiStmt.setString(idx++, null);
+                        }
                     }
                     updateWfiStmt.setInt(idx++, rc.waitMode.ordinal());
                     updateWfiStmt.setInt(idx++, rc.waitMode == WaitMode.FIRST ? 1 : rc.correlationIds.length);
@@ -167,7 +192,10 @@ class OracleRegisterCallback {
                     deleteWait.executeBatch();
 
                 insertWaitStmt.executeBatch();
-                updateWfiStmt.executeBatch();
+                for (PreparedStatement updateWfiStmt : updateWfiStmts) {
+                    if (updateWfiStmt != null)
+                        updateWfiStmt.executeBatch();
+                }
                 stmtDelQueue.executeBatch();
 
                 for (BatchCommand<Executor, Command> _cmd : commands) {
@@ -187,7 +215,9 @@ class OracleRegisterCallback {
                 JdbcUtils.closeStatement(deleteWait);
                 JdbcUtils.closeStatement(deleteResponse);
                 JdbcUtils.closeStatement(insertWaitStmt);
-                JdbcUtils.closeStatement(updateWfiStmt);
+                for (PreparedStatement updateWfiStmt : updateWfiStmts) {
+                    JdbcUtils.closeStatement(updateWfiStmt);
+                }
             }
         }
 
@@ -148,6 +148,14 @@ public class OracleSimpleDialect extends AbstractSqlDialect {
     }
     
 
+    /**
+     * The Oracle notify statement does not record its responses in COP_RESPONSE_EVENT
+     */
+    @Override
+    protected boolean supportsIncrementalQueueStateUpdate() {
+        return false;
+    }
+
     @Override
     protected void addLimitation(StringBuilder sql, int max) {
         sql.append(" AND ROWNUM <= ").append(max);
@@ -40,12 +40,14 @@ class OracleSimpleNotifyNoEarlyResponseHandling {
 
         final Response<?> response;
         final Serializer serializer;
+        final Object serializedResponse;
         final long defaultStaleResponseRemovalTimeout;
 
-        public Command(Response<?> response, Serializer serializer, long defaultStaleResponseRemovalTimeout, final long targetTime, Acknowledge ack) {
+        public Command(Response<?> response, Serializer serializer, long defaultStaleResponseRemovalTimeout, final long targetTime, Acknowledge ack) throws Exception {
             super(new AcknowledgeCallbackWrapper<Command>(ack), targetTime);
             this.response = response;
             this.serializer = serializer;
+            this.serializedResponse = SerializedColumns.serializeResponse(serializer, response);
             this.defaultStaleResponseRemovalTimeout = defaultStaleResponseRemovalTimeout;
         }
 
@@ -79,8 +81,7 @@ class OracleSimpleNotifyNoEarlyResponseHandling {
                     stmt.setString(1, cmd.response.getCorrelationId());
                     stmt.setString(2, cmd.response.getCorrelationId());
                     stmt.setTimestamp(3, now);
-                    String payload = cmd.serializer.serializeResponse(cmd.response);
-                    stmt.setString(4, payload);
+                    SerializedColumns.setResponse(cmd.serializer, stmt, 4, cmd.serializedResponse);
                     stmt.setTimestamp(5, TimeoutProcessor.processTimout(cmd.response.getInternalProcessingTimeout(), cmd.defaultStaleResponseRemovalTimeout));
                     stmt.setString(6, cmd.response.getMetaData());
                     stmt.addBatch();
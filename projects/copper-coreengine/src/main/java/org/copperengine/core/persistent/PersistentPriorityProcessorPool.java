@@ -21,6 +21,7 @@ import java.util.Queue;
 
 import org.copperengine.core.ProcessingState;
 import org.copperengine.core.Workflow;
+import org.copperengine.core.common.ConcurrentWfPriorityQueue;
 import org.copperengine.core.common.PriorityProcessorPool;
 import org.copperengine.core.common.WfPriorityQueue;
 import org.copperengine.core.internal.WorkflowAccessor;
@@ -53,6 +54,7 @@ public class PersistentPriorityProcessorPool extends PriorityProcessorPool imple
     private volatile int emptyQueueWaitMSec = 50;
     private volatile int _dequeueBulkSize = DEFAULT_DEQUEUE_SIZE;
     private Integer oldDequeueBulkSize = null;
+    private volatile boolean notifiedLowerThreshold = false;
 
     /**
      * Creates a new {@link PersistentPriorityProcessorPool} with as many worker threads as processors available on the
@@ -93,25 +95,36 @@ public class PersistentPriorityProcessorPool extends PriorityProcessorPool imple
 
     @Override
     protected Queue<Workflow<?>> createQueue() {
+        if (isConcurrentQueue()) {
+            return new ConcurrentWfPriorityQueue() {
+                @Override
+                public Workflow<?> poll() {
+                    Workflow<?> wf = super.poll();
+                    checkLowerThreshold(size());
+                    return wf;
+                }
+            };
+        }
         return new WfPriorityQueue() {
-            private boolean notifiedLowerThreshold = false;
-
             @Override
             public Workflow<?> poll() {
                 Workflow<?> wf = super.poll();
-                if (!notifiedLowerThreshold && size() < lowerThreshold) {
-                    signalQueueSizeBelowLowerThreshold();
-                    notifiedLowerThreshold = true;
-                }
-                if (notifiedLowerThreshold && size() > lowerThreshold) {
-                    notifiedLowerThreshold = false;
-                }
+                checkLowerThreshold(size());
                 return wf;
             }
-
         };
     }
 
+    private void checkLowerThreshold(int size) {
+        if (!notifiedLowerThreshold && size < lowerThreshold) {
+            signalQueueSizeBelowLowerThreshold();
+            notifiedLowerThreshold = true;
+        }
+        if (notifiedLowerThreshold && size > lowerThreshold) {
+            notifiedLowerThreshold = false;
+        }
+    }
+
     @Override
     public synchronized void startup() {
         super.startup();
@@ -167,14 +180,7 @@ public class PersistentPriorityProcessorPool extends PriorityProcessorPool imple
                     doWait(emptyQueueWaitMSec);
                 } else {
                     logger.trace("Dequeue returned {} elements.", rv.size());
-                    for (Workflow<?> wf : rv) {
-                        WorkflowAccessor.setProcessingState(wf, ProcessingState.DEQUEUED);
-                        engine.register(wf);
-                    }
-                    synchronized (queue) {
-                        queue.addAll(rv);
-                        queue.notifyAll();
-                    }
+                    enqueue(engine, rv);
                 }
             } catch (InterruptedException e) {
                 logger.info("interrupted");
@@ -185,6 +191,39 @@ public class PersistentPriorityProcessorPool extends PriorityProcessorPool imple
         logger.info("stopped");
     }
 
+    private void enqueue(final PersistentScottyEngine engine, final List<Workflow<?>> wfs) {
+        for (Workflow<?> wf : wfs) {
+            WorkflowAccessor.setProcessingState(wf, ProcessingState.DEQUEUED);
+            engine.register(wf);
+        }
+        if (queue.isConcurrent()) {
+            // addAll wakes up as many idle processors as needed
+            queue.addAll(wfs);
+        } else {
+            synchronized (queue) {
+                queue.addAll(wfs);
+                queue.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return true, if workflow instances may be put into the queue of this pool directly, i.e. the pool is running and
+     *         dequeue is not suspended
+     */
+    boolean isDirectEnqueueAvailable() {
+        return thread != null && !shutdown && _dequeueBulkSize > 0;
+    }
+
+    /**
+     * Puts a workflow instance, whose queue entry in the database is claimed by this engine, directly into the queue
+     * of this pool.
+     */
+    void enqueue(Workflow<?> wf) {
+        logger.trace("enqueue({})", wf.getId());
+        enqueue((PersistentScottyEngine) getEngine(), Collections.<Workflow<?>> singletonList(wf));
+    }
+
     @Override
     public void doNotify() {
         logger.trace("doNotify");
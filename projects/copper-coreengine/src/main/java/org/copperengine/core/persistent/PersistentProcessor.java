@@ -17,6 +17,7 @@ package org.copperengine.core.persistent;
 
 import java.util.Date;
 import java.util.Queue;
+import java.util.concurrent.locks.Lock;
 
 import org.copperengine.core.Acknowledge;
 import org.copperengine.core.Interrupt;
@@ -50,7 +51,9 @@ public class PersistentProcessor extends Processor {
             transactionController.run(new Transaction<Void>() {
                 @Override
                 public Void run() throws Exception {
-                    synchronized (pw) {
+                    final Lock processingLock = WorkflowAccessor.getProcessingLock(pw);
+                    processingLock.lock();
+                    try {
                         try {
                             WorkflowAccessor.setProcessingState(pw, ProcessingState.RUNNING);
                             WorkflowAccessor.setLastActivityTS(wf, new Date());
@@ -58,7 +61,7 @@ public class PersistentProcessor extends Processor {
                             pw.__beforeProcess();
                             pw.main();
                             WorkflowAccessor.setProcessingState(pw, ProcessingState.FINISHED);
-                            engine.getDbStorage().finish(pw, new Acknowledge.BestEffortAcknowledge());
+                            engine.getDbStorage().finish(pw, engine.createFinishAcknowledge(pw.getId()));
                             assert pw.get__stack().isEmpty() : "Stack must be empty";
                         } catch (Interrupt e) {
                             assert pw.get__stack().size() > 0;
@@ -68,12 +71,18 @@ public class PersistentProcessor extends Processor {
                         }
                         if (pw.registerCall != null) {
                             engine.getDbStorage().registerCallback(pw.registerCall, new Acknowledge.BestEffortAcknowledge());
+                        } else if (pw.savepointWaitHooks != null) {
+                            engine.savepoint(pw);
                         }
+                    } finally {
+                        processingLock.unlock();
                     }
                     return null;
                 }
             });
+            engine.transactionCommitted(pw);
         } catch (Exception e) {
+            pw.directEnqueue = null;
             logger.error("execution of workflow instance failed", e);
             handleError(pw, e);
         }
@@ -81,10 +90,12 @@ public class PersistentProcessor extends Processor {
 
     protected void handleError(PersistentWorkflow<?> wf, Exception exception) {
         logger.error("Storing error information for workflow instance...");
+        final Acknowledge ack = engine.createErrorAcknowledge(wf.getId(), exception);
         try {
-            engine.getDbStorage().error(wf, exception, new Acknowledge.BestEffortAcknowledge());
+            engine.getDbStorage().error(wf, exception, ack);
         } catch (Exception e) {
             logger.error("FATAL ERROR: Unable to store error information", e);
+            ack.onException(e);
         }
     }
 
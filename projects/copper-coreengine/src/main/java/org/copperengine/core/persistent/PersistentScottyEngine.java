@@ -26,8 +26,16 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Date;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.copperengine.core.Acknowledge;
@@ -73,6 +81,10 @@ public class PersistentScottyEngine extends AbstractProcessingEngine implements
     private final Map<String, Workflow<?>> workflowMap = new ConcurrentHashMap<String, Workflow<?>>();
     private final Map<String, List<WaitHook>> waitHookMap = new HashMap<String, List<WaitHook>>();
     private final AtomicLong sequenceIdFactory = new AtomicLong(System.currentTimeMillis() * 10000L);
+    private volatile boolean directSavepoint = false;
+    private volatile Executor asyncRunExecutor;
+    private ExecutorService defaultAsyncRunExecutor;
+    private int numberOfAsyncRunThreads = 4;
 
     /**
      * @param notifyProcessorPoolsOnResponse
@@ -95,6 +107,77 @@ public class PersistentScottyEngine extends AbstractProcessingEngine implements
         this.processorPoolManager = processorPoolManager;
     }
 
+    /**
+     * If turned on, {@link Workflow#resubmit()} and {@link Workflow#savepoint()} write the state of the workflow
+     * instance and its new queue entry in a single batch command, instead of registering a wait, notifying it and
+     * waiting for the queue state update. If the processor pool of the workflow instance is a running
+     * {@link PersistentPriorityProcessorPool} of this engine, the queue entry is claimed by this engine and the
+     * instance is put into the pool's queue as soon as the state is committed, i.e. it is not read from the database
+     * again. Storages that do not support it fall back to the wait/notify.
+     * <p>
+     * Default is false.
+     *
+     * @param directSavepoint
+     *        true to turn it on
+     */
+    public void setDirectSavepoint(boolean directSavepoint) {
+        this.directSavepoint = directSavepoint;
+    }
+
+    public boolean isDirectSavepoint() {
+        return directSavepoint;
+    }
+
+    /**
+     * Sets the executor that inserts the workflow instances passed to {@link #runAsync(WorkflowInstanceDescr)} and
+     * {@link #runBatchAsync(List)} into the database. Default is an executor of this engine with
+     * {@link #setNumberOfAsyncRunThreads(int)} threads, which is shut down together with the engine. Use an executor with
+     * about as many threads as the database connection pool, if the workflow instances are started at a high rate.
+     *
+     * @param asyncRunExecutor
+     *        the executor
+     */
+    public void setAsyncRunExecutor(Executor asyncRunExecutor) {
+        if (asyncRunExecutor == null)
+            throw new NullPointerException();
+        this.asyncRunExecutor = asyncRunExecutor;
+    }
+
+    /**
+     * Sets the number of threads of the default executor for {@link #runAsync(WorkflowInstanceDescr)} and
+     * {@link #runBatchAsync(List)}, see {@link #setAsyncRunExecutor(Executor)}. Default is 4.
+     *
+     * @param numberOfAsyncRunThreads
+     *        number of threads, at least 1
+     */
+    public void setNumberOfAsyncRunThreads(int numberOfAsyncRunThreads) {
+        if (numberOfAsyncRunThreads <= 0)
+            throw new IllegalArgumentException();
+        this.numberOfAsyncRunThreads = numberOfAsyncRunThreads;
+    }
+
+    private Executor getAsyncRunExecutor() {
+        Executor executor = asyncRunExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                if (asyncRunExecutor == null) {
+                    final AtomicInteger threadCounter = new AtomicInteger();
+                    final ThreadFactory threadFactory = r -> {
+                        Thread t = new Thread(r, getEngineId() + "-AsyncRun#" + threadCounter.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    };
+                    final ThreadPoolExecutor pool = new ThreadPoolExecutor(numberOfAsyncRunThreads, numberOfAsyncRunThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+                    pool.allowCoreThreadTimeOut(true);
+                    defaultAsyncRunExecutor = pool;
+                    asyncRunExecutor = pool;
+                }
+                executor = asyncRunExecutor;
+            }
+        }
+        return executor;
+    }
+
     @Override
     public void notify(Response<?> response, Acknowledge ack) {
         if (logger.isTraceEnabled())
@@ -125,6 +208,9 @@ public class PersistentScottyEngine extends AbstractProcessingEngine implements
         logger.info("Engine is shutting down...");
         engineState = EngineState.SHUTTING_DOWN;
         processorPoolManager.shutdown();
+        if (defaultAsyncRunExecutor != null) {
+            defaultAsyncRunExecutor.shutdown();
+        }
         dbStorage.shutdown();
         super.shutdown();
         logger.info("Engine is stopped");
@@ -172,6 +258,91 @@ public class PersistentScottyEngine extends AbstractProcessingEngine implements
         WorkflowAccessor.setTimeoutTS(pw, pw.registerCall.timeoutTS);
     }
 
+    @Override
+    public boolean resubmit(Workflow<?> w) {
+        if (!directSavepoint)
+            return false;
+        if (logger.isTraceEnabled())
+            logger.trace("resubmit(" + w + ")");
+        PersistentWorkflow<?> pw = (PersistentWorkflow<?>) w;
+        if (processorPoolManager.getProcessorPool(pw.getProcessorPoolId()) == null) {
+            logger.error("Unkown processor pool '" + pw.getProcessorPoolId() + "' - using default pool instead");
+            pw.setProcessorPoolId(PersistentProcessorPool.DEFAULT_POOL_ID);
+        }
+        pw.savepointWaitHooks = getAndRemoveWaitHooks(pw);
+        WorkflowAccessor.setTimeoutTS(pw, null);
+        return true;
+    }
+
+    /**
+     * Writes a workflow instance that returned from {@link #resubmit(Workflow)} and enqueues it again.
+     */
+    void savepoint(final PersistentWorkflow<?> pw) throws Exception {
+        final List<WaitHook> waitHooks = pw.savepointWaitHooks;
+        pw.savepointWaitHooks = null;
+        final PersistentProcessorPool pp = processorPoolManager.getProcessorPool(pw.getProcessorPoolId());
+        final PersistentPriorityProcessorPool localPool = pp instanceof PersistentPriorityProcessorPool && ((PersistentPriorityProcessorPool) pp).isDirectEnqueueAvailable() ? (PersistentPriorityProcessorPool) pp : null;
+        final DirectEnqueue directEnqueue = localPool != null ? new DirectEnqueue(pw, localPool) : null;
+        pw.directEnqueue = directEnqueue;
+        final boolean supported = dbStorage.savepoint(pw, localPool != null, waitHooks, new Acknowledge() {
+            @Override
+            public void onSuccess() {
+                if (directEnqueue != null) {
+                    directEnqueue.arrive();
+                } else {
+                    notifyProcessorPool(pw.getProcessorPoolId());
+                }
+            }
+
+            @Override
+            public void onException(Throwable t) {
+                // the storage sets the workflow instance to error state
+            }
+        });
+        if (!supported) {
+            pw.directEnqueue = null;
+            final String cid = createUUID();
+            pw.registerCall = new RegisterCall(pw, WaitMode.ALL, null, new String[] { cid }, waitHooks);
+            dbStorage.registerCallback(pw.registerCall, new Acknowledge.BestEffortAcknowledge());
+            notify(new Response<Object>(cid, null, null), new Acknowledge.BestEffortAcknowledge());
+        }
+    }
+
+    /**
+     * Called by the processor after its transaction is committed. Enqueues a workflow instance that was written by
+     * {@link #savepoint(PersistentWorkflow)}, if the savepoint is acknowledged as well.
+     */
+    void transactionCommitted(final PersistentWorkflow<?> pw) {
+        final DirectEnqueue directEnqueue = pw.directEnqueue;
+        if (directEnqueue != null) {
+            pw.directEnqueue = null;
+            directEnqueue.arrive();
+        }
+    }
+
+    /**
+     * Puts a workflow instance into the queue of the local processor pool as soon as its savepoint is acknowledged and
+     * the transaction of the processor is committed, whichever comes last. Without a batcher, the savepoint is
+     * acknowledged within the processor's transaction, i.e. before it is committed.
+     */
+    static final class DirectEnqueue {
+        private final PersistentWorkflow<?> workflow;
+        private final PersistentPriorityProcessorPool pool;
+        private final AtomicInteger pending = new AtomicInteger(2);
+
+        DirectEnqueue(PersistentWorkflow<?> workflow, PersistentPriorityProcessorPool pool) {
+            this.workflow = workflow;
+            this.pool = pool;
+        }
+
+        void arrive() {
+            if (pending.decrementAndGet() == 0) {
+                workflow.resetForDirectEnqueue();
+                pool.enqueue(workflow);
+            }
+        }
+    }
+
     @Override
     protected String run(Workflow<?> wf) throws CopperException {
         return run(wf, null);
@@ -381,6 +552,71 @@ public class PersistentScottyEngine extends AbstractProcessingEngine implements
         }
     }
 
+    @Override
+    public CompletableFuture<String> runAsync(final WorkflowInstanceDescr<?> wfInstanceDescr) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return run(wfInstanceDescr);
+            } catch (CopperException e) {
+                throw new CompletionException(e);
+            }
+        }, getAsyncRunExecutor());
+    }
+
+    @Override
+    public CompletableFuture<Void> runBatchAsync(final List<WorkflowInstanceDescr<?>> wfInstanceDescr) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                runBatch(wfInstanceDescr);
+            } catch (CopperException e) {
+                throw new CompletionException(e);
+            }
+        }, getAsyncRunExecutor());
+    }
+
+    /**
+     * Returns the acknowledge for the final state of the specified workflow instance, which completes its completion
+     * future.
+     */
+    Acknowledge createFinishAcknowledge(final String wfInstanceId) {
+        if (!hasCompletionFutures())
+            return new Acknowledge.BestEffortAcknowledge();
+        return new Acknowledge() {
+            @Override
+            public void onSuccess() {
+                completeWorkflow(wfInstanceId, null);
+            }
+
+            @Override
+            public void onException(Throwable t) {
+                completeWorkflow(wfInstanceId, t);
+            }
+        };
+    }
+
+    /**
+     * Returns the acknowledge for the error state of the specified workflow instance, which completes its completion
+     * future exceptionally with the exception the workflow instance terminated with, whether the error state could be
+     * stored or not.
+     */
+    Acknowledge createErrorAcknowledge(final String wfInstanceId, final Exception exception) {
+        if (!hasCompletionFutures())
+            return new Acknowledge.BestEffortAcknowledge();
+        return new Acknowledge() {
+            @Override
+            public void onSuccess() {
+                completeWorkflow(wfInstanceId, exception);
+            }
+
+            @Override
+            public void onException(Throwable t) {
+                if (t != exception)
+                    exception.addSuppressed(t);
+                completeWorkflow(wfInstanceId, exception);
+            }
+        };
+    }
+
     @Override
     public void notify(Response<?> response, Connection c) throws CopperRuntimeException {
         final List<Response<?>> list = new ArrayList<Response<?>>(1);
@@ -24,7 +24,9 @@ import java.util.Set;
 import org.copperengine.core.Acknowledge;
 import org.copperengine.core.Acknowledge.DefaultAcknowledge;
 import org.copperengine.core.CopperRuntimeException;
+import org.copperengine.core.WaitHook;
 import org.copperengine.core.Workflow;
+import org.copperengine.core.internal.WorkflowAccessor;
 
 /**
  * Abstract base class for persistent workflows.
@@ -49,6 +51,20 @@ public abstract class PersistentWorkflow<E extends Serializable> extends Workflo
     transient ArrayList<Acknowledge.DefaultAcknowledge> checkpointAcknowledges = null;
     transient ArrayList<SavepointAware> savepointAwares = null;
     transient ErrorData errorData;
+    /**
+     * not null while a savepoint/resubmit is to be written by the engine, see {@link PersistentScottyEngine#setDirectSavepoint(boolean)}
+     */
+    transient List<WaitHook> savepointWaitHooks;
+    /**
+     * not null from a direct savepoint until the transaction of the processor is committed
+     */
+    transient PersistentScottyEngine.DirectEnqueue directEnqueue;
+    /**
+     * fingerprints of the DATA and OBJECT_STATE columns as last read from or written to the database, 0 if unknown.
+     * The register and savepoint statements do not write a column again, if its fingerprint did not change.
+     */
+    transient long dataFingerprint;
+    transient long objectStateFingerprint;
 
     void addWaitCorrelationId(final String cid) {
         if (waitCidList == null)
@@ -108,6 +124,23 @@ public abstract class PersistentWorkflow<E extends Serializable> extends Workflo
         savepointAwares.add(sa);
     }
 
+    /**
+     * Resets the transient state to what a freshly dequeued instance has, before it is enqueued again in memory.
+     */
+    void resetForDirectEnqueue() {
+        registerCall = null;
+        waitCidList = null;
+        responseIdList = null;
+        checkpointAcknowledges = null;
+        savepointAwares = null;
+        WorkflowAccessor.clearResponses(this);
+    }
+
+    void setFingerprints(final SerializedWorkflow sw) {
+        dataFingerprint = sw.dataFingerprint();
+        objectStateFingerprint = sw.objectStateFingerprint();
+    }
+
     public boolean flushCheckpointAcknowledges() {
         if (checkpointAcknowledges == null)
             return true;
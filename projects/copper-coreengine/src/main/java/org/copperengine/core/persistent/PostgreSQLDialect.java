@@ -59,6 +59,14 @@ public class PostgreSQLDialect extends AbstractSqlDialect {
         return dequeueStmt;
     }
 
+    /**
+     * SELECT ... FOR UPDATE SKIP LOCKED is available since PostgreSQL 9.5
+     */
+    @Override
+    protected boolean supportsSkipLockedDequeue() {
+        return true;
+    }
+
     @Override
     protected PreparedStatement createDeleteStaleResponsesStmt(final Connection c, final int MAX_ROWS) throws SQLException {
         PreparedStatement stmt = c.prepareStatement("delete from COP_RESPONSE where response_timeout < ? and not exists (select * from COP_WAIT w where w.correlation_id = COP_RESPONSE.correlation_id LIMIT " + MAX_ROWS + ")");
@@ -66,6 +74,14 @@ public class PostgreSQLDialect extends AbstractSqlDialect {
         return stmt;
     }
 
+    /**
+     * Without a FROM clause, the types of the parameters in the select list are not derived from the target columns
+     */
+    @Override
+    protected PreparedStatement createConditionalEnqueueStmt(final Connection c) throws SQLException {
+        return c.prepareStatement("INSERT INTO COP_QUEUE (PPOOL_ID, PRIORITY, LAST_MOD_TS, WORKFLOW_INSTANCE_ID) SELECT CAST(? AS VARCHAR), CAST(? AS SMALLINT), CAST(? AS TIMESTAMP), CAST(? AS VARCHAR) WHERE NOT EXISTS (SELECT WORKFLOW_INSTANCE_ID FROM COP_QUEUE WHERE WORKFLOW_INSTANCE_ID=?)");
+    }
+
     @SuppressWarnings("rawtypes")
     @Override
     public BatchCommand createBatchCommand4error(Workflow<?> w, Throwable t, DBProcessingState dbProcessingState, Acknowledge ack) {
@@ -75,7 +91,7 @@ public class PostgreSQLDialect extends AbstractSqlDialect {
     @SuppressWarnings("rawtypes")
     @Override
     public BatchCommand createBatchCommand4NotifyNoEarlyResponseHandling(Response<?> response, Acknowledge ack) throws Exception {
-        return new PostgreSQLNotifyNoEarlyResponseHandling.Command(response, serializer, defaultStaleResponseRemovalTimeout, System.currentTimeMillis() + dbBatchingLatencyMSec, ack);
+        return new PostgreSQLNotifyNoEarlyResponseHandling.Command(response, serializer, defaultStaleResponseRemovalTimeout, incrementalQueueStateUpdate, System.currentTimeMillis() + dbBatchingLatencyMSec, ack);
     }
 
     @Override
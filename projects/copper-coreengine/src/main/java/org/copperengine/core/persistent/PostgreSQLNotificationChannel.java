@@ -0,0 +1,413 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumSet;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.copperengine.core.db.utility.JdbcUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * PostgreSQL implementation of the {@link NotificationChannel} using LISTEN/NOTIFY.
+ * <p>
+ * The channel uses two dedicated connections from the configured data source, one to LISTEN and one to send
+ * asynchronous notifications. Pending notifications are coalesced and sent in one round trip. The PostgreSQL JDBC
+ * driver is accessed by reflection, so it is not required at compile time. If the driver provides
+ * {@code getNotifications(int)}, the listening connection blocks until a notification arrives, otherwise it is polled
+ * every {@link #setPollIntervalMSec(int) pollIntervalMSec} milliseconds.
+ */
+public class PostgreSQLNotificationChannel implements NotificationChannel {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostgreSQLNotificationChannel.class);
+
+    static final String CHANNEL_RESPONSE = "copper_response";
+    static final String CHANNEL_ENQUEUE = "copper_enqueue";
+
+    private static final long SHUTDOWN_TIMEOUT_MSEC = 5000;
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private final Object signalMutex = new Object();
+    private final EnumSet<Event> pendingEvents = EnumSet.noneOf(Event.class);
+
+    private DataSource dataSource;
+    private int pollIntervalMSec = 50;
+    private int reconnectIntervalMSec = 5000;
+
+    private Listener listener;
+    private Thread listenerThread;
+    private Thread senderThread;
+    private volatile boolean available = false;
+    private volatile boolean shutdown = false;
+
+    public PostgreSQLNotificationChannel() {
+    }
+
+    public PostgreSQLNotificationChannel(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @param pollIntervalMSec
+     *        wait time between two checks for new notifications on the listening connection
+     */
+    public void setPollIntervalMSec(int pollIntervalMSec) {
+        if (pollIntervalMSec <= 0)
+            throw new IllegalArgumentException();
+        this.pollIntervalMSec = pollIntervalMSec;
+    }
+
+    /**
+     * @param reconnectIntervalMSec
+     *        wait time before a lost listening connection is reestablished
+     */
+    public void setReconnectIntervalMSec(int reconnectIntervalMSec) {
+        if (reconnectIntervalMSec <= 0)
+            throw new IllegalArgumentException();
+        this.reconnectIntervalMSec = reconnectIntervalMSec;
+    }
+
+    @Override
+    public synchronized void startup(Listener listener) {
+        if (listenerThread != null)
+            return;
+        if (dataSource == null)
+            throw new NullPointerException("property dataSource is null");
+        if (listener == null)
+            throw new NullPointerException();
+        this.listener = listener;
+
+        listenerThread = new Thread("NOTIFICATION_LISTENER") {
+            @Override
+            public void run() {
+                listen();
+            }
+        };
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+
+        senderThread = new Thread("NOTIFICATION_SENDER") {
+            @Override
+            public void run() {
+                send();
+            }
+        };
+        senderThread.setDaemon(true);
+        senderThread.start();
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        if (shutdown)
+            return;
+        shutdown = true;
+        synchronized (signalMutex) {
+            signalMutex.notifyAll();
+        }
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+            join(listenerThread);
+            join(senderThread);
+        }
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join(SHUTDOWN_TIMEOUT_MSEC);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (thread.isAlive()) {
+            logger.warn("{} did not terminate within {} msec", thread.getName(), SHUTDOWN_TIMEOUT_MSEC);
+        }
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return available;
+    }
+
+    @Override
+    public void signal(Event event) {
+        synchronized (signalMutex) {
+            if (pendingEvents.add(event)) {
+                signalMutex.notify();
+            }
+        }
+    }
+
+    @Override
+    public void signal(Event event, Connection con) throws SQLException {
+        // NOTIFY is delivered on commit of the caller's transaction. It has no payload, because the caller did not
+        // signal the local engine, so the local listener must not filter it.
+        final Statement stmt = con.createStatement();
+        try {
+            stmt.execute("NOTIFY " + channelName(event));
+        } finally {
+            JdbcUtils.closeStatement(stmt);
+        }
+    }
+
+    static String channelName(Event event) {
+        return event == Event.RESPONSE ? CHANNEL_RESPONSE : CHANNEL_ENQUEUE;
+    }
+
+    /**
+     * @return a statement that sends the specified number of notifications in one round trip
+     */
+    static String notifySql(int numberOfNotifications) {
+        final StringBuilder sql = new StringBuilder("SELECT pg_notify(?,?)");
+        for (int i = 1; i < numberOfNotifications; i++) {
+            sql.append(",pg_notify(?,?)");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * @return the events of the received notifications, without the ones sent by this channel
+     */
+    EnumSet<Event> toEvents(DriverApi api, Object[] notifications) throws Exception {
+        final EnumSet<Event> events = EnumSet.noneOf(Event.class);
+        if (notifications == null)
+            return events;
+        for (Object notification : notifications) {
+            if (instanceId.equals(api.getParameter(notification))) {
+                continue;
+            }
+            final String name = api.getName(notification);
+            if (CHANNEL_RESPONSE.equals(name)) {
+                events.add(Event.RESPONSE);
+            } else if (CHANNEL_ENQUEUE.equals(name)) {
+                events.add(Event.ENQUEUE);
+            }
+        }
+        return events;
+    }
+
+    private void send() {
+        logger.info("started");
+        Sender sender = null;
+        while (!shutdown) {
+            final EnumSet<Event> events;
+            synchronized (signalMutex) {
+                while (pendingEvents.isEmpty() && !shutdown) {
+                    try {
+                        signalMutex.wait();
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+                if (shutdown)
+                    break;
+                events = EnumSet.copyOf(pendingEvents);
+                pendingEvents.clear();
+            }
+            try {
+                if (sender == null) {
+                    final Connection con = dataSource.getConnection();
+                    con.setAutoCommit(true);
+                    sender = new Sender(con, instanceId);
+                }
+                // the local engine has already been signalled, so the local listener skips these notifications
+                sender.send(events);
+            } catch (Exception e) {
+                logger.warn("sending notification failed", e);
+                if (sender != null) {
+                    sender.close();
+                    sender = null;
+                }
+            }
+        }
+        if (sender != null) {
+            sender.close();
+        }
+        logger.info("stopped");
+    }
+
+    private void listen() {
+        logger.info("started");
+        while (!shutdown) {
+            Connection con = null;
+            try {
+                final DriverApi api = DriverApi.load();
+                con = dataSource.getConnection();
+                con.setAutoCommit(true);
+                final Object pgCon = con.unwrap(api.connectionClass);
+                final Statement stmt = con.createStatement();
+                try {
+                    stmt.execute("LISTEN " + CHANNEL_RESPONSE);
+                    stmt.execute("LISTEN " + CHANNEL_ENQUEUE);
+                    available = true;
+                    logger.info("Listening for notifications (blocking={})", api.blocking);
+                    while (!shutdown) {
+                        if (!api.blocking) {
+                            // older drivers only receive notifications when the connection is used
+                            stmt.executeQuery("SELECT 1").close();
+                        }
+                        final Object[] notifications = api.getNotifications(pgCon, pollIntervalMSec * 10);
+                        if (notifications == null || notifications.length == 0) {
+                            if (!api.blocking) {
+                                Thread.sleep(pollIntervalMSec);
+                            }
+                            continue;
+                        }
+                        final EnumSet<Event> events = toEvents(api, notifications);
+                        if (events.contains(Event.RESPONSE)) {
+                            listener.onEvent(Event.RESPONSE);
+                        }
+                        if (events.contains(Event.ENQUEUE)) {
+                            listener.onEvent(Event.ENQUEUE);
+                        }
+                    }
+                } finally {
+                    JdbcUtils.closeStatement(stmt);
+                }
+            } catch (InterruptedException e) {
+                logger.trace("interrupted");
+            } catch (Exception e) {
+                if (!shutdown) {
+                    logger.warn("Listening for notifications failed - falling back to polling", e);
+                }
+            } finally {
+                available = false;
+                JdbcUtils.closeConnection(con);
+            }
+            if (!shutdown) {
+                try {
+                    Thread.sleep(reconnectIntervalMSec);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        }
+        logger.info("stopped");
+    }
+
+    /**
+     * Sends the coalesced events of the sender thread on its connection. All pending events are sent in one round
+     * trip, and the statements are prepared once per connection.
+     */
+    static final class Sender {
+
+        private final Connection con;
+        private final String payload;
+        private final PreparedStatement[] stmts = new PreparedStatement[Event.values().length];
+
+        Sender(Connection con, String payload) {
+            this.con = con;
+            this.payload = payload;
+        }
+
+        void send(EnumSet<Event> events) throws SQLException {
+            if (events.isEmpty())
+                return;
+            PreparedStatement stmt = stmts[events.size() - 1];
+            if (stmt == null) {
+                stmt = con.prepareStatement(notifySql(events.size()));
+                stmts[events.size() - 1] = stmt;
+            }
+            int idx = 1;
+            for (Event event : events) {
+                stmt.setString(idx++, channelName(event));
+                stmt.setString(idx++, payload);
+            }
+            stmt.executeQuery().close();
+        }
+
+        void close() {
+            for (PreparedStatement stmt : stmts) {
+                JdbcUtils.closeStatement(stmt);
+            }
+            JdbcUtils.closeConnection(con);
+        }
+    }
+
+    /**
+     * Accesses the notification API of the PostgreSQL JDBC driver by reflection, so that the driver is not required
+     * at compile time. Drivers before 42.2.x only provide the non-blocking {@code getNotifications()}.
+     */
+    static final class DriverApi {
+
+        final Class<?> connectionClass;
+        final boolean blocking;
+        private final Method getNotificationsMethod;
+        private final Method getNameMethod;
+        private final Method getParameterMethod;
+
+        DriverApi(Class<?> connectionClass, Class<?> notificationClass) throws NoSuchMethodException {
+            this.connectionClass = connectionClass;
+            Method m;
+            try {
+                m = connectionClass.getMethod("getNotifications", int.class);
+            } catch (NoSuchMethodException e) {
+                m = connectionClass.getMethod("getNotifications");
+            }
+            this.getNotificationsMethod = m;
+            this.blocking = m.getParameterTypes().length == 1;
+            this.getNameMethod = notificationClass.getMethod("getName");
+            this.getParameterMethod = notificationClass.getMethod("getParameter");
+        }
+
+        static DriverApi load() throws ClassNotFoundException, NoSuchMethodException {
+            return new DriverApi(Class.forName("org.postgresql.PGConnection"), Class.forName("org.postgresql.PGNotification"));
+        }
+
+        /**
+         * @return the received notifications, waiting at most timeoutMSec if the driver supports blocking
+         */
+        Object[] getNotifications(Object pgCon, int timeoutMSec) throws Exception {
+            try {
+                return (Object[]) (blocking ? getNotificationsMethod.invoke(pgCon, timeoutMSec) : getNotificationsMethod.invoke(pgCon));
+            } catch (InvocationTargetException e) {
+                throw unwrap(e);
+            }
+        }
+
+        String getName(Object notification) throws Exception {
+            try {
+                return (String) getNameMethod.invoke(notification);
+            } catch (InvocationTargetException e) {
+                throw unwrap(e);
+            }
+        }
+
+        String getParameter(Object notification) throws Exception {
+            try {
+                return (String) getParameterMethod.invoke(notification);
+            } catch (InvocationTargetException e) {
+                throw unwrap(e);
+            }
+        }
+
+        private static Exception unwrap(InvocationTargetException e) {
+            return e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+}
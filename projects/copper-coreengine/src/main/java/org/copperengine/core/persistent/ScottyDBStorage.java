@@ -24,9 +24,12 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.copperengine.core.Acknowledge;
 import org.copperengine.core.Response;
+import org.copperengine.core.WaitHook;
 import org.copperengine.core.Workflow;
 import org.copperengine.core.audit.AuditTrail;
 import org.copperengine.core.batcher.BatchCommand;
@@ -52,14 +55,21 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
     private static final Logger logger = LoggerFactory.getLogger(ScottyDBStorage.class);
 
     private final IdCache cidStore4responses = new IdCache(10000, 10, TimeUnit.SECONDS);
+    private volatile LocalWaitIndex localWaitIndex;
+    private int localNotifyMaxWaits = 50000;
+    // with the local notify, a workflow instance may be enqueued, dequeued and waiting again while the queue state
+    // update is still working on what it read before, so the two do not overlap in that mode
+    private final ReadWriteLock queueStateLock = new ReentrantReadWriteLock();
     private final QueueNotifier queueState = new QueueNotifier();
     private final Object enqueueSignal = new Object();
     private int waitForEnqueueMSec = 500;
+    private int waitForEnqueueMSecWithNotificationChannel = 5000;
     private volatile int clocksAllowedDeltaMSec = 100;
     private int clocksCheckIntervalSeconds = 60;
 
     private DatabaseDialect dialect;
     private TransactionController transactionController;
+    private NotificationChannel notificationChannel;
 
     private Batcher batcher;
     private long deleteStaleResponsesIntervalMsec = 60L * 60L * 1000L;
@@ -91,6 +101,47 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
         this.checkDbConsistencyAtStartup = checkDbConsistencyAtStartup;
     }
 
+    /**
+     * If turned on, the storage keeps an index of the waits registered by this engine. A response for such a wait is
+     * inserted together with the COP_QUEUE entry of the waiting workflow instance and the processor pools are signaled
+     * immediately, i.e. the response does not wait for the next queue state update. The database remains the only
+     * source of truth, if the workflow instance is not waiting for the response anymore, it is handled like any other
+     * response.
+     * <p>
+     * Only waits for a single response, i.e. {@link org.copperengine.core.WaitMode#FIRST} or a single correlation id,
+     * are indexed. Not supported by the Oracle dialects, which use the regular notify.
+     * <p>
+     * Default is false.
+     *
+     * @param localNotify
+     *        true to turn it on
+     */
+    public synchronized void setLocalNotify(boolean localNotify) {
+        if (!localNotify) {
+            localWaitIndex = null;
+        } else if (localWaitIndex == null) {
+            localWaitIndex = new LocalWaitIndex(localNotifyMaxWaits);
+        }
+    }
+
+    public boolean isLocalNotify() {
+        return localWaitIndex != null;
+    }
+
+    /**
+     * @param localNotifyMaxWaits
+     *        maximum number of waits kept in the index of the local notify, the oldest ones are removed first. Default
+     *        is 50000.
+     */
+    public synchronized void setLocalNotifyMaxWaits(int localNotifyMaxWaits) {
+        if (localNotifyMaxWaits <= 0)
+            throw new IllegalArgumentException();
+        this.localNotifyMaxWaits = localNotifyMaxWaits;
+        if (localWaitIndex != null) {
+            localWaitIndex = new LocalWaitIndex(localNotifyMaxWaits);
+        }
+    }
+
     public void setTransactionController(TransactionController transactionController) {
         this.transactionController = transactionController;
     }
@@ -99,6 +150,10 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
         this.dialect = dialect;
     }
 
+    public DatabaseDialect getDialect() {
+        return dialect;
+    }
+
     protected <T> T run(final DatabaseTransaction<T> txn) throws Exception {
         return transactionController.run(txn);
     }
@@ -121,6 +176,26 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
         this.waitForEnqueueMSec = waitForEnqueueMSec;
     }
 
+    /**
+     * Sets the channel that pushes new responses and new queue entries to all engines connected to the same database.
+     * While the channel is available, the ENQUEUE thread and the dequeue loops are woken up by the channel and poll the
+     * database only as a fallback. Optional - if not set, the storage polls.
+     *
+     * @param notificationChannel
+     *        the notification channel, e.g. {@link PostgreSQLNotificationChannel}
+     */
+    public void setNotificationChannel(NotificationChannel notificationChannel) {
+        this.notificationChannel = notificationChannel;
+    }
+
+    /**
+     * @param waitForEnqueueMSec
+     *        maximum time a dequeue waits for new queue entries while the notification channel is available
+     */
+    public void setWaitForEnqueueMSecWithNotificationChannel(int waitForEnqueueMSec) {
+        this.waitForEnqueueMSecWithNotificationChannel = waitForEnqueueMSec;
+    }
+
     private void resumeBrokenBusinessProcesses() throws Exception {
         logger.info("resumeBrokenBusinessProcesses");
         run(new DatabaseTransaction<Void>() {
@@ -145,6 +220,7 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
             });
             ack.onSuccess();
             signalEnqueue();
+            signalChannel(NotificationChannel.Event.ENQUEUE);
         } catch (Exception e) {
             ack.onException(e);
             throw e;
@@ -164,6 +240,7 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
             });
             ack.onSuccess();
             signalEnqueue();
+            signalChannel(NotificationChannel.Event.ENQUEUE);
         } catch (Exception e) {
             ack.onException(e);
             throw e;
@@ -176,13 +253,30 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
             return Collections.emptyList();
 
         while (true) {
-            List<Workflow<?>> ret = run(new DatabaseTransaction<List<Workflow<?>>>() {
-                @Override
-                public List<Workflow<?>> run(Connection con) throws Exception {
-                    return dialect.dequeue(ppoolId, max, con);
+            final boolean locked = localWaitIndex != null;
+            if (locked) {
+                queueStateLock.readLock().lock();
+            }
+            final List<Workflow<?>> ret;
+            try {
+                ret = run(new DatabaseTransaction<List<Workflow<?>>>() {
+                    @Override
+                    public List<Workflow<?>> run(Connection con) throws Exception {
+                        return dialect.dequeue(ppoolId, max, con);
+                    }
+                });
+            } finally {
+                if (locked) {
+                    queueStateLock.readLock().unlock();
                 }
-            });
+            }
             if (!ret.isEmpty()) {
+                final LocalWaitIndex index = localWaitIndex;
+                if (index != null) {
+                    for (Workflow<?> wf : ret) {
+                        index.remove(wf.getId());
+                    }
+                }
                 return ret;
             }
             waitForEnqueue();
@@ -191,8 +285,9 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
 
     private void waitForEnqueue() throws InterruptedException {
         logger.trace("waitForEnqueue...");
+        final NotificationChannel channel = notificationChannel;
         synchronized (enqueueSignal) {
-            enqueueSignal.wait(waitForEnqueueMSec);
+            enqueueSignal.wait(channel != null && channel.isAvailable() ? waitForEnqueueMSecWithNotificationChannel : waitForEnqueueMSec);
         }
         logger.trace("waitForEnqueue DONE");
     }
@@ -204,6 +299,26 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
         }
     }
 
+    private void signalEnqueueAll() {
+        logger.trace("signalEnqueueAll");
+        synchronized (enqueueSignal) {
+            // the entries may belong to any processor pool
+            enqueueSignal.notifyAll();
+        }
+    }
+
+    private void signalChannel(NotificationChannel.Event event) {
+        if (notificationChannel != null) {
+            notificationChannel.signal(event);
+        }
+    }
+
+    private void signalChannel(NotificationChannel.Event event, Connection con) throws Exception {
+        if (notificationChannel != null) {
+            notificationChannel.signal(event, con);
+        }
+    }
+
     private void waitForQueueState(int waitTime) throws InterruptedException {
         queueState.waitForQueueState(waitTime);
     }
@@ -230,6 +345,20 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
             deleteStaleResponse();
             resumeBrokenBusinessProcesses();
 
+            if (notificationChannel != null) {
+                notificationChannel.startup(new NotificationChannel.Listener() {
+                    @Override
+                    public void onEvent(NotificationChannel.Event event) {
+                        logger.trace("received notification {}", event);
+                        if (event == NotificationChannel.Event.RESPONSE) {
+                            signalQueueState();
+                        } else {
+                            signalEnqueue();
+                        }
+                    }
+                });
+            }
+
             enqueueThread = new Thread("ENQUEUE") {
                 @Override
                 public void run() {
@@ -312,6 +441,10 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
 
         shutdownEnqueueThread();
 
+        if (notificationChannel != null) {
+            notificationChannel.shutdown();
+        }
+
         dialect.shutdown();
     }
 
@@ -334,6 +467,10 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
         while (!shutdown) {
             int x = 0;
             logger.trace("Starting updateQueueState...");
+            final boolean locked = localWaitIndex != null;
+            if (locked) {
+                queueStateLock.writeLock().lock();
+            }
             try {
                 x = run(new DatabaseTransaction<Integer>() {
                     @Override
@@ -343,10 +480,15 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
                 });
             } catch (Exception e) {
                 logger.error("updateQueueState failed", e);
+            } finally {
+                if (locked) {
+                    queueStateLock.writeLock().unlock();
+                }
             }
             logger.trace("updateQueueState returned x={}", x);
             if (x > 0) {
                 signalEnqueue();
+                signalChannel(NotificationChannel.Event.ENQUEUE);
             }
             if (x == 0) {
                 sleepTime = Math.max(10, Math.min(3 * sleepTime / 2, sleepTimeMaxIdle));
@@ -374,6 +516,7 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
         else {
             dialect.insert(wf, con);
             signalEnqueue();
+            signalChannel(NotificationChannel.Event.ENQUEUE, con);
         }
     }
 
@@ -385,6 +528,7 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
         else {
             dialect.insert(wfs, con);
             signalEnqueue();
+            signalChannel(NotificationChannel.Event.ENQUEUE, con);
         }
     }
 
@@ -482,7 +626,8 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
         logger.trace("notify(responses.size={})", responses.size());
         dialect.notify(responses, c);
         // TODO "signalQueueState();" is missing here - but we don't know when the transaction is commited, so we cannot
-        // trigger it here
+        // trigger it here. A notification channel sends its event when the transaction commits.
+        signalChannel(NotificationChannel.Event.RESPONSE, c);
     }
 
     @Override
@@ -528,6 +673,11 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
                     signalQueueState();
                 }
 
+                final LocalWaitIndex index = localWaitIndex;
+                if (index != null) {
+                    index.add(rc);
+                }
+
                 if (callback != null) {
                     callback.onSuccess();
                 }
@@ -544,6 +694,36 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
         executeBatchCommand(dialect.createBatchCommand4registerCallback(rc, this, ack));
     }
 
+    @SuppressWarnings("rawtypes")
+    @Override
+    public boolean savepoint(final PersistentWorkflow<?> wf, final boolean claim, final List<WaitHook> waitHooks, final Acknowledge callback) throws Exception {
+        logger.trace("savepoint({}, {})", wf, claim);
+        Acknowledge ack = new Acknowledge() {
+            @Override
+            public void onException(Throwable t) {
+                callback.onException(t);
+            }
+
+            @Override
+            public void onSuccess() {
+                if (!claim) {
+                    signalChannel(NotificationChannel.Event.ENQUEUE);
+                }
+                callback.onSuccess();
+            }
+        };
+        final BatchCommand cmd = dialect.createBatchCommand4Savepoint(wf, claim, waitHooks, this, ack);
+        if (cmd == null)
+            return false;
+        if (wf.responseIdList != null) {
+            for (String responseId : wf.responseIdList) {
+                cidStore4responses.remove(responseId);
+            }
+        }
+        executeBatchCommand(cmd);
+        return true;
+    }
+
     @Override
     public void notify(final Response<?> response, final Acknowledge callback) throws Exception {
         logger.trace("notify({})", response);
@@ -558,6 +738,7 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
                 if (response.isEarlyResponseHandling())
                     cidStore4responses.put(response.getResponseId(), response.getCorrelationId());
                 signalQueueState();
+                signalChannel(NotificationChannel.Event.RESPONSE);
                 callback.onSuccess();
             }
 
@@ -567,9 +748,42 @@ public class ScottyDBStorage implements ScottyDBStorageInterface, ScottyDBStorag
             }
         };
 
+        final LocalWaitIndex index = localWaitIndex;
+        if (index != null && response.isEarlyResponseHandling()) {
+            final String workflowInstanceId = index.claim(response.getCorrelationId());
+            if (workflowInstanceId != null && localNotify(response, workflowInstanceId, callback)) {
+                return;
+            }
+        }
         executeBatchCommand(dialect.createBatchCommand4Notify(response, notify));
     }
 
+    @SuppressWarnings("rawtypes")
+    private boolean localNotify(final Response<?> response, final String workflowInstanceId, final Acknowledge callback) throws Exception {
+        logger.trace("localNotify({}, {})", response, workflowInstanceId);
+        Acknowledge ack = new Acknowledge() {
+            @Override
+            public void onSuccess() {
+                logger.trace("local notify successfully finished for response {}", response);
+                cidStore4responses.put(response.getResponseId(), response.getCorrelationId());
+                signalEnqueueAll();
+                signalChannel(NotificationChannel.Event.ENQUEUE);
+                signalChannel(NotificationChannel.Event.RESPONSE);
+                callback.onSuccess();
+            }
+
+            @Override
+            public void onException(Throwable t) {
+                callback.onException(t);
+            }
+        };
+        final BatchCommand cmd = dialect.createBatchCommand4LocalNotify(response, workflowInstanceId, ack);
+        if (cmd == null)
+            return false;
+        executeBatchCommand(cmd);
+        return true;
+    }
+
     @Override
     public void finish(final Workflow<?> w, final Acknowledge callback) {
         if (logger.isTraceEnabled())
@@ -21,6 +21,7 @@ import java.util.List;
 import org.copperengine.core.Acknowledge;
 import org.copperengine.core.DuplicateIdException;
 import org.copperengine.core.Response;
+import org.copperengine.core.WaitHook;
 import org.copperengine.core.Workflow;
 import org.copperengine.management.model.AuditTrailInfo;
 import org.copperengine.management.model.AuditTrailInstanceFilter;
@@ -175,6 +176,27 @@ public interface ScottyDBStorageInterface {
      */
     public void registerCallback(final RegisterCall rc, final Acknowledge callback) throws Exception;
 
+    /**
+     * Writes a workflow instance that called savepoint/resubmit back to database and enqueues it again, without
+     * registering a wait and notifying it. The default implementation does not support it and returns false, so the
+     * engine falls back to registering a wait and notifying it.
+     * @param wf
+     *        the workflow instance
+     * @param claim
+     *        if true, the queue entry is claimed by this engine and not dequeued from the database, because the engine
+     *        puts the workflow instance into its local processor pool after the callback succeeded
+     * @param waitHooks
+     *        the wait hooks to call in the same transaction
+     * @param callback
+     *        Callback which is called on success or error after this operation finished.
+     * @return false, if the storage does not support it. Nothing has been written then.
+     * @throws Exception
+     *         Any unexpected Exception like losing database connection.
+     */
+    public default boolean savepoint(final PersistentWorkflow<?> wf, final boolean claim, final List<WaitHook> waitHooks, final Acknowledge callback) throws Exception {
+        return false;
+    }
+
     /**
      * Startup the service
      */
@@ -259,4 +281,4 @@ public interface ScottyDBStorageInterface {
     public String queryAuditTrailMessage(final long id) throws Exception;
 
     public int countAuditTrailInstances(final AuditTrailInstanceFilter filter) throws Exception;
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.copperengine.core.Response;
+import org.copperengine.core.Workflow;
+
+/**
+ * Reads and writes the serialized columns DATA, OBJECT_STATE and RESPONSE for the dialects derived from
+ * {@link AbstractSqlDialect}. The columns are accessed as <code>byte[]</code> if the serializer is a
+ * {@link BinarySerializer}, otherwise as text.
+ */
+class SerializedColumns {
+
+    static SerializedWorkflow serializeWorkflow(final Serializer serializer, final Workflow<?> wf) throws Exception {
+        if (serializer instanceof BinarySerializer) {
+            return ((BinarySerializer) serializer).serializeWorkflowBinary(wf);
+        }
+        return serializer.serializeWorkflow(wf);
+    }
+
+    static void setWorkflow(final Serializer serializer, final PreparedStatement stmt, final int dataIdx, final int objectStateIdx, final SerializedWorkflow sw) throws SQLException {
+        setData(serializer, stmt, dataIdx, sw);
+        setObjectState(serializer, stmt, objectStateIdx, sw);
+    }
+
+    static void setData(final Serializer serializer, final PreparedStatement stmt, final int idx, final SerializedWorkflow sw) throws SQLException {
+        if (serializer instanceof BinarySerializer) {
+            stmt.setBytes(idx, sw.getBinaryData());
+        } else {
+            stmt.setString(idx, sw.getData());
+        }
+    }
+
+    static void setObjectState(final Serializer serializer, final PreparedStatement stmt, final int idx, final SerializedWorkflow sw) throws SQLException {
+        if (serializer instanceof BinarySerializer) {
+            stmt.setBytes(idx, sw.getBinaryObjectState());
+        } else {
+            stmt.setString(idx, sw.getObjectState());
+        }
+    }
+
+    static SerializedWorkflow getWorkflow(final Serializer serializer, final ResultSet rs, final int dataIdx, final int objectStateIdx) throws SQLException {
+        final SerializedWorkflow sw = new SerializedWorkflow();
+        if (serializer instanceof BinarySerializer) {
+            sw.setBinaryData(rs.getBytes(dataIdx));
+            sw.setBinaryObjectState(rs.getBytes(objectStateIdx));
+        } else {
+            sw.setData(rs.getString(dataIdx));
+            sw.setObjectState(rs.getString(objectStateIdx));
+        }
+        return sw;
+    }
+
+    /**
+     * Serializes the response into the value of the RESPONSE column, i.e. a <code>byte[]</code> if the serializer is a
+     * {@link BinarySerializer}, otherwise a String. The batch commands call it when they are created by the submitting
+     * thread, so the batch executors only bind the serialized value within their transaction.
+     */
+    static Object serializeResponse(final Serializer serializer, final Response<?> response) throws Exception {
+        if (serializer instanceof BinarySerializer) {
+            return ((BinarySerializer) serializer).serializeResponseBinary(response);
+        }
+        return serializer.serializeResponse(response);
+    }
+
+    static void setResponse(final Serializer serializer, final PreparedStatement stmt, final int idx, final Object serializedResponse) throws SQLException {
+        if (serializer instanceof BinarySerializer) {
+            stmt.setBytes(idx, (byte[]) serializedResponse);
+        } else {
+            stmt.setString(idx, (String) serializedResponse);
+        }
+    }
+
+    /**
+     * @return the deserialized response or null, if the column is null
+     */
+    static Response<?> getResponse(final Serializer serializer, final ResultSet rs, final int idx) throws Exception {
+        if (serializer instanceof BinarySerializer) {
+            final byte[] response = rs.getBytes(idx);
+            return response != null ? ((BinarySerializer) serializer).deserializeResponse(response) : null;
+        }
+        final String response = rs.getString(idx);
+        return response != null ? serializer.deserializeResponse(response) : null;
+    }
+}
@@ -19,6 +19,8 @@ public class SerializedWorkflow {
 
     private String data;
     private String objectState;
+    private byte[] binaryData;
+    private byte[] binaryObjectState;
 
     public String getData() {
         return data;
@@ -36,4 +38,64 @@ public class SerializedWorkflow {
         this.objectState = objectState;
     }
 
+    /**
+     * @return the workflow data in the binary representation of a {@link BinarySerializer}, or null if the workflow
+     *         was serialized to text
+     */
+    public byte[] getBinaryData() {
+        return binaryData;
+    }
+
+    public void setBinaryData(byte[] binaryData) {
+        this.binaryData = binaryData;
+    }
+
+    /**
+     * @return the workflow object state in the binary representation of a {@link BinarySerializer}, or null if the
+     *         workflow was serialized to text
+     */
+    public byte[] getBinaryObjectState() {
+        return binaryObjectState;
+    }
+
+    public void setBinaryObjectState(byte[] binaryObjectState) {
+        this.binaryObjectState = binaryObjectState;
+    }
+
+    /**
+     * @return a 64-bit fingerprint of the workflow data as it is written into the DATA column
+     */
+    long dataFingerprint() {
+        return binaryData != null ? fingerprint(binaryData) : fingerprint(data);
+    }
+
+    /**
+     * @return a 64-bit fingerprint of the workflow object state as it is written into the OBJECT_STATE column
+     */
+    long objectStateFingerprint() {
+        return binaryObjectState != null ? fingerprint(binaryObjectState) : fingerprint(objectState);
+    }
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // FNV-1a, never returns 0, which stands for an unknown fingerprint
+    static long fingerprint(final String s) {
+        if (s == null)
+            return -1L;
+        long h = FNV_OFFSET_BASIS;
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * FNV_PRIME;
+        }
+        return h != 0 ? h : 1L;
+    }
+
+    static long fingerprint(final byte[] b) {
+        long h = FNV_OFFSET_BASIS;
+        for (int i = 0; i < b.length; i++) {
+            h = (h ^ (b[i] & 0xff)) * FNV_PRIME;
+        }
+        return h != 0 ? h : 1L;
+    }
+
 }
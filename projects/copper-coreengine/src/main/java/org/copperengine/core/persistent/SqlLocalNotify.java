@@ -0,0 +1,141 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.copperengine.core.Acknowledge;
+import org.copperengine.core.Response;
+import org.copperengine.core.batcher.AbstractBatchCommand;
+import org.copperengine.core.batcher.AcknowledgeCallbackWrapper;
+import org.copperengine.core.batcher.BatchCommand;
+import org.copperengine.core.batcher.BatchExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inserts a response like {@link SqlNotify} and, if the workflow instance of the local wait is still waiting for it,
+ * marks the wait as processed and inserts the workflow instance into COP_QUEUE in the same transaction, i.e. without
+ * the queue state update.
+ */
+class SqlLocalNotify {
+
+    private static final Logger logger = LoggerFactory.getLogger(SqlLocalNotify.class);
+
+    static final class Command extends AbstractBatchCommand<Executor, Command> {
+
+        final Response<?> response;
+        final String workflowInstanceId;
+        final Serializer serializer;
+        final Object serializedResponse;
+        final long defaultStaleResponseRemovalTimeout;
+        final boolean responseEvent;
+
+        public Command(Response<?> response, String workflowInstanceId, Serializer serializer, long defaultStaleResponseRemovalTimeout, boolean responseEvent, final long targetTime, Acknowledge ack) throws Exception {
+            super(new AcknowledgeCallbackWrapper<Command>(ack), targetTime);
+            this.response = response;
+            this.workflowInstanceId = workflowInstanceId;
+            this.serializer = serializer;
+            this.serializedResponse = SerializedColumns.serializeResponse(serializer, response);
+            this.defaultStaleResponseRemovalTimeout = defaultStaleResponseRemovalTimeout;
+            this.responseEvent = responseEvent;
+        }
+
+        @Override
+        public Executor executor() {
+            return Executor.INSTANCE;
+        }
+
+    }
+
+    static final class Executor extends BatchExecutor<Executor, Command> {
+
+        private static final Executor INSTANCE = new Executor();
+
+        @Override
+        public int maximumBatchSize() {
+            return 100;
+        }
+
+        @Override
+        public int preferredBatchSize() {
+            return 50;
+        }
+
+        @Override
+        public void doExec(final Collection<BatchCommand<Executor, Command>> commands, final Connection con) throws Exception {
+            final Timestamp now = new Timestamp(System.currentTimeMillis());
+            final List<String> responseEvents = new ArrayList<String>();
+            // The instances are processed in the order of their ids and all COP_WAIT rows of an instance are locked
+            // before COP_QUEUE is written, in the same way as the queue state update does, to avoid deadlocks. A
+            // queue state update that found the wait before it was updated here fails on the duplicate COP_QUEUE
+            // entry and is retried.
+            final List<Command> sorted = new ArrayList<Command>(commands.size());
+            for (BatchCommand<Executor, Command> _cmd : commands) {
+                sorted.add((Command) _cmd);
+            }
+            Collections.sort(sorted, (a, b) -> a.workflowInstanceId.compareTo(b.workflowInstanceId));
+            try (
+                    PreparedStatement lockWaits = con.prepareStatement("UPDATE COP_WAIT SET TIMEOUT_TS=TIMEOUT_TS WHERE WORKFLOW_INSTANCE_ID=?");
+                    PreparedStatement updWait = con.prepareStatement("UPDATE COP_WAIT SET STATE=1, TIMEOUT_TS=TIMEOUT_TS WHERE CORRELATION_ID=? AND WORKFLOW_INSTANCE_ID=? AND MIN_NUMB_OF_RESP=1 AND STATE=0");
+                    PreparedStatement updOtherWaits = con.prepareStatement("UPDATE COP_WAIT SET STATE=1, TIMEOUT_TS=TIMEOUT_TS WHERE WORKFLOW_INSTANCE_ID=? AND STATE=0");
+                    PreparedStatement insQueue = con.prepareStatement("INSERT INTO COP_QUEUE (PPOOL_ID, PRIORITY, LAST_MOD_TS, WORKFLOW_INSTANCE_ID) SELECT PPOOL_ID, PRIORITY, ?, WORKFLOW_INSTANCE_ID FROM COP_WAIT WHERE CORRELATION_ID=? AND WORKFLOW_INSTANCE_ID=?")) {
+                for (Command cmd : sorted) {
+                    // executed one by one, as the update counts of batched statements are not reliable for all drivers
+                    lockWaits.setString(1, cmd.workflowInstanceId);
+                    lockWaits.executeUpdate();
+                    updWait.setString(1, cmd.response.getCorrelationId());
+                    updWait.setString(2, cmd.workflowInstanceId);
+                    if (updWait.executeUpdate() == 0) {
+                        // the instance is not waiting for this response (anymore) - handled by the queue state update
+                        if (cmd.responseEvent) {
+                            responseEvents.add(cmd.response.getResponseId());
+                        }
+                        continue;
+                    }
+                    updOtherWaits.setString(1, cmd.workflowInstanceId);
+                    updOtherWaits.executeUpdate();
+                    insQueue.setTimestamp(1, now);
+                    insQueue.setString(2, cmd.response.getCorrelationId());
+                    insQueue.setString(3, cmd.workflowInstanceId);
+                    insQueue.executeUpdate();
+                    logger.debug("Inserting {} into COP_QUEUE", cmd.workflowInstanceId);
+                }
+            }
+            try (PreparedStatement stmt = con.prepareStatement("INSERT INTO COP_RESPONSE (CORRELATION_ID, RESPONSE_TS, RESPONSE, RESPONSE_TIMEOUT, RESPONSE_META_DATA, RESPONSE_ID) VALUES (?,?,?,?,?,?)")) {
+                for (BatchCommand<Executor, Command> _cmd : commands) {
+                    Command cmd = (Command) _cmd;
+                    stmt.setString(1, cmd.response.getCorrelationId());
+                    stmt.setTimestamp(2, now);
+                    SerializedColumns.setResponse(cmd.serializer, stmt, 3, cmd.serializedResponse);
+                    stmt.setTimestamp(4, TimeoutProcessor.processTimout(cmd.response.getInternalProcessingTimeout(), cmd.defaultStaleResponseRemovalTimeout));
+                    stmt.setString(5, cmd.response.getMetaData());
+                    stmt.setString(6, cmd.response.getResponseId());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            SqlResponseEvent.insert(responseEvents, con);
+        }
+    }
+
+}
@@ -18,7 +18,9 @@ package org.copperengine.core.persistent;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.copperengine.core.Acknowledge;
 import org.copperengine.core.Response;
@@ -33,13 +35,17 @@ class SqlNotify {
 
         final Response<?> response;
         final Serializer serializer;
+        final Object serializedResponse;
         final long defaultStaleResponseRemovalTimeout;
+        final boolean responseEvent;
 
-        public Command(Response<?> response, Serializer serializer, long defaultStaleResponseRemovalTimeout, final long targetTime, Acknowledge ack) {
+        public Command(Response<?> response, Serializer serializer, long defaultStaleResponseRemovalTimeout, boolean responseEvent, final long targetTime, Acknowledge ack) throws Exception {
             super(new AcknowledgeCallbackWrapper<Command>(ack), targetTime);
             this.response = response;
             this.serializer = serializer;
+            this.serializedResponse = SerializedColumns.serializeResponse(serializer, response);
             this.defaultStaleResponseRemovalTimeout = defaultStaleResponseRemovalTimeout;
+            this.responseEvent = responseEvent;
         }
 
         @Override
@@ -66,20 +72,24 @@ class SqlNotify {
         @Override
         public void doExec(final Collection<BatchCommand<Executor, Command>> commands, final Connection con) throws Exception {
             final Timestamp now = new Timestamp(System.currentTimeMillis());
+            final List<String> responseEvents = new ArrayList<String>();
             try (PreparedStatement stmt = con.prepareStatement("INSERT INTO COP_RESPONSE (CORRELATION_ID, RESPONSE_TS, RESPONSE, RESPONSE_TIMEOUT, RESPONSE_META_DATA, RESPONSE_ID) VALUES (?,?,?,?,?,?)")) {
                 for (BatchCommand<Executor, Command> _cmd : commands) {
                     Command cmd = (Command) _cmd;
                     stmt.setString(1, cmd.response.getCorrelationId());
                     stmt.setTimestamp(2, now);
-                    String payload = cmd.serializer.serializeResponse(cmd.response);
-                    stmt.setString(3, payload);
+                    SerializedColumns.setResponse(cmd.serializer, stmt, 3, cmd.serializedResponse);
                     stmt.setTimestamp(4, TimeoutProcessor.processTimout(cmd.response.getInternalProcessingTimeout(), cmd.defaultStaleResponseRemovalTimeout));
                     stmt.setString(5, cmd.response.getMetaData());
                     stmt.setString(6, cmd.response.getResponseId());
                     stmt.addBatch();
+                    if (cmd.responseEvent) {
+                        responseEvents.add(cmd.response.getResponseId());
+                    }
                 }
                 stmt.executeBatch();
             }
+            SqlResponseEvent.insert(responseEvents, con);
         }
     }
 
@@ -20,7 +20,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.copperengine.core.Acknowledge;
 import org.copperengine.core.Response;
@@ -40,13 +42,17 @@ class SqlNotifyNoEarlyResponseHandling {
 
         final Response<?> response;
         final Serializer serializer;
+        final Object serializedResponse;
         final long defaultStaleResponseRemovalTimeout;
+        final boolean responseEvent;
 
-        public Command(Response<?> response, Serializer serializer, long defaultStaleResponseRemovalTimeout, final long targetTime, Acknowledge ack) {
+        public Command(Response<?> response, Serializer serializer, long defaultStaleResponseRemovalTimeout, boolean responseEvent, final long targetTime, Acknowledge ack) throws Exception {
             super(new AcknowledgeCallbackWrapper<Command>(ack), targetTime);
             this.response = response;
             this.serializer = serializer;
+            this.serializedResponse = SerializedColumns.serializeResponse(serializer, response);
             this.defaultStaleResponseRemovalTimeout = defaultStaleResponseRemovalTimeout;
+            this.responseEvent = responseEvent;
         }
 
         @Override
@@ -78,6 +84,7 @@ class SqlNotifyNoEarlyResponseHandling {
             final PreparedStatement insertStmt = con.prepareStatement("INSERT INTO COP_RESPONSE (CORRELATION_ID, RESPONSE_TS, RESPONSE, RESPONSE_TIMEOUT, RESPONSE_META_DATA, RESPONSE_ID) VALUES (?,?,?,?,?,?)");
             try {
                 final Timestamp now = new Timestamp(System.currentTimeMillis());
+                final List<String> responseEvents = new ArrayList<String>();
                 int counter = 0;
                 for (BatchCommand<Executor, Command> _cmd : commands) {
                     Command cmd = (Command) _cmd;
@@ -91,16 +98,20 @@ class SqlNotifyNoEarlyResponseHandling {
                     if (c == 1) {
                         insertStmt.setString(1, cmd.response.getCorrelationId());
                         insertStmt.setTimestamp(2, now);
-                        insertStmt.setString(3, cmd.serializer.serializeResponse(cmd.response));
+                        SerializedColumns.setResponse(cmd.serializer, insertStmt, 3, cmd.serializedResponse);
                         insertStmt.setTimestamp(4, TimeoutProcessor.processTimout(cmd.response.getInternalProcessingTimeout(), cmd.defaultStaleResponseRemovalTimeout));
                         insertStmt.setString(5, cmd.response.getMetaData());
                         insertStmt.setString(6, cmd.response.getResponseId());
                         insertStmt.addBatch();
                         counter++;
+                        if (cmd.responseEvent) {
+                            responseEvents.add(cmd.response.getResponseId());
+                        }
                     }
                 }
                 if (counter > 0) {
                     insertStmt.executeBatch();
+                    SqlResponseEvent.insert(responseEvents, con);
                 }
             } catch (SQLException e) {
                 logger.error("doExec failed", e);
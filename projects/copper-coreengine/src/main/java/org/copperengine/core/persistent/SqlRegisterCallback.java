@@ -32,6 +32,7 @@ import org.copperengine.core.batcher.AbstractBatchCommand;
 import org.copperengine.core.batcher.BatchCommand;
 import org.copperengine.core.batcher.BatchExecutor;
 import org.copperengine.core.batcher.CommandCallback;
+import org.copperengine.core.db.utility.JdbcUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,9 +44,12 @@ class SqlRegisterCallback {
 
         private final RegisterCall registerCall;
         private final Serializer serializer;
+        private final SerializedWorkflow serializedWorkflow;
+        private final boolean writeData;
+        private final boolean writeObjectState;
         private final WorkflowPersistencePlugin workflowPersistencePlugin;
 
-        public Command(final RegisterCall registerCall, final Serializer serializer, final ScottyDBStorageInterface dbStorage, final long targetTime, final WorkflowPersistencePlugin workflowPersistencePlugin, final Acknowledge ack) {
+        public Command(final RegisterCall registerCall, final Serializer serializer, final ScottyDBStorageInterface dbStorage, final long targetTime, final WorkflowPersistencePlugin workflowPersistencePlugin, final Acknowledge ack) throws Exception {
             super(new CommandCallback<Command>() {
                 @Override
                 public void commandCompleted() {
@@ -61,6 +65,15 @@ class SqlRegisterCallback {
             }, targetTime);
             this.registerCall = registerCall;
             this.serializer = serializer;
+            this.serializedWorkflow = SerializedColumns.serializeWorkflow(serializer, registerCall.workflow);
+            final PersistentWorkflow<?> pw = (PersistentWorkflow<?>) registerCall.workflow;
+            final long dataFingerprint = serializedWorkflow.dataFingerprint();
+            final long objectStateFingerprint = serializedWorkflow.objectStateFingerprint();
+            this.writeData = dataFingerprint != pw.dataFingerprint;
+            this.writeObjectState = objectStateFingerprint != pw.objectStateFingerprint;
+            // if the command fails, the workflow instance is set to error state and not used any further
+            pw.dataFingerprint = dataFingerprint;
+            pw.objectStateFingerprint = objectStateFingerprint;
             this.workflowPersistencePlugin = workflowPersistencePlugin;
         }
 
@@ -75,14 +88,19 @@ class SqlRegisterCallback {
 
         private static final Executor INSTANCE = new Executor();
 
+        private static String updateWfiSql(final boolean writeData, final boolean writeObjectState) {
+            return "UPDATE COP_WORKFLOW_INSTANCE SET STATE=?, PRIORITY=?, LAST_MOD_TS=?, PPOOL_ID=?, " + (writeData ? "DATA=?, " : "") + (writeObjectState ? "OBJECT_STATE=?, " : "") + "CS_WAITMODE=?, MIN_NUMB_OF_RESP=?, NUMB_OF_WAITS=?, TIMEOUT=? WHERE ID=?";
+        }
+
         @Override
         public void doExec(final Collection<BatchCommand<Executor, Command>> commands, final Connection con) throws Exception {
+            // one update statement per combination of changed DATA and OBJECT_STATE columns, prepared on demand
+            final PreparedStatement[] updateWfiStmts = new PreparedStatement[4];
             try (
                     PreparedStatement stmtDelQueue = con.prepareStatement("DELETE FROM COP_QUEUE WHERE WORKFLOW_INSTANCE_ID=?");
                     PreparedStatement deleteWait = con.prepareStatement("DELETE FROM COP_WAIT WHERE CORRELATION_ID=?");
                     PreparedStatement deleteResponse = con.prepareStatement("DELETE FROM COP_RESPONSE WHERE RESPONSE_ID=?");
-                    PreparedStatement insertWaitStmt = con.prepareStatement("INSERT INTO COP_WAIT (CORRELATION_ID,WORKFLOW_INSTANCE_ID,MIN_NUMB_OF_RESP,TIMEOUT_TS,STATE,PRIORITY,PPOOL_ID) VALUES (?,?,?,?,?,?,?)");
-                    PreparedStatement updateWfiStmt = con.prepareStatement("UPDATE COP_WORKFLOW_INSTANCE SET STATE=?, PRIORITY=?, LAST_MOD_TS=?, PPOOL_ID=?, DATA=?, OBJECT_STATE=?, CS_WAITMODE=?, MIN_NUMB_OF_RESP=?, NUMB_OF_WAITS=?, TIMEOUT=? WHERE ID=?")) {
+                    PreparedStatement insertWaitStmt = con.prepareStatement("INSERT INTO COP_WAIT (CORRELATION_ID,WORKFLOW_INSTANCE_ID,MIN_NUMB_OF_RESP,TIMEOUT_TS,STATE,PRIORITY,PPOOL_ID) VALUES (?,?,?,?,?,?,?)")) {
 
                 final Timestamp now = new Timestamp(System.currentTimeMillis());
                 boolean doWaitDeletes = false;
@@ -109,14 +127,22 @@ class SqlRegisterCallback {
                         insertWaitStmt.setString(7, rc.workflow.getProcessorPoolId());
                         insertWaitStmt.addBatch();
                     }
+                    final int variant = (cmd.writeData ? 2 : 0) + (cmd.writeObjectState ? 1 : 0);
+                    PreparedStatement updateWfiStmt = updateWfiStmts[variant];
+                    if (updateWfiStmt == null) {
+                        updateWfiStmt = con.prepareStatement(updateWfiSql(cmd.writeData, cmd.writeObjectState));
+                        updateWfiStmts[variant] = updateWfiStmt;
+                    }
                     int idx = 1;
-                    SerializedWorkflow sw = cmd.serializer.serializeWorkflow(rc.workflow);
+                    SerializedWorkflow sw = cmd.serializedWorkflow;
                     updateWfiStmt.setInt(idx++, DBProcessingState.WAITING.ordinal());
                     updateWfiStmt.setInt(idx++, rc.workflow.getPriority());
                     updateWfiStmt.setTimestamp(idx++, now);
                     updateWfiStmt.setString(idx++, rc.workflow.getProcessorPoolId());
-                    updateWfiStmt.setString(idx++, sw.getData());
-                    updateWfiStmt.setString(idx++, sw.getObjectState());
+                    if (cmd.writeData)
+                        SerializedColumns.setData(cmd.serializer, updateWfiStmt, idx++, sw);
+                    if (cmd.writeObjectState)
+                        SerializedColumns.setObjectState(cmd.serializer, updateWfiStmt, idx++, sw);
                     updateWfiStmt.setInt(idx++, rc.waitMode.ordinal());
                     updateWfiStmt.setInt(idx++, rc.waitMode == WaitMode.FIRST ? 1 : rc.correlationIds.length);
                     updateWfiStmt.setInt(idx++, rc.correlationIds.length);
@@ -152,7 +178,10 @@ class SqlRegisterCallback {
                     deleteWait.executeBatch();
 
                 insertWaitStmt.executeBatch();
-                updateWfiStmt.executeBatch();
+                for (PreparedStatement updateWfiStmt : updateWfiStmts) {
+                    if (updateWfiStmt != null)
+                        updateWfiStmt.executeBatch();
+                }
                 stmtDelQueue.executeBatch();
 
                 for (BatchCommand<Executor, Command> _cmd : commands) {
@@ -166,6 +195,10 @@ class SqlRegisterCallback {
                 for (Map.Entry<WorkflowPersistencePlugin, ArrayList<PersistentWorkflow<?>>> en : wfs.entrySet()) {
                     en.getKey().onWorkflowsSaved(con, en.getValue());
                 }
+            } finally {
+                for (PreparedStatement updateWfiStmt : updateWfiStmts) {
+                    JdbcUtils.closeStatement(updateWfiStmt);
+                }
             }
         }
 
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Writes the COP_RESPONSE_EVENT work table that is read by the incremental queue state update, see
+ * {@link AbstractSqlDialect#setIncrementalQueueStateUpdate(boolean)}.
+ * <p>
+ * An event is only inserted if the corresponding response row exists, so the notify executors may call this
+ * unconditionally after inserting their responses, even if some inserts were skipped because there was no waiting
+ * workflow instance.
+ */
+class SqlResponseEvent {
+
+    static final String SQL = "INSERT INTO COP_RESPONSE_EVENT (RESPONSE_ID, CORRELATION_ID) SELECT RESPONSE_ID, CORRELATION_ID FROM COP_RESPONSE WHERE RESPONSE_ID=?";
+
+    static void insert(final List<String> responseIds, final Connection con) throws SQLException {
+        if (responseIds.isEmpty())
+            return;
+        try (PreparedStatement stmt = con.prepareStatement(SQL)) {
+            for (String responseId : responseIds) {
+                stmt.setString(1, responseId);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.copperengine.core.Acknowledge;
+import org.copperengine.core.WaitHook;
+import org.copperengine.core.batcher.AbstractBatchCommand;
+import org.copperengine.core.batcher.BatchCommand;
+import org.copperengine.core.batcher.BatchExecutor;
+import org.copperengine.core.batcher.CommandCallback;
+import org.copperengine.core.db.utility.JdbcUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Saves the state of a workflow instance that called savepoint/resubmit and enqueues it again, without the detour
+ * via COP_WAIT, COP_RESPONSE and the queue state update. If <code>engineId</code> is set, the new COP_QUEUE entry is
+ * claimed by that engine, i.e. it is not dequeued from the database, because the engine enqueues the workflow
+ * instance in memory.
+ */
+class SqlSavepoint {
+
+    private static final Logger logger = LoggerFactory.getLogger(SqlSavepoint.class);
+
+    static final class Command extends AbstractBatchCommand<Executor, Command> {
+
+        private final PersistentWorkflow<?> workflow;
+        private final String engineId;
+        private final List<WaitHook> waitHooks;
+        private final Serializer serializer;
+        private final SerializedWorkflow serializedWorkflow;
+        private final boolean writeData;
+        private final boolean writeObjectState;
+        private final WorkflowPersistencePlugin workflowPersistencePlugin;
+
+        public Command(final PersistentWorkflow<?> workflow, final String engineId, final List<WaitHook> waitHooks, final Serializer serializer, final ScottyDBStorageInterface dbStorage, final long targetTime, final WorkflowPersistencePlugin workflowPersistencePlugin, final Acknowledge ack) throws Exception {
+            super(new CommandCallback<Command>() {
+                @Override
+                public void commandCompleted() {
+                    ack.onSuccess();
+                }
+
+                @Override
+                public void unhandledException(Exception e) {
+                    ack.onException(e);
+                    logger.error("Execution of batch entry in a single txn failed.", e);
+                    dbStorage.error(workflow, e, new Acknowledge.BestEffortAcknowledge());
+                }
+            }, targetTime);
+            this.workflow = workflow;
+            this.engineId = engineId;
+            this.waitHooks = waitHooks;
+            this.serializer = serializer;
+            this.serializedWorkflow = SerializedColumns.serializeWorkflow(serializer, workflow);
+            final long dataFingerprint = serializedWorkflow.dataFingerprint();
+            final long objectStateFingerprint = serializedWorkflow.objectStateFingerprint();
+            this.writeData = dataFingerprint != workflow.dataFingerprint;
+            this.writeObjectState = objectStateFingerprint != workflow.objectStateFingerprint;
+            // the engine keeps the workflow instance in memory only if the command succeeds, otherwise it is set to
+            // error state
+            workflow.dataFingerprint = dataFingerprint;
+            workflow.objectStateFingerprint = objectStateFingerprint;
+            this.workflowPersistencePlugin = workflowPersistencePlugin;
+        }
+
+        @Override
+        public Executor executor() {
+            return Executor.INSTANCE;
+        }
+
+    }
+
+    static final class Executor extends BatchExecutor<Executor, Command> {
+
+        private static final Executor INSTANCE = new Executor();
+
+        private static String updateWfiSql(final boolean writeData, final boolean writeObjectState) {
+            return "UPDATE COP_WORKFLOW_INSTANCE SET STATE=?, PRIORITY=?, LAST_MOD_TS=?, PPOOL_ID=?, " + (writeData ? "DATA=?, " : "") + (writeObjectState ? "OBJECT_STATE=?, " : "") + "TIMEOUT=? WHERE ID=?";
+        }
+
+        @Override
+        public void doExec(final Collection<BatchCommand<Executor, Command>> commands, final Connection con) throws Exception {
+            // one update statement per combination of changed DATA and OBJECT_STATE columns, prepared on demand
+            final PreparedStatement[] updateWfiStmts = new PreparedStatement[4];
+            try (
+                    PreparedStatement stmtDelQueue = con.prepareStatement("DELETE FROM COP_QUEUE WHERE WORKFLOW_INSTANCE_ID=?");
+                    PreparedStatement stmtInsQueue = con.prepareStatement("INSERT INTO COP_QUEUE (PPOOL_ID, PRIORITY, LAST_MOD_TS, WORKFLOW_INSTANCE_ID, ENGINE_ID) VALUES (?,?,?,?,?)");
+                    PreparedStatement deleteWait = con.prepareStatement("DELETE FROM COP_WAIT WHERE CORRELATION_ID=?");
+                    PreparedStatement deleteResponse = con.prepareStatement("DELETE FROM COP_RESPONSE WHERE RESPONSE_ID=?")) {
+
+                final Timestamp now = new Timestamp(System.currentTimeMillis());
+                boolean doWaitDeletes = false;
+                boolean doResponseDeletes = false;
+                HashMap<WorkflowPersistencePlugin, ArrayList<PersistentWorkflow<?>>> wfs = new HashMap<WorkflowPersistencePlugin, ArrayList<PersistentWorkflow<?>>>();
+                for (BatchCommand<Executor, Command> _cmd : commands) {
+                    Command cmd = (Command) _cmd;
+                    PersistentWorkflow<?> persistentWorkflow = cmd.workflow;
+                    persistentWorkflow.flushCheckpointAcknowledges();
+                    ArrayList<PersistentWorkflow<?>> _wfs = wfs.get(cmd.workflowPersistencePlugin);
+                    if (_wfs == null) {
+                        _wfs = new ArrayList<PersistentWorkflow<?>>();
+                        wfs.put(cmd.workflowPersistencePlugin, _wfs);
+                    }
+                    _wfs.add(persistentWorkflow);
+
+                    final int variant = (cmd.writeData ? 2 : 0) + (cmd.writeObjectState ? 1 : 0);
+                    PreparedStatement updateWfiStmt = updateWfiStmts[variant];
+                    if (updateWfiStmt == null) {
+                        updateWfiStmt = con.prepareStatement(updateWfiSql(cmd.writeData, cmd.writeObjectState));
+                        updateWfiStmts[variant] = updateWfiStmt;
+                    }
+                    int idx = 1;
+                    SerializedWorkflow sw = cmd.serializedWorkflow;
+                    updateWfiStmt.setInt(idx++, DBProcessingState.ENQUEUED.ordinal());
+                    updateWfiStmt.setInt(idx++, persistentWorkflow.getPriority());
+                    updateWfiStmt.setTimestamp(idx++, now);
+                    updateWfiStmt.setString(idx++, persistentWorkflow.getProcessorPoolId());
+                    if (cmd.writeData)
+                        SerializedColumns.setData(cmd.serializer, updateWfiStmt, idx++, sw);
+                    if (cmd.writeObjectState)
+                        SerializedColumns.setObjectState(cmd.serializer, updateWfiStmt, idx++, sw);
+                    updateWfiStmt.setTimestamp(idx++, null);
+                    updateWfiStmt.setString(idx++, persistentWorkflow.getId());
+                    updateWfiStmt.addBatch();
+
+                    stmtDelQueue.setString(1, persistentWorkflow.getId());
+                    stmtDelQueue.addBatch();
+
+                    stmtInsQueue.setString(1, persistentWorkflow.getProcessorPoolId());
+                    stmtInsQueue.setInt(2, persistentWorkflow.getPriority());
+                    stmtInsQueue.setTimestamp(3, now);
+                    stmtInsQueue.setString(4, persistentWorkflow.getId());
+                    stmtInsQueue.setString(5, cmd.engineId);
+                    stmtInsQueue.addBatch();
+                    logger.debug("Enqueueing {} again, claimed by engine {}", persistentWorkflow.getId(), cmd.engineId);
+
+                    Set<String> cidList = persistentWorkflow.waitCidList;
+                    if (cidList != null) {
+                        for (String cid : cidList) {
+                            deleteWait.setString(1, cid);
+                            deleteWait.addBatch();
+                            doWaitDeletes = true;
+                        }
+                    }
+                    List<String> responseIdList = persistentWorkflow.responseIdList;
+                    if (responseIdList != null) {
+                        for (String responseId : responseIdList) {
+                            deleteResponse.setString(1, responseId);
+                            deleteResponse.addBatch();
+                            doResponseDeletes = true;
+                        }
+                    }
+
+                }
+                if (doResponseDeletes)
+                    deleteResponse.executeBatch();
+                if (doWaitDeletes)
+                    deleteWait.executeBatch();
+
+                for (PreparedStatement updateWfiStmt : updateWfiStmts) {
+                    if (updateWfiStmt != null)
+                        updateWfiStmt.executeBatch();
+                }
+                stmtDelQueue.executeBatch();
+                stmtInsQueue.executeBatch();
+
+                for (BatchCommand<Executor, Command> _cmd : commands) {
+                    Command cmd = (Command) _cmd;
+                    for (WaitHook wh : cmd.waitHooks) {
+                        wh.onWait(cmd.workflow, con);
+                    }
+                }
+
+                for (Map.Entry<WorkflowPersistencePlugin, ArrayList<PersistentWorkflow<?>>> en : wfs.entrySet()) {
+                    en.getKey().onWorkflowsSaved(con, en.getValue());
+                }
+            } finally {
+                for (PreparedStatement updateWfiStmt : updateWfiStmts) {
+                    JdbcUtils.closeStatement(updateWfiStmt);
+                }
+            }
+        }
+
+        @Override
+        public int maximumBatchSize() {
+            return 100;
+        }
+
+        @Override
+        public int preferredBatchSize() {
+            return 50;
+        }
+
+    }
+}
@@ -18,6 +18,7 @@ package org.copperengine.core.persistent;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
@@ -74,7 +75,7 @@ public class StandardJavaSerializer implements Serializer {
         this.compressThresholdSize = compressThresholdSize;
     }
 
-    private String serialize(final Object o) throws IOException {
+    String serialize(final Object o) throws IOException {
         if (o == null)
             return null;
         final ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
@@ -84,7 +85,7 @@ public class StandardJavaSerializer implements Serializer {
         baos.close();
         byte[] data = baos.toByteArray();
         boolean isCompressed = false;
-        if (compress && compressThresholdSize <= data.length && data.length <= compressorMaxSize) {
+        if (isCompressible(data.length)) {
             data = compressorTL.get().compress(data);
             isCompressed = true;
         }
@@ -94,7 +95,7 @@ public class StandardJavaSerializer implements Serializer {
         return sb.toString();
     }
 
-    private Serializable deserialize(String _data, final WorkflowRepository wfRepo) throws IOException, ClassNotFoundException, DataFormatException {
+    Serializable deserialize(String _data, final WorkflowRepository wfRepo) throws IOException, ClassNotFoundException, DataFormatException {
         if (_data == null)
             return null;
         boolean isCompressed = _data.charAt(0) == 'C';
@@ -102,16 +103,14 @@ public class StandardJavaSerializer implements Serializer {
         if (isCompressed) {
             data = compressorTL.get().uncompress(data);
         }
-        ByteArrayInputStream bais = new ByteArrayInputStream(data);
-        ObjectInputStream ois = wfRepo != null ? new ObjectInputStream(bais) {
-            @Override
-            protected java.lang.Class<?> resolveClass(java.io.ObjectStreamClass desc) throws java.io.IOException, ClassNotFoundException {
-                return wfRepo.resolveClass(classnameReplacement(desc.getName()));
-            }
-        } : new ObjectInputStream(bais) {
+        return readObject(new ByteArrayInputStream(data), wfRepo);
+    }
+
+    Serializable readObject(final InputStream is, final WorkflowRepository wfRepo) throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new ObjectInputStream(is) {
             @Override
             protected java.lang.Class<?> resolveClass(java.io.ObjectStreamClass desc) throws java.io.IOException, ClassNotFoundException {
-                return Class.forName(classnameReplacement(desc.getName()));
+                return StandardJavaSerializer.this.resolveClass(desc.getName(), wfRepo);
             }
         };
         Serializable o = (Serializable) ois.readObject();
@@ -119,6 +118,18 @@ public class StandardJavaSerializer implements Serializer {
         return o;
     }
 
+    Class<?> resolveClass(final String classname, final WorkflowRepository wfRepo) throws IOException, ClassNotFoundException {
+        return wfRepo != null ? wfRepo.resolveClass(classnameReplacement(classname)) : Class.forName(classnameReplacement(classname));
+    }
+
+    boolean isCompressible(int length) {
+        return compress && compressThresholdSize <= length && length <= compressorMaxSize;
+    }
+
+    Compressor getCompressor() {
+        return compressorTL.get();
+    }
+
     /**
      * For downward compatibility, there is a package name replacement during
      * deserialization of workflow instances and responses.
@@ -151,8 +162,9 @@ public class StandardJavaSerializer implements Serializer {
 
     @Override
     public Workflow<?> deserializeWorkflow(SerializedWorkflow sw, WorkflowRepository wfRepo) throws Exception {
-        PersistentWorkflow<?> wf = (PersistentWorkflow<?>) deserialize(sw.getObjectState(), wfRepo);
-        wf.setDataAsObject(deserializeData(sw));
+        @SuppressWarnings("unchecked")
+        Workflow<Object> wf = (Workflow<Object>) deserialize(sw.getObjectState(), wfRepo);
+        wf.setData(deserializeData(sw));
         return wf;
     }
 
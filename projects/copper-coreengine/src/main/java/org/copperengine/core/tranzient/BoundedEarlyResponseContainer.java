@@ -0,0 +1,358 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.tranzient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.copperengine.core.Response;
+import org.copperengine.core.common.TimingWheel;
+import org.copperengine.management.EarlyResponseContainerMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Concurrent implementation of the {@link EarlyResponseContainer} interface with an upper limit on the number of
+ * early responses and on their approximate heap size.
+ * <p>
+ * Early responses are stored for a configurable time interval. They expire through a {@link TimingWheel} instead of a
+ * periodic scan over all responses. When one of the limits is exceeded, the oldest early responses are evicted one
+ * by one, until the container is back within its limits. Responses put before {@link #startup()} are kept and expire
+ * once the container is started.
+ * <p>
+ * The size of a response is estimated by {@link #estimateSize(Response)}, which knows about strings and byte arrays
+ * and assumes a fixed size for any other payload. Override it for a better estimate of your response types.
+ */
+public class BoundedEarlyResponseContainer implements EarlyResponseContainer, EarlyResponseContainerMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(BoundedEarlyResponseContainer.class);
+
+    private static final int RESPONSE_OVERHEAD = 128;
+    private static final int DEFAULT_PAYLOAD_SIZE = 256;
+
+    private static final class EarlyResponse {
+        final Response<?> response;
+        final long ts;
+        final int size;
+        final AtomicBoolean removed = new AtomicBoolean();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile TimingWheel.Timeout<EarlyResponse> timeout;
+
+        EarlyResponse(Response<?> response, long ts, int size) {
+            this.response = response;
+            this.ts = ts;
+            this.size = size;
+        }
+    }
+
+    private final ConcurrentMap<String, List<EarlyResponse>> responseMap = new ConcurrentHashMap<String, List<EarlyResponse>>(5000);
+    // insertion order for the eviction, may contain responses that have already been removed
+    private final Queue<EarlyResponse> insertionOrder = new ConcurrentLinkedQueue<EarlyResponse>();
+    private final AtomicInteger insertionOrderSize = new AtomicInteger();
+    private final AtomicBoolean purging = new AtomicBoolean();
+
+    private final AtomicInteger numberOfResponses = new AtomicInteger();
+    private final AtomicLong approximateBytes = new AtomicLong();
+    private final AtomicLong numberOfHits = new AtomicLong();
+    private final AtomicLong numberOfMisses = new AtomicLong();
+    private final AtomicLong numberOfEvictions = new AtomicLong();
+    private final AtomicLong numberOfExpirations = new AtomicLong();
+
+    private volatile int maxResponses = 26000;
+    private volatile long maxBytes = 64L * 1024 * 1024;
+    private long minHoldBackTime = 30000;
+    private int checkInterval = 250;
+    private volatile TimingWheel<EarlyResponse> wheel;
+
+    @Override
+    public void put(final Response<?> response) {
+        if (response == null)
+            throw new NullPointerException();
+
+        long ts = System.currentTimeMillis() + (response.getInternalProcessingTimeout() == null ? minHoldBackTime : response.getInternalProcessingTimeout());
+        if (ts <= 0) {
+            ts = Long.MAX_VALUE;
+        }
+        final EarlyResponse er = new EarlyResponse(response, ts, estimateSize(response));
+        responseMap.compute(response.getCorrelationId(), (cid, list) -> {
+            if (list == null) {
+                list = new ArrayList<EarlyResponse>(3);
+            }
+            list.add(er);
+            return list;
+        });
+        numberOfResponses.incrementAndGet();
+        approximateBytes.addAndGet(er.size);
+        insertionOrder.add(er);
+        insertionOrderSize.incrementAndGet();
+        final TimingWheel<EarlyResponse> w = wheel;
+        if (w != null) {
+            schedule(w, er);
+        }
+
+        evictIfNecessary();
+    }
+
+    @Override
+    public List<Response<?>> get(final String correlationId) {
+        if (correlationId == null)
+            throw new NullPointerException();
+        if (correlationId.length() == 0)
+            throw new IllegalArgumentException();
+
+        final List<EarlyResponse> erList = responseMap.remove(correlationId);
+        List<Response<?>> rv = null;
+        if (erList != null) {
+            for (EarlyResponse er : erList) {
+                if (claim(er)) {
+                    if (rv == null)
+                        rv = new ArrayList<Response<?>>(erList.size());
+                    rv.add(er.response);
+                }
+            }
+        }
+        if (rv == null) {
+            numberOfMisses.incrementAndGet();
+            return Collections.emptyList();
+        }
+        numberOfHits.incrementAndGet();
+        purgeIfNecessary();
+        return rv;
+    }
+
+    @Override
+    public List<Response<?>> removeAll() {
+        final List<Response<?>> rv = new ArrayList<Response<?>>();
+        for (String correlationId : responseMap.keySet()) {
+            final List<EarlyResponse> erList = responseMap.remove(correlationId);
+            if (erList != null) {
+                for (EarlyResponse er : erList) {
+                    if (claim(er)) {
+                        rv.add(er.response);
+                    }
+                }
+            }
+        }
+        return rv;
+    }
+
+    @Override
+    public synchronized void startup() {
+        if (wheel != null)
+            throw new IllegalStateException();
+        final TimingWheel<EarlyResponse> w = new TimingWheel<EarlyResponse>("EarlyResponseManager", checkInterval, 0, this::onExpiry);
+        w.startup();
+        wheel = w;
+        // responses put before startup
+        for (EarlyResponse er : insertionOrder) {
+            if (!er.removed.get()) {
+                schedule(w, er);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        if (wheel != null)
+            wheel.shutdown();
+    }
+
+    private void schedule(TimingWheel<EarlyResponse> w, EarlyResponse er) {
+        if (er.scheduled.compareAndSet(false, true)) {
+            er.timeout = w.schedule(er.ts, er);
+        }
+    }
+
+    /**
+     * Estimates the heap size of a response in bytes.
+     *
+     * @param response
+     *        the response
+     * @return the approximate size in bytes
+     */
+    protected int estimateSize(Response<?> response) {
+        int size = RESPONSE_OVERHEAD + sizeOf(response.getCorrelationId()) + sizeOf(response.getResponseId()) + sizeOf(response.getMetaData());
+        final Object payload = response.getResponse();
+        if (payload instanceof String) {
+            size += sizeOf((String) payload);
+        } else if (payload instanceof byte[]) {
+            size += ((byte[]) payload).length;
+        } else if (payload != null) {
+            size += DEFAULT_PAYLOAD_SIZE;
+        }
+        return size;
+    }
+
+    private static int sizeOf(String s) {
+        return s == null ? 0 : 40 + 2 * s.length();
+    }
+
+    /**
+     * Marks the early response as removed and updates the counters accordingly.
+     *
+     * @return <code>false</code> if the early response has already been removed by someone else
+     */
+    private boolean claim(EarlyResponse er) {
+        if (!er.removed.compareAndSet(false, true))
+            return false;
+        numberOfResponses.decrementAndGet();
+        approximateBytes.addAndGet(-er.size);
+        final TimingWheel.Timeout<EarlyResponse> timeout = er.timeout;
+        if (timeout != null)
+            timeout.cancel();
+        return true;
+    }
+
+    private void remove(EarlyResponse er) {
+        responseMap.computeIfPresent(er.response.getCorrelationId(), (cid, list) -> {
+            list.remove(er);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    private void onExpiry(TimingWheel.Timeout<EarlyResponse> timeout) {
+        final EarlyResponse er = timeout.getTask();
+        if (claim(er)) {
+            remove(er);
+            numberOfExpirations.incrementAndGet();
+            logger.info("Removed early response with correlationId {} and responseId {}", er.response.getCorrelationId(), er.response.getResponseId());
+        }
+        purgeIfNecessary();
+    }
+
+    private void evictIfNecessary() {
+        while (numberOfResponses.get() > maxResponses || approximateBytes.get() > maxBytes) {
+            final EarlyResponse er = insertionOrder.poll();
+            if (er == null)
+                break;
+            insertionOrderSize.decrementAndGet();
+            if (claim(er)) {
+                remove(er);
+                numberOfEvictions.incrementAndGet();
+                logger.info("Evicted early response with correlationId {} and responseId {}", er.response.getCorrelationId(), er.response.getResponseId());
+            }
+        }
+    }
+
+    /**
+     * Removes the responses that are already gone from the insertion order queue, once they make up the bigger part
+     * of it.
+     */
+    private void purgeIfNecessary() {
+        if (insertionOrderSize.get() > 2 * numberOfResponses.get() + 1024 && purging.compareAndSet(false, true)) {
+            try {
+                int purged = 0;
+                for (Iterator<EarlyResponse> i = insertionOrder.iterator(); i.hasNext();) {
+                    if (i.next().removed.get()) {
+                        i.remove();
+                        purged++;
+                    }
+                }
+                insertionOrderSize.addAndGet(-purged);
+            } finally {
+                purging.set(false);
+            }
+        }
+    }
+
+    @Override
+    public int getNumberOfResponses() {
+        return numberOfResponses.get();
+    }
+
+    @Override
+    public long getApproximateBytes() {
+        return approximateBytes.get();
+    }
+
+    @Override
+    public int getMaxResponses() {
+        return maxResponses;
+    }
+
+    @Override
+    public void setMaxResponses(int maxResponses) {
+        if (maxResponses <= 0)
+            throw new IllegalArgumentException();
+        this.maxResponses = maxResponses;
+        evictIfNecessary();
+    }
+
+    @Override
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public void setMaxBytes(long maxBytes) {
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException();
+        this.maxBytes = maxBytes;
+        evictIfNecessary();
+    }
+
+    @Override
+    public long getNumberOfHits() {
+        return numberOfHits.get();
+    }
+
+    @Override
+    public long getNumberOfMisses() {
+        return numberOfMisses.get();
+    }
+
+    @Override
+    public long getNumberOfEvictions() {
+        return numberOfEvictions.get();
+    }
+
+    @Override
+    public long getNumberOfExpirations() {
+        return numberOfExpirations.get();
+    }
+
+    public void setMinHoldBackTime(long minHoldBackTime) {
+        if (minHoldBackTime <= 0)
+            throw new IllegalArgumentException();
+        this.minHoldBackTime = minHoldBackTime;
+    }
+
+    public long getMinHoldBackTime() {
+        return minHoldBackTime;
+    }
+
+    /**
+     * Sets the resolution of the expiry in milliseconds. Defaults to 250. Takes effect on startup.
+     */
+    public void setCheckInterval(int checkInterval) {
+        if (checkInterval <= 0)
+            throw new IllegalArgumentException();
+        this.checkInterval = checkInterval;
+    }
+
+    public int getCheckInterval() {
+        return checkInterval;
+    }
+}
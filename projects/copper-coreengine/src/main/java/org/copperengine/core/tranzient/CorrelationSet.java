@@ -23,7 +23,8 @@ import org.copperengine.core.WaitMode;
 import org.copperengine.core.Workflow;
 
 /**
- * Internally used class.
+ * Internally used class. The missing correlation ids and the completed flag are guarded by the monitor of the
+ * correlation set.
  *
  * @author austermann
  */
@@ -34,6 +35,7 @@ class CorrelationSet {
     private List<String> missingCorrelationIds;
     private WaitMode mode;
     private Long timeoutTS;
+    private boolean completed;
 
     public CorrelationSet(Workflow<?> workflow, List<String> missingCorrelationIds, WaitMode mode, Long timeoutTS) {
         this.workflowId = workflow.getId();
@@ -54,6 +56,14 @@ class CorrelationSet {
         this.timeoutTS = timeoutTS;
     }
 
+    CorrelationSet(String workflowId, List<String> correlationIds, List<String> missingCorrelationIds, WaitMode mode, Long timeoutTS) {
+        this.workflowId = workflowId;
+        this.missingCorrelationIds = new LinkedList<String>(missingCorrelationIds);
+        this.correlationIds = new ArrayList<String>(correlationIds);
+        this.mode = mode;
+        this.timeoutTS = timeoutTS;
+    }
+
     public String getWorkflowId() {
         return workflowId;
     }
@@ -74,4 +84,16 @@ class CorrelationSet {
         return correlationIds;
     }
 
+    /**
+     * @return true, if the workflow instance was already enqueued by a response for this correlation set, i.e. the
+     *         remaining entries of the correlation set in the correlation map are stale
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public void setCompleted() {
+        this.completed = true;
+    }
+
 }
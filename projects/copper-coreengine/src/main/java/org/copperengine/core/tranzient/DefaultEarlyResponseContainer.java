@@ -108,6 +108,20 @@ public class DefaultEarlyResponseContainer implements EarlyResponseContainer {
         }
     }
 
+    @Override
+    public List<Response<?>> removeAll() {
+        synchronized (responseMap) {
+            List<Response<?>> rv = new ArrayList<Response<?>>();
+            for (List<EarlyResponse> erList : responseMap.values()) {
+                for (EarlyResponse earlyResponse : erList) {
+                    rv.add(earlyResponse.response);
+                }
+            }
+            responseMap.clear();
+            return rv;
+        }
+    }
+
     @Override
     public synchronized void startup() {
         if (thread != null)
@@ -15,6 +15,7 @@
  */
 package org.copperengine.core.tranzient;
 
+import java.util.Collections;
 import java.util.List;
 
 import org.copperengine.core.Response;
@@ -51,6 +52,16 @@ public interface EarlyResponseContainer {
      */
     public List<Response<?>> get(final String correlationId);
 
+    /**
+     * Removes and returns all responses of the container, e.g. to write them into a snapshot of the engine. The
+     * default implementation returns an empty list.
+     *
+     * @return the removed responses
+     */
+    public default List<Response<?>> removeAll() {
+        return Collections.emptyList();
+    }
+
     /**
      * Startup the container
      */
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.tranzient;
+
+import java.util.List;
+
+import org.copperengine.core.Acknowledge;
+import org.copperengine.core.ProcessingEngine;
+import org.copperengine.core.Response;
+import org.copperengine.core.common.TimingWheelTimeouts;
+
+/**
+ * {@link TimeoutManager} of the transient engine based on a hashed hierarchical timing wheel, see
+ * {@link TimingWheelTimeouts}. Suited better than the {@link DefaultTimeoutManager} for engines with a large number of
+ * waiting workflow instances.
+ * <p>
+ * The timeout responses are passed to the engine by the dispatcher threads in parallel. A correlation id has at most
+ * one pending timeout.
+ */
+public final class TimingWheelTimeoutManager implements TimeoutManager {
+
+    private final TimingWheelTimeouts<Void> timeouts = new TimingWheelTimeouts<Void>("copper.Timeoutmanager", (cid, task) -> onTimeout(cid));
+    private volatile ProcessingEngine engine;
+
+    /**
+     * Sets the resolution of the timing wheel in milliseconds. Defaults to 25.
+     */
+    public void setTickMillis(long tickMillis) {
+        timeouts.setTickMillis(tickMillis);
+    }
+
+    /**
+     * Sets the number of threads passing timeout responses to the engine. Defaults to the number of available
+     * processors.
+     */
+    public void setNumberOfDispatcherThreads(int numberOfDispatcherThreads) {
+        timeouts.setNumberOfDispatcherThreads(numberOfDispatcherThreads);
+    }
+
+    @Override
+    public void setEngine(ProcessingEngine engine) {
+        this.engine = engine;
+    }
+
+    @Override
+    public synchronized void startup() {
+        if (engine == null)
+            throw new NullPointerException();
+        timeouts.startup();
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        timeouts.shutdown();
+    }
+
+    /**
+     * @return the number of pending timeouts
+     */
+    public int getNumberOfTimeouts() {
+        return timeouts.size();
+    }
+
+    private void onTimeout(String cid) {
+        @SuppressWarnings("rawtypes")
+        Response<?> r = new Response(cid);
+        engine.notify(r, new Acknowledge.BestEffortAcknowledge());
+    }
+
+    @Override
+    public void registerTimeout(long timeoutTS, String correlationId) {
+        timeouts.schedule(correlationId, timeoutTS, null);
+    }
+
+    @Override
+    public void registerTimeout(long timeoutTS, List<String> correlationIds) {
+        for (String correlationId : correlationIds) {
+            registerTimeout(timeoutTS, correlationId);
+        }
+    }
+
+    @Override
+    public void unregisterTimeout(long timeoutTS, String correlationId) {
+        timeouts.cancel(correlationId);
+    }
+
+    @Override
+    public void unregisterTimeout(long timeoutTS, List<String> correlationIds) {
+        for (String correlationId : correlationIds) {
+            unregisterTimeout(timeoutTS, correlationId);
+        }
+    }
+
+}
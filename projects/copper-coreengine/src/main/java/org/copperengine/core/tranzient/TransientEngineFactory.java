@@ -78,6 +78,14 @@ public abstract class TransientEngineFactory {
         return repo;
     }
 
+    /**
+     * @return the snapshot file of the engine, see {@link TransientScottyEngine#setSnapshotFile(File)}, or
+     *         <code>null</code> to disable snapshots
+     */
+    protected File getSnapshotFile() {
+        return null;
+    }
+
     protected DependencyInjector createDependencyInjector() {
         return new PojoDependencyInjector();
     }
@@ -100,6 +108,7 @@ public abstract class TransientEngineFactory {
         engine.setTicketPoolManager(createTicketPoolManager());
         engine.setTimeoutManager(createTimeoutManager());
         engine.setWfRepository(createWorkflowRepository());
+        engine.setSnapshotFile(getSnapshotFile());
         engine.startup();
         return engine;
     }
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.tranzient;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.copperengine.core.WaitMode;
+import org.copperengine.core.Workflow;
+
+/**
+ * Internally used class. Binary file format of the snapshot of a {@link TransientScottyEngine}.
+ * <p>
+ * The file is written sequentially into a temporary file, which replaces the snapshot file once it is complete, and
+ * is memory mapped for reading. It consists of a header followed by one record per workflow instance and early
+ * response. Workflow instances and responses are stored in the textual representation of the engine's
+ * {@link org.copperengine.core.persistent.Serializer}, strings as length prefixed UTF-8.
+ * <p>
+ * A truncated or otherwise corrupt file is reported as an {@link IOException}. The mapping is released once the file
+ * is read, so that the file can be deleted or renamed afterwards.
+ */
+final class TransientEngineSnapshot {
+
+    private static final int MAGIC = 0x434f5053; // "COPS"
+    private static final int VERSION = 1;
+
+    private static final byte RECORD_END = 0;
+    private static final byte RECORD_WORKFLOW = 1;
+    private static final byte RECORD_EARLY_RESPONSE = 2;
+
+    /**
+     * A workflow instance in the snapshot. The correlation set is only present, if the workflow instance is waiting,
+     * otherwise it is enqueued.
+     */
+    static final class WorkflowEntry {
+        String id;
+        String processorPoolId;
+        int priority;
+        long creationTS;
+        String data;
+        String objectState;
+        List<String> responses = new ArrayList<String>();
+
+        WaitMode mode;
+        Long timeoutTS;
+        List<String> correlationIds;
+        List<String> missingCorrelationIds;
+
+        // the restored workflow instance, set while reading a snapshot
+        Workflow<?> workflow;
+
+        boolean isWaiting() {
+            return correlationIds != null;
+        }
+    }
+
+    final List<WorkflowEntry> workflows;
+    final List<String> earlyResponses;
+
+    TransientEngineSnapshot(List<WorkflowEntry> workflows, List<String> earlyResponses) {
+        this.workflows = workflows;
+        this.earlyResponses = earlyResponses;
+    }
+
+    void write(File file) throws IOException {
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (WorkflowEntry e : workflows) {
+                out.writeByte(RECORD_WORKFLOW);
+                writeString(out, e.id);
+                writeString(out, e.processorPoolId);
+                out.writeInt(e.priority);
+                out.writeLong(e.creationTS);
+                writeString(out, e.data);
+                writeString(out, e.objectState);
+                writeStrings(out, e.responses);
+                out.writeBoolean(e.isWaiting());
+                if (e.isWaiting()) {
+                    out.writeByte(e.mode.ordinal());
+                    out.writeLong(e.timeoutTS == null ? -1L : e.timeoutTS.longValue());
+                    writeStrings(out, e.correlationIds);
+                    writeStrings(out, e.missingCorrelationIds);
+                }
+            }
+            for (String r : earlyResponses) {
+                out.writeByte(RECORD_EARLY_RESPONSE);
+                writeString(out, r);
+            }
+            out.writeByte(RECORD_END);
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static TransientEngineSnapshot read(File file) throws IOException {
+        final List<WorkflowEntry> workflows = new ArrayList<WorkflowEntry>();
+        final List<String> earlyResponses = new ArrayList<String>();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            final MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if (in.remaining() < 8 || in.getInt() != MAGIC)
+                    throw new IOException(file + " is not a snapshot file");
+                final int version = in.getInt();
+                if (version != VERSION)
+                    throw new IOException("Unsupported snapshot version " + version + " in " + file);
+                for (;;) {
+                    final byte type = in.get();
+                    if (type == RECORD_END) {
+                        break;
+                    } else if (type == RECORD_WORKFLOW) {
+                        final WorkflowEntry e = new WorkflowEntry();
+                        e.id = readString(in);
+                        e.processorPoolId = readString(in);
+                        e.priority = in.getInt();
+                        e.creationTS = in.getLong();
+                        e.data = readString(in);
+                        e.objectState = readString(in);
+                        e.responses = readStrings(in);
+                        if (in.get() != 0) {
+                            e.mode = readWaitMode(in);
+                            final long timeoutTS = in.getLong();
+                            e.timeoutTS = timeoutTS == -1L ? null : timeoutTS;
+                            e.correlationIds = readStrings(in);
+                            e.missingCorrelationIds = readStrings(in);
+                        }
+                        workflows.add(e);
+                    } else if (type == RECORD_EARLY_RESPONSE) {
+                        earlyResponses.add(readString(in));
+                    } else {
+                        throw new IOException("Unexpected record type " + type + " at position " + (in.position() - 1) + " in " + file);
+                    }
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Snapshot " + file + " is truncated", e);
+            } catch (CorruptSnapshotException e) {
+                throw new IOException("Snapshot " + file + " is corrupt: " + e.getMessage());
+            } finally {
+                unmap(in);
+            }
+        }
+        return new TransientEngineSnapshot(workflows, earlyResponses);
+    }
+
+    /**
+     * Thrown while parsing the mapped file, converted into an {@link IOException} with the file name by
+     * {@link TransientEngineSnapshot#read(File)}.
+     */
+    private static final class CorruptSnapshotException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        CorruptSnapshotException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Releases the mapping of the buffer. Otherwise the file stays mapped until the buffer is garbage collected and
+     * on Windows can neither be deleted nor renamed. The JDK offers no public API for this, so it is done by
+     * reflection, and is skipped if that is not possible on the running JVM.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            // Java 9 and later
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (NoSuchMethodException e) {
+            // Java 8, see below
+        } catch (Exception e) {
+            return;
+        }
+        try {
+            final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            final Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            // the mapping is released once the buffer is garbage collected
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> list) throws IOException {
+        out.writeInt(list.size());
+        for (String s : list) {
+            writeString(out, s);
+        }
+    }
+
+    private static WaitMode readWaitMode(ByteBuffer in) {
+        final byte ordinal = in.get();
+        if (ordinal < 0 || ordinal >= WaitMode.values().length)
+            throw new CorruptSnapshotException("invalid wait mode " + ordinal + " at position " + (in.position() - 1));
+        return WaitMode.values()[ordinal];
+    }
+
+    private static String readString(ByteBuffer in) {
+        final int length = in.getInt();
+        if (length == -1)
+            return null;
+        if (length < 0 || length > in.remaining())
+            throw new CorruptSnapshotException("invalid string length " + length + " at position " + (in.position() - 4));
+        final byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readStrings(ByteBuffer in) {
+        final int size = in.getInt();
+        // each string takes at least its four byte length
+        if (size < 0 || size > in.remaining() / 4)
+            throw new CorruptSnapshotException("invalid list size " + size + " at position " + (in.position() - 4));
+        final List<String> list = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readString(in));
+        }
+        return list;
+    }
+}
@@ -59,6 +59,11 @@ public class TransientPriorityProcessorPool extends PriorityProcessorPool implem
         if (wf == null)
             throw new NullPointerException();
         WorkflowAccessor.setProcessingState(wf, ProcessingState.ENQUEUED);
+        if (queue.isConcurrent()) {
+            // add wakes up an idle processor
+            queue.add(wf);
+            return;
+        }
         synchronized (queue) {
             queue.add(wf);
             if (!queue.isSuspended()) {
@@ -17,6 +17,7 @@ package org.copperengine.core.tranzient;
 
 import java.util.Date;
 import java.util.Queue;
+import java.util.concurrent.locks.Lock;
 
 import org.copperengine.core.Interrupt;
 import org.copperengine.core.ProcessingEngine;
@@ -43,7 +44,9 @@ class TransientProcessor extends Processor {
     protected void process(Workflow<?> wf) {
         logger.trace("before - stack.size()={}", wf.get__stack().size());
         logger.trace("before - stack={}", wf.get__stack());
-        synchronized (wf) {
+        final Lock processingLock = WorkflowAccessor.getProcessingLock(wf);
+        processingLock.lock();
+        try {
             try {
                 WorkflowAccessor.setProcessingState(wf, ProcessingState.RUNNING);
                 WorkflowAccessor.setLastActivityTS(wf, new Date());
@@ -57,12 +60,14 @@ class TransientProcessor extends Processor {
                 WorkflowAccessor.setLastActivityTS(wf, new Date());
                 assert wf.get__stack().size() > 0;
             } catch (Exception e) {
-                engine.removeWorkflow(wf.getId());
+                engine.removeWorkflow(wf.getId(), e);
                 logger.error("Execution of wf " + wf.getId() + " failed", e);
                 engine.incErrorWFCounter();
                 WorkflowAccessor.setLastActivityTS(wf, new Date());
                 assert wf.get__stack().isEmpty() : "Stack must be empty \n" + wf.get__stack();
             }
+        } finally {
+            processingLock.unlock();
         }
     }
 }
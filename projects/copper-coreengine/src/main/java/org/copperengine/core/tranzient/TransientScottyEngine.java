@@ -15,15 +15,22 @@
  */
 package org.copperengine.core.tranzient;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 import org.copperengine.core.Acknowledge;
 import org.copperengine.core.CopperException;
@@ -42,6 +49,9 @@ import org.copperengine.core.common.ProcessorPoolManager;
 import org.copperengine.core.common.TicketPoolManager;
 import org.copperengine.core.internal.WorkflowAccessor;
 import org.copperengine.core.persistent.PersistentWorkflow;
+import org.copperengine.core.persistent.SerializedWorkflow;
+import org.copperengine.core.persistent.Serializer;
+import org.copperengine.core.persistent.StandardJavaSerializer;
 import org.copperengine.management.ProcessingEngineMXBean;
 import org.copperengine.management.ProcessorPoolMXBean;
 import org.copperengine.management.model.EngineType;
@@ -61,7 +71,9 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
 
     private static final Logger logger = LoggerFactory.getLogger(TransientScottyEngine.class);
 
-    private final Map<String, CorrelationSet> correlationMap = new HashMap<String, CorrelationSet>(50000);
+    private final ConcurrentHashMap<String, CorrelationSet> correlationMap = new ConcurrentHashMap<String, CorrelationSet>(50000);
+    // guard the lookup of early responses and the registration in the correlation map per correlation id
+    private final ReentrantLock[] correlationLocks = createCorrelationLocks(Runtime.getRuntime().availableProcessors() * 8);
     private final Map<String, Workflow<?>> workflowMap = new ConcurrentHashMap<String, Workflow<?>>(50000);
     private ProcessorPoolManager<TransientProcessorPool> poolManager;
     private TimeoutManager timeoutManager;
@@ -69,6 +81,8 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
     private TicketPoolManager ticketPoolManager;
     private final AtomicLong sequenceIdFactory = new AtomicLong(System.currentTimeMillis() * 10000L);
     private final AtomicLong errorWFCounter = new AtomicLong(0);
+    private File snapshotFile;
+    private Serializer snapshotSerializer = new StandardJavaSerializer();
 
     public void setTicketPoolManager(TicketPoolManager ticketPoolManager) {
         if (ticketPoolManager == null)
@@ -94,6 +108,36 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
         this.earlyResponseContainer = earlyResponseContainer;
     }
 
+    /**
+     * Sets the snapshot file of this engine. If set, the engine writes its waiting and enqueued workflow instances,
+     * including their correlation sets and timeouts, and its early responses to this file on shutdown. On startup,
+     * the engine restores them from this file, if it exists, and deletes it afterwards.
+     * <p>
+     * Workflow instances are written using the snapshot serializer, i.e. their data and their object graph including
+     * the stack of a waiting instance. Instances that are still running when the processor pools are shut down, are
+     * lost.
+     *
+     * @param snapshotFile
+     *        the snapshot file or <code>null</code> to disable snapshots
+     */
+    public void setSnapshotFile(File snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    public File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * Sets the serializer for the workflow instances and responses in the snapshot. Defaults to a
+     * {@link StandardJavaSerializer}.
+     */
+    public void setSnapshotSerializer(Serializer snapshotSerializer) {
+        if (snapshotSerializer == null)
+            throw new NullPointerException();
+        this.snapshotSerializer = snapshotSerializer;
+    }
+
     @Override
     public void notify(Response<?> response, Acknowledge ack) {
         logger.debug("notify({})", response);
@@ -111,44 +155,61 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
                 // ignore
             }
 
-            synchronized (correlationMap) {
-                final CorrelationSet cs = correlationMap.get(response.getCorrelationId());
-                if (cs == null) {
+            final CorrelationSet cs;
+            Workflow<?> wf = null;
+            boolean doEnqueue = false;
+            final ReentrantLock lock = correlationLock(response.getCorrelationId());
+            lock.lock();
+            try {
+                cs = correlationMap.get(response.getCorrelationId());
+                if (cs != null) {
+                    synchronized (cs) {
+                        // a completed correlation set is treated like a missing one
+                        if (!cs.isCompleted()) {
+                            wf = workflowMap.get(cs.getWorkflowId());
+                            if (wf == null) {
+                                logger.error("Workflow with id " + cs.getWorkflowId() + " not found");
+                                ack.onException(new CopperException("Workflow with id " + cs.getWorkflowId() + " not found"));
+                                return;
+                            }
+                            cs.getMissingCorrelationIds().remove(response.getCorrelationId());
+                            if (cs.getTimeoutTS() != null && !response.isTimeout())
+                                timeoutManager.unregisterTimeout(cs.getTimeoutTS(), response.getCorrelationId());
+                            wf.putResponse(response);
+
+                            if (cs.getMode() == WaitMode.FIRST) {
+                                if (!cs.getMissingCorrelationIds().isEmpty() && cs.getTimeoutTS() != null && !response.isTimeout()) {
+                                    timeoutManager.unregisterTimeout(cs.getTimeoutTS(), cs.getMissingCorrelationIds());
+                                }
+                                doEnqueue = true;
+                            }
+
+                            if (cs.getMissingCorrelationIds().isEmpty()) {
+                                doEnqueue = true;
+                            }
+
+                            if (doEnqueue) {
+                                cs.setCompleted();
+                            }
+                        }
+                    }
+                }
+                if (wf == null) {
                     if (response.isEarlyResponseHandling()) {
                         earlyResponseContainer.put(response);
                     }
                     ack.onSuccess();
                     return;
                 }
-                final Workflow<?> wf = workflowMap.get(cs.getWorkflowId());
-                if (wf == null) {
-                    logger.error("Workflow with id " + cs.getWorkflowId() + " not found");
-                    ack.onException(new CopperException("Workflow with id " + cs.getWorkflowId() + " not found"));
-                    return;
-                }
-                cs.getMissingCorrelationIds().remove(response.getCorrelationId());
-                if (cs.getTimeoutTS() != null && !response.isTimeout())
-                    timeoutManager.unregisterTimeout(cs.getTimeoutTS(), response.getCorrelationId());
-                wf.putResponse(response);
-
-                boolean doEnqueue = false;
-                if (cs.getMode() == WaitMode.FIRST) {
-                    if (!cs.getMissingCorrelationIds().isEmpty() && cs.getTimeoutTS() != null && !response.isTimeout()) {
-                        timeoutManager.unregisterTimeout(cs.getTimeoutTS(), cs.getMissingCorrelationIds());
-                    }
-                    doEnqueue = true;
-                }
-
-                if (cs.getMissingCorrelationIds().isEmpty()) {
-                    doEnqueue = true;
-                }
+            } finally {
+                lock.unlock();
+            }
 
-                if (doEnqueue) {
-                    for (String correlationId : cs.getCorrelationIds()) {
-                        correlationMap.remove(correlationId);
-                    }
-                    enqueue(wf);
+            if (doEnqueue) {
+                for (String correlationId : cs.getCorrelationIds()) {
+                    correlationMap.remove(correlationId, cs);
                 }
+                enqueue(wf);
             }
             ack.onSuccess();
         } catch (RuntimeException e) {
@@ -217,6 +278,9 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
         timeoutManager.shutdown();
         earlyResponseContainer.shutdown();
         poolManager.shutdown();
+        if (snapshotFile != null) {
+            writeSnapshot();
+        }
         super.shutdown();
         logger.info("Engine is stopped");
         engineState = EngineState.STOPPED;
@@ -235,6 +299,9 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
         timeoutManager.startup();
         earlyResponseContainer.startup();
         poolManager.startup();
+        if (snapshotFile != null && snapshotFile.exists()) {
+            restoreSnapshot();
+        }
         engineState = EngineState.STARTED;
         logger.info("Engine is running");
         startupBlocker.unblock();
@@ -249,7 +316,11 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
         
         boolean doEnqueue = false;
         CorrelationSet cs = new CorrelationSet(w, correlationIds, mode, timeoutMsec > 0 ? System.currentTimeMillis() + timeoutMsec : null);
-        synchronized (correlationMap) {
+        final ReentrantLock[] locks = correlationLocks(correlationIds);
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+        try {
             for (String cid : correlationIds) {
                 List<Response<?>> earlyResponses = earlyResponseContainer.get(cid);
                 if (earlyResponses != null && !earlyResponses.isEmpty()) {
@@ -262,15 +333,19 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
             if (cs.getMissingCorrelationIds().isEmpty() || (cs.getMissingCorrelationIds().size() < correlationIds.length && mode == WaitMode.FIRST)) {
                 doEnqueue = true;
             } else {
-                for (String cid : cs.getCorrelationIds()) {
-                    correlationMap.put(cid, cs);
-                }
                 if (cs.getTimeoutTS() != null) {
                     if (mode == WaitMode.FIRST)
                         timeoutManager.registerTimeout(cs.getTimeoutTS().longValue(), cs.getMissingCorrelationIds().get(0));
                     else
                         timeoutManager.registerTimeout(cs.getTimeoutTS().longValue(), cs.getMissingCorrelationIds());
                 }
+                for (String cid : cs.getCorrelationIds()) {
+                    correlationMap.put(cid, cs);
+                }
+            }
+        } finally {
+            for (int i = locks.length - 1; i >= 0; i--) {
+                locks[i].unlock();
             }
         }
         if (doEnqueue) {
@@ -281,6 +356,200 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
         }
     }
 
+    private void writeSnapshot() {
+        final long startTS = System.currentTimeMillis();
+        final Map<String, CorrelationSet> waiting = new HashMap<String, CorrelationSet>();
+        for (CorrelationSet cs : correlationMap.values()) {
+            synchronized (cs) {
+                if (!cs.isCompleted()) {
+                    waiting.put(cs.getWorkflowId(), cs);
+                }
+            }
+        }
+        final List<TransientEngineSnapshot.WorkflowEntry> workflows = workflowMap.values().parallelStream()
+                .map(wf -> createSnapshotEntry(wf, waiting.get(wf.getId())))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        final List<String> earlyResponses = new ArrayList<String>();
+        for (Response<?> r : earlyResponseContainer.removeAll()) {
+            try {
+                earlyResponses.add(snapshotSerializer.serializeResponse(r));
+            } catch (Exception e) {
+                logger.error("Unable to write early response with correlationId " + r.getCorrelationId() + " to the snapshot", e);
+            }
+        }
+        try {
+            new TransientEngineSnapshot(workflows, earlyResponses).write(snapshotFile);
+            logger.info("Wrote {} of {} workflow instances and {} early responses to snapshot {} in {} msec", workflows.size(), workflowMap.size(), earlyResponses.size(), snapshotFile, System.currentTimeMillis() - startTS);
+        } catch (IOException e) {
+            logger.error("Unable to write snapshot " + snapshotFile, e);
+        }
+    }
+
+    private TransientEngineSnapshot.WorkflowEntry createSnapshotEntry(Workflow<?> wf, CorrelationSet cs) {
+        if (cs == null && wf.getProcessingState() == ProcessingState.RUNNING) {
+            logger.warn("Workflow instance {} is still running and is not written to the snapshot", wf.getId());
+            return null;
+        }
+        try {
+            final TransientEngineSnapshot.WorkflowEntry e = new TransientEngineSnapshot.WorkflowEntry();
+            e.id = wf.getId();
+            e.processorPoolId = wf.getProcessorPoolId();
+            e.priority = wf.getPriority();
+            e.creationTS = wf.getCreationTS().getTime();
+            final SerializedWorkflow sw = snapshotSerializer.serializeWorkflow(wf);
+            e.data = sw.getData();
+            e.objectState = sw.getObjectState();
+            for (Response<?> r : WorkflowAccessor.getResponses(wf)) {
+                e.responses.add(snapshotSerializer.serializeResponse(r));
+            }
+            if (cs != null) {
+                synchronized (cs) {
+                    e.mode = cs.getMode();
+                    e.timeoutTS = cs.getTimeoutTS();
+                    e.correlationIds = new ArrayList<String>(cs.getCorrelationIds());
+                    e.missingCorrelationIds = new ArrayList<String>(cs.getMissingCorrelationIds());
+                }
+            }
+            return e;
+        } catch (Exception e) {
+            logger.error("Unable to write workflow instance " + wf.getId() + " to the snapshot", e);
+            return null;
+        }
+    }
+
+    private void restoreSnapshot() {
+        final long startTS = System.currentTimeMillis();
+        final TransientEngineSnapshot snapshot;
+        try {
+            snapshot = TransientEngineSnapshot.read(snapshotFile);
+        } catch (IOException | RuntimeException e) {
+            // keep the file for analysis, but do not try to restore it again on the next startup
+            final File corruptFile = new File(snapshotFile.getPath() + ".corrupt");
+            logger.error("Unable to read snapshot " + snapshotFile + ", moving it to " + corruptFile, e);
+            try {
+                Files.move(snapshotFile.toPath(), corruptFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException ex) {
+                logger.error("Unable to move snapshot " + snapshotFile + " to " + corruptFile, ex);
+            }
+            return;
+        }
+        // deserialize in parallel, register sequentially
+        snapshot.workflows.parallelStream().forEach(this::deserializeSnapshotEntry);
+        final List<Response<?>> earlyResponses = snapshot.earlyResponses.parallelStream()
+                .map(this::deserializeSnapshotResponse)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        int restored = 0;
+        for (TransientEngineSnapshot.WorkflowEntry e : snapshot.workflows) {
+            if (e.workflow != null) {
+                restoreWorkflow(e);
+                restored++;
+            }
+        }
+        for (Response<?> r : earlyResponses) {
+            earlyResponseContainer.put(r);
+        }
+        if (!snapshotFile.delete()) {
+            logger.warn("Unable to delete snapshot {}", snapshotFile);
+        }
+        logger.info("Restored {} of {} workflow instances and {} early responses from snapshot {} in {} msec", restored, snapshot.workflows.size(), earlyResponses.size(), snapshotFile, System.currentTimeMillis() - startTS);
+    }
+
+    private void deserializeSnapshotEntry(TransientEngineSnapshot.WorkflowEntry e) {
+        try {
+            final SerializedWorkflow sw = new SerializedWorkflow();
+            sw.setData(e.data);
+            sw.setObjectState(e.objectState);
+            final Workflow<?> wf = snapshotSerializer.deserializeWorkflow(sw, wfRepository);
+            wf.setId(e.id);
+            wf.setProcessorPoolId(e.processorPoolId);
+            wf.setPriority(e.priority);
+            WorkflowAccessor.setCreationTS(wf, new Date(e.creationTS));
+            for (String r : e.responses) {
+                wf.putResponse(snapshotSerializer.deserializeResponse(r));
+            }
+            e.workflow = wf;
+        } catch (Exception ex) {
+            logger.error("Unable to restore workflow instance " + e.id + " from the snapshot", ex);
+        }
+    }
+
+    private Response<?> deserializeSnapshotResponse(String r) {
+        try {
+            return snapshotSerializer.deserializeResponse(r);
+        } catch (Exception e) {
+            logger.error("Unable to restore early response from the snapshot", e);
+            return null;
+        }
+    }
+
+    private void restoreWorkflow(TransientEngineSnapshot.WorkflowEntry e) {
+        final Workflow<?> wf = e.workflow;
+        ticketPoolManager.obtain(wf);
+        injectDependencies(wf);
+        workflowMap.put(wf.getId(), wf);
+        if (e.isWaiting()) {
+            final CorrelationSet cs = new CorrelationSet(wf.getId(), e.correlationIds, e.missingCorrelationIds, e.mode, e.timeoutTS);
+            WorkflowAccessor.setProcessingState(wf, ProcessingState.WAITING);
+            WorkflowAccessor.setTimeoutTS(wf, cs.getTimeoutTS() != null ? new Date(cs.getTimeoutTS()) : null);
+            if (cs.getTimeoutTS() != null) {
+                if (cs.getMode() == WaitMode.FIRST)
+                    timeoutManager.registerTimeout(cs.getTimeoutTS().longValue(), cs.getMissingCorrelationIds().get(0));
+                else
+                    timeoutManager.registerTimeout(cs.getTimeoutTS().longValue(), cs.getMissingCorrelationIds());
+            }
+            for (String cid : cs.getCorrelationIds()) {
+                correlationMap.put(cid, cs);
+            }
+        } else {
+            enqueue(wf);
+        }
+    }
+
+    private static ReentrantLock[] createCorrelationLocks(int minSize) {
+        int size = 16;
+        while (size < minSize) {
+            size <<= 1;
+        }
+        final ReentrantLock[] locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    private int correlationLockIndex(String correlationId) {
+        final int h = correlationId.hashCode();
+        return (h ^ (h >>> 16)) & (correlationLocks.length - 1);
+    }
+
+    private ReentrantLock correlationLock(String correlationId) {
+        return correlationLocks[correlationLockIndex(correlationId)];
+    }
+
+    /**
+     * @return the distinct locks of the specified correlation ids in ascending order, so that the locks of several
+     *         correlation ids are always acquired in the same order
+     */
+    private ReentrantLock[] correlationLocks(String[] correlationIds) {
+        if (correlationIds.length == 1) {
+            return new ReentrantLock[] { correlationLock(correlationIds[0]) };
+        }
+        final int[] idx = new int[correlationIds.length];
+        for (int i = 0; i < correlationIds.length; i++) {
+            idx[i] = correlationLockIndex(correlationIds[i]);
+        }
+        Arrays.sort(idx);
+        final List<ReentrantLock> locks = new ArrayList<ReentrantLock>(idx.length);
+        for (int i = 0; i < idx.length; i++) {
+            if (i == 0 || idx[i] != idx[i - 1]) {
+                locks.add(correlationLocks[idx[i]]);
+            }
+        }
+        return locks.toArray(new ReentrantLock[locks.size()]);
+    }
+
     /**
      * For internal use only!!
      * 
@@ -288,11 +557,24 @@ public class TransientScottyEngine extends AbstractProcessingEngine implements P
      *        workflow instance id
      */
     public void removeWorkflow(String id) {
+        removeWorkflow(id, null);
+    }
+
+    /**
+     * For internal use only!!
+     * 
+     * @param id
+     *        workflow instance id
+     * @param error
+     *        the exception the workflow instance terminated with or <code>null</code>
+     */
+    public void removeWorkflow(String id, Throwable error) {
         final Workflow<?> wf = workflowMap.remove(id);
         if (wf != null) {
             WorkflowAccessor.setProcessingState(wf, ProcessingState.FINISHED);
             ticketPoolManager.release(wf);
             statisticsCollector.submit(getEngineId() + "." + wf.getClass().getSimpleName() + ".ExecutionTime", 1, System.currentTimeMillis() - wf.getCreationTS().getTime(), TimeUnit.MILLISECONDS);
+            completeWorkflow(id, error);
         }
     }
 
@@ -77,6 +77,19 @@ create index IDX_COP_WAIT_WFI_ID on COP_WAIT (
    WORKFLOW_INSTANCE_ID
 );
 
+create index IDX_COP_WAIT_TIMEOUT on COP_WAIT (
+   TIMEOUT_TS
+);
+
+--
+-- COP_RESPONSE_EVENT
+--
+create table COP_RESPONSE_EVENT (
+   RESPONSE_ID		VARCHAR(128) not null,
+   CORRELATION_ID	VARCHAR(128) not null,
+   PRIMARY KEY (RESPONSE_ID)
+);
+
 --
 -- QUEUE
 --
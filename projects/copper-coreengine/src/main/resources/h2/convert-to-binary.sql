@@ -0,0 +1,32 @@
+--
+-- Copyright 2002-2015 SCOOP Software GmbH
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--      http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+--
+
+--
+-- Converts the serialized state columns to BLOB, required when the H2Dialect is configured with a BinarySerializer.
+-- Existing rows stay readable.
+--
+ALTER TABLE COP_WORKFLOW_INSTANCE ADD COLUMN DATA_BIN BLOB;
+ALTER TABLE COP_WORKFLOW_INSTANCE ADD COLUMN OBJECT_STATE_BIN BLOB;
+UPDATE COP_WORKFLOW_INSTANCE SET DATA_BIN = STRINGTOUTF8(DATA), OBJECT_STATE_BIN = STRINGTOUTF8(OBJECT_STATE);
+ALTER TABLE COP_WORKFLOW_INSTANCE DROP COLUMN DATA;
+ALTER TABLE COP_WORKFLOW_INSTANCE DROP COLUMN OBJECT_STATE;
+ALTER TABLE COP_WORKFLOW_INSTANCE ALTER COLUMN DATA_BIN RENAME TO DATA;
+ALTER TABLE COP_WORKFLOW_INSTANCE ALTER COLUMN OBJECT_STATE_BIN RENAME TO OBJECT_STATE;
+
+ALTER TABLE COP_RESPONSE ADD COLUMN RESPONSE_BIN BLOB;
+UPDATE COP_RESPONSE SET RESPONSE_BIN = STRINGTOUTF8(RESPONSE);
+ALTER TABLE COP_RESPONSE DROP COLUMN RESPONSE;
+ALTER TABLE COP_RESPONSE ALTER COLUMN RESPONSE_BIN RENAME TO RESPONSE;
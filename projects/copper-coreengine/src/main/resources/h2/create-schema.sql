@@ -18,6 +18,7 @@ drop table if exists COP_WORKFLOW_INSTANCE_ERROR;
 drop table if exists COP_WORKFLOW_INSTANCE;
 drop table if exists COP_WAIT;
 drop table if exists COP_RESPONSE;
+drop table if exists COP_RESPONSE_EVENT;
 drop table if exists COP_QUEUE;
 drop table if exists COP_AUDIT_TRAIL_EVENT;
 drop table if exists COP_ADAPTERCALL;
@@ -94,6 +95,21 @@ create index IDX_COP_WAIT_WFI_ID on COP_WAIT (
 );
 
 
+create index IDX_COP_WAIT_TIMEOUT on COP_WAIT (
+  TIMEOUT_TS
+);
+
+
+--
+-- RESPONSE_EVENT
+--
+create table COP_RESPONSE_EVENT (
+  RESPONSE_ID          VARCHAR(128)    not null,
+  CORRELATION_ID       VARCHAR(128)    not null,
+  CONSTRAINT PK_COP_RESPONSE_EVENT PRIMARY KEY (RESPONSE_ID)
+);
+
+
 --
 -- QUEUE
 --
@@ -18,6 +18,7 @@ drop table if exists COP_WORKFLOW_INSTANCE_ERROR;
 drop table if exists COP_WORKFLOW_INSTANCE;
 drop table if exists COP_WAIT;
 drop table if exists COP_RESPONSE;
+drop table if exists COP_RESPONSE_EVENT;
 drop table if exists COP_QUEUE;
 drop table if exists COP_AUDIT_TRAIL_EVENT;
 drop table if exists COP_ADAPTERCALL;
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class InterruptTest {
+
+    @Test
+    public void testStackless() {
+        assertEquals(0, Interrupt.INSTANCE.getStackTrace().length);
+        // constructor used by classes instrumented with older versions
+        assertEquals(0, new Interrupt().getStackTrace().length);
+        Interrupt.INSTANCE.addSuppressed(new RuntimeException());
+        assertEquals(0, Interrupt.INSTANCE.getSuppressed().length);
+        assertNull(Interrupt.INSTANCE.getCause());
+    }
+
+}
@@ -5,8 +5,11 @@ import static org.junit.Assert.*;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
 import java.io.Serializable;
 
 import org.junit.Test;
@@ -25,6 +28,62 @@ public class StackEntryTest {
         }
     }
 
+    /**
+     * Writes the format of COPPER versions that boxed all primitive locals
+     */
+    private static final class LegacyStackEntry implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        transient Object[] locals;
+        transient Object[] stack;
+
+        private void writeObject(ObjectOutputStream stream) throws IOException {
+            stream.writeInt(JUMP_NO);
+            stream.writeInt(locals.length);
+            stream.writeInt(stack.length);
+            for (Object o : locals)
+                stream.writeObject(o);
+            for (Object o : stack)
+                stream.writeObject(o);
+        }
+
+        private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+            assertEquals(JUMP_NO, stream.readInt());
+            locals = new Object[stream.readInt()];
+            stack = new Object[stream.readInt()];
+            for (int i = 0; i < locals.length; ++i)
+                locals[i] = stream.readObject();
+            for (int i = 0; i < stack.length; ++i)
+                stack[i] = stream.readObject();
+        }
+    }
+
+    private static final class LegacyObjectOutputStream extends ObjectOutputStream {
+
+        LegacyObjectOutputStream(OutputStream out) throws IOException {
+            super(out);
+        }
+
+        @Override
+        protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+            super.writeClassDescriptor(desc.forClass() == LegacyStackEntry.class ? ObjectStreamClass.lookup(StackEntry.class) : desc);
+        }
+    }
+
+    private static final class LegacyObjectInputStream extends ObjectInputStream {
+
+        LegacyObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            final ObjectStreamClass desc = super.readClassDescriptor();
+            return desc.getName().equals(StackEntry.class.getName()) ? ObjectStreamClass.lookup(LegacyStackEntry.class) : desc;
+        }
+    }
+
     @Test
     public void testSerializationAllEmpty() throws Exception {
         StackEntry se = new StackEntry(JUMP_NO);
@@ -56,6 +115,107 @@ public class StackEntryTest {
         assertArrayEquals(se.stack, se2.stack);
     }
 
+    @Test
+    public void testSerializationWithPrimitives() throws Exception {
+        StackEntry se = new StackEntry(new Object[] { "stackA", 42L }, JUMP_NO,
+                new Object[] { "localA", StackEntry.LONG_SLOT, StackEntry.LONG_SLOT, null, StackEntry.DOUBLE_SLOT, StackEntry.DOUBLE_SLOT, null },
+                new long[] { 0, 4711, Long.MAX_VALUE, 0, 0, 0, 0 },
+                new double[] { 0, 0, 0, 0, 0.5, Math.PI, 0 });
+
+        for (byte[] bytes : new byte[][] { toBytes(se), toCompactBytes(se) }) {
+            StackEntry se2 = toStackEntry(bytes);
+            assertEquals(JUMP_NO, se2.jumpNo);
+            assertArrayEquals(new Object[] { "localA", 4711L, Long.MAX_VALUE, null, 0.5d, Math.PI, null }, se2.locals);
+            assertArrayEquals(se.stack, se2.stack);
+            assertArrayEquals(se.longLocals, se2.longLocals);
+            assertArrayEquals(se.doubleLocals, se2.doubleLocals, 0.0);
+        }
+    }
+
+    /**
+     * By default the primitive locals are written boxed in the format of older versions, so that they can read it
+     */
+    @Test
+    public void testLegacyFormatIsDefault() throws Exception {
+        assertFalse(StackEntry.isWriteCompactFormat());
+        StackEntry se = new StackEntry(new Object[] { "stackA" }, JUMP_NO,
+                new Object[] { "localA", StackEntry.INT_SLOT, StackEntry.LONG_SLOT, StackEntry.FLOAT_SLOT, StackEntry.DOUBLE_SLOT, null },
+                new long[] { 0, 4711, 1L << 40, 0, 0, 0 },
+                new double[] { 0, 0, 0, 1.5f, 2.5d, 0 });
+
+        try (ObjectInputStream ois = new LegacyObjectInputStream(new ByteArrayInputStream(toBytes(se)))) {
+            LegacyStackEntry legacy = (LegacyStackEntry) ois.readObject();
+            assertArrayEquals(new Object[] { "localA", 4711, 1L << 40, 1.5f, 2.5d, null }, legacy.locals);
+            assertArrayEquals(se.stack, legacy.stack);
+        }
+    }
+
+    /**
+     * Classes instrumented by older versions restore the locals from the boxed values in <code>locals</code>, classes
+     * instrumented by this version from the primitive arrays
+     */
+    @Test
+    public void testPrimitivesAreReadableByBothLayouts() throws Exception {
+        StackEntry se = new StackEntry(null, JUMP_NO,
+                new Object[] { StackEntry.INT_SLOT, StackEntry.LONG_SLOT, StackEntry.LONG_SLOT, StackEntry.FLOAT_SLOT, StackEntry.DOUBLE_SLOT, StackEntry.DOUBLE_SLOT },
+                new long[] { -17, 42, 1L << 40, 0, 0, 0 },
+                new double[] { 0, 0, 0, 1.5f, 0.25, 0.1 });
+
+        StackEntry se2 = toStackEntry(toCompactBytes(se));
+        assertArrayEquals(new Object[] { -17, 42L, 1L << 40, 1.5f, 0.25d, 0.1d }, se2.locals);
+        assertArrayEquals(se.longLocals, se2.longLocals);
+        assertArrayEquals(se.doubleLocals, se2.doubleLocals, 0.0);
+    }
+
+    @Test
+    public void testBoxedLocalsInCompactFormat() throws Exception {
+        StackEntry se = new StackEntry(null, JUMP_NO, new Object[] { "localA", 4711, 1L << 40, 1.5f, 2.5d });
+
+        StackEntry se2 = toStackEntry(toCompactBytes(se));
+        assertArrayEquals(se.locals, se2.locals);
+        assertEquals(4711L, se2.longLocals[1]);
+        assertEquals(1L << 40, se2.longLocals[2]);
+        assertEquals(1.5, se2.doubleLocals[3], 0.0);
+        assertEquals(2.5, se2.doubleLocals[4], 0.0);
+    }
+
+    @Test
+    public void testPrimitivesAreNotBoxed() throws Exception {
+        Object[] locals = new Object[100];
+        long[] longLocals = new long[100];
+        for (int i = 0; i < locals.length; i++) {
+            locals[i] = StackEntry.LONG_SLOT;
+            longLocals[i] = 1000 + i;
+        }
+        StackEntry se = new StackEntry(null, JUMP_NO, locals, longLocals, null);
+        byte[] compact = toCompactBytes(se);
+        byte[] legacy = toBytes(se);
+
+        assertEquals(571, compact.length);
+        assertTrue(compact.length * 2 < legacy.length);
+    }
+
+    @Test
+    public void testReadLegacyFormat() throws Exception {
+        LegacyStackEntry legacy = new LegacyStackEntry();
+        legacy.locals = new Object[] { "localA", 4711, 1L << 40, 1.5f, 2.5d, null };
+        legacy.stack = new Object[] { "stackA", 42 };
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new LegacyObjectOutputStream(baos);
+        oos.writeObject(legacy);
+        oos.close();
+
+        StackEntry se = toStackEntry(baos.toByteArray());
+        assertEquals(JUMP_NO, se.jumpNo);
+        // the boxed values are kept, the slots may as well hold objects
+        assertArrayEquals(legacy.locals, se.locals);
+        assertArrayEquals(legacy.stack, se.stack);
+        assertEquals(4711L, se.longLocals[1]);
+        assertEquals(1L << 40, se.longLocals[2]);
+        assertEquals(1.5, se.doubleLocals[3], 0.0);
+        assertEquals(2.5, se.doubleLocals[4], 0.0);
+    }
+
     private byte[] toBytes(StackEntry se) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         ObjectOutputStream oos = new ObjectOutputStream(baos);
@@ -66,6 +226,15 @@ public class StackEntryTest {
         return bytes;
     }
 
+    private byte[] toCompactBytes(StackEntry se) throws IOException {
+        StackEntry.setWriteCompactFormat(true);
+        try {
+            return toBytes(se);
+        } finally {
+            StackEntry.setWriteCompactFormat(false);
+        }
+    }
+
     private StackEntry toStackEntry(byte[] bytes) throws IOException, ClassNotFoundException {
         try (ObjectInputStream oos = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
             return (StackEntry) oos.readObject();
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.batcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.copperengine.management.model.BatchExecutorStatistics;
+import org.junit.Test;
+
+public class RetryingTxnBatchRunnerTest {
+
+    static final class TestCommand implements BatchCommand<TestExecutor, TestCommand>, CommandCallback<TestCommand> {
+
+        final TestExecutor executor;
+        final boolean poisoned;
+        int completed;
+        int failed;
+
+        TestCommand(TestExecutor executor, boolean poisoned) {
+            this.executor = executor;
+            this.poisoned = poisoned;
+        }
+
+        @Override
+        public TestExecutor executor() {
+            return executor;
+        }
+
+        @Override
+        public CommandCallback<TestCommand> callback() {
+            return this;
+        }
+
+        @Override
+        public long targetTime() {
+            return 0;
+        }
+
+        @Override
+        public void commandCompleted() {
+            completed++;
+        }
+
+        @Override
+        public void unhandledException(Exception e) {
+            failed++;
+        }
+    }
+
+    static final class TestExecutor extends BatchExecutor<TestExecutor, TestCommand> {
+
+        int executions;
+
+        @Override
+        public void doExec(Collection<BatchCommand<TestExecutor, TestCommand>> commands, Connection connection) throws Exception {
+            executions++;
+            for (BatchCommand<TestExecutor, TestCommand> cmd : commands) {
+                if (((TestCommand) cmd).poisoned)
+                    throw new Exception("poisoned");
+            }
+        }
+
+        @Override
+        public int preferredBatchSize() {
+            return 100;
+        }
+
+        @Override
+        public int maximumBatchSize() {
+            return 100;
+        }
+    }
+
+    private static List<BatchCommand<TestExecutor, TestCommand>> createCommands(TestExecutor executor, int size, int... poisoned) {
+        final List<BatchCommand<TestExecutor, TestCommand>> commands = new ArrayList<BatchCommand<TestExecutor, TestCommand>>();
+        for (int i = 0; i < size; i++) {
+            boolean p = false;
+            for (int x : poisoned) {
+                p |= x == i;
+            }
+            commands.add(new TestCommand(executor, p));
+        }
+        return commands;
+    }
+
+    private static void assertResults(List<BatchCommand<TestExecutor, TestCommand>> commands) {
+        for (BatchCommand<TestExecutor, TestCommand> cmd : commands) {
+            final TestCommand c = (TestCommand) cmd;
+            assertEquals(c.poisoned ? 0 : 1, c.completed);
+            assertEquals(c.poisoned ? 1 : 0, c.failed);
+        }
+    }
+
+    @Test
+    public void testBisect() {
+        final TestExecutor executor = new TestExecutor();
+        final RetryingTxnBatchRunner<TestExecutor, TestCommand> runner = new RetryingTxnBatchRunner<TestExecutor, TestCommand>();
+        final List<BatchCommand<TestExecutor, TestCommand>> commands = createCommands(executor, 100, 42);
+        runner.run(commands, executor);
+        assertResults(commands);
+        assertTrue("executions=" + executor.executions, executor.executions <= 1 + 2 * 7);
+
+        final List<BatchExecutorStatistics> statistics = runner.getExecutorStatistics();
+        assertEquals(1, statistics.size());
+        assertEquals(executor.id(), statistics.get(0).getExecutorId());
+        assertEquals(1, statistics.get(0).getFailedBatches());
+        assertEquals(1, statistics.get(0).getIsolatedCommands());
+    }
+
+    @Test
+    public void testBisectSeveralFailures() {
+        final TestExecutor executor = new TestExecutor();
+        final RetryingTxnBatchRunner<TestExecutor, TestCommand> runner = new RetryingTxnBatchRunner<TestExecutor, TestCommand>();
+        final List<BatchCommand<TestExecutor, TestCommand>> commands = createCommands(executor, 37, 0, 17, 18, 36);
+        runner.run(commands, executor);
+        assertResults(commands);
+        assertEquals(4, runner.getExecutorStatistics().get(0).getIsolatedCommands());
+    }
+
+    @Test
+    public void testSeparateCommands() {
+        final TestExecutor executor = new TestExecutor();
+        final RetryingTxnBatchRunner<TestExecutor, TestCommand> runner = new RetryingTxnBatchRunner<TestExecutor, TestCommand>();
+        runner.setBisectFailedBatches(false);
+        final List<BatchCommand<TestExecutor, TestCommand>> commands = createCommands(executor, 100, 42);
+        runner.run(commands, executor);
+        assertResults(commands);
+        assertEquals(101, executor.executions);
+    }
+
+    @Test
+    public void testSuccess() {
+        final TestExecutor executor = new TestExecutor();
+        final RetryingTxnBatchRunner<TestExecutor, TestCommand> runner = new RetryingTxnBatchRunner<TestExecutor, TestCommand>();
+        final List<BatchCommand<TestExecutor, TestCommand>> commands = createCommands(executor, 10);
+        runner.run(commands, executor);
+        assertResults(commands);
+        assertEquals(1, executor.executions);
+        assertTrue(runner.getExecutorStatistics().isEmpty());
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.batcher.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.copperengine.core.batcher.RetryingTxnBatchRunner;
+import org.copperengine.core.batcher.impl.BatcherImplTest.TestBatchCommand;
+import org.copperengine.core.batcher.impl.BatcherImplTest.TestBatchExecutor;
+import org.copperengine.core.monitoring.NullRuntimeStatisticsCollector;
+import org.copperengine.management.model.BatchExecutorStatistics;
+import org.junit.Test;
+
+public class BatcherQueueTest {
+
+    private final AdaptiveSettings settings = new AdaptiveSettings(5, 100, 10);
+
+    @Test
+    public void testLatencyFollowsExecutionTime() {
+        final BatcherQueue.BatchInfo batchInfo = new BatcherQueue.BatchInfo(TestBatchExecutor.INSTANCE, settings.minLatencyMSec);
+        for (int i = 0; i < 50; i++) {
+            batchInfo.batchExecuted(10, 40000, batchInfo.batch.size(), settings);
+        }
+        assertEquals(40, batchInfo.latencyMSec);
+        for (int i = 0; i < 50; i++) {
+            batchInfo.batchExecuted(10, 1000, batchInfo.batch.size(), settings);
+        }
+        assertEquals(settings.minLatencyMSec, batchInfo.latencyMSec);
+        for (int i = 0; i < 50; i++) {
+            batchInfo.batchExecuted(10, 500000, batchInfo.batch.size(), settings);
+        }
+        assertEquals(settings.maxLatencyMSec, batchInfo.latencyMSec);
+    }
+
+    @Test
+    public void testPreferredSize() {
+        final BatcherQueue.BatchInfo batchInfo = new BatcherQueue.BatchInfo(TestBatchExecutor.INSTANCE, settings.minLatencyMSec);
+        assertEquals(50, batchInfo.preferredSize);
+        // commands are queued up - the batch grows up to the maximum size of the executor
+        for (int i = 0; i < 200; i++) {
+            batchInfo.add(new TestBatchCommand("x"), true);
+        }
+        for (int i = 0; i < 10; i++) {
+            batchInfo.batchExecuted(batchInfo.preferredSize, 10000, batchInfo.batch.size(), settings);
+        }
+        assertEquals(100, batchInfo.preferredSize);
+
+        // slow executions without backlog - the batch shrinks down to the configured minimum
+        batchInfo.removeCommands(false, true);
+        batchInfo.removeCommands(false, true);
+        assertEquals(0, batchInfo.batch.size());
+        for (int i = 0; i < 20; i++) {
+            batchInfo.batchExecuted(batchInfo.preferredSize, 500000, batchInfo.batch.size(), settings);
+        }
+        assertEquals(settings.minPreferredSize, batchInfo.preferredSize);
+    }
+
+    @Test
+    public void testNotAdaptive() {
+        final BatcherQueue.BatchInfo batchInfo = new BatcherQueue.BatchInfo(TestBatchExecutor.INSTANCE, 0);
+        for (int i = 0; i < 200; i++) {
+            batchInfo.add(new TestBatchCommand("x"), false);
+        }
+        batchInfo.batchExecuted(50, 500000, batchInfo.batch.size(), null);
+        assertEquals(50, batchInfo.preferredSize);
+        assertEquals(500000, batchInfo.avgExecutionTimeMicros);
+    }
+
+    @Test
+    public void testAdaptiveHonoursTargetTime() {
+        final BatcherQueue.BatchInfo batchInfo = new BatcherQueue.BatchInfo(TestBatchExecutor.INSTANCE, 60000);
+        final TestBatchCommand cmd = new TestBatchCommand("x");
+        cmd.targetTime = System.currentTimeMillis() + 10;
+        assertEquals(Long.valueOf(cmd.targetTime), batchInfo.add(cmd, true));
+
+        // a later target time does not postpone the batch
+        final TestBatchCommand later = new TestBatchCommand("y");
+        later.targetTime = System.currentTimeMillis() + 120000;
+        assertNull(batchInfo.add(later, true));
+        assertEquals(cmd.targetTime, batchInfo.minTargetTime);
+
+        // without an earlier target time, the batch is due latencyMSec after the command was added
+        final BatcherQueue.BatchInfo other = new BatcherQueue.BatchInfo(TestBatchExecutor.INSTANCE, 100);
+        final long before = System.currentTimeMillis();
+        other.add(later, true);
+        assertTrue(other.minTargetTime >= before + 100 && other.minTargetTime < later.targetTime);
+    }
+
+    @Test
+    public void testAdaptiveUpperBound() {
+        final BatcherQueue.BatchInfo batchInfo = new BatcherQueue.BatchInfo(TestBatchExecutor.INSTANCE, settings.minLatencyMSec);
+        // slow executions drive the latency up to the upper bound, but not beyond
+        for (int i = 0; i < 50; i++) {
+            batchInfo.batchExecuted(10, 10000000, batchInfo.batch.size(), settings);
+        }
+        assertEquals(settings.maxLatencyMSec, batchInfo.latencyMSec);
+
+        // a command with a later target time is due after the maximum latency
+        final TestBatchCommand later = new TestBatchCommand("x");
+        later.targetTime = System.currentTimeMillis() + 60000;
+        final long before = System.currentTimeMillis();
+        batchInfo.add(later, true);
+        final long after = System.currentTimeMillis();
+        assertTrue(batchInfo.minTargetTime >= before + settings.maxLatencyMSec);
+        assertTrue(batchInfo.minTargetTime <= after + settings.maxLatencyMSec);
+
+        // a command with an earlier target time caps the latency
+        final TestBatchCommand earlier = new TestBatchCommand("y");
+        earlier.targetTime = System.currentTimeMillis() + settings.maxLatencyMSec / 2;
+        assertEquals(Long.valueOf(earlier.targetTime), batchInfo.add(earlier, true));
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        final CountDownLatch executed = new CountDownLatch(10);
+        final BatcherImpl batcher = new BatcherImpl(1);
+        batcher.setBatchRunner(new RetryingTxnBatchRunner<TestBatchExecutor, TestBatchCommand>());
+        batcher.setStatisticsCollector(new NullRuntimeStatisticsCollector() {
+            @Override
+            public void submit(String measurePointId, int elementCount, long elapsedTime, TimeUnit timeUnit) {
+                for (int i = 0; i < elementCount; i++) {
+                    executed.countDown();
+                }
+            }
+        });
+        batcher.setAdaptiveBatchSizing(true);
+        batcher.startup();
+        try {
+            for (int i = 0; i < 10; i++) {
+                batcher.submitBatchCommand(new TestBatchCommand("Test#" + i));
+            }
+            assertTrue(executed.await(10, TimeUnit.SECONDS));
+        } finally {
+            // joins the worker threads, so the statistics of the last batch are complete
+            batcher.shutdown();
+        }
+        final List<BatchExecutorStatistics> statistics = batcher.getBatchExecutorStatistics();
+        assertEquals(1, statistics.size());
+        assertEquals(TestBatchExecutor.INSTANCE.id(), statistics.get(0).getExecutorId());
+        assertTrue(statistics.get(0).getBatchingLatencyMSec() >= 0);
+        assertTrue(statistics.get(0).getAvgExecutionTimeMicros() >= 0);
+    }
+}
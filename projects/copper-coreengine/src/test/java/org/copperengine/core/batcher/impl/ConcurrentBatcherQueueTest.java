@@ -0,0 +1,221 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.batcher.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.copperengine.core.batcher.BatchCommand;
+import org.copperengine.core.batcher.BatchExecutor;
+import org.copperengine.core.batcher.CommandCallback;
+import org.copperengine.core.batcher.NullCallback;
+import org.copperengine.core.batcher.impl.BatcherImplTest.TestBatchCommand;
+import org.junit.Test;
+
+public class ConcurrentBatcherQueueTest {
+
+    static final class PrioritizedExecutor extends BatchExecutor<PrioritizedExecutor, PrioritizedCommand> {
+
+        static final PrioritizedExecutor INSTANCE = new PrioritizedExecutor();
+
+        @Override
+        public void doExec(Collection<BatchCommand<PrioritizedExecutor, PrioritizedCommand>> commands, Connection connection) throws Exception {
+        }
+
+        @Override
+        public int preferredBatchSize() {
+            return 5;
+        }
+
+        @Override
+        public int maximumBatchSize() {
+            return 5;
+        }
+
+        @Override
+        public boolean prioritize() {
+            return true;
+        }
+    }
+
+    static final class PrioritizedCommand implements BatchCommand<PrioritizedExecutor, PrioritizedCommand> {
+
+        final long targetTime;
+
+        PrioritizedCommand(long targetTime) {
+            this.targetTime = targetTime;
+        }
+
+        @Override
+        public PrioritizedExecutor executor() {
+            return PrioritizedExecutor.INSTANCE;
+        }
+
+        @Override
+        public CommandCallback<PrioritizedCommand> callback() {
+            return new NullCallback<PrioritizedCommand>();
+        }
+
+        @Override
+        public long targetTime() {
+            return targetTime;
+        }
+    }
+
+    @Test
+    public void testPreferredSize() throws Exception {
+        final ConcurrentBatcherQueue queue = new ConcurrentBatcherQueue();
+        for (int i = 0; i < 50; i++) {
+            queue.submitBatchCommand(new TestBatchCommand("x"));
+        }
+        final long startTS = System.currentTimeMillis();
+        assertEquals(50, queue.poll().size());
+        assertTrue(System.currentTimeMillis() - startTS < 500);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testTargetTime() throws Exception {
+        final ConcurrentBatcherQueue queue = new ConcurrentBatcherQueue();
+        final TestBatchCommand cmd = new TestBatchCommand("x");
+        cmd.targetTime = System.currentTimeMillis() + 200;
+        queue.submitBatchCommand(cmd);
+        // a later command must not delay the batch
+        final TestBatchCommand cmd2 = new TestBatchCommand("y");
+        cmd2.targetTime = System.currentTimeMillis() + 5000;
+        queue.submitBatchCommand(cmd2);
+        assertEquals(2, queue.poll().size());
+        assertTrue(System.currentTimeMillis() >= cmd.targetTime);
+        assertTrue(System.currentTimeMillis() < cmd2.targetTime);
+    }
+
+    @Test(timeout = 10000)
+    public void testAdaptiveHonoursTargetTime() throws Exception {
+        final ConcurrentBatcherQueue queue = new ConcurrentBatcherQueue();
+        queue.setAdaptiveSettings(new AdaptiveSettings(60000, 60000, 1));
+        final TestBatchCommand cmd = new TestBatchCommand("x");
+        cmd.targetTime = System.currentTimeMillis() + 100;
+        queue.submitBatchCommand(cmd);
+        // the adaptive latency does not postpone the batch beyond the target time
+        assertEquals(1, queue.poll().size());
+        assertTrue(System.currentTimeMillis() >= cmd.targetTime);
+
+        // the same holds for the commands left over after a batch
+        final long targetTime = System.currentTimeMillis() + 100;
+        for (int i = 0; i < 6; i++) {
+            queue.submitBatchCommand(new PrioritizedCommand(targetTime));
+        }
+        assertEquals(5, queue.poll().size());
+        assertEquals(1, queue.poll().size());
+        assertTrue(System.currentTimeMillis() >= targetTime);
+    }
+
+    @Test
+    public void testMaximumSize() throws Exception {
+        final ConcurrentBatcherQueue queue = new ConcurrentBatcherQueue();
+        for (int i = 0; i < 250; i++) {
+            final TestBatchCommand cmd = new TestBatchCommand("x");
+            cmd.targetTime = 0;
+            queue.submitBatchCommand(cmd);
+        }
+        assertEquals(100, queue.poll().size());
+        assertEquals(100, queue.poll().size());
+        assertEquals(50, queue.poll().size());
+    }
+
+    @Test
+    public void testPrioritized() throws Exception {
+        final ConcurrentBatcherQueue queue = new ConcurrentBatcherQueue();
+        final long now = System.currentTimeMillis();
+        for (int i = 9; i >= 0; i--) {
+            queue.submitBatchCommand(new PrioritizedCommand(now - i * 10));
+        }
+        long last = Long.MIN_VALUE;
+        for (int i = 0; i < 2; i++) {
+            for (BatchCommand<?, ?> cmd : queue.poll()) {
+                assertTrue(cmd.targetTime() >= last);
+                last = cmd.targetTime();
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentSubmitAndStop() throws Exception {
+        final ConcurrentBatcherQueue queue = new ConcurrentBatcherQueue();
+        final int numProducers = 8;
+        final int numCommands = 20000;
+        final Map<BatchCommand<?, ?>, Boolean> received = Collections.synchronizedMap(new IdentityHashMap<BatchCommand<?, ?>, Boolean>());
+        final AtomicInteger duplicates = new AtomicInteger();
+        final List<Thread> consumers = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            final Thread t = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        List<BatchCommand<?, ?>> batch;
+                        while ((batch = queue.poll()) != null) {
+                            assertTrue(batch.size() <= 100);
+                            for (BatchCommand<?, ?> cmd : batch) {
+                                if (received.put(cmd, Boolean.TRUE) != null)
+                                    duplicates.incrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+            };
+            t.start();
+            consumers.add(t);
+        }
+        final List<Thread> producers = new ArrayList<Thread>();
+        for (int i = 0; i < numProducers; i++) {
+            final Thread t = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < numCommands; j++) {
+                        final TestBatchCommand cmd = new TestBatchCommand("x");
+                        cmd.targetTime = System.currentTimeMillis() + (j % 10);
+                        queue.submitBatchCommand(cmd);
+                    }
+                }
+            };
+            t.start();
+            producers.add(t);
+        }
+        for (Thread t : producers) {
+            t.join();
+        }
+        queue.stop();
+        for (Thread t : consumers) {
+            t.join(10000);
+        }
+        assertEquals(0, duplicates.get());
+        assertEquals(numProducers * numCommands, received.size());
+        assertEquals(0, queue.size());
+        assertNull(queue.poll());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.copperengine.core.Interrupt;
+import org.copperengine.core.Workflow;
+import org.copperengine.core.instrument.Transformed;
+import org.copperengine.core.internal.SuspendableQueue;
+import org.junit.Test;
+
+public class ConcurrentWfPriorityQueueTest {
+
+    @Transformed
+    static class TestWorkflow extends Workflow<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private static final AtomicInteger idFactory = new AtomicInteger();
+
+        TestWorkflow(int priority) {
+            setId("wf" + idFactory.incrementAndGet());
+            setPriority(priority);
+        }
+
+        @Override
+        public void main() throws Interrupt {
+        }
+    }
+
+    @Test
+    public void testPriorityAndFifoOrder() {
+        final ConcurrentWfPriorityQueue queue = new ConcurrentWfPriorityQueue();
+        final List<Workflow<?>> expected = new ArrayList<Workflow<?>>();
+        final Workflow<?> p5a = new TestWorkflow(5);
+        final Workflow<?> p1 = new TestWorkflow(1);
+        final Workflow<?> p5b = new TestWorkflow(5);
+        final Workflow<?> p3 = new TestWorkflow(3);
+        final Workflow<?> p5c = new TestWorkflow(5);
+        queue.addAll(Arrays.<Workflow<?>> asList(p5a, p1, p5b, p3, p5c));
+        expected.addAll(Arrays.<Workflow<?>> asList(p1, p3, p5a, p5b, p5c));
+
+        assertEquals(5, queue.size());
+        assertSame(p1, queue.peek());
+        final List<Workflow<?>> actual = new ArrayList<Workflow<?>>();
+        Workflow<?> wf;
+        while ((wf = queue.poll()) != null) {
+            actual.add(wf);
+        }
+        assertEquals(expected, actual);
+        assertEquals(0, queue.size());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testTakeWakesUpWaitingThreads() throws Exception {
+        final SuspendableQueue<Workflow<?>> queue = new SuspendableQueue<Workflow<?>>(new ConcurrentWfPriorityQueue(), true);
+        final int numberOfThreads = 4;
+        final int numberOfWorkflows = 10000;
+        final AtomicInteger taken = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(numberOfWorkflows);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < numberOfThreads; i++) {
+            final Thread t = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (;;) {
+                            queue.take();
+                            taken.incrementAndGet();
+                            done.countDown();
+                        }
+                    } catch (InterruptedException e) {
+                        // shutdown
+                    }
+                }
+            };
+            t.start();
+            threads.add(t);
+        }
+        for (int i = 0; i < numberOfWorkflows; i++) {
+            queue.add(new TestWorkflow(i % 3));
+            if (i % 100 == 0) {
+                Thread.sleep(1);
+            }
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        for (Thread t : threads) {
+            t.interrupt();
+            t.join(5000);
+        }
+        assertEquals(numberOfWorkflows, taken.get());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testSuspended() throws Exception {
+        final SuspendableQueue<Workflow<?>> queue = new SuspendableQueue<Workflow<?>>(new ConcurrentWfPriorityQueue(), true);
+        queue.setSuspended(true);
+        final CountDownLatch done = new CountDownLatch(1);
+        final Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    queue.take();
+                    done.countDown();
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        };
+        t.start();
+        queue.add(new TestWorkflow(5));
+        assertTrue(!done.await(100, TimeUnit.MILLISECONDS));
+        queue.setSuspended(false);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        t.join(5000);
+    }
+
+}
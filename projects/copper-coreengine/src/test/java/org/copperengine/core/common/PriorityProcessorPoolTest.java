@@ -0,0 +1,126 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.copperengine.core.ProcessingEngine;
+import org.copperengine.core.Workflow;
+import org.copperengine.core.common.ConcurrentWfPriorityQueueTest.TestWorkflow;
+import org.copperengine.core.tranzient.TransientPriorityProcessorPool;
+import org.junit.Test;
+
+public class PriorityProcessorPoolTest {
+
+    private static final int NUMBER_OF_WORKFLOWS = 200;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private final Set<Processor> processors = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch done = new CountDownLatch(NUMBER_OF_WORKFLOWS);
+
+    private final ProcessorFactory processorFactory = new ProcessorFactory() {
+        @Override
+        public Processor newProcessor(String id, Queue<Workflow<?>> queue, int threadPriority, ProcessingEngine engine) {
+            return new Processor(id, queue, threadPriority, engine) {
+                @Override
+                protected void process(Workflow<?> wf) {
+                    final int n = active.incrementAndGet();
+                    maxActive.accumulateAndGet(n, Math::max);
+                    threads.add(Thread.currentThread());
+                    processors.add(this);
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                    active.decrementAndGet();
+                    done.countDown();
+                }
+            };
+        }
+    };
+
+    private TransientPriorityProcessorPool createPool(int numberOfThreads) {
+        final TransientPriorityProcessorPool pool = new TransientPriorityProcessorPool("P", numberOfThreads);
+        pool.setProcessorFactory(processorFactory);
+        pool.setEngine((ProcessingEngine) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ProcessingEngine.class }, (proxy, method, args) -> null));
+        return pool;
+    }
+
+    private void runWorkflows(TransientPriorityProcessorPool pool) throws InterruptedException {
+        pool.startup();
+        try {
+            for (int i = 0; i < NUMBER_OF_WORKFLOWS; i++) {
+                pool.enqueue(new TestWorkflow(i % 3));
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testPlatformThreads() throws Exception {
+        final TransientPriorityProcessorPool pool = createPool(3);
+        pool.setConcurrentQueue(true);
+        runWorkflows(pool);
+        assertTrue(maxActive.get() <= 3);
+        assertEquals(3, threads.size());
+        assertEquals(3, processors.size());
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        final TransientPriorityProcessorPool pool = createPool(2);
+        pool.setVirtualThreadConcurrency(16);
+        runWorkflows(pool);
+        assertEquals(VirtualThreads.isSupported(), pool.isRunningOnVirtualThreads());
+        if (VirtualThreads.isSupported()) {
+            // a new virtual thread and processor per workflow instance
+            assertTrue(maxActive.get() <= 16);
+            assertEquals(NUMBER_OF_WORKFLOWS, threads.size());
+            assertEquals(NUMBER_OF_WORKFLOWS, processors.size());
+            for (Thread t : threads) {
+                assertTrue(VirtualThreads.isVirtual(t));
+            }
+            assertEquals(0, pool.getNumberOfActiveThreads());
+        } else {
+            assertTrue(maxActive.get() <= 2);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSwitchToVirtualThreadsWhileRunning() {
+        final TransientPriorityProcessorPool pool = createPool(1);
+        pool.startup();
+        try {
+            pool.setVirtualThreadConcurrency(4);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
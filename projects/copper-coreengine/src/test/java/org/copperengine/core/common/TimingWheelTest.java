@@ -0,0 +1,130 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+    private static final long TICK = 2;
+
+    @Test
+    public void testExpiresNotBeforeTimeout() throws Exception {
+        final Map<Integer, Long> firedAt = new ConcurrentHashMap<Integer, Long>();
+        final int numberOfTimeouts = 300;
+        final CountDownLatch done = new CountDownLatch(numberOfTimeouts);
+        final TimingWheel<Integer> wheel = new TimingWheel<Integer>("test", TICK, 2, t -> {
+            firedAt.put(t.getTask(), System.currentTimeMillis());
+            done.countDown();
+        });
+        wheel.startup();
+        try {
+            final long now = System.currentTimeMillis();
+            final long[] timeoutTS = new long[numberOfTimeouts];
+            for (int i = 0; i < numberOfTimeouts; i++) {
+                // up to 1.5 sec, i.e. on the first two levels of the wheel, and some in the past
+                timeoutTS[i] = now - 50 + i * 5;
+                wheel.schedule(timeoutTS[i], i);
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            assertEquals(numberOfTimeouts, firedAt.size());
+            for (int i = 0; i < numberOfTimeouts; i++) {
+                assertTrue("timeout " + i + " expired too early", firedAt.get(i) > timeoutTS[i]);
+            }
+            assertEquals(0, wheel.size());
+        } finally {
+            wheel.shutdown();
+        }
+    }
+
+    @Test
+    public void testDeadlineBeyondRange() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final long[] firedAt = new long[1];
+        // a single level covers 255 ticks, i.e. 510 msec
+        final TimingWheel<Integer> wheel = new TimingWheel<Integer>("test", TICK, 0, t -> {
+            firedAt[0] = System.currentTimeMillis();
+            done.countDown();
+        }, 1);
+        wheel.startup();
+        try {
+            final long timeoutTS = System.currentTimeMillis() + 1200;
+            wheel.schedule(timeoutTS, 1);
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertTrue("expired too early", firedAt[0] > timeoutTS);
+            assertEquals(0, wheel.size());
+        } finally {
+            wheel.shutdown();
+        }
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final List<Integer> fired = new ArrayList<Integer>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final TimingWheel<Integer> wheel = new TimingWheel<Integer>("test", TICK, 0, t -> {
+            fired.add(t.getTask());
+            done.countDown();
+        });
+        wheel.startup();
+        try {
+            final long now = System.currentTimeMillis();
+            final TimingWheel.Timeout<Integer> t1 = wheel.schedule(now + 100, 1);
+            final TimingWheel.Timeout<Integer> t2 = wheel.schedule(now + 600, 2);
+            final TimingWheel.Timeout<Integer> t3 = wheel.schedule(now + 700, 3);
+            assertTrue(t1.cancel());
+            assertFalse(t1.cancel());
+            Thread.sleep(200);
+            assertTrue(t2.cancel());
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(1, fired.size());
+            assertEquals(Integer.valueOf(3), fired.get(0));
+            assertTrue(t3.isExpired());
+            assertFalse(t3.cancel());
+            assertTrue(t1.isCancelled());
+            assertEquals(0, wheel.size());
+        } finally {
+            wheel.shutdown();
+        }
+    }
+
+    @Test
+    public void testWakesUpWhenIdle() throws Exception {
+        final CountDownLatch done = new CountDownLatch(2);
+        final TimingWheel<Integer> wheel = new TimingWheel<Integer>("test", TICK, 1, t -> done.countDown());
+        wheel.startup();
+        try {
+            wheel.schedule(System.currentTimeMillis() + 10, 1);
+            Thread.sleep(100);
+            wheel.schedule(System.currentTimeMillis() + 10, 2);
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            wheel.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+
+import org.copperengine.core.Response;
+import org.junit.Test;
+
+public class BinaryJavaSerializerTest {
+
+    private final BinaryJavaSerializer serializer = new BinaryJavaSerializer();
+
+    @Test
+    public void testUncompressed() throws Exception {
+        serializer.setCompress(false);
+        final Response<String> r = new Response<String>("cid", "x", null);
+        final byte[] data = serializer.serializeResponseBinary(r);
+        assertEquals(BinaryJavaSerializer.FORMAT_JAVA, data[0]);
+        assertEquals("x", serializer.deserializeResponse(data).getResponse());
+    }
+
+    @Test
+    public void testCompressed() throws Exception {
+        final Response<String> r = new Response<String>("cid", createString(10000), null);
+        final byte[] data = serializer.serializeResponseBinary(r);
+        assertEquals(BinaryJavaSerializer.FORMAT_JAVA_COMPRESSED, data[0]);
+        assertEquals(r.getResponse(), serializer.deserializeResponse(data).getResponse());
+    }
+
+    @Test
+    public void testConvertedTextColumn() throws Exception {
+        final StandardJavaSerializer textSerializer = new StandardJavaSerializer();
+        for (String s : new String[] { "x", createString(10000) }) {
+            final String text = textSerializer.serializeResponse(new Response<String>("cid", s, null));
+            assertEquals(s, serializer.deserializeResponse(text.getBytes(StandardCharsets.UTF_8)).getResponse());
+        }
+    }
+
+    @Test
+    public void testNull() throws Exception {
+        assertNull(serializer.deserializeResponse((byte[]) null));
+        assertNull(serializer.serializeBinary(null));
+        assertNull(serializer.deserializeResponse(new byte[0]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotSupportedByDerby() {
+        new DerbyDbDialect().setSerializer(serializer);
+    }
+
+    private static String createString(int size) {
+        final StringBuilder sb = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        return sb.toString();
+    }
+}
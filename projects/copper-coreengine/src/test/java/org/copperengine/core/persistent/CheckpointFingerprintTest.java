@@ -0,0 +1,95 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Collections;
+
+import org.copperengine.core.Acknowledge;
+import org.copperengine.core.WaitHook;
+import org.copperengine.core.batcher.BatchCommand;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class CheckpointFingerprintTest {
+
+    private final StandardJavaSerializer serializer = new StandardJavaSerializer();
+
+    @Test
+    public void testFingerprint() {
+        assertEquals(SerializedWorkflow.fingerprint("abc"), SerializedWorkflow.fingerprint(new String("abc")));
+        assertNotEquals(SerializedWorkflow.fingerprint("abc"), SerializedWorkflow.fingerprint("abd"));
+        assertNotEquals(SerializedWorkflow.fingerprint(""), SerializedWorkflow.fingerprint((String) null));
+        assertNotEquals(0L, SerializedWorkflow.fingerprint((String) null));
+        assertEquals(SerializedWorkflow.fingerprint(new byte[] { 1, 2, 3 }), SerializedWorkflow.fingerprint(new byte[] { 1, 2, 3 }));
+        assertNotEquals(SerializedWorkflow.fingerprint(new byte[] { 1, 2, 3 }), SerializedWorkflow.fingerprint(new byte[] { 1, 2, 4 }));
+    }
+
+    @Test
+    public void testSavepointSkipsUnchangedColumns() throws Exception {
+        final DummyPersistentWorkflow wf = new DummyPersistentWorkflow("1", "P#DEFAULT", null, 5);
+        wf.setDataAsObject("some large and static input");
+        // as if loaded from the database
+        wf.setFingerprints(serializer.serializeWorkflow(wf));
+
+        String sql = savepoint(wf);
+        assertFalse(sql, sql.contains("DATA=?"));
+        assertFalse(sql, sql.contains("OBJECT_STATE=?"));
+
+        wf.setDataAsObject("changed input");
+        sql = savepoint(wf);
+        assertTrue(sql, sql.contains(" DATA=?"));
+
+        // the fingerprints of the last write are remembered
+        sql = savepoint(wf);
+        assertFalse(sql, sql.contains("DATA=?"));
+    }
+
+    @Test
+    public void testUnknownFingerprintWritesAllColumns() throws Exception {
+        final DummyPersistentWorkflow wf = new DummyPersistentWorkflow("1", "P#DEFAULT", null, 5);
+        wf.setDataAsObject("input");
+        final String sql = savepoint(wf);
+        assertTrue(sql, sql.contains(" DATA=?"));
+        assertTrue(sql, sql.contains("OBJECT_STATE=?"));
+    }
+
+    private String savepoint(final PersistentWorkflow<?> wf) throws Exception {
+        final SqlSavepoint.Command cmd = new SqlSavepoint.Command(wf, null, Collections.<WaitHook> emptyList(), serializer, null, 0L, WorkflowPersistencePlugin.NULL_PLUGIN, new Acknowledge.BestEffortAcknowledge());
+        final Connection con = mock(Connection.class);
+        when(con.prepareStatement(anyString())).thenReturn(mock(PreparedStatement.class));
+        cmd.executor().doExec(Collections.<BatchCommand<SqlSavepoint.Executor, SqlSavepoint.Command>> singletonList(cmd), con);
+
+        final ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(con, atLeastOnce()).prepareStatement(sql.capture());
+        for (String s : sql.getAllValues()) {
+            if (s.startsWith("UPDATE COP_WORKFLOW_INSTANCE"))
+                return s;
+        }
+        throw new AssertionError("no update of COP_WORKFLOW_INSTANCE");
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.InvalidClassException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Stack;
+
+import org.copperengine.core.StackEntry;
+import org.junit.Test;
+
+public class CompactJavaSerializerTest {
+
+    static class Data implements Serializable {
+        private static final long serialVersionUID = 1L;
+        String text;
+        long number;
+    }
+
+    private static Stack<StackEntry> createStack() {
+        final Data data = new Data();
+        data.text = "hello";
+        data.number = 4711L;
+        final Stack<StackEntry> stack = new Stack<StackEntry>();
+        stack.push(new StackEntry(null, 1, new Object[] { 1, 2L, "x", data }));
+        stack.push(new StackEntry(new Object[] { Boolean.TRUE }, 7, new Object[] { 3, 4.0d, null }));
+        return stack;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void assertStack(Serializable o) {
+        final Stack<StackEntry> stack = (Stack<StackEntry>) o;
+        assertEquals(2, stack.size());
+        assertEquals(1, stack.get(0).jumpNo);
+        assertEquals(Arrays.asList(1, 2L, "x"), Arrays.asList(stack.get(0).locals).subList(0, 3));
+        assertEquals("hello", ((Data) stack.get(0).locals[3]).text);
+        assertEquals(4711L, ((Data) stack.get(0).locals[3]).number);
+        assertEquals(7, stack.get(1).jumpNo);
+        assertArrayEquals(new Object[] { Boolean.TRUE }, stack.get(1).stack);
+        assertArrayEquals(new Object[] { 3, 4.0d, null }, stack.get(1).locals);
+    }
+
+    @Test
+    public void testBinary() throws Exception {
+        final CompactJavaSerializer serializer = new CompactJavaSerializer();
+        serializer.setCompress(false);
+        final byte[] data = serializer.serializeBinary(createStack());
+        assertEquals(CompactJavaSerializer.FORMAT_COMPACT, data[0]);
+        assertStack(serializer.deserializeBinary(data, null));
+
+        final BinaryJavaSerializer standard = new BinaryJavaSerializer();
+        standard.setCompress(false);
+        assertTrue(data.length < standard.serializeBinary(createStack()).length);
+    }
+
+    @Test
+    public void testCompressed() throws Exception {
+        final CompactJavaSerializer serializer = new CompactJavaSerializer();
+        serializer.setCompressThresholdSize(1);
+        final byte[] data = serializer.serializeBinary(createStack());
+        assertEquals(CompactJavaSerializer.FORMAT_COMPACT_COMPRESSED, data[0]);
+        assertStack(serializer.deserializeBinary(data, null));
+    }
+
+    @Test
+    public void testText() throws Exception {
+        final CompactJavaSerializer serializer = new CompactJavaSerializer();
+        final String text = serializer.serializeObject(createStack());
+        assertEquals('R', text.charAt(0));
+        assertStack(serializer.deserializeObject(text));
+    }
+
+    @Test
+    public void testMixedFormats() throws Exception {
+        final CompactJavaSerializer serializer = new CompactJavaSerializer();
+        assertStack(serializer.deserializeObject(new StandardJavaSerializer().serializeObject(createStack())));
+        assertStack(serializer.deserializeBinary(new BinaryJavaSerializer().serializeBinary(createStack()), null));
+    }
+
+    @Test
+    public void testRegisteredClasses() throws Exception {
+        final CompactJavaSerializer writer = new CompactJavaSerializer();
+        writer.setRegisteredClassNames(Arrays.asList(Data.class.getName()));
+        final byte[] data = writer.serializeBinary(createStack());
+        assertStack(writer.deserializeBinary(data, null));
+
+        // a reader with less registrations than the writer must not guess the ids
+        try {
+            new CompactJavaSerializer().deserializeBinary(data, null);
+            fail("expected InvalidClassException");
+        } catch (InvalidClassException e) {
+            // expected
+        }
+        // values written with less registrations are readable after appending new ones
+        assertStack(writer.deserializeBinary(new CompactJavaSerializer().serializeBinary(createStack()), null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateRegistration() {
+        new CompactJavaSerializer().setRegisteredClassNames(Arrays.asList("java.lang.Integer"));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.copperengine.core.Acknowledge;
+import org.copperengine.core.Response;
+import org.junit.Test;
+
+public class IncrementalQueueStateUpdateTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotSupportedByOracleSimple() {
+        new OracleSimpleDialect().setIncrementalQueueStateUpdate(true);
+    }
+
+    @Test
+    public void testNotifyRecordsResponseEvent() throws Exception {
+        final PostgreSQLDialect dialect = new PostgreSQLDialect();
+        dialect.startup();
+
+        assertFalse(((SqlNotify.Command) dialect.createBatchCommand4Notify(createResponse(true), new Acknowledge.BestEffortAcknowledge())).responseEvent);
+        assertFalse(((PostgreSQLNotifyNoEarlyResponseHandling.Command) dialect.createBatchCommand4Notify(createResponse(false), new Acknowledge.BestEffortAcknowledge())).responseEvent);
+
+        dialect.setIncrementalQueueStateUpdate(true);
+        assertTrue(((SqlNotify.Command) dialect.createBatchCommand4Notify(createResponse(true), new Acknowledge.BestEffortAcknowledge())).responseEvent);
+        assertTrue(((PostgreSQLNotifyNoEarlyResponseHandling.Command) dialect.createBatchCommand4Notify(createResponse(false), new Acknowledge.BestEffortAcknowledge())).responseEvent);
+    }
+
+    @Test
+    public void testQueueDumpOnFailure() throws Exception {
+        final PostgreSQLDialect dialect = new PostgreSQLDialect();
+        dialect.startup();
+        assertTrue(dialect.isDumpQueueOnUpdateQueueStateFailure());
+        final Connection con = mockFailingConnection();
+        updateQueueStateFails(dialect, con);
+        verify(con).createStatement();
+
+        dialect.setDumpQueueOnUpdateQueueStateFailure(false);
+        final Connection con2 = mockFailingConnection();
+        updateQueueStateFails(dialect, con2);
+        verify(con2, never()).createStatement();
+    }
+
+    private static Connection mockFailingConnection() throws SQLException {
+        final Connection con = mock(Connection.class);
+        when(con.prepareStatement(anyString())).thenThrow(new SQLException("failed"));
+        final Statement stmt = mock(Statement.class);
+        when(stmt.executeQuery(anyString())).thenReturn(mock(ResultSet.class));
+        when(con.createStatement()).thenReturn(stmt);
+        return con;
+    }
+
+    private static void updateQueueStateFails(AbstractSqlDialect dialect, Connection con) {
+        try {
+            dialect.updateQueueState(100, con);
+            fail("updateQueueState must fail");
+        } catch (SQLException e) {
+            assertEquals("failed", e.getMessage());
+        }
+    }
+
+    private static Response<String> createResponse(boolean earlyResponseHandling) {
+        final Response<String> response = new Response<String>("cid", "data", null);
+        response.setEarlyResponseHandling(earlyResponseHandling);
+        return response;
+    }
+}
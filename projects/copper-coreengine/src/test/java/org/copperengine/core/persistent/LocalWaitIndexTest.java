@@ -0,0 +1,101 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.copperengine.core.Acknowledge;
+import org.copperengine.core.Response;
+import org.copperengine.core.WaitHook;
+import org.copperengine.core.WaitMode;
+import org.junit.Test;
+
+public class LocalWaitIndexTest {
+
+    private static RegisterCall createRegisterCall(String wfId, WaitMode mode, Long timeout, String... cids) {
+        return new RegisterCall(new DummyPersistentWorkflow(wfId, "P#DEFAULT", null, 5), mode, timeout, cids, Collections.<WaitHook> emptyList());
+    }
+
+    @Test
+    public void testClaim() {
+        LocalWaitIndex index = new LocalWaitIndex(10);
+        index.add(createRegisterCall("wf1", WaitMode.ALL, null, "c1"));
+        index.add(createRegisterCall("wf2", WaitMode.FIRST, null, "c2", "c3"));
+        assertEquals(2, index.size());
+        assertNull(index.claim("c0"));
+        assertEquals("wf1", index.claim("c1"));
+        assertNull(index.claim("c1"));
+        assertEquals("wf2", index.claim("c3"));
+        // the other correlation ids of the wait are removed as well
+        assertNull(index.claim("c2"));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testWaitForMultipleResponsesIsNotIndexed() {
+        LocalWaitIndex index = new LocalWaitIndex(10);
+        index.add(createRegisterCall("wf1", WaitMode.ALL, null, "c1", "c2"));
+        assertEquals(0, index.size());
+        assertNull(index.claim("c1"));
+    }
+
+    @Test
+    public void testRemove() {
+        LocalWaitIndex index = new LocalWaitIndex(10);
+        index.add(createRegisterCall("wf1", WaitMode.FIRST, null, "c1", "c2"));
+        index.add(createRegisterCall("wf1", WaitMode.ALL, null, "c3"));
+        assertEquals(1, index.size());
+        assertNull(index.claim("c1"));
+        index.remove("wf1");
+        assertNull(index.claim("c3"));
+    }
+
+    @Test
+    public void testMaxSize() {
+        LocalWaitIndex index = new LocalWaitIndex(2);
+        index.add(createRegisterCall("wf1", WaitMode.ALL, null, "c1"));
+        index.add(createRegisterCall("wf2", WaitMode.ALL, null, "c2"));
+        index.add(createRegisterCall("wf3", WaitMode.ALL, null, "c3"));
+        assertEquals(2, index.size());
+        assertNull(index.claim("c1"));
+        assertEquals("wf2", index.claim("c2"));
+        assertEquals("wf3", index.claim("c3"));
+    }
+
+    @Test
+    public void testTimedOutWait() throws Exception {
+        LocalWaitIndex index = new LocalWaitIndex(10);
+        index.add(createRegisterCall("wf1", WaitMode.ALL, 1L, "c1"));
+        Thread.sleep(10);
+        assertNull(index.claim("c1"));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testLocalNotifyCommand() throws Exception {
+        final PostgreSQLDialect dialect = new PostgreSQLDialect();
+        dialect.startup();
+        final Response<String> response = new Response<String>("c1", "data", null);
+        assertTrue(dialect.createBatchCommand4LocalNotify(response, "wf1", new Acknowledge.BestEffortAcknowledge()) instanceof SqlLocalNotify.Command);
+        response.setEarlyResponseHandling(false);
+        assertNull(dialect.createBatchCommand4LocalNotify(response, "wf1", new Acknowledge.BestEffortAcknowledge()));
+        assertNull(new OracleDialect().createBatchCommand4LocalNotify(response, "wf1", new Acknowledge.BestEffortAcknowledge()));
+    }
+}
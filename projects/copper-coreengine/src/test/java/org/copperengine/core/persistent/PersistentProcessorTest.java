@@ -0,0 +1,215 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.copperengine.core.Acknowledge;
+import org.copperengine.core.DependencyInjector;
+import org.copperengine.core.ProcessingEngine;
+import org.copperengine.core.Workflow;
+import org.copperengine.core.common.Processor;
+import org.copperengine.core.common.ProcessorFactory;
+import org.copperengine.core.instrument.Transformed;
+import org.copperengine.core.persistent.txn.DatabaseTransaction;
+import org.copperengine.core.persistent.txn.Transaction;
+import org.copperengine.core.persistent.txn.TransactionController;
+import org.copperengine.core.tranzient.TransientPriorityProcessorPool;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class PersistentProcessorTest {
+
+    @Transformed
+    public static class FinishingWorkflow extends PersistentWorkflow<String> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void main() {
+        }
+    }
+
+    @Transformed
+    public static class FailingWorkflow extends PersistentWorkflow<String> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void main() {
+            throw new IllegalStateException(getData());
+        }
+    }
+
+    @Test
+    public void testCompletionFutureOfFailedWorkflow() throws Exception {
+        final PersistentScottyEngine engine = createEngine(false);
+        final CompletableFuture<Void> future = engine.registerCompletionFuture("WF#1");
+        runInProcessor(engine, "WF#1");
+        assertFailed(future);
+    }
+
+    @Test
+    public void testCompletionFutureIfErrorCanNotBeStored() throws Exception {
+        final PersistentScottyEngine engine = createEngine(true);
+        final CompletableFuture<Void> future = engine.registerCompletionFuture("WF#1");
+        runInProcessor(engine, "WF#1");
+        assertFailed(future);
+    }
+
+    private static void assertFailed(CompletableFuture<Void> future) throws Exception {
+        try {
+            future.get(30, TimeUnit.SECONDS);
+            fail("future must complete exceptionally");
+        } catch (ExecutionException e) {
+            assertSame(IllegalStateException.class, e.getCause().getClass());
+            assertEquals("expected failure", e.getCause().getMessage());
+        }
+        assertTrue(future.isDone());
+    }
+
+    private PersistentScottyEngine createEngine(final boolean errorFails) {
+        final PersistentScottyEngine engine = new PersistentScottyEngine();
+        engine.setDependencyInjector(new DependencyInjector() {
+            @Override
+            public void inject(Workflow<?> workflow) {
+            }
+
+            @Override
+            public String getType() {
+                return "TEST";
+            }
+        });
+        engine.setDbStorage((ScottyDBStorageInterface) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ScottyDBStorageInterface.class }, (proxy, method, args) -> {
+            if (method.getName().equals("error")) {
+                if (errorFails)
+                    throw new RuntimeException("database down");
+                ((Acknowledge) args[2]).onSuccess();
+            }
+            return null;
+        }));
+        return engine;
+    }
+
+    private void runInProcessor(final PersistentScottyEngine engine, String wfInstanceId) {
+        final TransactionController transactionController = new TransactionController() {
+            @Override
+            public <T> T run(DatabaseTransaction<T> txn) throws Exception {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public <T> T run(Transaction<T> txn) throws Exception {
+                return txn.run();
+            }
+        };
+        final FailingWorkflow wf = new FailingWorkflow();
+        wf.setId(wfInstanceId);
+        wf.setData("expected failure");
+        engine.register(wf);
+        new PersistentProcessor("P", null, Thread.NORM_PRIORITY, engine, transactionController).process(wf);
+    }
+
+    /**
+     * Each workflow instance blocks in the storage until all of them are in the storage at the same time. This only
+     * succeeds if the virtual threads release their carrier thread while they block, i.e. if the processor does not
+     * hold a monitor while it accesses the storage.
+     */
+    @Test
+    public void testBlockingStorageOnVirtualThreads() throws Exception {
+        final Method isVirtual;
+        try {
+            isVirtual = Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e) {
+            Assume.assumeTrue("virtual threads not supported", false);
+            return;
+        }
+        final int numberOfWorkflows = Runtime.getRuntime().availableProcessors() * 2 + 4;
+        final CountDownLatch allInStorage = new CountDownLatch(numberOfWorkflows);
+        final CountDownLatch finished = new CountDownLatch(numberOfWorkflows);
+        final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        final PersistentScottyEngine engine = new PersistentScottyEngine();
+        engine.setDependencyInjector(new DependencyInjector() {
+            @Override
+            public void inject(Workflow<?> workflow) {
+            }
+
+            @Override
+            public String getType() {
+                return "TEST";
+            }
+        });
+        engine.setDbStorage((ScottyDBStorageInterface) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ScottyDBStorageInterface.class }, (proxy, method, args) -> {
+            if (method.getName().equals("finish")) {
+                threads.add(Thread.currentThread());
+                allInStorage.countDown();
+                if (allInStorage.await(20, TimeUnit.SECONDS)) {
+                    finished.countDown();
+                }
+            }
+            return null;
+        }));
+        final TransactionController transactionController = new TransactionController() {
+            @Override
+            public <T> T run(DatabaseTransaction<T> txn) throws Exception {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public <T> T run(Transaction<T> txn) throws Exception {
+                return txn.run();
+            }
+        };
+
+        final TransientPriorityProcessorPool pool = new TransientPriorityProcessorPool("P", 1);
+        pool.setEngine((ProcessingEngine) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ProcessingEngine.class }, (proxy, method, args) -> null));
+        pool.setProcessorFactory(new ProcessorFactory() {
+            @Override
+            public Processor newProcessor(String id, Queue<Workflow<?>> queue, int threadPriority, ProcessingEngine e) {
+                return new PersistentProcessor(id, queue, threadPriority, engine, transactionController);
+            }
+        });
+        pool.setVirtualThreadConcurrency(numberOfWorkflows);
+        pool.startup();
+        try {
+            for (int i = 0; i < numberOfWorkflows; i++) {
+                final FinishingWorkflow wf = new FinishingWorkflow();
+                wf.setId("WF#" + i);
+                engine.register(wf);
+                pool.enqueue(wf);
+            }
+            assertTrue(finished.await(30, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(numberOfWorkflows, threads.size());
+        for (Thread t : threads) {
+            assertTrue((Boolean) isVirtual.invoke(t));
+        }
+    }
+}
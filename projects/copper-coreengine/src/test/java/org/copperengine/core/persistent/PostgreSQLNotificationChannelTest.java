@@ -0,0 +1,199 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumSet;
+
+import javax.sql.DataSource;
+
+import org.copperengine.core.persistent.NotificationChannel.Event;
+import org.junit.Test;
+
+public class PostgreSQLNotificationChannelTest {
+
+    public static class TestNotification {
+        private final String name;
+        private final String parameter;
+
+        public TestNotification(String name, String parameter) {
+            this.name = name;
+            this.parameter = parameter;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getParameter() {
+            return parameter;
+        }
+    }
+
+    public interface BlockingConnection {
+        TestNotification[] getNotifications();
+
+        TestNotification[] getNotifications(int timeoutMillis);
+    }
+
+    public interface PollingConnection {
+        TestNotification[] getNotifications() throws SQLException;
+    }
+
+    @Test
+    public void testBlockingDriver() throws Exception {
+        final PostgreSQLNotificationChannel.DriverApi api = new PostgreSQLNotificationChannel.DriverApi(BlockingConnection.class, TestNotification.class);
+        assertTrue(api.blocking);
+
+        final TestNotification[] notifications = { new TestNotification("copper_enqueue", "") };
+        final BlockingConnection con = mock(BlockingConnection.class);
+        when(con.getNotifications(500)).thenReturn(notifications);
+        assertSame(notifications, api.getNotifications(con, 500));
+        assertEquals("copper_enqueue", api.getName(notifications[0]));
+        assertEquals("", api.getParameter(notifications[0]));
+    }
+
+    @Test
+    public void testPollingDriver() throws Exception {
+        final PostgreSQLNotificationChannel.DriverApi api = new PostgreSQLNotificationChannel.DriverApi(PollingConnection.class, TestNotification.class);
+        assertFalse(api.blocking);
+
+        final PollingConnection con = mock(PollingConnection.class);
+        when(con.getNotifications()).thenReturn(null);
+        assertArrayEquals(null, api.getNotifications(con, 500));
+    }
+
+    @Test(expected = SQLException.class)
+    public void testDriverExceptionIsUnwrapped() throws Exception {
+        final PostgreSQLNotificationChannel.DriverApi api = new PostgreSQLNotificationChannel.DriverApi(PollingConnection.class, TestNotification.class);
+        final PollingConnection con = mock(PollingConnection.class);
+        when(con.getNotifications()).thenThrow(new SQLException("connection lost"));
+        api.getNotifications(con, 500);
+    }
+
+    @Test(expected = NoSuchMethodException.class)
+    public void testUnsupportedDriver() throws Exception {
+        new PostgreSQLNotificationChannel.DriverApi(Runnable.class, TestNotification.class);
+    }
+
+    @Test
+    public void testOwnNotificationsAreFiltered() throws Exception {
+        final PostgreSQLNotificationChannel channel = new PostgreSQLNotificationChannel();
+        final PostgreSQLNotificationChannel.DriverApi api = new PostgreSQLNotificationChannel.DriverApi(BlockingConnection.class, TestNotification.class);
+        final String ownId = ownInstanceId(channel);
+
+        assertEquals(EnumSet.noneOf(Event.class), channel.toEvents(api, null));
+        assertEquals(EnumSet.noneOf(Event.class), channel.toEvents(api, new Object[] {
+                new TestNotification(PostgreSQLNotificationChannel.CHANNEL_ENQUEUE, ownId),
+                new TestNotification(PostgreSQLNotificationChannel.CHANNEL_RESPONSE, ownId) }));
+        assertEquals(EnumSet.of(Event.RESPONSE), channel.toEvents(api, new Object[] {
+                new TestNotification(PostgreSQLNotificationChannel.CHANNEL_ENQUEUE, ownId),
+                new TestNotification(PostgreSQLNotificationChannel.CHANNEL_RESPONSE, "") }));
+        assertEquals(EnumSet.of(Event.ENQUEUE, Event.RESPONSE), channel.toEvents(api, new Object[] {
+                new TestNotification(PostgreSQLNotificationChannel.CHANNEL_ENQUEUE, "other"),
+                new TestNotification(PostgreSQLNotificationChannel.CHANNEL_RESPONSE, "other"),
+                new TestNotification("unknown", "other") }));
+    }
+
+    @Test
+    public void testSenderCoalescesEvents() throws Exception {
+        final Connection con = mock(Connection.class);
+        final PreparedStatement single = mockStatement();
+        final PreparedStatement both = mockStatement();
+        when(con.prepareStatement("SELECT pg_notify(?,?)")).thenReturn(single);
+        when(con.prepareStatement("SELECT pg_notify(?,?),pg_notify(?,?)")).thenReturn(both);
+
+        final PostgreSQLNotificationChannel.Sender sender = new PostgreSQLNotificationChannel.Sender(con, "id");
+        sender.send(EnumSet.of(Event.ENQUEUE, Event.RESPONSE));
+        verify(both).setString(1, PostgreSQLNotificationChannel.CHANNEL_RESPONSE);
+        verify(both).setString(2, "id");
+        verify(both).setString(3, PostgreSQLNotificationChannel.CHANNEL_ENQUEUE);
+        verify(both).setString(4, "id");
+
+        sender.send(EnumSet.of(Event.ENQUEUE));
+        sender.send(EnumSet.of(Event.ENQUEUE));
+        sender.send(EnumSet.noneOf(Event.class));
+        verify(single, times(2)).setString(1, PostgreSQLNotificationChannel.CHANNEL_ENQUEUE);
+        verify(single, times(2)).executeQuery();
+
+        // every statement is prepared only once per connection
+        verify(con, times(1)).prepareStatement("SELECT pg_notify(?,?)");
+        verify(con, times(1)).prepareStatement("SELECT pg_notify(?,?),pg_notify(?,?)");
+
+        sender.close();
+        verify(single).close();
+        verify(both).close();
+        verify(con).close();
+    }
+
+    @Test
+    public void testTransactionalSignal() throws Exception {
+        final Connection con = mock(Connection.class);
+        final Statement stmt = mock(Statement.class);
+        when(con.createStatement()).thenReturn(stmt);
+
+        new PostgreSQLNotificationChannel().signal(Event.RESPONSE, con);
+        verify(stmt).execute("NOTIFY " + PostgreSQLNotificationChannel.CHANNEL_RESPONSE);
+        verify(stmt).close();
+    }
+
+    @Test
+    public void testShutdownJoinsThreads() throws Exception {
+        final PostgreSQLNotificationChannel channel = new PostgreSQLNotificationChannel(mock(DataSource.class));
+        channel.startup(mock(NotificationChannel.Listener.class));
+        final Thread listenerThread = thread(channel, "listenerThread");
+        final Thread senderThread = thread(channel, "senderThread");
+        assertTrue(listenerThread.isAlive());
+        assertTrue(senderThread.isAlive());
+
+        channel.shutdown();
+        assertFalse(listenerThread.isAlive());
+        assertFalse(senderThread.isAlive());
+    }
+
+    private static Thread thread(PostgreSQLNotificationChannel channel, String name) throws Exception {
+        final Field f = PostgreSQLNotificationChannel.class.getDeclaredField(name);
+        f.setAccessible(true);
+        return (Thread) f.get(channel);
+    }
+
+    private static PreparedStatement mockStatement() throws SQLException {
+        final PreparedStatement stmt = mock(PreparedStatement.class);
+        when(stmt.executeQuery()).thenReturn(mock(ResultSet.class));
+        return stmt;
+    }
+
+    private static String ownInstanceId(PostgreSQLNotificationChannel channel) throws Exception {
+        final Field f = PostgreSQLNotificationChannel.class.getDeclaredField("instanceId");
+        f.setAccessible(true);
+        return (String) f.get(channel);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import org.copperengine.core.EngineIdProviderBean;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class SkipLockedDequeueTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotSupportedByH2() {
+        new H2Dialect().setSkipLockedDequeue(true);
+    }
+
+    @Test
+    public void testPostgreSQLDequeueWithoutLock() throws Exception {
+        final PostgreSQLDialect dialect = new PostgreSQLDialect();
+        dialect.setMultiEngineMode(true);
+        dialect.setEngineId("e1");
+        dialect.setSkipLockedDequeue(true);
+        dialect.startup();
+
+        final ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        dialect.dequeue("P#DEFAULT", 10, mockConnection());
+        verify(lastConnection, atLeastOnce()).prepareStatement(sql.capture());
+
+        boolean skipLockedStmt = false;
+        for (String s : sql.getAllValues()) {
+            assertFalse(s, s.contains("pg_advisory_xact_lock"));
+            skipLockedStmt |= s.contains("for update of q skip locked") && s.contains("LIMIT 10");
+        }
+        assertTrue(skipLockedStmt);
+    }
+
+    @Test
+    public void testPostgreSQLDequeueWithLock() throws Exception {
+        final PostgreSQLDialect dialect = new PostgreSQLDialect();
+        dialect.setMultiEngineMode(true);
+        dialect.setEngineId("e1");
+        dialect.startup();
+
+        final ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        dialect.dequeue("P#DEFAULT", 10, mockConnection());
+        verify(lastConnection, atLeastOnce()).prepareStatement(sql.capture());
+
+        boolean lockStmt = false;
+        for (String s : sql.getAllValues()) {
+            assertFalse(s, s.contains("skip locked"));
+            lockStmt |= s.contains("pg_advisory_xact_lock");
+        }
+        assertTrue(lockStmt);
+    }
+
+    @Test
+    public void testOracleDequeueBoundsLockedRows() throws Exception {
+        final OracleDialect dialect = createOracleDialect();
+        final Connection con = mockConnection();
+        mockDatabaseMajorVersion(con, 12);
+        dialect.dequeue("P#DEFAULT", 10, con);
+
+        final ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(con, atLeastOnce()).prepareStatement(sql.capture());
+        boolean skipLockedStmt = false;
+        for (String s : sql.getAllValues()) {
+            skipLockedStmt |= s.contains("for update of q.engine_id skip locked") && s.contains("where rownum <= ?");
+        }
+        assertTrue(skipLockedStmt);
+        // the candidates are bounded, and SKIP LOCKED locks on fetch, so no more than max rows are fetched
+        verify(lastStatement).setInt(2, 10 * OracleDialect.SKIP_LOCKED_CANDIDATES_PER_ROW);
+        verify(lastStatement).setMaxRows(10);
+        verify(lastStatement).setFetchSize(10);
+    }
+
+    @Test
+    public void testOracleDequeueAllCandidatesLocked() throws Exception {
+        final OracleDialect dialect = createOracleDialect();
+        dialect.setMultiEngineMode(true);
+        final Connection con = mockConnection();
+        mockDatabaseMajorVersion(con, 12);
+        // more than SKIP_LOCKED_CANDIDATES_PER_ROW * max rows are locked by other engines, so all candidates are
+        // skipped and the statement returns nothing
+        assertTrue(dialect.dequeue("P#DEFAULT", 10, con).isEmpty());
+
+        // the dequeue neither waits for the DBMS_LOCK nor queries further candidates, the next poll retries
+        verify(con, never()).prepareCall(anyString());
+        final ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(con, atLeastOnce()).prepareStatement(sql.capture());
+        int skipLockedStmts = 0;
+        for (String s : sql.getAllValues()) {
+            if (s.contains("skip locked"))
+                skipLockedStmts++;
+        }
+        assertEquals(1, skipLockedStmts);
+        verify(lastStatement).setInt(2, 10 * OracleDialect.SKIP_LOCKED_CANDIDATES_PER_ROW);
+        verify(lastStatement, times(1)).executeQuery();
+    }
+
+    @Test
+    public void testOracleDequeueFallsBackOnOldVersions() throws Exception {
+        final OracleDialect dialect = createOracleDialect();
+        final Connection con = mockConnection();
+        mockDatabaseMajorVersion(con, 10);
+        dialect.dequeue("P#DEFAULT", 10, con);
+
+        final ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(con, atLeastOnce()).prepareStatement(sql.capture());
+        for (String s : sql.getAllValues()) {
+            assertFalse(s, s.contains("skip locked"));
+        }
+        verify(lastStatement, never()).setMaxRows(10);
+    }
+
+    private OracleDialect createOracleDialect() {
+        final OracleDialect dialect = new OracleDialect();
+        dialect.setEngineIdProvider(new EngineIdProviderBean("e1"));
+        dialect.setConcurrentResponseLoading(false);
+        dialect.setSkipLockedDequeue(true);
+        dialect.startup();
+        return dialect;
+    }
+
+    private void mockDatabaseMajorVersion(Connection con, int majorVersion) throws Exception {
+        final DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+        when(metaData.getDatabaseMajorVersion()).thenReturn(majorVersion);
+        when(con.getMetaData()).thenReturn(metaData);
+    }
+
+    private Connection lastConnection;
+    private PreparedStatement lastStatement;
+
+    private Connection mockConnection() throws Exception {
+        final ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(false);
+        final PreparedStatement stmt = mock(PreparedStatement.class);
+        when(stmt.executeQuery()).thenReturn(rs);
+        final Connection con = mock(Connection.class);
+        when(con.prepareStatement(anyString())).thenReturn(stmt);
+        lastConnection = con;
+        lastStatement = stmt;
+        return con;
+    }
+}
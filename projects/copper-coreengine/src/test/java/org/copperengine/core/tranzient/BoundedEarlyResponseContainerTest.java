@@ -0,0 +1,161 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.tranzient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.copperengine.core.Response;
+import org.junit.Test;
+
+public class BoundedEarlyResponseContainerTest {
+
+    private static Response<String> response(String cid, String payload) {
+        return new Response<String>(cid, payload, null);
+    }
+
+    @Test
+    public void testPutAndGet() {
+        final BoundedEarlyResponseContainer container = new BoundedEarlyResponseContainer();
+        container.startup();
+        try {
+            container.put(response("a", "1"));
+            container.put(response("a", "2"));
+            container.put(response("b", "3"));
+            assertEquals(3, container.getNumberOfResponses());
+            assertTrue(container.getApproximateBytes() > 0);
+
+            final List<Response<?>> a = container.get("a");
+            assertEquals(2, a.size());
+            assertEquals("1", a.get(0).getResponse());
+            assertEquals("2", a.get(1).getResponse());
+            assertTrue(container.get("a").isEmpty());
+            assertEquals(1, container.get("b").size());
+
+            assertEquals(0, container.getNumberOfResponses());
+            assertEquals(0, container.getApproximateBytes());
+            assertEquals(2, container.getNumberOfHits());
+            assertEquals(1, container.getNumberOfMisses());
+        } finally {
+            container.shutdown();
+        }
+    }
+
+    @Test
+    public void testEvictsOldestResponses() {
+        final BoundedEarlyResponseContainer container = new BoundedEarlyResponseContainer();
+        container.setMaxResponses(3);
+        container.startup();
+        try {
+            container.put(response("a", "1"));
+            container.put(response("a", "2"));
+            container.put(response("b", "3"));
+            container.put(response("c", "4"));
+            container.put(response("a", "5"));
+            assertEquals(3, container.getNumberOfResponses());
+            assertEquals(2, container.getNumberOfEvictions());
+
+            // eviction is per response, not per correlation id
+            final List<Response<?>> a = container.get("a");
+            assertEquals(1, a.size());
+            assertEquals("5", a.get(0).getResponse());
+            assertEquals(1, container.get("b").size());
+            assertEquals(1, container.get("c").size());
+        } finally {
+            container.shutdown();
+        }
+    }
+
+    @Test
+    public void testEvictsByApproximateBytes() {
+        final BoundedEarlyResponseContainer container = new BoundedEarlyResponseContainer();
+        container.startup();
+        try {
+            container.put(response("a", "x"));
+            final long bytesPerResponse = container.getApproximateBytes();
+            container.setMaxBytes(bytesPerResponse * 10 + bytesPerResponse / 2);
+            for (int i = 0; i < 20; i++) {
+                container.put(response("b" + i, "x"));
+            }
+            assertEquals(10, container.getNumberOfResponses());
+            assertEquals(11, container.getNumberOfEvictions());
+            assertTrue(container.get("a").isEmpty());
+            assertEquals(1, container.get("b19").size());
+        } finally {
+            container.shutdown();
+        }
+    }
+
+    @Test
+    public void testLoweringLimitEvicts() {
+        final BoundedEarlyResponseContainer container = new BoundedEarlyResponseContainer();
+        container.startup();
+        try {
+            for (int i = 0; i < 5; i++) {
+                container.put(response("a" + i, "x"));
+            }
+            container.setMaxResponses(2);
+            assertEquals(2, container.getNumberOfResponses());
+            assertEquals(3, container.getNumberOfEvictions());
+            assertEquals(1, container.get("a4").size());
+        } finally {
+            container.shutdown();
+        }
+    }
+
+    @Test
+    public void testPutBeforeStartup() throws Exception {
+        final BoundedEarlyResponseContainer container = new BoundedEarlyResponseContainer();
+        container.setMinHoldBackTime(50);
+        container.setCheckInterval(10);
+        container.put(response("a", "1"));
+        container.put(response("b", "2"));
+        assertEquals(1, container.get("b").size());
+        container.startup();
+        try {
+            for (int i = 0; i < 100 && container.getNumberOfExpirations() == 0; i++) {
+                Thread.sleep(20);
+            }
+            assertEquals(1, container.getNumberOfExpirations());
+            assertEquals(0, container.getNumberOfResponses());
+        } finally {
+            container.shutdown();
+        }
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        final BoundedEarlyResponseContainer container = new BoundedEarlyResponseContainer();
+        container.setMinHoldBackTime(50);
+        container.setCheckInterval(10);
+        container.startup();
+        try {
+            container.put(response("a", "1"));
+            container.put(new Response<String>("b", "2", null, false, null, 60000L, null));
+            for (int i = 0; i < 100 && container.getNumberOfExpirations() == 0; i++) {
+                Thread.sleep(20);
+            }
+            assertEquals(1, container.getNumberOfExpirations());
+            assertTrue(container.get("a").isEmpty());
+            assertEquals(1, container.get("b").size());
+        } finally {
+            container.shutdown();
+        }
+    }
+
+}
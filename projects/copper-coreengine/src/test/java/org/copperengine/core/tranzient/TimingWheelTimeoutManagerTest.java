@@ -0,0 +1,73 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.tranzient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.copperengine.core.ProcessingEngine;
+import org.copperengine.core.Response;
+import org.junit.Test;
+
+public class TimingWheelTimeoutManagerTest {
+
+    @Test
+    public void testTimeoutResponses() throws Exception {
+        final BlockingQueue<Response<?>> responses = new LinkedBlockingQueue<Response<?>>();
+        final TimingWheelTimeoutManager timeoutManager = new TimingWheelTimeoutManager();
+        timeoutManager.setEngine((ProcessingEngine) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ProcessingEngine.class }, (proxy, method, args) -> {
+            if ("notify".equals(method.getName()))
+                responses.add((Response<?>) args[0]);
+            return null;
+        }));
+        timeoutManager.startup();
+        try {
+            final long timeoutTS = System.currentTimeMillis() + 100;
+            timeoutManager.registerTimeout(timeoutTS, "a");
+            timeoutManager.registerTimeout(timeoutTS, Arrays.asList("b", "c", "d"));
+            timeoutManager.unregisterTimeout(timeoutTS, "a");
+            timeoutManager.unregisterTimeout(timeoutTS, Arrays.asList("c"));
+            assertEquals(2, timeoutManager.getNumberOfTimeouts());
+
+            final Set<String> cids = new HashSet<String>();
+            for (int i = 0; i < 2; i++) {
+                final Response<?> r = responses.poll(10, TimeUnit.SECONDS);
+                assertTrue(r.isTimeout());
+                assertTrue(System.currentTimeMillis() >= timeoutTS);
+                cids.add(r.getCorrelationId());
+            }
+            assertEquals(new HashSet<String>(Arrays.asList("b", "d")), cids);
+            assertEquals(null, responses.poll(200, TimeUnit.MILLISECONDS));
+            assertEquals(0, timeoutManager.getNumberOfTimeouts());
+        } finally {
+            timeoutManager.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRegisterBeforeStartup() throws Exception {
+        new TimingWheelTimeoutManager().registerTimeout(System.currentTimeMillis() + 100, "a");
+    }
+
+}
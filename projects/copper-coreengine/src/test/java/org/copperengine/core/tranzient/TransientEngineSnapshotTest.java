@@ -0,0 +1,116 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.core.tranzient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.copperengine.core.WaitMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransientEngineSnapshotTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("copper", ".snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        createSnapshot().write(file);
+        final TransientEngineSnapshot snapshot = TransientEngineSnapshot.read(file);
+        assertEquals(1, snapshot.workflows.size());
+        final TransientEngineSnapshot.WorkflowEntry e = snapshot.workflows.get(0);
+        assertEquals("wf1", e.id);
+        assertEquals(WaitMode.ALL, e.mode);
+        assertEquals(Arrays.asList("cid1", "cid2"), e.correlationIds);
+        assertEquals(Collections.singletonList("response"), snapshot.earlyResponses);
+        // the mapping is released, the file can be deleted right away
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        createSnapshot().write(file);
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        for (int length : new int[] { 0, 6, 20, bytes.length - 1 }) {
+            Files.write(file.toPath(), Arrays.copyOf(bytes, length));
+            assertCorrupt();
+        }
+    }
+
+    @Test
+    public void testInvalidStringLength() throws Exception {
+        createSnapshot().write(file);
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        // the length of the workflow id, after the header and the record type
+        bytes[9] = (byte) 0x7f;
+        Files.write(file.toPath(), bytes);
+        assertCorrupt();
+    }
+
+    @Test
+    public void testInvalidWaitMode() throws Exception {
+        createSnapshot().write(file);
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        // header, record type, id, processor pool id, priority, creationTS, data, object state, responses, waiting flag
+        final int position = 8 + 1 + (4 + 3) + (4 + 2) + 4 + 8 + 4 + (4 + 5) + 4 + 1;
+        assertEquals(WaitMode.ALL.ordinal(), bytes[position]);
+        bytes[position] = (byte) WaitMode.values().length;
+        Files.write(file.toPath(), bytes);
+        assertCorrupt();
+    }
+
+    private void assertCorrupt() {
+        try {
+            TransientEngineSnapshot.read(file);
+            fail("IOException expected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static TransientEngineSnapshot createSnapshot() {
+        final TransientEngineSnapshot.WorkflowEntry e = new TransientEngineSnapshot.WorkflowEntry();
+        e.id = "wf1";
+        e.processorPoolId = "P1";
+        e.priority = 5;
+        e.creationTS = 1L;
+        e.data = null;
+        e.objectState = "state";
+        e.mode = WaitMode.ALL;
+        e.timeoutTS = null;
+        e.correlationIds = Arrays.asList("cid1", "cid2");
+        e.missingCorrelationIds = Collections.singletonList("cid2");
+        return new TransientEngineSnapshot(Collections.singletonList(e), Collections.singletonList("response"));
+    }
+}
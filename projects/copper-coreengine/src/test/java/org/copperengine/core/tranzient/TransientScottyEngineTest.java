@@ -15,21 +15,76 @@
  */
 package org.copperengine.core.tranzient;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
+import org.copperengine.core.Acknowledge;
+import org.copperengine.core.DependencyInjector;
+import org.copperengine.core.ProcessingState;
+import org.copperengine.core.Response;
+import org.copperengine.core.WorkflowInstanceDescr;
+import org.copperengine.core.util.PojoDependencyInjector;
+import org.copperengine.management.model.WorkflowInfo;
 import org.junit.Test;
 
 public class TransientScottyEngineTest {
 
-    @Test
-    public void testStartup() throws Exception {
+    private static TransientScottyEngine createEngine() {
+        TransientEngineFactory factory = new TransientEngineFactory() {
+            @Override
+            protected File getWorkflowSourceDirectory() {
+                return new File("./src/test/workflow");
+            }
+        };
+        return factory.create();
+    }
+
+    private static TransientScottyEngine createEngine(final File snapshotFile, final BlockingQueue<String> resultQueue) {
         TransientEngineFactory factory = new TransientEngineFactory() {
             @Override
             protected File getWorkflowSourceDirectory() {
                 return new File("./src/test/workflow");
             }
+
+            @Override
+            protected File getSnapshotFile() {
+                return snapshotFile;
+            }
+
+            @Override
+            protected DependencyInjector createDependencyInjector() {
+                final PojoDependencyInjector dependencyInjector = new PojoDependencyInjector();
+                dependencyInjector.register("resultQueue", resultQueue);
+                return dependencyInjector;
+            }
         };
-        TransientScottyEngine engine = factory.create();
+        return factory.create();
+    }
+
+    private static void waitForState(TransientScottyEngine engine, String id, ProcessingState state) throws InterruptedException {
+        for (int i = 0; i < 100 && !state.name().equals(engine.queryWorkflowInstance(id).getState()); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(state.name(), engine.queryWorkflowInstance(id).getState());
+    }
+
+    @Test
+    public void testStartup() throws Exception {
+        TransientScottyEngine engine = createEngine();
         try {
             org.junit.Assert.assertEquals("STARTED", engine.getState());
             engine.run("test.HelloWorldWorkflow", null);
@@ -38,4 +93,193 @@ public class TransientScottyEngineTest {
         }
     }
 
+    @Test
+    public void testLastWaitStackTrace() throws Exception {
+        TransientScottyEngine engine = createEngine();
+        try {
+            final String cid = engine.createUUID();
+            final String id = engine.run("test.WaitSiteWorkflow", cid);
+            WorkflowInfo wfi = engine.queryWorkflowInstance(id);
+            for (int i = 0; i < 100 && !ProcessingState.WAITING.name().equals(wfi.getState()); i++) {
+                Thread.sleep(50);
+                wfi = engine.queryWorkflowInstance(id);
+            }
+            assertEquals(ProcessingState.WAITING.name(), wfi.getState());
+            final String[] lines = wfi.getLastWaitStackTrace().split(System.getProperty("line.separator"));
+            assertEquals(2, lines.length);
+            assertEquals("test.WaitSiteWorkflow.waitForResponse(WaitSiteWorkflow.java:33)", lines[0]);
+            assertEquals("test.WaitSiteWorkflow.main(WaitSiteWorkflow.java:29)", lines[1]);
+
+            engine.notify(new Response<String>(cid, "done", null), new Acknowledge.BestEffortAcknowledge());
+            for (int i = 0; i < 100 && engine.queryWorkflowInstance(id) != null; i++) {
+                Thread.sleep(50);
+            }
+            assertNull(engine.queryWorkflowInstance(id));
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testPrimitiveLocals() throws Exception {
+        TransientScottyEngine engine = createEngine();
+        try {
+            final BlockingQueue<String> result = new LinkedBlockingQueue<String>();
+            engine.run(new WorkflowInstanceDescr<BlockingQueue<String>>("test.PrimitiveLocalsWorkflow", result));
+            assertEquals("true 4 d 5 6 1099511627779 3.5 25.132741228718345 x012 1099511627810", result.poll(10, TimeUnit.SECONDS));
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentNotify() throws Exception {
+        final int numberOfWorkflows = 200;
+        final int numberOfThreads = 4;
+        final int iterations = 20; // see test.NotifyLoopWorkflow
+        final TransientScottyEngine engine = createEngine();
+        try {
+            final BlockingQueue<String> result = new LinkedBlockingQueue<String>();
+            final Set<String> expected = new HashSet<String>();
+            for (int k = 0; k < numberOfWorkflows; k++) {
+                expected.add("wf" + k);
+                engine.run(new WorkflowInstanceDescr<BlockingQueue<String>>("test.NotifyLoopWorkflow", result, "wf" + k, null, null));
+            }
+            // the responses race with the registration of the waits, i.e. many of them are early responses
+            final List<Thread> threads = new ArrayList<Thread>();
+            for (int t = 0; t < numberOfThreads; t++) {
+                final int offset = t;
+                final Thread thread = new Thread() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < iterations; i++) {
+                            for (int k = offset; k < numberOfWorkflows; k += numberOfThreads) {
+                                final String cid = "wf" + k + "-" + i;
+                                engine.notify(new Response<String>(cid, "r", null), new Acknowledge.BestEffortAcknowledge());
+                                if (i % 2 == 1) {
+                                    engine.notify(new Response<String>(cid + "-x", "r", null), new Acknowledge.BestEffortAcknowledge());
+                                }
+                            }
+                        }
+                    }
+                };
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            final Set<String> actual = new HashSet<String>();
+            for (int k = 0; k < numberOfWorkflows; k++) {
+                actual.add(result.poll(30, TimeUnit.SECONDS));
+            }
+            assertEquals(expected, actual);
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        TransientScottyEngine engine = createEngine();
+        try {
+            final CompletableFuture<Void> completion = engine.registerCompletionFuture("a1");
+            assertEquals("a1", engine.runAsync(new WorkflowInstanceDescr<String>("test.WaitSiteWorkflow", "cid-a1", "a1", null, null)).get(10, TimeUnit.SECONDS));
+            waitForState(engine, "a1", ProcessingState.WAITING);
+            assertFalse(completion.isDone());
+
+            // an early response is acknowledged as well
+            engine.notifyAsync(new Response<String>("cid-unknown", "x", null)).get(10, TimeUnit.SECONDS);
+            engine.notifyAsync(new Response<String>("cid-a1", "done", null)).get(10, TimeUnit.SECONDS);
+            completion.get(10, TimeUnit.SECONDS);
+            assertNull(engine.queryWorkflowInstance("a1"));
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        final File snapshotFile = File.createTempFile("copper", ".snapshot");
+        assertTrue(snapshotFile.delete());
+        final BlockingQueue<String> result = new LinkedBlockingQueue<String>();
+        try {
+            final TransientScottyEngine engine = createEngine(snapshotFile, result);
+            try {
+                engine.run(new WorkflowInstanceDescr<String>("test.SnapshotWorkflow", "s1", "s1", null, null));
+                engine.run(new WorkflowInstanceDescr<String>("test.SnapshotWorkflow", "s2", "s2", null, null));
+                engine.run(new WorkflowInstanceDescr<String>("test.PlainSnapshotWorkflow", "P", "p1", null, null));
+                waitForState(engine, "s1", ProcessingState.WAITING);
+                waitForState(engine, "s2", ProcessingState.WAITING);
+                waitForState(engine, "p1", ProcessingState.WAITING);
+                engine.notify(new Response<String>("s1-a", "A", null), new Acknowledge.BestEffortAcknowledge());
+                engine.notify(new Response<String>("s1-c", "C", null), new Acknowledge.BestEffortAcknowledge());
+            } finally {
+                engine.shutdown();
+            }
+            assertTrue(snapshotFile.exists());
+            assertTrue(result.isEmpty());
+
+            final TransientScottyEngine restoredEngine = createEngine(snapshotFile, result);
+            try {
+                assertFalse(snapshotFile.exists());
+                assertEquals(3, restoredEngine.getNumberOfWorkflowInstances());
+                assertEquals(ProcessingState.WAITING.name(), restoredEngine.queryWorkflowInstance("s1").getState());
+                assertEquals(ProcessingState.WAITING.name(), restoredEngine.queryWorkflowInstance("p1").getState());
+                restoredEngine.notify(new Response<String>("s1-b", "B", null), new Acknowledge.BestEffortAcknowledge());
+                assertEquals("s1:A,B", result.poll(10, TimeUnit.SECONDS));
+                // the early response from the snapshot
+                assertEquals("s1:C", result.poll(10, TimeUnit.SECONDS));
+                // the restored timeout
+                assertEquals("s2:timeout", result.poll(10, TimeUnit.SECONDS));
+                // a plain workflow, restored with its data
+                restoredEngine.notify(new Response<String>("p1", "D", null), new Acknowledge.BestEffortAcknowledge());
+                assertEquals("p1:P,D", result.poll(10, TimeUnit.SECONDS));
+                for (int i = 0; i < 100 && restoredEngine.getNumberOfWorkflowInstances() > 0; i++) {
+                    Thread.sleep(50);
+                }
+                assertEquals(0, restoredEngine.getNumberOfWorkflowInstances());
+            } finally {
+                restoredEngine.shutdown();
+            }
+            assertTrue(snapshotFile.exists());
+            assertEquals(Arrays.asList(), new ArrayList<String>(result));
+        } finally {
+            snapshotFile.delete();
+        }
+    }
+
+    @Test
+    public void testCorruptSnapshot() throws Exception {
+        final File snapshotFile = File.createTempFile("copper", ".snapshot");
+        final File corruptFile = new File(snapshotFile.getPath() + ".corrupt");
+        assertTrue(snapshotFile.delete());
+        final BlockingQueue<String> result = new LinkedBlockingQueue<String>();
+        try {
+            final TransientScottyEngine engine = createEngine(snapshotFile, result);
+            try {
+                engine.run(new WorkflowInstanceDescr<String>("test.SnapshotWorkflow", "s1", "s1", null, null));
+                waitForState(engine, "s1", ProcessingState.WAITING);
+            } finally {
+                engine.shutdown();
+            }
+            // cut the snapshot in the middle of the workflow instance
+            try (RandomAccessFile raf = new RandomAccessFile(snapshotFile, "rw")) {
+                raf.setLength(raf.length() / 2);
+            }
+
+            final TransientScottyEngine restoredEngine = createEngine(snapshotFile, result);
+            try {
+                assertEquals(0, restoredEngine.getNumberOfWorkflowInstances());
+                assertFalse(snapshotFile.exists());
+                assertTrue(corruptFile.exists());
+            } finally {
+                restoredEngine.shutdown();
+            }
+        } finally {
+            snapshotFile.delete();
+            corruptFile.delete();
+        }
+    }
+
 }
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.util.concurrent.BlockingQueue;
+
+import org.copperengine.core.Interrupt;
+import org.copperengine.core.Response;
+import org.copperengine.core.WaitMode;
+import org.copperengine.core.Workflow;
+
+/**
+ * Waits for the correlation ids &lt;id&gt;-0 ... &lt;id&gt;-19 one after the other, every second wait with
+ * {@link WaitMode#FIRST} on &lt;id&gt;-&lt;n&gt; and &lt;id&gt;-&lt;n&gt;-x, and puts its id into the queue when done.
+ */
+public class NotifyLoopWorkflow extends Workflow<BlockingQueue<String>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int ITERATIONS = 20;
+
+    @Override
+    public void main() throws Interrupt {
+        for (int i = 0; i < ITERATIONS; i++) {
+            final String cid = getId() + "-" + i;
+            if (i % 2 == 0) {
+                wait(WaitMode.ALL, 10000, cid);
+            } else {
+                wait(WaitMode.FIRST, 10000, cid, cid + "-x");
+            }
+            final Response<?> response = getAndRemoveResponse(cid);
+            if (response == null || response.isTimeout()) {
+                getData().add("missing " + cid);
+                return;
+            }
+        }
+        getData().add(getId());
+    }
+
+}
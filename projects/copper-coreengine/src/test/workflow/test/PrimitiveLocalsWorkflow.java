@@ -0,0 +1,59 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.util.concurrent.BlockingQueue;
+
+import org.copperengine.core.Interrupt;
+import org.copperengine.core.Workflow;
+
+public class PrimitiveLocalsWorkflow extends Workflow<BlockingQueue<String>> {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void main() throws Interrupt {
+        boolean z = false;
+        byte b = 1;
+        char c = 'a';
+        short s = 2;
+        int i = 3;
+        long l = 1L << 40;
+        float f = 0.5f;
+        double d = Math.PI;
+        String text = "x";
+        for (int n = 0; n < 3; n++) {
+            resubmit();
+            z = !z;
+            b++;
+            c++;
+            s++;
+            i++;
+            l++;
+            f += 1;
+            d *= 2;
+            text += n;
+        }
+        final long sum = add(l, i, d);
+        getData().add(z + " " + b + " " + c + " " + s + " " + i + " " + l + " " + f + " " + d + " " + text + " " + sum);
+    }
+
+    private long add(long a, int b, double c) throws Interrupt {
+        resubmit();
+        return a + b + (long) c;
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.util.concurrent.BlockingQueue;
+
+import org.copperengine.core.AutoWire;
+import org.copperengine.core.Interrupt;
+import org.copperengine.core.Response;
+import org.copperengine.core.WaitMode;
+import org.copperengine.core.persistent.PersistentWorkflow;
+
+/**
+ * Waits for the correlation ids &lt;id&gt;-a and &lt;id&gt;-b, then for &lt;id&gt;-c and puts the responses into
+ * the injected result queue.
+ */
+public class SnapshotWorkflow extends PersistentWorkflow<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient BlockingQueue<String> resultQueue;
+
+    @AutoWire
+    public void setResultQueue(BlockingQueue<String> resultQueue) {
+        this.resultQueue = resultQueue;
+    }
+
+    @Override
+    public void main() throws Interrupt {
+        final String id = getId();
+        wait(WaitMode.ALL, 3000, id + "-a", id + "-b");
+        final Response<String> a = getAndRemoveResponse(id + "-a");
+        final Response<String> b = getAndRemoveResponse(id + "-b");
+        if (a.isTimeout() || b.isTimeout()) {
+            resultQueue.add(id + ":timeout");
+            return;
+        }
+        resultQueue.add(id + ":" + a.getResponse() + "," + b.getResponse());
+        wait(WaitMode.ALL, 3000, id + "-c");
+        resultQueue.add(id + ":" + getAndRemoveResponse(id + "-c").getResponse());
+    }
+
+}
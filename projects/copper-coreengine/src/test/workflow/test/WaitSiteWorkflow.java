@@ -0,0 +1,36 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import org.copperengine.core.Interrupt;
+import org.copperengine.core.WaitMode;
+import org.copperengine.core.Workflow;
+
+public class WaitSiteWorkflow extends Workflow<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void main() throws Interrupt {
+        resubmit();
+        waitForResponse();
+    }
+
+    private void waitForResponse() throws Interrupt {
+        wait(WaitMode.ALL, Workflow.NO_TIMEOUT, getData());
+    }
+
+}
@@ -15,6 +15,10 @@
  */
 package org.copperengine.management;
 
+import java.util.List;
+
+import org.copperengine.management.model.BatchExecutorStatistics;
+
 public interface BatcherMXBean {
 
     public String getDescription();
@@ -23,4 +27,13 @@ public interface BatcherMXBean {
 
     public void setNumThreads(int numThreads);
 
+    public boolean isAdaptiveBatchSizing();
+
+    public void setAdaptiveBatchSizing(boolean adaptiveBatchSizing);
+
+    /**
+     * @return current batch size, batching latency and failure counters of each batch executor
+     */
+    public List<BatchExecutorStatistics> getBatchExecutorStatistics();
+
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.management;
+
+public interface EarlyResponseContainerMXBean {
+
+    /**
+     * @return the number of early responses currently held in the container
+     */
+    public int getNumberOfResponses();
+
+    /**
+     * @return the approximate heap size in bytes of the early responses currently held in the container
+     */
+    public long getApproximateBytes();
+
+    public int getMaxResponses();
+
+    public void setMaxResponses(int maxResponses);
+
+    public long getMaxBytes();
+
+    public void setMaxBytes(long maxBytes);
+
+    /**
+     * @return the number of lookups that found at least one early response
+     */
+    public long getNumberOfHits();
+
+    /**
+     * @return the number of lookups that found no early response
+     */
+    public long getNumberOfMisses();
+
+    /**
+     * @return the number of early responses removed because the container reached one of its limits
+     */
+    public long getNumberOfEvictions();
+
+    /**
+     * @return the number of early responses removed because their hold back time elapsed
+     */
+    public long getNumberOfExpirations();
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.management.model;
+
+import java.beans.ConstructorProperties;
+import java.io.Serializable;
+
+/**
+ * Current batching parameters and failure counters of a single batch executor.
+ */
+public class BatchExecutorStatistics implements Serializable {
+
+    private static final long serialVersionUID = 4312981275648812211L;
+
+    private String executorId;
+    private int preferredBatchSize;
+    private int batchingLatencyMSec = -1;
+    private long avgExecutionTimeMicros = -1;
+    private int queueSize;
+    private long failedBatches;
+    private long isolatedCommands;
+
+    public BatchExecutorStatistics() {
+    }
+
+    @ConstructorProperties({ "executorId", "preferredBatchSize", "batchingLatencyMSec", "avgExecutionTimeMicros", "queueSize", "failedBatches", "isolatedCommands" })
+    public BatchExecutorStatistics(String executorId, int preferredBatchSize, int batchingLatencyMSec, long avgExecutionTimeMicros, int queueSize, long failedBatches, long isolatedCommands) {
+        this.executorId = executorId;
+        this.preferredBatchSize = preferredBatchSize;
+        this.batchingLatencyMSec = batchingLatencyMSec;
+        this.avgExecutionTimeMicros = avgExecutionTimeMicros;
+        this.queueSize = queueSize;
+        this.failedBatches = failedBatches;
+        this.isolatedCommands = isolatedCommands;
+    }
+
+    public String getExecutorId() {
+        return executorId;
+    }
+
+    public void setExecutorId(String executorId) {
+        this.executorId = executorId;
+    }
+
+    /**
+     * @return the preferred batch size currently used by the batcher
+     */
+    public int getPreferredBatchSize() {
+        return preferredBatchSize;
+    }
+
+    public void setPreferredBatchSize(int preferredBatchSize) {
+        this.preferredBatchSize = preferredBatchSize;
+    }
+
+    /**
+     * @return the batching latency currently used by the batcher in adaptive mode, -1 if the target times of the
+     *         commands are used
+     */
+    public int getBatchingLatencyMSec() {
+        return batchingLatencyMSec;
+    }
+
+    public void setBatchingLatencyMSec(int batchingLatencyMSec) {
+        this.batchingLatencyMSec = batchingLatencyMSec;
+    }
+
+    /**
+     * @return moving average of the execution time of a batch, -1 if no batch was executed yet
+     */
+    public long getAvgExecutionTimeMicros() {
+        return avgExecutionTimeMicros;
+    }
+
+    public void setAvgExecutionTimeMicros(long avgExecutionTimeMicros) {
+        this.avgExecutionTimeMicros = avgExecutionTimeMicros;
+    }
+
+    /**
+     * @return number of queued commands of this executor
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * @return number of batches with more than one command that failed and were split up for recovery
+     */
+    public long getFailedBatches() {
+        return failedBatches;
+    }
+
+    public void setFailedBatches(long failedBatches) {
+        this.failedBatches = failedBatches;
+    }
+
+    /**
+     * @return number of commands that failed on their own after the recovery of a failed batch
+     */
+    public long getIsolatedCommands() {
+        return isolatedCommands;
+    }
+
+    public void setIsolatedCommands(long isolatedCommands) {
+        this.isolatedCommands = isolatedCommands;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchExecutorStatistics [executorId=" + executorId + ", preferredBatchSize=" + preferredBatchSize + ", batchingLatencyMSec=" + batchingLatencyMSec + ", avgExecutionTimeMicros=" + avgExecutionTimeMicros + ", queueSize=" + queueSize + ", failedBatches=" + failedBatches + ", isolatedCommands=" + isolatedCommands + "]";
+    }
+
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.regtest.persistent;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.copperengine.core.Acknowledge;
+import org.copperengine.core.Response;
+import org.copperengine.core.batcher.BatchCommand;
+import org.copperengine.core.db.utility.JdbcUtils;
+import org.copperengine.core.persistent.AbstractSqlDialect;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+
+/**
+ * Runs the incremental queue state update of {@link AbstractSqlDialect} against a real schema and checks the content
+ * of COP_QUEUE, COP_WAIT and COP_RESPONSE_EVENT.
+ */
+public abstract class AbstractIncrementalQueueStateUpdateTest {
+
+    protected static ComboPooledDataSource dataSource;
+
+    private AbstractSqlDialect dialect;
+    private Connection con;
+
+    @AfterClass
+    public static void afterClass() {
+        if (dataSource != null) {
+            dataSource.close();
+            dataSource = null;
+        }
+    }
+
+    @Before
+    public void beforeTest() throws Exception {
+        if (dataSource == null) {
+            dataSource = createDatasource();
+        }
+        dialect = createDialect(dataSource);
+        dialect.setIncrementalQueueStateUpdate(true);
+        dialect.startup();
+
+        con = dataSource.getConnection();
+        con.setAutoCommit(false);
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("DELETE FROM COP_QUEUE");
+            stmt.execute("DELETE FROM COP_WAIT");
+            stmt.execute("DELETE FROM COP_RESPONSE");
+            stmt.execute("DELETE FROM COP_RESPONSE_EVENT");
+        }
+        con.commit();
+
+        // the first update uses the full query, until it finds less than max instances
+        assertEquals(0, dialect.updateQueueState(100, con));
+        con.commit();
+    }
+
+    @After
+    public void afterTest() {
+        JdbcUtils.closeConnection(con);
+    }
+
+    protected abstract ComboPooledDataSource createDatasource();
+
+    protected abstract AbstractSqlDialect createDialect(ComboPooledDataSource dataSource);
+
+    @Test
+    public void testResponseEnqueuesWaitingInstance() throws Exception {
+        insertWait("cid1", "wfi1", 1, null, 5);
+        insertWait("cid2", "wfi2", 1, null, 5);
+        notify("cid1");
+
+        assertEquals(1, dialect.updateQueueState(100, con));
+        con.commit();
+
+        assertEquals(Collections.singletonList("wfi1:P#DEFAULT:5"), queryQueue());
+        assertEquals(1, count("SELECT COUNT(*) FROM COP_WAIT WHERE STATE=1 AND WORKFLOW_INSTANCE_ID='wfi1'"));
+        assertEquals(1, count("SELECT COUNT(*) FROM COP_WAIT WHERE STATE=0 AND WORKFLOW_INSTANCE_ID='wfi2'"));
+        assertEquals(0, count("SELECT COUNT(*) FROM COP_RESPONSE_EVENT"));
+
+        // nothing left to do
+        assertEquals(0, dialect.updateQueueState(100, con));
+        con.commit();
+        assertEquals(1, queryQueue().size());
+    }
+
+    @Test
+    public void testEarlyResponseEventIsKept() throws Exception {
+        notify("cid1");
+
+        assertEquals(0, dialect.updateQueueState(100, con));
+        con.commit();
+        assertEquals(1, count("SELECT COUNT(*) FROM COP_RESPONSE_EVENT"));
+
+        insertWait("cid1", "wfi1", 1, null, 3);
+        assertEquals(1, dialect.updateQueueState(100, con));
+        con.commit();
+
+        assertEquals(Collections.singletonList("wfi1:P#DEFAULT:3"), queryQueue());
+        assertEquals(0, count("SELECT COUNT(*) FROM COP_RESPONSE_EVENT"));
+    }
+
+    @Test
+    public void testTimeoutEnqueuesWaitingInstance() throws Exception {
+        insertWait("cid1", "wfi1", 1, new Timestamp(System.currentTimeMillis() - 1000), 5);
+        insertWait("cid2", "wfi2", 1, new Timestamp(System.currentTimeMillis() + 60000), 5);
+
+        assertEquals(1, dialect.updateQueueState(100, con));
+        con.commit();
+
+        assertEquals(Collections.singletonList("wfi1:P#DEFAULT:5"), queryQueue());
+    }
+
+    @Test
+    public void testMinNumberOfResponses() throws Exception {
+        insertWait("cid1", "wfi1", 2, null, 5);
+        insertWait("cid2", "wfi1", 2, null, 4);
+        notify("cid1");
+
+        assertEquals(0, dialect.updateQueueState(100, con));
+        con.commit();
+        assertEquals(0, queryQueue().size());
+        assertEquals(0, count("SELECT COUNT(*) FROM COP_RESPONSE_EVENT"));
+
+        notify("cid2");
+        assertEquals(1, dialect.updateQueueState(100, con));
+        con.commit();
+
+        // the lowest priority of all waits is used
+        assertEquals(Collections.singletonList("wfi1:P#DEFAULT:4"), queryQueue());
+        assertEquals(2, count("SELECT COUNT(*) FROM COP_WAIT WHERE STATE=1"));
+    }
+
+    @Test
+    public void testMaxInstances() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            insertWait("cid" + i, "wfi" + i, 1, null, 5);
+            notify("cid" + i);
+        }
+
+        assertEquals(3, dialect.updateQueueState(3, con));
+        con.commit();
+        assertEquals(3, queryQueue().size());
+
+        assertEquals(2, dialect.updateQueueState(3, con));
+        con.commit();
+        assertEquals(5, queryQueue().size());
+        assertEquals(0, count("SELECT COUNT(*) FROM COP_RESPONSE_EVENT"));
+    }
+
+    /**
+     * An instance that was enqueued concurrently, e.g. by a local notify, must not make the update fail
+     */
+    @Test
+    public void testAlreadyEnqueuedInstance() throws Exception {
+        insertWait("cid1", "wfi1", 1, null, 5);
+        insertWait("cid2", "wfi2", 1, null, 5);
+        notify("cid1");
+        notify("cid2");
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("INSERT INTO COP_QUEUE (PPOOL_ID, PRIORITY, LAST_MOD_TS, WORKFLOW_INSTANCE_ID) VALUES ('P#DEFAULT', 1, CURRENT_TIMESTAMP, 'wfi1')");
+        }
+        con.commit();
+
+        assertEquals(2, dialect.updateQueueState(100, con));
+        con.commit();
+
+        assertEquals(Arrays.asList("wfi1:P#DEFAULT:1", "wfi2:P#DEFAULT:5"), queryQueue());
+        assertEquals(0, count("SELECT COUNT(*) FROM COP_WAIT WHERE STATE=0"));
+    }
+
+    private void insertWait(String cid, String wfiId, int minNumbOfResp, Timestamp timeout, int priority) throws SQLException {
+        try (PreparedStatement stmt = con.prepareStatement("INSERT INTO COP_WAIT (CORRELATION_ID, WORKFLOW_INSTANCE_ID, MIN_NUMB_OF_RESP, TIMEOUT_TS, STATE, PRIORITY, PPOOL_ID) VALUES (?,?,?,?,0,?,'P#DEFAULT')")) {
+            stmt.setString(1, cid);
+            stmt.setString(2, wfiId);
+            stmt.setInt(3, minNumbOfResp);
+            stmt.setTimestamp(4, timeout);
+            stmt.setInt(5, priority);
+            stmt.execute();
+        }
+        con.commit();
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private void notify(String cid) throws Exception {
+        final Response<String> response = new Response<String>(cid, "data", null, false, null, null, UUID.randomUUID().toString());
+        final BatchCommand cmd = dialect.createBatchCommand4Notify(response, new Acknowledge.BestEffortAcknowledge());
+        cmd.executor().doExec(Collections.singletonList(cmd), con);
+        con.commit();
+    }
+
+    private List<String> queryQueue() throws SQLException {
+        final List<String> entries = new ArrayList<String>();
+        try (Statement stmt = con.createStatement()) {
+            final ResultSet rs = stmt.executeQuery("SELECT WORKFLOW_INSTANCE_ID, PPOOL_ID, PRIORITY FROM COP_QUEUE ORDER BY WORKFLOW_INSTANCE_ID");
+            while (rs.next()) {
+                entries.add(rs.getString(1) + ":" + rs.getString(2) + ":" + rs.getInt(3));
+            }
+            rs.close();
+        }
+        con.commit();
+        return entries;
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            final ResultSet rs = stmt.executeQuery(sql);
+            rs.next();
+            final int count = rs.getInt(1);
+            rs.close();
+            con.commit();
+            return count;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.regtest.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.copperengine.core.Acknowledge;
+import org.copperengine.core.Response;
+import org.copperengine.core.WaitHook;
+import org.copperengine.core.WaitMode;
+import org.copperengine.core.Workflow;
+import org.copperengine.core.batcher.BatchCommand;
+import org.copperengine.core.db.utility.JdbcUtils;
+import org.copperengine.core.instrument.Transformed;
+import org.copperengine.core.persistent.DerbyDbDialect;
+import org.copperengine.core.persistent.PersistentWorkflow;
+import org.copperengine.core.persistent.RegisterCall;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+
+/**
+ * Runs a workflow instance through dequeue and wait against a real schema, to check that the register callback
+ * statement keeps the DATA column intact when it skips it, and writes it when the data changed.
+ */
+public class CheckpointFingerprintDerbyDbTest {
+
+    private static final String PPOOL_ID = "P#DEFAULT";
+
+    @Transformed
+    public static class WaitingWorkflow extends PersistentWorkflow<String> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void main() {
+        }
+    }
+
+    private static ComboPooledDataSource dataSource;
+
+    private DerbyDbDialect dialect;
+    private Connection con;
+
+    @AfterClass
+    public static void afterClass() {
+        if (dataSource != null) {
+            dataSource.close();
+            dataSource = null;
+        }
+    }
+
+    @Before
+    public void beforeTest() throws Exception {
+        if (dataSource == null) {
+            dataSource = DataSourceFactory.createDerbyDbDatasource();
+        }
+        dialect = new DerbyDbDialect();
+        dialect.setDataSource(dataSource);
+        dialect.startup();
+
+        con = dataSource.getConnection();
+        con.setAutoCommit(false);
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("DELETE FROM COP_QUEUE");
+            stmt.execute("DELETE FROM COP_WAIT");
+            stmt.execute("DELETE FROM COP_RESPONSE");
+            stmt.execute("DELETE FROM COP_WORKFLOW_INSTANCE");
+        }
+        con.commit();
+    }
+
+    @After
+    public void afterTest() {
+        JdbcUtils.closeConnection(con);
+    }
+
+    @Test
+    public void testUnchangedDataSurvivesWait() throws Exception {
+        final WaitingWorkflow wf = new WaitingWorkflow();
+        wf.setId(UUID.randomUUID().toString());
+        wf.setProcessorPoolId(PPOOL_ID);
+        wf.setPriority(5);
+        wf.setData("some large and static input");
+        dialect.insert(wf, con);
+        con.commit();
+        final String storedData = queryData(wf.getId());
+
+        // wait with unchanged data, the DATA column is not written
+        PersistentWorkflow<?> dequeued = dequeue();
+        assertEquals("some large and static input", dequeued.getData());
+        registerCallback(dequeued, "cid1");
+        assertEquals(storedData, queryData(wf.getId()));
+
+        notifyAndEnqueue("cid1");
+        dequeued = dequeue();
+        assertEquals(wf.getId(), dequeued.getId());
+        assertEquals("some large and static input", dequeued.getData());
+
+        // wait with changed data, the DATA column is written
+        setData(dequeued, "changed input");
+        registerCallback(dequeued, "cid2");
+        assertNotEquals(storedData, queryData(wf.getId()));
+
+        notifyAndEnqueue("cid2");
+        dequeued = dequeue();
+        assertEquals("changed input", dequeued.getData());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void setData(PersistentWorkflow<?> wf, Object data) {
+        ((Workflow<Object>) wf).setData(data);
+    }
+
+    private PersistentWorkflow<?> dequeue() throws Exception {
+        final List<Workflow<?>> list = dialect.dequeue(PPOOL_ID, 10, con);
+        con.commit();
+        assertEquals(1, list.size());
+        return (PersistentWorkflow<?>) list.get(0);
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private void registerCallback(PersistentWorkflow<?> wf, String cid) throws Exception {
+        final RegisterCall rc = new RegisterCall(wf, WaitMode.ALL, null, new String[] { cid }, Collections.<WaitHook> emptyList());
+        final BatchCommand cmd = dialect.createBatchCommand4registerCallback(rc, null, new Acknowledge.BestEffortAcknowledge());
+        cmd.executor().doExec(Collections.singletonList(cmd), con);
+        con.commit();
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private void notifyAndEnqueue(String cid) throws Exception {
+        final Response<String> response = new Response<String>(cid, "data", null, false, null, null, UUID.randomUUID().toString());
+        final BatchCommand cmd = dialect.createBatchCommand4Notify(response, new Acknowledge.BestEffortAcknowledge());
+        cmd.executor().doExec(Collections.singletonList(cmd), con);
+        con.commit();
+        assertEquals(1, dialect.updateQueueState(100, con));
+        con.commit();
+    }
+
+    private String queryData(String id) throws SQLException {
+        try (PreparedStatement stmt = con.prepareStatement("SELECT DATA FROM COP_WORKFLOW_INSTANCE WHERE ID=?")) {
+            stmt.setString(1, id);
+            final ResultSet rs = stmt.executeQuery();
+            rs.next();
+            final String data = rs.getString(1);
+            rs.close();
+            con.commit();
+            return data;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2002-2015 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.regtest.persistent;
+
+import org.copperengine.core.persistent.AbstractSqlDialect;
+import org.copperengine.core.persistent.DerbyDbDialect;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+
+public class IncrementalQueueStateUpdateDerbyDbTest extends AbstractIncrementalQueueStateUpdateTest {
+
+    @Override
+    protected ComboPooledDataSource createDatasource() {
+        return DataSourceFactory.createDerbyDbDatasource();
+    }
+
+    @Override
+    protected AbstractSqlDialect createDialect(ComboPooledDataSource dataSource) {
+        final DerbyDbDialect dialect = new DerbyDbDialect();
+        dialect.setDataSource(dataSource);
+        return dialect;
+    }
+}
@@ -105,6 +105,11 @@ public class H2PersistentWorkflowTest extends SpringlessBasePersistentWorkflowTe
         super.closeContext(context);
     }
 
+    @Test
+    public void testLocalNotify() throws Exception {
+        super.testLocalNotify(DS_CONTEXT);
+    }
+
     @Test
     public void testFailOnDuplicateInsert() throws Exception {
         super.testFailOnDuplicateInsert(DS_CONTEXT);
@@ -120,6 +125,11 @@ public class H2PersistentWorkflowTest extends SpringlessBasePersistentWorkflowTe
         super.testQueryAllActive(DS_CONTEXT);
     }
 
+    @Test
+    public void testDirectSavepoint() throws Exception {
+        super.testDirectSavepoint(DS_CONTEXT, true);
+    }
+
     @Test
     public void testMulipleResponsesForSameCidPersistentTestWorkflow() throws Exception {
         super.testMulipleResponsesForSameCidPersistentTestWorkflow(DS_CONTEXT);
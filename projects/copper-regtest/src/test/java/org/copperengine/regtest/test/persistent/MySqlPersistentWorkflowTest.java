@@ -92,6 +92,16 @@ public class MySqlPersistentWorkflowTest extends SpringlessBasePersistentWorkflo
         super.testNotifyWithoutEarlyResponseHandling(DS_CONTEXT);
     }
 
+    @Test
+    public void testLocalNotify() throws Exception {
+        super.testLocalNotify(DS_CONTEXT);
+    }
+
+    @Test
+    public void testSkipLockedDequeue() throws Exception {
+        super.testSkipLockedDequeue(DS_CONTEXT);
+    }
+
     @Test
     public void testFailOnDuplicateInsert() throws Exception {
         super.testFailOnDuplicateInsert(DS_CONTEXT);
@@ -112,6 +122,11 @@ public class MySqlPersistentWorkflowTest extends SpringlessBasePersistentWorkflo
         super.testQueryAllActive(DS_CONTEXT);
     }
 
+    @Test
+    public void testDirectSavepoint() throws Exception {
+        super.testDirectSavepoint(DS_CONTEXT, true);
+    }
+
     @Test
     public void testMulipleResponsesForSameCidPersistentTestWorkflow() throws Exception {
         super.testMulipleResponsesForSameCidPersistentTestWorkflow(DS_CONTEXT);
@@ -111,6 +111,16 @@ public class OraclePersistentWorkflowTest extends SpringlessBasePersistentWorkfl
         super.testNotifyWithoutEarlyResponseHandling(DS_CONTEXT);
     }
 
+    @Test
+    public void testLocalNotify() throws Exception {
+        super.testLocalNotify(DS_CONTEXT);
+    }
+
+    @Test
+    public void testSkipLockedDequeue() throws Exception {
+        super.testSkipLockedDequeue(DS_CONTEXT);
+    }
+
     @Test
     public void testFailOnDuplicateInsert() throws Exception {
         super.testFailOnDuplicateInsert(DS_CONTEXT);
@@ -126,6 +136,11 @@ public class OraclePersistentWorkflowTest extends SpringlessBasePersistentWorkfl
         super.testQueryAllActive(DS_CONTEXT);
     }
 
+    @Test
+    public void testDirectSavepoint() throws Exception {
+        super.testDirectSavepoint(DS_CONTEXT, false);
+    }
+
     @Test
     public void testMulipleResponsesForSameCidPersistentTestWorkflow() throws Exception {
         super.testMulipleResponsesForSameCidPersistentTestWorkflow(DS_CONTEXT);
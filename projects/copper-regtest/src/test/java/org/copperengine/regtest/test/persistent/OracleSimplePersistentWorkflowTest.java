@@ -91,6 +91,11 @@ public class OracleSimplePersistentWorkflowTest extends SpringlessBasePersistent
         super.testNotifyWithoutEarlyResponseHandling(DS_CONTEXT);
     }
 
+    @Test
+    public void testLocalNotify() throws Exception {
+        super.testLocalNotify(DS_CONTEXT);
+    }
+
     @Test
     public void testFailOnDuplicateInsert() throws Exception {
         super.testFailOnDuplicateInsert(DS_CONTEXT);
@@ -111,6 +116,11 @@ public class OracleSimplePersistentWorkflowTest extends SpringlessBasePersistent
         super.testQueryAllActive(DS_CONTEXT);
     }
 
+    @Test
+    public void testDirectSavepoint() throws Exception {
+        super.testDirectSavepoint(DS_CONTEXT, false);
+    }
+
     @Test
     public void testMulipleResponsesForSameCidPersistentTestWorkflow() throws Exception {
         super.testMulipleResponsesForSameCidPersistentTestWorkflow(DS_CONTEXT);
@@ -91,6 +91,16 @@ public class PostgreSQLPersistentWorkflowTest extends SpringlessBasePersistentWo
         super.testNotifyWithoutEarlyResponseHandling(DS_CONTEXT);
     }
 
+    @Test
+    public void testLocalNotify() throws Exception {
+        super.testLocalNotify(DS_CONTEXT);
+    }
+
+    @Test
+    public void testSkipLockedDequeue() throws Exception {
+        super.testSkipLockedDequeue(DS_CONTEXT);
+    }
+
     @Test
     public void testFailOnDuplicateInsert() throws Exception {
         super.testFailOnDuplicateInsert(DS_CONTEXT);
@@ -111,6 +121,11 @@ public class PostgreSQLPersistentWorkflowTest extends SpringlessBasePersistentWo
         super.testQueryAllActive(DS_CONTEXT);
     }
 
+    @Test
+    public void testDirectSavepoint() throws Exception {
+        super.testDirectSavepoint(DS_CONTEXT, true);
+    }
+
     @Test
     public void testMulipleResponsesForSameCidPersistentTestWorkflow() throws Exception {
         super.testMulipleResponsesForSameCidPersistentTestWorkflow(DS_CONTEXT);
@@ -32,7 +32,9 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
@@ -54,7 +56,11 @@ import org.copperengine.core.audit.BatchingAuditTrail;
 import org.copperengine.core.audit.CompressedBase64PostProcessor;
 import org.copperengine.core.audit.DummyPostProcessor;
 import org.copperengine.core.db.utility.RetryingTransaction;
+import org.copperengine.core.persistent.AbstractSqlDialect;
+import org.copperengine.core.persistent.DatabaseDialect;
+import org.copperengine.core.persistent.OracleDialect;
 import org.copperengine.core.persistent.PersistentScottyEngine;
+import org.copperengine.core.persistent.ScottyDBStorage;
 import org.copperengine.management.model.WorkflowInfo;
 import org.copperengine.management.model.WorkflowInstanceFilter;
 import org.copperengine.regtest.test.DataHolder;
@@ -73,6 +79,7 @@ public class SpringlessBasePersistentWorkflowTest {
     static final String WaitForEverTestWF_NAME = "org.copperengine.regtest.test.WaitForEverTestWF";
     static final String JmxTestWF_NAME = "org.copperengine.regtest.test.persistent.jmx.JmxTestWorkflow";
     static final String DeleteBrokenTestWF_NAME = "org.copperengine.regtest.test.persistent.DeleteBrokenTestWorkflow";
+    static final String SavepointTestWF_NAME = "org.copperengine.regtest.test.persistent.SavepointTestWorkflow";
 
     public final void testDummy() {
         // for junit only
@@ -203,6 +210,105 @@ public class SpringlessBasePersistentWorkflowTest {
 
     }
 
+    public void testLocalNotify(DataSourceType dsType) throws Exception {
+        assumeFalse(skipTests());
+        logger.info("running testLocalNotify");
+        final int NUMB = 50;
+        final String DATA = createTestData(50);
+        final PersistentEngineTestContext context = createContext(dsType);
+        final PersistentScottyEngine engine = context.getEngine();
+        final BackChannelQueue backChannelQueue = context.getBackChannelQueue();
+        ((ScottyDBStorage) engine.getDbStorage()).setLocalNotify(true);
+        try {
+            for (int i = 0; i < NUMB; i++) {
+                engine.run(PersistentUnitTestWorkflow_NAME, DATA);
+            }
+
+            for (int i = 0; i < NUMB; i++) {
+                WorkflowResult x = backChannelQueue.dequeue(DEQUEUE_TIMEOUT, TimeUnit.SECONDS);
+                assertNotNull(x);
+                assertNotNull(x.getResult());
+                assertNull(x.getException());
+            }
+            checkNumbOfResponsesInDB(context, 0);
+
+        } finally {
+            closeContext(context);
+        }
+        assertEquals(EngineState.STOPPED, engine.getEngineState());
+        assertEquals(0, engine.getNumberOfWorkflowInstances());
+    }
+
+    public void testSkipLockedDequeue(DataSourceType dsType) throws Exception {
+        assumeFalse(skipTests());
+        logger.info("running testSkipLockedDequeue");
+        final int NUMB = 10;
+        // no processor pool of the engine dequeues from this pool
+        final String PPOOL_ID = "SKIP_LOCKED_TEST";
+        final PersistentEngineTestContext context = createContext(dsType);
+        final PersistentScottyEngine engine = context.getEngine();
+        final DatabaseDialect dialect = ((ScottyDBStorage) engine.getDbStorage()).getDialect();
+        if (dialect instanceof OracleDialect) {
+            ((OracleDialect) dialect).setSkipLockedDequeue(true);
+        } else {
+            ((AbstractSqlDialect) dialect).setSkipLockedDequeue(true);
+        }
+        try {
+            final List<Workflow<?>> wfs = new ArrayList<Workflow<?>>();
+            for (int i = 0; i < NUMB; i++) {
+                final Workflow<?> wf = engine.getWfRepository().createWorkflowFactory(PersistentUnitTestWorkflow_NAME).newInstance();
+                wf.setId("skipLocked#" + i);
+                wf.setProcessorPoolId(PPOOL_ID);
+                wfs.add(wf);
+            }
+            new RetryingTransaction<Void>(context.getDataSource()) {
+                @Override
+                protected Void execute() throws Exception {
+                    dialect.insert(wfs, getConnection());
+                    return null;
+                }
+            }.run();
+
+            final Set<String> ids = new HashSet<String>();
+            final Connection con1 = context.getDataSource().getConnection();
+            final Connection con2 = context.getDataSource().getConnection();
+            try {
+                con1.setAutoCommit(false);
+                con2.setAutoCommit(false);
+                final List<Workflow<?>> first = dialect.dequeue(PPOOL_ID, 4, con1);
+                // without SKIP LOCKED this blocks on the dequeue lock or on the rows locked by con1
+                final List<Workflow<?>> second = dialect.dequeue(PPOOL_ID, 4, con2);
+                assertEquals(4, first.size());
+                assertEquals(4, second.size());
+                for (Workflow<?> wf : first) {
+                    ids.add(wf.getId());
+                }
+                for (Workflow<?> wf : second) {
+                    ids.add(wf.getId());
+                }
+                assertEquals(8, ids.size());
+                con1.commit();
+                con2.commit();
+            } finally {
+                con1.close();
+                con2.close();
+            }
+
+            final List<Workflow<?>> rest = new RetryingTransaction<List<Workflow<?>>>(context.getDataSource()) {
+                @Override
+                protected List<Workflow<?>> execute() throws Exception {
+                    return dialect.dequeue(PPOOL_ID, NUMB, getConnection());
+                }
+            }.run();
+            assertEquals(NUMB - 8, rest.size());
+            for (Workflow<?> wf : rest) {
+                assertTrue(ids.add(wf.getId()));
+            }
+        } finally {
+            closeContext(context);
+        }
+    }
+
     public void testFailOnDuplicateInsert(DataSourceType dsType) throws Exception {
         assumeFalse(skipTests());
         logger.info("running testFailOnDuplicateInsert");
@@ -771,6 +877,38 @@ public class SpringlessBasePersistentWorkflowTest {
         assertEquals(0, engine.getNumberOfWorkflowInstances());
     }
 
+    /**
+     * @param directPath
+     *        true, if the dialect writes savepoints directly, so that the instances are put back into the local
+     *        processor pool, otherwise they take the detour via wait/notify
+     */
+    public void testDirectSavepoint(DataSourceType dsType, boolean directPath) throws Exception {
+        assumeFalse(skipTests());
+        logger.info("running testDirectSavepoint");
+        final int NUMB = 20;
+        final String DATA = createTestData(50);
+        final PersistentEngineTestContext context = createContext(dsType);
+        final PersistentScottyEngine engine = context.getEngine();
+        final BackChannelQueue backChannelQueue = context.getBackChannelQueue();
+        engine.setDirectSavepoint(true);
+        try {
+            for (int i = 0; i < NUMB; i++) {
+                engine.run(SavepointTestWF_NAME, DATA);
+            }
+            for (int i = 0; i < NUMB; i++) {
+                WorkflowResult x = backChannelQueue.dequeue(DEQUEUE_TIMEOUT, TimeUnit.SECONDS);
+                assertNotNull(x);
+                assertNull(x.getException());
+                assertEquals(directPath ? "01234:10" : "01234:0", x.getResult());
+            }
+            checkNumbOfResponsesInDB(context, 0);
+        } finally {
+            closeContext(context);
+        }
+        assertEquals(EngineState.STOPPED, engine.getEngineState());
+        assertEquals(0, engine.getNumberOfWorkflowInstances());
+    }
+
     private <T> void manualSend(PersistentProcessingEngine engine, String correlationId, T data) {
         Response<T> response = new Response<>(correlationId, data, null);
         response.setResponseId(UUID.randomUUID().toString());
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2002-2017 SCOOP Software GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.copperengine.regtest.test.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.copperengine.core.AutoWire;
+import org.copperengine.core.Interrupt;
+import org.copperengine.core.Response;
+import org.copperengine.core.WaitMode;
+import org.copperengine.core.persistent.PersistentWorkflow;
+import org.copperengine.regtest.test.MockAdapter;
+import org.copperengine.regtest.test.backchannel.BackChannelQueue;
+import org.copperengine.regtest.test.backchannel.WorkflowResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class SavepointTestWorkflow extends PersistentWorkflow<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger logger = LoggerFactory.getLogger(SavepointTestWorkflow.class);
+
+    private transient BackChannelQueue backChannelQueue;
+    private transient MockAdapter mockAdapter;
+
+    private int counter;
+    // number of savepoints after which this instance continued in memory, i.e. without being read from the database
+    private int directResumes;
+    private transient boolean inMemory;
+
+    @AutoWire
+    public void setBackChannelQueue(BackChannelQueue backChannelQueue) {
+        this.backChannelQueue = backChannelQueue;
+    }
+
+    @AutoWire
+    public void setMockAdapter(MockAdapter mockAdapter) {
+        this.mockAdapter = mockAdapter;
+    }
+
+    @Override
+    public void main() throws Interrupt {
+        try {
+            String result = "";
+            for (int i = 0; i < 5; i++) {
+                final String cid = getEngine().createUUID();
+                mockAdapter.foo(getData(), cid);
+                wait(WaitMode.ALL, 10000, cid);
+                final Response<String> response = getAndRemoveResponse(cid);
+                assertNotNull(response);
+                assertEquals(getData(), response.getResponse());
+                // the wait and the response are consumed by the savepoint
+                inMemory = true;
+                savepoint();
+                if (inMemory)
+                    directResumes++;
+                counter++;
+                resubmit();
+                if (inMemory)
+                    directResumes++;
+                result += i;
+            }
+            assertEquals(5, counter);
+            backChannelQueue.enqueue(new WorkflowResult(result + ":" + directResumes, null));
+        } catch (Exception e) {
+            logger.error("execution failed", e);
+            backChannelQueue.enqueue(new WorkflowResult(null, e));
+        }
+    }
+}
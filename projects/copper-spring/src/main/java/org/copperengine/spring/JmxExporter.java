@@ -23,6 +23,7 @@ import org.copperengine.management.AuditTrailQueryMXBean;
 import org.copperengine.management.BatcherMXBean;
 import org.copperengine.management.DBStorageMXBean;
 import org.copperengine.management.DatabaseDialectMXBean;
+import org.copperengine.management.EarlyResponseContainerMXBean;
 import org.copperengine.management.ProcessingEngineMXBean;
 import org.copperengine.management.ProcessorPoolMXBean;
 import org.copperengine.management.StatisticsCollectorMXBean;
@@ -91,4 +92,9 @@ public class JmxExporter extends AbstractJmxExporter implements ApplicationConte
         return applicationContext.getBeansOfType(AuditTrailQueryMXBean.class);
     }
 
+    @Override
+    protected Map<String, EarlyResponseContainerMXBean> getEarlyResponseContainerMXBeans() {
+        return applicationContext.getBeansOfType(EarlyResponseContainerMXBean.class);
+    }
+
 }